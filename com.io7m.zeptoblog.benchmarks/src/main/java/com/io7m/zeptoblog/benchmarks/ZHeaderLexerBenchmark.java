@@ -0,0 +1,113 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.benchmarks;
+
+import com.io7m.zeptoblog.core.ZHeaderLexer;
+import io.vavr.collection.Vector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compare the header lexer against the original regular expression based
+ * header parsing.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ZHeaderLexerBenchmark
+{
+  private static final String[] LINES = {
+    "title A reasonably typical title for a blog post",
+    "date 2017-01-01T00:00:00+0000",
+    "format com.io7m.zeptoblog.commonmark",
+    "  related   first second\tthird  ",
+  };
+
+  private final ZHeaderLexer lexer = new ZHeaderLexer();
+
+  /**
+   * Construct a benchmark.
+   */
+
+  public ZHeaderLexerBenchmark()
+  {
+
+  }
+
+  /**
+   * Parse header lines as the parsers originally did.
+   *
+   * @param hole The black hole
+   */
+
+  @Benchmark
+  public void regex(
+    final Blackhole hole)
+  {
+    for (final String raw_line : LINES) {
+      final String line = raw_line.trim();
+      final Vector<String> tokens = Vector.of(line.split("\\s+"));
+      switch (tokens.get(0)) {
+        case "title":
+        case "related": {
+          hole.consume(tokens.tail().collect(Collectors.joining(" ")));
+          break;
+        }
+        default: {
+          hole.consume(tokens.get(1));
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Parse header lines with the header lexer.
+   *
+   * @param hole The black hole
+   */
+
+  @Benchmark
+  public void lexer(
+    final Blackhole hole)
+  {
+    final ZHeaderLexer lex = this.lexer;
+    for (final String raw_line : LINES) {
+      lex.lex(raw_line);
+      if (lex.tokenIs(0, "title") || lex.tokenIs(0, "related")) {
+        hole.consume(lex.tokensFrom(1));
+      } else {
+        hole.consume(lex.token(1));
+      }
+    }
+  }
+}
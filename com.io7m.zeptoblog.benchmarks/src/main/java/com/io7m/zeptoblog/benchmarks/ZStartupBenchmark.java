@@ -0,0 +1,188 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measure the time taken to compile a small blog in a new process, with and
+ * without a class data sharing archive produced by {@code zeptoblog train}.
+ * The command-line jar must be named by the {@code ZEPTOBLOG_CMDLINE_JAR}
+ * environment variable.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ZStartupBenchmark
+{
+  /**
+   * The way in which the virtual machine is started.
+   */
+
+  @Param({"plain", "cds"})
+  private String launch;
+
+  private Path directory;
+  private List<String> command;
+
+  /**
+   * Construct a benchmark.
+   */
+
+  public ZStartupBenchmark()
+  {
+
+  }
+
+  private static int run(
+    final List<String> command)
+    throws IOException, InterruptedException
+  {
+    return new ProcessBuilder(command)
+      .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+      .redirectError(ProcessBuilder.Redirect.DISCARD)
+      .start()
+      .waitFor();
+  }
+
+  /**
+   * Create a blog, and train an archive if required.
+   *
+   * @throws Exception On errors
+   */
+
+  @Setup(Level.Trial)
+  public void setup()
+    throws Exception
+  {
+    final String jar = System.getenv("ZEPTOBLOG_CMDLINE_JAR");
+    if (jar == null) {
+      throw new IllegalStateException(
+        "ZEPTOBLOG_CMDLINE_JAR must name the command-line jar");
+    }
+
+    this.directory = Files.createTempDirectory("zeptoblog-startup");
+    final Path source = this.directory.resolve("source");
+    Files.createDirectories(source);
+
+    for (int index = 0; index < 10; ++index) {
+      Files.writeString(
+        source.resolve(String.format("post%02d.zbp", Integer.valueOf(index))),
+        String.join(
+          "\n",
+          "title Post " + index,
+          String.format("date 2017-01-%02dT00:00:00+0000", Integer.valueOf(index + 1)),
+          "format com.io7m.zeptoblog.commonmark",
+          "",
+          "A *small* post with a [link](http://example.com).",
+          ""),
+        StandardCharsets.UTF_8);
+    }
+
+    final Path config = this.directory.resolve("blog.conf");
+    Files.writeString(
+      config,
+      String.join(
+        "\n",
+        "com.io7m.zeptoblog.title = Startup",
+        "com.io7m.zeptoblog.source_root = " + source,
+        "com.io7m.zeptoblog.output_root = " + this.directory.resolve("output"),
+        "com.io7m.zeptoblog.site_uri = http://example.com/",
+        "com.io7m.zeptoblog.author = author@example.com",
+        "com.io7m.zeptoblog.format_default = com.io7m.zeptoblog.commonmark",
+        ""),
+      StandardCharsets.UTF_8);
+
+    final String java =
+      Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    final Path archive = this.directory.resolve("zeptoblog.jsa");
+
+    this.command = new ArrayList<>(8);
+    this.command.add(java);
+    if ("cds".equals(this.launch)) {
+      final int status = run(List.of(
+        java, "-jar", jar, "train",
+        "-config", config.toString(),
+        "-archive", archive.toString()));
+      if (status != 0) {
+        throw new IllegalStateException("Training failed: " + status);
+      }
+      this.command.add("-XX:SharedArchiveFile=" + archive);
+    }
+    this.command.addAll(List.of(
+      "-jar", jar, "compile", "-config", config.toString(), "-no-daemon"));
+  }
+
+  /**
+   * Delete the blog.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @TearDown(Level.Trial)
+  public void tearDown()
+    throws IOException
+  {
+    try (Stream<Path> paths = Files.walk(this.directory)) {
+      for (final Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  /**
+   * Compile the blog in a new process.
+   *
+   * @return The exit code of the process
+   *
+   * @throws Exception On errors
+   */
+
+  @Benchmark
+  public int compile()
+    throws Exception
+  {
+    return run(this.command);
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.cmdline;
+
+import com.io7m.junreachable.UnreachableCodeException;
+import com.io7m.zeptoblog.core.ZError;
+import io.vavr.collection.Seq;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * <p>Functions to measure the time taken to compile a synthetic blog.</p>
+ *
+ * <p>A benchmark compiles a {@link ZBlogBenchmarkCorpus} from scratch with
+ * a new compiler, revises a number of posts, and then compiles the corpus
+ * again with the same compiler, so that the second compilation reuses
+ * whatever the compiler retained from the first. The throughput and peak
+ * heap usage of each compilation is reported as a tab-separated table, so
+ * that the results of benchmarks of different sizes can be collected and
+ * plotted.</p>
+ */
+
+final class ZBlogBenchmark
+{
+  private static final Logger LOG;
+
+  static {
+    LOG = LoggerFactory.getLogger(ZBlogBenchmark.class);
+  }
+
+  private ZBlogBenchmark()
+  {
+    throw new UnreachableCodeException();
+  }
+
+  /**
+   * Run a benchmark, writing the results to the given stream.
+   *
+   * @param corpus         The corpus
+   * @param directory      The corpus directory
+   * @param changes        The number of posts revised before the incremental
+   *                       compilation
+   * @param render_threads The number of render threads, or {@code 0} for one
+   *                       per processor
+   * @param output         The stream to which results are written
+   * @param on_error       A function that receives compilation errors
+   *
+   * @return {@code true} if both compilations succeeded
+   *
+   * @throws IOException On I/O errors
+   */
+
+  static boolean run(
+    final ZBlogBenchmarkCorpus corpus,
+    final Path directory,
+    final int changes,
+    final int render_threads,
+    final PrintStream output,
+    final Consumer<ZError> on_error)
+    throws IOException
+  {
+    corpus.prepare(directory);
+    ZBlogBenchmarkCorpus.clean(directory);
+    final Path config = corpus.configure(directory, render_threads);
+
+    output.println("phase\tposts\tchanged\tseconds\tposts_per_second\tpeak_heap_mib");
+
+    final ZBlogCompiler compiler = new ZBlogCompiler();
+    try {
+      if (!measure(compiler, config, "full", corpus.posts(), corpus.posts(), output, on_error)) {
+        return false;
+      }
+
+      final int changed = corpus.revise(directory, changes);
+      return measure(compiler, config, "incremental", corpus.posts(), changed, output, on_error);
+    } finally {
+      corpus.restore(directory);
+    }
+  }
+
+  private static boolean measure(
+    final ZBlogCompiler compiler,
+    final Path config,
+    final String phase,
+    final int posts,
+    final int changed,
+    final PrintStream output,
+    final Consumer<ZError> on_error)
+  {
+    final List<MemoryPoolMXBean> pools = heapPools();
+    System.gc();
+    pools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+    LOG.info("compiling ({})", phase);
+    final long time_then = System.nanoTime();
+    final Seq<ZError> errors = compiler.compile(config);
+    final long time_now = System.nanoTime();
+
+    if (!errors.isEmpty()) {
+      errors.forEach(on_error);
+      return false;
+    }
+
+    long peak = 0L;
+    for (final MemoryPoolMXBean pool : pools) {
+      peak += pool.getPeakUsage().getUsed();
+    }
+
+    final double seconds = (double) (time_now - time_then) / 1.0e9;
+    output.printf(
+      Locale.ROOT,
+      "%s\t%d\t%d\t%.3f\t%.1f\t%.1f%n",
+      phase,
+      Integer.valueOf(posts),
+      Integer.valueOf(changed),
+      Double.valueOf(seconds),
+      Double.valueOf((double) posts / seconds),
+      Double.valueOf((double) peak / (1024.0 * 1024.0)));
+    output.flush();
+    return true;
+  }
+
+  /*
+   * The peak usage of the heap is approximated by the sum of the peak usage
+   * of each heap memory pool. The pools may reach their peaks at different
+   * times, and so this may overestimate the true peak.
+   */
+
+  private static List<MemoryPoolMXBean> heapPools()
+  {
+    return ManagementFactory.getMemoryPoolMXBeans()
+      .stream()
+      .filter(pool -> pool.getType() == MemoryType.HEAP)
+      .toList();
+  }
+}
@@ -0,0 +1,619 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.cmdline;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+/**
+ * <p>A reproducible synthetic blog, used to measure how compilation scales
+ * with the size of a blog.</p>
+ *
+ * <p>A corpus is a directory containing a source tree of posts in the
+ * CommonMark and XHTML formats, a set of static files, and an optional
+ * glossary. The body of each post has a number of words drawn from a
+ * log-normal distribution. Every post is generated from a random number
+ * generator seeded by the corpus seed and the index of the post, and so the
+ * same parameters always produce the same corpus, and any post can be
+ * regenerated independently of the others.</p>
+ *
+ * <p>The parameters of a generated corpus are recorded in the directory, so
+ * that a corpus can be reused by later benchmarks with the same
+ * parameters.</p>
+ */
+
+public final class ZBlogBenchmarkCorpus
+{
+  private static final Logger LOG;
+  private static final String MARKER = "corpus.properties";
+  private static final String REVISED = "revised.txt";
+  private static final String[] SYLLABLES = {
+    "ka", "lo", "ti", "ren", "ma", "so", "vi", "del", "ur", "pa", "ne", "xo",
+    "bri", "tan", "el", "mu", "ros", "qui", "da", "fen", "ho", "ly", "zen",
+    "or", "sa", "pe", "go", "ith", "wen", "cal", "bo", "nu",
+  };
+  private static final int VOCABULARY_SIZE = 2048;
+  private static final int PARAGRAPH_WORDS = 60;
+  private static final int POSTS_PER_DIRECTORY = 1000;
+  private static final int ASSET_SIZE_MAXIMUM = 64 * 1024;
+  private static final long DATE_SPAN_MINUTES = 20L * 365L * 24L * 60L;
+
+  static {
+    LOG = LoggerFactory.getLogger(ZBlogBenchmarkCorpus.class);
+  }
+
+  private final long seed;
+  private final int posts;
+  private final int words_median;
+  private final double words_spread;
+  private final double xhtml_fraction;
+  private final int glossary_items;
+  private final int assets;
+  private final String[] vocabulary;
+  private final DateTimeFormatter format_date;
+
+  /**
+   * Construct a corpus.
+   *
+   * @param in_seed           The seed of the random number generators
+   * @param in_posts          The number of posts
+   * @param in_words_median   The median number of words in a post
+   * @param in_words_spread   The standard deviation of the logarithm of the
+   *                          number of words in a post
+   * @param in_xhtml_fraction The fraction of posts in the XHTML format
+   * @param in_glossary_items The number of glossary items
+   * @param in_assets         The number of static files
+   */
+
+  public ZBlogBenchmarkCorpus(
+    final long in_seed,
+    final int in_posts,
+    final int in_words_median,
+    final double in_words_spread,
+    final double in_xhtml_fraction,
+    final int in_glossary_items,
+    final int in_assets)
+  {
+    if (in_posts < 1) {
+      throw new IllegalArgumentException("Post count must be positive");
+    }
+    if (in_words_median < 1) {
+      throw new IllegalArgumentException("Median word count must be positive");
+    }
+    if (in_words_spread < 0.0) {
+      throw new IllegalArgumentException("Word count spread must be non-negative");
+    }
+    if (in_xhtml_fraction < 0.0 || in_xhtml_fraction > 1.0) {
+      throw new IllegalArgumentException("XHTML fraction must be in the range [0, 1]");
+    }
+    if (in_glossary_items < 0 || in_assets < 0) {
+      throw new IllegalArgumentException(
+        "Glossary item and static file counts must be non-negative");
+    }
+
+    this.seed = in_seed;
+    this.posts = in_posts;
+    this.words_median = in_words_median;
+    this.words_spread = in_words_spread;
+    this.xhtml_fraction = in_xhtml_fraction;
+    this.glossary_items = in_glossary_items;
+    this.assets = in_assets;
+    this.vocabulary = vocabulary(in_seed);
+    this.format_date = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ");
+  }
+
+  private static String[] vocabulary(
+    final long seed)
+  {
+    final SplittableRandom random = new SplittableRandom(seed);
+    final String[] words = new String[VOCABULARY_SIZE];
+    final StringBuilder word = new StringBuilder(16);
+    for (int index = 0; index < words.length; ++index) {
+      word.setLength(0);
+      final int syllables = 1 + random.nextInt(4);
+      for (int s = 0; s < syllables; ++s) {
+        word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+      }
+      words[index] = word.toString();
+    }
+    return words;
+  }
+
+  /**
+   * @return The number of posts in the corpus
+   */
+
+  public int posts()
+  {
+    return this.posts;
+  }
+
+  private SplittableRandom randomFor(
+    final long stream,
+    final int index)
+  {
+    return new SplittableRandom(
+      (this.seed * 0x9e3779b97f4a7c15L + stream) * 0xbf58476d1ce4e5b9L + index);
+  }
+
+  private Properties toProperties()
+  {
+    final Properties p = new Properties();
+    p.setProperty("seed", Long.toString(this.seed));
+    p.setProperty("posts", Integer.toString(this.posts));
+    p.setProperty("words_median", Integer.toString(this.words_median));
+    p.setProperty("words_spread", Double.toString(this.words_spread));
+    p.setProperty("xhtml_fraction", Double.toString(this.xhtml_fraction));
+    p.setProperty("glossary_items", Integer.toString(this.glossary_items));
+    p.setProperty("assets", Integer.toString(this.assets));
+    return p;
+  }
+
+  private static Path sourceOf(
+    final Path directory)
+  {
+    return directory.resolve("source");
+  }
+
+  private static Path glossaryOf(
+    final Path directory)
+  {
+    return directory.resolve("glossary");
+  }
+
+  /**
+   * @param directory The corpus directory
+   *
+   * @return The output directory of the corpus
+   */
+
+  public static Path outputOf(
+    final Path directory)
+  {
+    return directory.resolve("output");
+  }
+
+  private Path postFile(
+    final Path directory,
+    final int index)
+  {
+    return sourceOf(directory)
+      .resolve("posts")
+      .resolve(String.format("%04d", Integer.valueOf(index / POSTS_PER_DIRECTORY)))
+      .resolve(String.format("post-%07d.zbp", Integer.valueOf(index)));
+  }
+
+  /**
+   * Generate the corpus in the given directory, unless the directory already
+   * contains a corpus with the same parameters. The directory must either
+   * not exist, be empty, or contain a previously generated corpus.
+   *
+   * @param directory The corpus directory
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public void prepare(
+    final Path directory)
+    throws IOException
+  {
+    Objects.requireNonNull(directory, "directory");
+
+    final Path marker = directory.resolve(MARKER);
+    if (Files.isRegularFile(marker)) {
+      final Properties existing = new Properties();
+      try (var reader = Files.newBufferedReader(marker)) {
+        existing.load(reader);
+      }
+      if (existing.equals(this.toProperties())) {
+        LOG.info("reusing corpus {}", directory);
+        this.restore(directory);
+        return;
+      }
+
+      LOG.info("replacing corpus {}", directory);
+      Files.delete(marker);
+      Files.deleteIfExists(directory.resolve(REVISED));
+      deleteRecursively(sourceOf(directory));
+      deleteRecursively(glossaryOf(directory));
+      deleteRecursively(outputOf(directory));
+    } else if (Files.isDirectory(directory)) {
+      try (Stream<Path> entries = Files.list(directory)) {
+        if (entries.findAny().isPresent()) {
+          throw new IOException(
+            "Directory " + directory + " is not empty and does not contain a benchmark corpus");
+        }
+      }
+    }
+
+    this.generate(directory);
+    try (Writer writer = Files.newBufferedWriter(marker)) {
+      this.toProperties().store(writer, "zeptoblog benchmark corpus");
+    }
+  }
+
+  /**
+   * Delete the output directory of the corpus.
+   *
+   * @param directory The corpus directory
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static void clean(
+    final Path directory)
+    throws IOException
+  {
+    deleteRecursively(outputOf(directory));
+  }
+
+  private static void deleteRecursively(
+    final Path path)
+    throws IOException
+  {
+    if (!Files.exists(path)) {
+      return;
+    }
+
+    try (Stream<Path> files = Files.walk(path)) {
+      for (final Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  private void generate(
+    final Path directory)
+    throws IOException
+  {
+    LOG.info(
+      "generating {} posts, {} glossary items, and {} static files in {}",
+      Integer.valueOf(this.posts),
+      Integer.valueOf(this.glossary_items),
+      Integer.valueOf(this.assets),
+      directory);
+
+    for (int index = 0; index < this.posts; ++index) {
+      this.writePost(directory, index, 0);
+    }
+
+    for (int index = 0; index < this.glossary_items; ++index) {
+      this.writeGlossaryItem(directory, index);
+    }
+
+    final Path static_dir = sourceOf(directory).resolve("static");
+    for (int index = 0; index < this.assets; ++index) {
+      final SplittableRandom random = this.randomFor(3L, index);
+      final byte[] data = new byte[1 + random.nextInt(ASSET_SIZE_MAXIMUM)];
+      random.nextBytes(data);
+      final Path file = static_dir.resolve(
+        String.format("asset-%05d.bin", Integer.valueOf(index)));
+      Files.createDirectories(static_dir);
+      Files.write(file, data);
+    }
+  }
+
+  /**
+   * Write the blog configuration file for the corpus.
+   *
+   * @param directory      The corpus directory
+   * @param render_threads The number of render threads, or {@code 0} for one
+   *                       per processor
+   *
+   * @return The configuration file
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public Path configure(
+    final Path directory,
+    final int render_threads)
+    throws IOException
+  {
+    final Properties p = new Properties();
+    p.setProperty("com.io7m.zeptoblog.title", "Benchmark");
+    p.setProperty("com.io7m.zeptoblog.author", "Benchmark");
+    p.setProperty("com.io7m.zeptoblog.site_uri", "http://example.com/");
+    p.setProperty(
+      "com.io7m.zeptoblog.source_root",
+      sourceOf(directory).toAbsolutePath().toString());
+    p.setProperty(
+      "com.io7m.zeptoblog.output_root",
+      outputOf(directory).toAbsolutePath().toString());
+    p.setProperty(
+      "com.io7m.zeptoblog.format_default", "com.io7m.zeptoblog.commonmark");
+    p.setProperty(
+      "com.io7m.zeptoblog.render_threads", Integer.toString(render_threads));
+
+    if (this.glossary_items > 0) {
+      final Properties g = new Properties();
+      g.setProperty(
+        "com.io7m.zeptoblog.glossary.source_dir",
+        glossaryOf(directory).toAbsolutePath().toString());
+      g.setProperty(
+        "com.io7m.zeptoblog.glossary.output_file",
+        sourceOf(directory).resolve("glossary.zbp").toAbsolutePath().toString());
+
+      final Path glossary_config = directory.resolve("glossary.conf");
+      try (Writer writer = Files.newBufferedWriter(glossary_config)) {
+        g.store(writer, null);
+      }
+
+      p.setProperty("com.io7m.zeptoblog.generators", "glossary");
+      p.setProperty(
+        "com.io7m.zeptoblog.generators.glossary.type",
+        "com.io7m.zeptoblog.glossary");
+      p.setProperty(
+        "com.io7m.zeptoblog.generators.glossary.file",
+        glossary_config.toAbsolutePath().toString());
+    }
+
+    final Path config = directory.resolve("blog.conf");
+    try (Writer writer = Files.newBufferedWriter(config)) {
+      p.store(writer, null);
+    }
+    return config;
+  }
+
+  /**
+   * Revise the given number of posts, chosen deterministically, so that they
+   * must be compiled again. The number of revised posts is recorded in the
+   * directory until the posts are restored.
+   *
+   * @param directory The corpus directory
+   * @param changes   The number of posts to revise
+   *
+   * @return The number of posts revised
+   *
+   * @throws IOException On I/O errors
+   *
+   * @see #restore(Path)
+   */
+
+  public int revise(
+    final Path directory,
+    final int changes)
+    throws IOException
+  {
+    final int count = Math.min(changes, this.posts);
+    Files.writeString(directory.resolve(REVISED), Integer.toString(count));
+    for (int index = 0; index < count; ++index) {
+      this.writePost(directory, this.revisedPost(index, count), 1);
+    }
+    return count;
+  }
+
+  /**
+   * Restore any posts revised by {@link #revise(Path, int)}.
+   *
+   * @param directory The corpus directory
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public void restore(
+    final Path directory)
+    throws IOException
+  {
+    final Path revised = directory.resolve(REVISED);
+    if (!Files.isRegularFile(revised)) {
+      return;
+    }
+
+    final int count = Integer.parseInt(Files.readString(revised).trim());
+    for (int index = 0; index < count; ++index) {
+      this.writePost(directory, this.revisedPost(index, count), 0);
+    }
+    Files.delete(revised);
+  }
+
+  /*
+   * Revised posts are spread evenly through the corpus.
+   */
+
+  private int revisedPost(
+    final int index,
+    final int count)
+  {
+    return (int) (((long) index * (long) this.posts) / (long) count);
+  }
+
+  private void writePost(
+    final Path directory,
+    final int index,
+    final int revision)
+    throws IOException
+  {
+    final Path file = this.postFile(directory, index);
+    Files.createDirectories(file.getParent());
+    try (OutputStream output = Files.newOutputStream(file)) {
+      output.write(this.postText(index, revision).getBytes(StandardCharsets.US_ASCII));
+    }
+  }
+
+  private String postText(
+    final int index,
+    final int revision)
+  {
+    final SplittableRandom random = this.randomFor(1L, index);
+    final boolean xhtml = random.nextDouble() < this.xhtml_fraction;
+    final int words = this.wordCount(random);
+
+    final OffsetDateTime date =
+      OffsetDateTime.of(2000, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC)
+        .plusMinutes((DATE_SPAN_MINUTES * (long) index) / (long) this.posts);
+
+    final StringBuilder text = new StringBuilder(words * 8 + 128);
+    text.append("title ");
+    this.appendWords(text, random, 2 + random.nextInt(6));
+    text.append('\n');
+    text.append("date ").append(date.format(this.format_date)).append('\n');
+    if (xhtml) {
+      text.append("format com.io7m.zeptoblog.xhtml\n");
+    }
+    text.append('\n');
+
+    if (xhtml) {
+      this.appendXHTML(text, random, words, revision);
+    } else {
+      this.appendCommonMark(text, random, words, revision);
+    }
+    return text.toString();
+  }
+
+  private int wordCount(
+    final SplittableRandom random)
+  {
+    final double gaussian = gaussian(random);
+    final double words =
+      (double) this.words_median * Math.exp(this.words_spread * gaussian);
+    return (int) Math.max(1L, Math.min(Math.round(words), 100L * this.words_median));
+  }
+
+  /*
+   * A standard normal variate, by the Box-Muller transform.
+   */
+
+  private static double gaussian(
+    final SplittableRandom random)
+  {
+    final double u = 1.0 - random.nextDouble();
+    final double v = random.nextDouble();
+    return Math.sqrt(-2.0 * Math.log(u)) * Math.cos(2.0 * Math.PI * v);
+  }
+
+  private void appendWords(
+    final StringBuilder text,
+    final SplittableRandom random,
+    final int count)
+  {
+    for (int index = 0; index < count; ++index) {
+      if (index > 0) {
+        text.append(' ');
+      }
+      text.append(this.vocabulary[random.nextInt(this.vocabulary.length)]);
+    }
+  }
+
+  private void appendCommonMark(
+    final StringBuilder text,
+    final SplittableRandom random,
+    final int words,
+    final int revision)
+  {
+    int remaining = words;
+    int paragraph = 0;
+    while (remaining > 0) {
+      if (paragraph > 0 && paragraph % 5 == 0) {
+        text.append("## ");
+        this.appendWords(text, random, 3);
+        text.append("\n\n");
+      }
+
+      final int count = Math.min(remaining, PARAGRAPH_WORDS);
+      for (int index = 0; index < count; ++index) {
+        if (index > 0) {
+          text.append(' ');
+        }
+        final String word = this.vocabulary[random.nextInt(this.vocabulary.length)];
+        switch (random.nextInt(32)) {
+          case 0 -> text.append('*').append(word).append('*');
+          case 1 -> text.append('`').append(word).append('`');
+          default -> text.append(word);
+        }
+      }
+      text.append(".\n\n");
+      remaining -= count;
+      paragraph += 1;
+    }
+
+    if (revision > 0) {
+      text.append(String.format(Locale.ROOT, "Revision %d.\n", Integer.valueOf(revision)));
+    }
+  }
+
+  private void appendXHTML(
+    final StringBuilder text,
+    final SplittableRandom random,
+    final int words,
+    final int revision)
+  {
+    text.append("<div xmlns=\"http://www.w3.org/1999/xhtml\">\n");
+
+    int remaining = words;
+    while (remaining > 0) {
+      final int count = Math.min(remaining, PARAGRAPH_WORDS);
+      text.append("<p>");
+      for (int index = 0; index < count; ++index) {
+        if (index > 0) {
+          text.append(' ');
+        }
+        final String word = this.vocabulary[random.nextInt(this.vocabulary.length)];
+        if (random.nextInt(32) == 0) {
+          text.append("<em>").append(word).append("</em>");
+        } else {
+          text.append(word);
+        }
+      }
+      text.append(".</p>\n");
+      remaining -= count;
+    }
+
+    if (revision > 0) {
+      text.append(String.format(Locale.ROOT, "<p>Revision %d.</p>\n", Integer.valueOf(revision)));
+    }
+    text.append("</div>\n");
+  }
+
+  private void writeGlossaryItem(
+    final Path directory,
+    final int index)
+    throws IOException
+  {
+    final SplittableRandom random = this.randomFor(2L, index);
+    final String term =
+      this.vocabulary[random.nextInt(this.vocabulary.length)] + index;
+
+    final StringBuilder text = new StringBuilder(512);
+    text.append("term ").append(term).append('\n');
+    text.append("format com.io7m.zeptoblog.commonmark\n\n");
+    text.append("The term ").append(term).append(' ');
+    this.appendWords(text, random, 10 + random.nextInt(40));
+    text.append(".\n");
+
+    final Path file = glossaryOf(directory).resolve(
+      String.format("item-%06d.zbp", Integer.valueOf(index)));
+    Files.createDirectories(file.getParent());
+    Files.writeString(file, text.toString(), StandardCharsets.US_ASCII);
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.cmdline;
+
+import com.io7m.junreachable.UnreachableCodeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Functions to create class data sharing archives for the command-line jar.
+ *
+ * An archive is created by compiling a blog in a new virtual machine that
+ * records the classes it loads, and writes them to an archive when it exits.
+ * A virtual machine started with {@code -XX:SharedArchiveFile} naming the
+ * archive then maps the classes directly instead of loading, verifying and
+ * linking them again. The {@code zeptoblog} launcher script uses the archive
+ * at the default location if it exists.
+ */
+
+public final class ZBlogClassDataSharing
+{
+  private static final Logger LOG;
+
+  static {
+    LOG = LoggerFactory.getLogger(ZBlogClassDataSharing.class);
+  }
+
+  private ZBlogClassDataSharing()
+  {
+    throw new UnreachableCodeException();
+  }
+
+  /**
+   * @return The jar file from which the command-line frontend is running, if
+   * it is running from a jar file
+   */
+
+  public static Optional<Path> jar()
+  {
+    return jarOf(
+      ZBlogClassDataSharing.class.getProtectionDomain().getCodeSource());
+  }
+
+  /**
+   * @param source The code source of a class, if any
+   *
+   * @return The jar file named by the given code source, if it names a jar
+   * file
+   */
+
+  public static Optional<Path> jarOf(
+    final CodeSource source)
+  {
+    if (source == null) {
+      return Optional.empty();
+    }
+
+    try {
+      final Path path = Paths.get(source.getLocation().toURI());
+      if (Files.isRegularFile(path)) {
+        return Optional.of(path);
+      }
+      return Optional.empty();
+    } catch (final URISyntaxException e) {
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * @param jar The command-line jar
+   *
+   * @return The default archive for the given jar
+   */
+
+  public static Path archiveFor(
+    final Path jar)
+  {
+    final String name = jar.getFileName().toString();
+    final String base =
+      name.endsWith(".jar") ? name.substring(0, name.length() - 4) : name;
+    return jar.resolveSibling(base + ".jsa");
+  }
+
+  /**
+   * Compile a blog in a new virtual machine, writing the classes that it
+   * loads to the given archive. The archive is replaced atomically, so
+   * virtual machines that are using an existing archive are unaffected.
+   *
+   * @param jar     The command-line jar
+   * @param archive The archive
+   * @param config  The blog configuration file
+   * @param level   The logging level for the training compilation
+   *
+   * @return The exit code of the training compilation
+   *
+   * @throws IOException          On I/O errors
+   * @throws InterruptedException If interrupted whilst waiting
+   */
+
+  public static int train(
+    final Path jar,
+    final Path archive,
+    final Path config,
+    final ZLogLevel level)
+    throws IOException, InterruptedException
+  {
+    final Path archive_abs = archive.toAbsolutePath();
+    final Path archive_tmp =
+      archive_abs.resolveSibling(archive_abs.getFileName() + ".tmp");
+    Files.deleteIfExists(archive_tmp);
+
+    final List<String> command =
+      trainingCommand(jar, archive_tmp, config, level);
+    LOG.debug("training: {}", command);
+    final Process process =
+      new ProcessBuilder(command)
+        .inheritIO()
+        .start();
+
+    final int status = process.waitFor();
+    if (status != 0) {
+      Files.deleteIfExists(archive_tmp);
+      return status;
+    }
+    if (!Files.isRegularFile(archive_tmp)) {
+      LOG.error("the training compilation did not produce an archive");
+      return 1;
+    }
+
+    try {
+      Files.move(
+        archive_tmp,
+        archive_abs,
+        StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+    } catch (final AtomicMoveNotSupportedException e) {
+      Files.move(archive_tmp, archive_abs, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    LOG.info("wrote {}", archive_abs);
+    return 0;
+  }
+
+  /**
+   * @param jar     The command-line jar
+   * @param archive The archive that the training compilation will write
+   * @param config  The blog configuration file
+   * @param level   The logging level for the training compilation
+   *
+   * @return The command line of the training compilation
+   */
+
+  public static List<String> trainingCommand(
+    final Path jar,
+    final Path archive,
+    final Path config,
+    final ZLogLevel level)
+  {
+    final List<String> command = new ArrayList<>(16);
+    command.add(
+      Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    command.add("-XX:ArchiveClassesAtExit=" + archive);
+    command.add("-Xlog:cds=error");
+    command.add("-jar");
+    command.add(jar.toString());
+    command.add("compile");
+    command.add("-config");
+    command.add(config.toAbsolutePath().toString());
+    command.add("-no-daemon");
+    command.add("-verbose");
+    command.add(level.getName());
+    return command;
+  }
+}
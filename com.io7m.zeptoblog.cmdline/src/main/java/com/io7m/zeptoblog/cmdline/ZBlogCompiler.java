@@ -0,0 +1,172 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.cmdline;
+
+import com.io7m.jproperties.JProperties;
+import com.io7m.zeptoblog.core.ZBlogConfiguration;
+import com.io7m.zeptoblog.core.ZBlogConfigurations;
+import com.io7m.zeptoblog.core.ZBlogParserProvider;
+import com.io7m.zeptoblog.core.ZBlogParserProviderType;
+import com.io7m.zeptoblog.core.ZBlogParserType;
+import com.io7m.zeptoblog.core.ZBlogPostGeneratorExecutor;
+import com.io7m.zeptoblog.core.ZBlogPostGeneratorExecutorType;
+import com.io7m.zeptoblog.core.ZBlogPostProcessorType;
+import com.io7m.zeptoblog.core.ZBlogRendererProvider;
+import com.io7m.zeptoblog.core.ZBlogRendererProviderType;
+import com.io7m.zeptoblog.core.ZBlogRendererType;
+import com.io7m.zeptoblog.core.ZError;
+import com.io7m.zeptoblog.core.ZErrors;
+import io.vavr.collection.Seq;
+import io.vavr.collection.Vector;
+import io.vavr.control.Validation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * A blog compiler. A compiler retains the resolved formats and generators
+ * for its whole lifetime, and retains the configuration and parser for each
+ * configuration file it has compiled, so that compiling the same blog again
+ * only reparses posts that have changed.
+ */
+
+final class ZBlogCompiler
+{
+  private static final Logger LOG;
+
+  static {
+    LOG = LoggerFactory.getLogger(ZBlogCompiler.class);
+  }
+
+  private final ZBlogParserProviderType parsers;
+  private final ZBlogRendererProviderType renderers;
+  private final ZBlogPostGeneratorExecutorType generators;
+  private final Map<Path, Session> sessions;
+
+  ZBlogCompiler()
+  {
+    this.parsers = new ZBlogParserProvider();
+    this.renderers = new ZBlogRendererProvider();
+    this.generators = new ZBlogPostGeneratorExecutor();
+    this.sessions = new HashMap<>(4);
+  }
+
+  /**
+   * Compile the blog described by the given configuration file.
+   *
+   * @param config_file The configuration file
+   *
+   * @return The list of errors encountered, if any
+   */
+
+  synchronized Seq<ZError> compile(
+    final Path config_file)
+  {
+    Objects.requireNonNull(config_file, "config_file");
+
+    final Path file = config_file.toAbsolutePath();
+    final Validation<Seq<ZError>, Session> sr = this.session(file);
+    if (!sr.isValid()) {
+      return sr.getError();
+    }
+
+    final Session session = sr.get();
+    final Validation<Seq<ZError>, Seq<ZBlogPostProcessorType>> er =
+      this.generators.executeAllWithProcessors(session.config);
+    if (!er.isValid()) {
+      return er.getError();
+    }
+
+    final ZBlogRendererType renderer =
+      this.renderers.createRenderer(session.config, er.get());
+    final Validation<Seq<ZError>, Void> wr =
+      renderer.parseAndRender(session.parser);
+    if (!wr.isValid()) {
+      return wr.getError();
+    }
+
+    LOG.debug("done");
+    return Vector.empty();
+  }
+
+  private Validation<Seq<ZError>, Session> session(
+    final Path file)
+  {
+    final BasicFileAttributes attrs;
+    final Properties props;
+    try {
+      attrs = Files.readAttributes(file, BasicFileAttributes.class);
+      final Session existing = this.sessions.get(file);
+      if (existing != null && existing.isCurrent(attrs)) {
+        LOG.debug("reusing configuration {}", file);
+        return Validation.valid(existing);
+      }
+      props = JProperties.fromFile(file.toFile());
+    } catch (final IOException e) {
+      this.sessions.remove(file);
+      return Validation.invalid(Vector.of(ZErrors.ofExceptionPath(e, file)));
+    }
+
+    LOG.debug("loading configuration {}", file);
+    return ZBlogConfigurations.fromProperties(file, props)
+      .map(config -> {
+        final Session session =
+          new Session(attrs, config, this.parsers.createParser(config));
+        this.sessions.put(file, session);
+        return session;
+      })
+      .mapError(errors -> {
+        this.sessions.remove(file);
+        return errors;
+      });
+  }
+
+  private static final class Session
+  {
+    private final FileTime modified;
+    private final long size;
+    private final ZBlogConfiguration config;
+    private final ZBlogParserType parser;
+
+    Session(
+      final BasicFileAttributes attrs,
+      final ZBlogConfiguration in_config,
+      final ZBlogParserType in_parser)
+    {
+      this.modified = attrs.lastModifiedTime();
+      this.size = attrs.size();
+      this.config = in_config;
+      this.parser = in_parser;
+    }
+
+    boolean isCurrent(
+      final BasicFileAttributes attrs)
+    {
+      return this.size == attrs.size()
+        && Objects.equals(this.modified, attrs.lastModifiedTime());
+    }
+  }
+}
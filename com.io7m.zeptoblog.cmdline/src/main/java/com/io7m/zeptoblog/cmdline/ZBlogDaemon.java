@@ -0,0 +1,264 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.cmdline;
+
+import com.io7m.zeptoblog.core.ZError;
+import com.io7m.zeptoblog.core.ZErrors;
+import io.vavr.collection.Seq;
+import io.vavr.collection.Vector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * A compile server that listens on a Unix domain socket. The daemon keeps a
+ * single {@link ZBlogCompiler} for its whole lifetime, so the resolved
+ * formats and generators, the parsed configurations, and the parsed posts
+ * of each blog remain in memory between compilations. Requests are served
+ * one at a time.
+ *
+ * The socket is restricted to the current user as soon as it is bound, and
+ * its directory is created with mode {@code 0700} if it does not exist.
+ */
+
+public final class ZBlogDaemon implements Closeable
+{
+  private static final Logger LOG;
+
+  static {
+    LOG = LoggerFactory.getLogger(ZBlogDaemon.class);
+  }
+
+  private final Path socket;
+  private final ZBlogCompiler compiler;
+  private volatile ServerSocketChannel server;
+
+  /**
+   * Create a daemon.
+   *
+   * @param in_socket The socket on which to listen
+   */
+
+  public ZBlogDaemon(
+    final Path in_socket)
+  {
+    this.socket = Objects.requireNonNull(in_socket, "socket").toAbsolutePath();
+    this.compiler = new ZBlogCompiler();
+  }
+
+  private static String trace(
+    final ZError error)
+  {
+    final Optional<Exception> error_opt = error.error();
+    if (error_opt.isPresent()) {
+      final StringWriter writer = new StringWriter(256);
+      try (PrintWriter printer = new PrintWriter(writer)) {
+        error_opt.get().printStackTrace(printer);
+      }
+      return writer.toString();
+    }
+    return "";
+  }
+
+  private static void refuse(
+    final DataOutputStream output,
+    final String reason)
+    throws IOException
+  {
+    LOG.debug("refusing request: {}", reason);
+    output.writeByte(ZBlogDaemonProtocol.MESSAGE_REFUSED);
+    ZBlogDaemonProtocol.writeString(output, reason);
+  }
+
+  /**
+   * Listen for and serve requests until the process is terminated or the
+   * daemon is closed.
+   *
+   * @throws IOException If the socket cannot be created
+   */
+
+  public void run()
+    throws IOException
+  {
+    final UnixDomainSocketAddress address =
+      UnixDomainSocketAddress.of(this.socket);
+
+    if (Files.exists(this.socket)) {
+      if (ZBlogDaemonClient.isListening(this.socket)) {
+        throw new IOException(
+          "A daemon is already listening on " + this.socket);
+      }
+      LOG.debug("removing stale socket {}", this.socket);
+      Files.deleteIfExists(this.socket);
+    }
+
+    ZBlogDaemonProtocol.createSocketDirectory(this.socket);
+
+    try (ServerSocketChannel channel =
+           ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+      channel.bind(address);
+
+      final Thread hook = new Thread(this::deleteSocket);
+      Runtime.getRuntime().addShutdownHook(hook);
+      try {
+        ZBlogDaemonProtocol.restrictSocket(this.socket);
+        this.server = channel;
+        LOG.info("listening on {}", this.socket);
+        this.serveAll(channel);
+      } finally {
+        this.deleteSocket();
+        try {
+          Runtime.getRuntime().removeShutdownHook(hook);
+        } catch (final IllegalStateException e) {
+          LOG.debug("shutting down: ", e);
+        }
+      }
+    }
+  }
+
+  private void serveAll(
+    final ServerSocketChannel channel)
+  {
+    while (channel.isOpen()) {
+      final SocketChannel client;
+      try {
+        client = channel.accept();
+      } catch (final ClosedChannelException e) {
+        return;
+      } catch (final IOException e) {
+        LOG.error("could not accept connection: ", e);
+        continue;
+      }
+
+      try (client) {
+        this.serve(client);
+      } catch (final EOFException e) {
+        LOG.debug("client disconnected: ", e);
+      } catch (final IOException e) {
+        LOG.error("client connection failed: ", e);
+      }
+    }
+  }
+
+  /**
+   * Stop listening for requests. A request that is being served is
+   * completed first.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    final ServerSocketChannel channel = this.server;
+    if (channel != null) {
+      channel.close();
+    }
+  }
+
+  private void deleteSocket()
+  {
+    try {
+      Files.deleteIfExists(this.socket);
+    } catch (final IOException e) {
+      LOG.error("could not remove socket {}: ", this.socket, e);
+    }
+  }
+
+  private void serve(
+    final SocketChannel client)
+    throws IOException
+  {
+    final DataInputStream input = new DataInputStream(
+      new BufferedInputStream(Channels.newInputStream(client)));
+    final DataOutputStream output = new DataOutputStream(
+      new BufferedOutputStream(Channels.newOutputStream(client)));
+
+    if (input.readInt() != ZBlogDaemonProtocol.MAGIC
+      || input.readInt() != ZBlogDaemonProtocol.VERSION) {
+      refuse(output, "Unsupported protocol");
+      output.flush();
+      return;
+    }
+
+    final String command = ZBlogDaemonProtocol.readString(input);
+    final String directory = ZBlogDaemonProtocol.readString(input);
+    final String config = ZBlogDaemonProtocol.readString(input);
+
+    /*
+     * Relative paths in configuration files are resolved against the
+     * working directory, so a daemon can only compile on behalf of clients
+     * that share its working directory.
+     */
+
+    if (!Objects.equals(command, ZBlogDaemonProtocol.COMMAND_COMPILE)) {
+      refuse(output, "Unsupported command: " + command);
+    } else if (!Objects.equals(
+      directory, ZBlogDaemonProtocol.workingDirectory())) {
+      refuse(output, "The daemon is running in a different directory");
+    } else {
+      this.compile(output, Paths.get(config));
+    }
+    output.flush();
+  }
+
+  private void compile(
+    final DataOutputStream output,
+    final Path config)
+    throws IOException
+  {
+    LOG.info("compiling {}", config);
+
+    Seq<ZError> errors;
+    try {
+      errors = this.compiler.compile(config);
+    } catch (final Exception e) {
+      errors = Vector.of(ZErrors.ofExceptionPath(e, config));
+    }
+
+    for (final ZError error : errors) {
+      LOG.error(error.show());
+      output.writeByte(ZBlogDaemonProtocol.MESSAGE_ERROR);
+      ZBlogDaemonProtocol.writeString(output, error.show());
+      ZBlogDaemonProtocol.writeString(output, trace(error));
+    }
+
+    output.writeByte(ZBlogDaemonProtocol.MESSAGE_STATUS);
+    output.writeInt(errors.isEmpty() ? 0 : 1);
+  }
+}
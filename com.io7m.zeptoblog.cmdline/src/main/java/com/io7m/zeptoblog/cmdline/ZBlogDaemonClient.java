@@ -0,0 +1,167 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.cmdline;
+
+import com.io7m.junreachable.UnreachableCodeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.OptionalInt;
+
+/**
+ * Functions to forward requests to a running daemon. Requests are only
+ * forwarded to sockets owned by the current user, so that another user
+ * cannot answer requests by creating a socket of their own.
+ */
+
+public final class ZBlogDaemonClient
+{
+  private static final Logger LOG;
+
+  static {
+    LOG = LoggerFactory.getLogger(ZBlogDaemonClient.class);
+  }
+
+  private ZBlogDaemonClient()
+  {
+    throw new UnreachableCodeException();
+  }
+
+  /**
+   * @param socket The daemon socket
+   *
+   * @return {@code true} iff a daemon is accepting connections on the socket
+   */
+
+  public static boolean isListening(
+    final Path socket)
+  {
+    try (SocketChannel ignored = connect(socket)) {
+      return true;
+    } catch (final IOException e) {
+      return false;
+    }
+  }
+
+  private static SocketChannel connect(
+    final Path socket)
+    throws IOException
+  {
+    final SocketChannel channel =
+      SocketChannel.open(StandardProtocolFamily.UNIX);
+    try {
+      channel.connect(UnixDomainSocketAddress.of(socket));
+      return channel;
+    } catch (final IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Ask the daemon listening on the given socket to compile a blog. Errors
+   * reported by the daemon are logged. Nothing is sent if the socket is not
+   * owned by the current user.
+   *
+   * @param socket The daemon socket
+   * @param config The configuration file
+   *
+   * @return The exit code of the compilation, or nothing if no daemon
+   * compiled the blog
+   */
+
+  public static OptionalInt compile(
+    final Path socket,
+    final Path config)
+  {
+    Objects.requireNonNull(socket, "socket");
+    Objects.requireNonNull(config, "config");
+
+    if (!Files.exists(socket)) {
+      return OptionalInt.empty();
+    }
+    if (!ZBlogDaemonProtocol.isOwnedByCurrentUser(socket)) {
+      LOG.warn("ignoring daemon socket {} not owned by the current user", socket);
+      return OptionalInt.empty();
+    }
+
+    try (SocketChannel channel = connect(socket)) {
+      LOG.debug("forwarding to daemon on {}", socket);
+
+      final DataOutputStream output = new DataOutputStream(
+        new BufferedOutputStream(Channels.newOutputStream(channel)));
+      output.writeInt(ZBlogDaemonProtocol.MAGIC);
+      output.writeInt(ZBlogDaemonProtocol.VERSION);
+      ZBlogDaemonProtocol.writeString(
+        output, ZBlogDaemonProtocol.COMMAND_COMPILE);
+      ZBlogDaemonProtocol.writeString(
+        output, ZBlogDaemonProtocol.workingDirectory());
+      ZBlogDaemonProtocol.writeString(
+        output, config.toAbsolutePath().toString());
+      output.flush();
+
+      final DataInputStream input = new DataInputStream(
+        new BufferedInputStream(Channels.newInputStream(channel)));
+      return receive(input);
+    } catch (final IOException e) {
+      LOG.debug("daemon unavailable: ", e);
+      return OptionalInt.empty();
+    }
+  }
+
+  private static OptionalInt receive(
+    final DataInputStream input)
+    throws IOException
+  {
+    while (true) {
+      final int message = input.readUnsignedByte();
+      switch (message) {
+        case ZBlogDaemonProtocol.MESSAGE_ERROR: {
+          LOG.error(ZBlogDaemonProtocol.readString(input));
+          final String trace = ZBlogDaemonProtocol.readString(input);
+          if (!trace.isEmpty()) {
+            LOG.error("exception: {}", trace);
+          }
+          break;
+        }
+        case ZBlogDaemonProtocol.MESSAGE_STATUS: {
+          return OptionalInt.of(input.readInt());
+        }
+        case ZBlogDaemonProtocol.MESSAGE_REFUSED: {
+          LOG.debug("daemon refused request: {}",
+                    ZBlogDaemonProtocol.readString(input));
+          return OptionalInt.empty();
+        }
+        default: {
+          throw new IOException("Unrecognized daemon message: " + message);
+        }
+      }
+    }
+  }
+}
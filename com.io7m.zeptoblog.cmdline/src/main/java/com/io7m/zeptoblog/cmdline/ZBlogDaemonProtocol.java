@@ -0,0 +1,257 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.cmdline;
+
+import com.io7m.junreachable.UnreachableCodeException;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * The protocol spoken between the command-line frontend and a daemon.
+ *
+ * A client sends {@link #MAGIC}, {@link #VERSION}, the name of a command,
+ * the client's working directory and the absolute path of a configuration
+ * file. The daemon replies with zero or more {@link #MESSAGE_ERROR} messages
+ * followed by exactly one {@link #MESSAGE_STATUS} message, or with a single
+ * {@link #MESSAGE_REFUSED} message if the client should compile the blog
+ * itself.
+ */
+
+public final class ZBlogDaemonProtocol
+{
+  /**
+   * The identifier that begins each request.
+   */
+
+  public static final int MAGIC = 0x5a42_4c47;
+
+  /**
+   * The protocol version.
+   */
+
+  public static final int VERSION = 1;
+
+  /**
+   * The name of the compile command.
+   */
+
+  public static final String COMMAND_COMPILE = "compile";
+
+  /**
+   * An error message: a formatted error followed by an exception trace,
+   * which may be empty.
+   */
+
+  public static final int MESSAGE_ERROR = 1;
+
+  /**
+   * A status message: an exit code.
+   */
+
+  public static final int MESSAGE_STATUS = 2;
+
+  /**
+   * A refusal message: a reason.
+   */
+
+  public static final int MESSAGE_REFUSED = 3;
+
+  private ZBlogDaemonProtocol()
+  {
+    throw new UnreachableCodeException();
+  }
+
+  /**
+   * @return The socket used when none is specified on the command line
+   */
+
+  public static Path defaultSocket()
+  {
+    return defaultSocket(
+      Optional.ofNullable(System.getenv("XDG_RUNTIME_DIR")),
+      System.getProperty("user.home"));
+  }
+
+  /**
+   * The default socket is placed in a directory that belongs to the current
+   * user, so that other users can neither connect to a daemon nor replace
+   * its socket with one of their own. If a runtime directory is given (such
+   * as {@code $XDG_RUNTIME_DIR}), the socket is placed in a
+   * {@code zeptoblog} directory inside it. Otherwise, the socket is placed
+   * in a {@code .zeptoblog} directory inside the user's home directory.
+   *
+   * @param runtime_dir The per-user runtime directory, if any
+   * @param home        The user's home directory
+   *
+   * @return The socket used when none is specified on the command line
+   */
+
+  public static Path defaultSocket(
+    final Optional<String> runtime_dir,
+    final String home)
+  {
+    Objects.requireNonNull(runtime_dir, "runtime_dir");
+    Objects.requireNonNull(home, "home");
+
+    return runtime_dir
+      .filter(directory -> !directory.isEmpty())
+      .map(directory -> Paths.get(directory, "zeptoblog"))
+      .orElseGet(() -> Paths.get(home, ".zeptoblog"))
+      .resolve("daemon.socket")
+      .toAbsolutePath();
+  }
+
+  /**
+   * Create the directory that will contain the given socket, if it does not
+   * already exist. On filesystems that support POSIX permissions, the
+   * directory is created with mode {@code 0700}.
+   *
+   * @param socket The socket
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static void createSocketDirectory(
+    final Path socket)
+    throws IOException
+  {
+    final Path directory = socket.toAbsolutePath().getParent();
+    if (directory == null || Files.isDirectory(directory)) {
+      return;
+    }
+
+    if (isPOSIX(directory)) {
+      Files.createDirectories(
+        directory,
+        PosixFilePermissions.asFileAttribute(
+          PosixFilePermissions.fromString("rwx------")));
+    } else {
+      Files.createDirectories(directory);
+    }
+  }
+
+  /**
+   * Restrict the given socket to the current user. Sockets are created with
+   * permissions derived from the process umask, and any user that can write
+   * to a socket can connect to it. On filesystems that do not support POSIX
+   * permissions, this method does nothing.
+   *
+   * @param socket The socket
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static void restrictSocket(
+    final Path socket)
+    throws IOException
+  {
+    if (isPOSIX(socket)) {
+      Files.setPosixFilePermissions(
+        socket, PosixFilePermissions.fromString("rw-------"));
+    }
+  }
+
+  /**
+   * @param file A file
+   *
+   * @return {@code true} iff the file is owned by the current user
+   */
+
+  public static boolean isOwnedByCurrentUser(
+    final Path file)
+  {
+    try {
+      final UserPrincipal user =
+        file.getFileSystem()
+          .getUserPrincipalLookupService()
+          .lookupPrincipalByName(System.getProperty("user.name"));
+      return Objects.equals(Files.getOwner(file), user);
+    } catch (final IOException | UnsupportedOperationException e) {
+      return false;
+    }
+  }
+
+  private static boolean isPOSIX(
+    final Path file)
+  {
+    return file.getFileSystem()
+      .supportedFileAttributeViews()
+      .contains("posix");
+  }
+
+  /**
+   * @return The working directory of the current process
+   */
+
+  public static String workingDirectory()
+  {
+    return Paths.get("").toAbsolutePath().toString();
+  }
+
+  /**
+   * Write a length-prefixed UTF-8 string.
+   *
+   * @param output The output stream
+   * @param text   The string
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static void writeString(
+    final DataOutputStream output,
+    final String text)
+    throws IOException
+  {
+    final byte[] data = text.getBytes(StandardCharsets.UTF_8);
+    output.writeInt(data.length);
+    output.write(data);
+  }
+
+  /**
+   * Read a length-prefixed UTF-8 string.
+   *
+   * @param input The input stream
+   *
+   * @return The string
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static String readString(
+    final DataInputStream input)
+    throws IOException
+  {
+    final int length = input.readInt();
+    if (length < 0 || length > 16 * 1024 * 1024) {
+      throw new IOException("Invalid string length: " + length);
+    }
+    final byte[] data = new byte[length];
+    input.readFully(data);
+    return StandardCharsets.UTF_8.decode(ByteBuffer.wrap(data)).toString();
+  }
+}
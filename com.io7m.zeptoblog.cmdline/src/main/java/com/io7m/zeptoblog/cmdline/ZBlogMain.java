@@ -21,30 +21,19 @@ import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
 import com.beust.jcommander.Parameters;
 import java.util.Objects;
-import com.io7m.jproperties.JProperties;
-import com.io7m.zeptoblog.core.ZBlog;
-import com.io7m.zeptoblog.core.ZBlogConfiguration;
-import com.io7m.zeptoblog.core.ZBlogConfigurations;
-import com.io7m.zeptoblog.core.ZBlogParserProvider;
-import com.io7m.zeptoblog.core.ZBlogParserProviderType;
-import com.io7m.zeptoblog.core.ZBlogParserType;
 import com.io7m.zeptoblog.core.ZBlogPostFormatResolverSL;
-import com.io7m.zeptoblog.core.ZBlogPostGeneratorExecutor;
-import com.io7m.zeptoblog.core.ZBlogPostGeneratorExecutorType;
 import com.io7m.zeptoblog.core.ZBlogPostGeneratorResolverSL;
-import com.io7m.zeptoblog.core.ZBlogRendererProvider;
-import com.io7m.zeptoblog.core.ZBlogRendererProviderType;
-import com.io7m.zeptoblog.core.ZBlogRendererType;
 import com.io7m.zeptoblog.core.ZError;
 import io.vavr.collection.Seq;
-import io.vavr.control.Validation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Properties;
+import java.util.Optional;
+import java.util.OptionalInt;
 import java.util.concurrent.Callable;
 
 /**
@@ -73,17 +62,26 @@ public final class ZBlogMain implements Runnable
     final CommandCompile compile = new CommandCompile();
     final CommandFormats formats = new CommandFormats();
     final CommandGenerators generators = new CommandGenerators();
+    final CommandDaemon daemon = new CommandDaemon();
+    final CommandTrain train = new CommandTrain();
+    final CommandBench bench = new CommandBench();
 
     this.commands = new HashMap<>(8);
     this.commands.put("compile", compile);
     this.commands.put("formats", formats);
     this.commands.put("generators", generators);
+    this.commands.put("daemon", daemon);
+    this.commands.put("train", train);
+    this.commands.put("bench", bench);
 
     this.commander = new JCommander(r);
     this.commander.setProgramName("zeptoblog");
     this.commander.addCommand("compile", compile);
     this.commander.addCommand("formats", formats);
     this.commander.addCommand("generators", generators);
+    this.commander.addCommand("daemon", daemon);
+    this.commander.addCommand("train", train);
+    this.commander.addCommand("bench", bench);
   }
 
   /**
@@ -99,6 +97,15 @@ public final class ZBlogMain implements Runnable
     System.exit(cm.exitCode());
   }
 
+  private static Path socketOf(
+    final String socket)
+  {
+    if (socket == null) {
+      return ZBlogDaemonProtocol.defaultSocket();
+    }
+    return Paths.get(socket);
+  }
+
   private static void show(
     final ZError error)
   {
@@ -160,6 +167,11 @@ public final class ZBlogMain implements Runnable
 
     }
 
+    protected final ZLogLevel verbose()
+    {
+      return this.verbose;
+    }
+
     @Override
     public Void call()
       throws Exception
@@ -221,62 +233,203 @@ public final class ZBlogMain implements Runnable
       description = "The configuration file")
     private String config_file_in;
 
+    @Parameter(
+      names = "-socket",
+      description = "The socket of a running daemon")
+    private String socket_in;
+
+    @Parameter(
+      names = "-no-daemon",
+      description = "Compile in this process even if a daemon is running")
+    private boolean no_daemon;
+
     CommandCompile()
     {
 
     }
 
-
     @Override
     public Void call()
       throws Exception
     {
       super.call();
 
-      final File config_file =
-        new File(this.config_file_in);
-      final Properties config_props =
-        JProperties.fromFile(config_file);
-      final Validation<Seq<ZError>, ZBlogConfiguration> cr =
-        ZBlogConfigurations.fromProperties(config_file.toPath(), config_props);
+      final Path config_file = Paths.get(this.config_file_in);
 
-      if (!cr.isValid()) {
-        ZBlogMain.this.exit_code = 1;
-        cr.getError().forEach(ZBlogMain::show);
+      if (!this.no_daemon) {
+        final Path socket = socketOf(this.socket_in);
+        final OptionalInt status =
+          ZBlogDaemonClient.compile(socket, config_file);
+        if (status.isPresent()) {
+          ZBlogMain.this.exit_code = status.getAsInt();
+          return null;
+        }
       }
 
-      final ZBlogConfiguration config = cr.get();
-      final ZBlogPostGeneratorExecutorType exec = new ZBlogPostGeneratorExecutor();
-      final Validation<Seq<ZError>, Void> er = exec.executeAll(config);
-      if (!er.isValid()) {
+      final Seq<ZError> errors = new ZBlogCompiler().compile(config_file);
+      if (!errors.isEmpty()) {
         ZBlogMain.this.exit_code = 1;
-        er.getError().forEach(ZBlogMain::show);
-        return null;
+        errors.forEach(ZBlogMain::show);
       }
+      return null;
+    }
+  }
+
+  @Parameters(commandDescription = "Run a compile server for other invocations to use")
+  private final class CommandDaemon extends CommandRoot
+  {
+    @Parameter(
+      names = "-socket",
+      description = "The socket on which to listen")
+    private String socket_in;
+
+    CommandDaemon()
+    {
+
+    }
+
+    @Override
+    public Void call()
+      throws Exception
+    {
+      super.call();
+
+      new ZBlogDaemon(socketOf(this.socket_in)).run();
+      return null;
+    }
+  }
+
+  @Parameters(commandDescription = "Compile a blog, and write a class data sharing archive to speed up later runs")
+  private final class CommandTrain extends CommandRoot
+  {
+    @Parameter(
+      names = "-config",
+      required = true,
+      description = "The configuration file")
+    private String config_file_in;
+
+    @Parameter(
+      names = "-archive",
+      description = "The archive file (default: the jar file with a .jsa suffix)")
+    private String archive_in;
+
+    CommandTrain()
+    {
+
+    }
+
+    @Override
+    public Void call()
+      throws Exception
+    {
+      super.call();
 
-      final ZBlogParserProviderType blog_provider = new ZBlogParserProvider();
-      final ZBlogParserType blog_parser = blog_provider.createParser(config);
-      final Validation<Seq<ZError>, ZBlog> br = blog_parser.parse();
-      if (!br.isValid()) {
+      final Optional<Path> jar_opt = ZBlogClassDataSharing.jar();
+      if (jar_opt.isEmpty()) {
+        LOG.error("archives can only be written when running from the command-line jar");
         ZBlogMain.this.exit_code = 1;
-        br.getError().forEach(ZBlogMain::show);
         return null;
       }
 
-      final ZBlogRendererProviderType blog_writer_provider =
-        new ZBlogRendererProvider();
-      final ZBlogRendererType blog_writer =
-        blog_writer_provider.createRenderer(config);
+      final Path jar = jar_opt.get();
+      final Path archive;
+      if (this.archive_in == null) {
+        archive = ZBlogClassDataSharing.archiveFor(jar);
+      } else {
+        archive = Paths.get(this.archive_in);
+      }
+
+      ZBlogMain.this.exit_code = ZBlogClassDataSharing.train(
+        jar, archive, Paths.get(this.config_file_in), this.verbose());
+      return null;
+    }
+  }
+
+  @Parameters(commandDescription = "Generate a synthetic blog, and measure the time taken to compile it")
+  private final class CommandBench extends CommandRoot
+  {
+    @Parameter(
+      names = "-directory",
+      required = true,
+      description = "The directory containing the generated blog")
+    private String directory_in;
+
+    @Parameter(
+      names = "-posts",
+      description = "The number of posts")
+    private int posts = 1000;
+
+    @Parameter(
+      names = "-words-median",
+      description = "The median number of words in a post")
+    private int words_median = 400;
+
+    @Parameter(
+      names = "-words-spread",
+      description = "The standard deviation of the logarithm of the number of words in a post")
+    private double words_spread = 0.75;
+
+    @Parameter(
+      names = "-xhtml-fraction",
+      description = "The fraction of posts in the XHTML format, with the rest in CommonMark")
+    private double xhtml_fraction = 0.25;
+
+    @Parameter(
+      names = "-glossary-items",
+      description = "The number of glossary items")
+    private int glossary_items = 100;
+
+    @Parameter(
+      names = "-assets",
+      description = "The number of static files")
+    private int assets = 50;
+
+    @Parameter(
+      names = "-seed",
+      description = "The seed used to generate the blog")
+    private long seed = 1L;
+
+    @Parameter(
+      names = "-changes",
+      description = "The number of posts changed before the incremental compilation")
+    private int changes = 10;
 
-      final ZBlog blog = br.get();
-      final Validation<Seq<ZError>, Void> wr = blog_writer.render(blog);
-      if (!wr.isValid()) {
+    @Parameter(
+      names = "-render-threads",
+      description = "The number of render threads (0: one per processor)")
+    private int render_threads;
+
+    CommandBench()
+    {
+
+    }
+
+    @Override
+    public Void call()
+      throws Exception
+    {
+      super.call();
+
+      final ZBlogBenchmarkCorpus corpus =
+        new ZBlogBenchmarkCorpus(
+          this.seed,
+          this.posts,
+          this.words_median,
+          this.words_spread,
+          this.xhtml_fraction,
+          this.glossary_items,
+          this.assets);
+
+      final boolean ok = ZBlogBenchmark.run(
+        corpus,
+        Paths.get(this.directory_in),
+        this.changes,
+        this.render_threads,
+        System.out,
+        ZBlogMain::show);
+      if (!ok) {
         ZBlogMain.this.exit_code = 1;
-        wr.getError().forEach(ZBlogMain::show);
-        return null;
       }
-
-      LOG.debug("done");
       return null;
     }
   }
@@ -23,6 +23,7 @@ module com.io7m.zeptoblog.cmdline
   requires org.slf4j;
   requires ch.qos.logback.classic;
   requires com.io7m.junreachable.core;
+  requires java.management;
 
   opens com.io7m.zeptoblog.cmdline to jcommander;
 
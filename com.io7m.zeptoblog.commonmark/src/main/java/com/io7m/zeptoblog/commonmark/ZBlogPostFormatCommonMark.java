@@ -89,6 +89,12 @@ public final class ZBlogPostFormatCommonMark implements ZBlogPostFormatType
     return "http://commonmark.org 0.27";
   }
 
+  @Override
+  public Optional<String> cacheVersion()
+  {
+    return Optional.of("1");
+  }
+
   @Override
   public String name()
   {
@@ -161,6 +167,101 @@ public final class ZBlogPostFormatCommonMark implements ZBlogPostFormatType
     }
   }
 
+  @Override
+  public Validation<Seq<ZError>, String> produceExcerpt(
+    final Path path,
+    final String text,
+    final int length)
+  {
+    final Parser parser = Parser.builder().build();
+    final Node document = parser.parse(text);
+
+    final TextContentRenderer renderer =
+      TextContentRenderer.builder()
+        .nodeRendererFactory(TextRenderer::new)
+        .build();
+
+    final LimitedAppendable output = new LimitedAppendable(length);
+    try {
+      renderer.render(document, output);
+      output.append(System.lineSeparator());
+    } catch (final LimitReachedException e) {
+      // The excerpt is complete
+    }
+    return valid(output.finish());
+  }
+
+  /**
+   * An appendable that raises {@link LimitReachedException} as soon as a
+   * given number of characters have been appended, allowing rendering to
+   * stop early.
+   */
+
+  private static final class LimitedAppendable implements Appendable
+  {
+    private final StringBuilder text;
+    private final int limit;
+
+    LimitedAppendable(
+      final int in_limit)
+    {
+      this.limit = in_limit;
+      this.text = new StringBuilder(Math.min(in_limit, 1024));
+    }
+
+    @Override
+    public Appendable append(
+      final CharSequence csq)
+    {
+      return this.append(csq, 0, csq.length());
+    }
+
+    @Override
+    public Appendable append(
+      final CharSequence csq,
+      final int start,
+      final int end)
+    {
+      this.text.append(csq, start, end);
+      this.check();
+      return this;
+    }
+
+    @Override
+    public Appendable append(
+      final char c)
+    {
+      this.text.append(c);
+      this.check();
+      return this;
+    }
+
+    private void check()
+    {
+      if (this.text.length() >= this.limit) {
+        throw new LimitReachedException();
+      }
+    }
+
+    String finish()
+    {
+      if (this.text.length() > this.limit) {
+        this.text.setLength(this.limit);
+      }
+      return this.text.toString();
+    }
+  }
+
+  private static final class LimitReachedException extends RuntimeException
+  {
+    private static final long serialVersionUID = 1L;
+
+    LimitReachedException()
+    {
+      super("Limit reached", null, false, false);
+    }
+  }
+
   private static final class TextRenderer
     implements NodeRenderer
   {
@@ -130,6 +130,128 @@ public interface ZBlogConfigurationType
   @Value.Parameter
   Map<String, ZBlogPostGeneratorRequest> generatorRequests();
 
+  /**
+   * The number of posts placed into each archived Atom feed document. If the
+   * value is {@code 0}, archived feeds are disabled and a single feed
+   * containing every post is produced.
+   *
+   * @return The number of posts per archived feed document (RFC 5005)
+   */
+
+  @Value.Default
+  default int feedArchiveSize()
+  {
+    return 0;
+  }
+
+  /**
+   * If passthrough is enabled, posts in formats that support it are
+   * validated once and then copied directly into the generated pages instead
+   * of being parsed and imported as XHTML elements.
+   *
+   * @return {@code true} if passthrough rendering is enabled
+   *
+   * @see ZBlogPostFormatType#supportsPassthrough()
+   */
+
+  @Value.Default
+  default boolean passthrough()
+  {
+    return false;
+  }
+
+  /**
+   * Post bodies are always read from disk when they are first needed. If
+   * low-memory mode is enabled, bodies that have been read are cached only up
+   * to {@link #lowMemoryBudget()} bytes, and rendered post bodies are not
+   * retained between pages.
+   *
+   * @return {@code true} if low-memory mode is enabled
+   */
+
+  @Value.Default
+  default boolean lowMemory()
+  {
+    return false;
+  }
+
+  /**
+   * @return The approximate maximum number of bytes of post body text that
+   * will be held in memory in low-memory mode
+   */
+
+  @Value.Default
+  default long lowMemoryBudget()
+  {
+    return 64L * 1024L * 1024L;
+  }
+
+  /**
+   * @return The number of threads used to render posts and pages, or
+   * {@code 0} to use one thread per available processor
+   */
+
+  @Value.Default
+  default int renderThreads()
+  {
+    return 0;
+  }
+
+  /**
+   * @return The number of threads used to write rendered pages to disk while
+   * posts are parsed and rendered
+   */
+
+  @Value.Default
+  default int writeThreads()
+  {
+    return 4;
+  }
+
+  /**
+   * @return {@code true} if output files should be synchronized to storage
+   * before being moved into place
+   */
+
+  @Value.Default
+  default boolean outputSync()
+  {
+    return false;
+  }
+
+  /**
+   * The number of related posts listed in the footer of each permalink page.
+   * If the value is {@code 0}, related posts are not computed, and permalink
+   * pages are rendered as soon as each post has been parsed.
+   *
+   * @return The maximum number of related posts listed for each post
+   */
+
+  @Value.Default
+  default int relatedPosts()
+  {
+    return 0;
+  }
+
+  /**
+   * The file used to cache rendered post bodies between compilations. If no
+   * file is specified, rendered post bodies are not cached.
+   *
+   * @return An optional render cache file
+   */
+
+  Optional<Path> renderCache();
+
+  /**
+   * @return The maximum size in bytes of the render cache file
+   */
+
+  @Value.Default
+  default long renderCacheSize()
+  {
+    return 256L * 1024L * 1024L;
+  }
+
   /**
    * Check preconditions for the type.
    */
@@ -146,5 +268,37 @@ public interface ZBlogConfigurationType
       this.outputRoot(),
       this.outputRoot().isAbsolute(),
       p -> "Output root path " + p + " must be absolute");
+
+    Preconditions.checkPreconditionI(
+      this.feedArchiveSize(),
+      this.feedArchiveSize() >= 0,
+      n -> "Feed archive size " + n + " must be non-negative");
+
+    Preconditions.checkPreconditionL(
+      this.lowMemoryBudget(),
+      this.lowMemoryBudget() >= 0L,
+      n -> "Low memory budget " + n + " must be non-negative");
+
+    Preconditions.checkPreconditionI(
+      this.renderThreads(),
+      this.renderThreads() >= 0,
+      n -> "Render thread count " + n + " must be non-negative");
+
+    Preconditions.checkPreconditionI(
+      this.writeThreads(),
+      this.writeThreads() > 0,
+      n -> "Write thread count " + n + " must be positive");
+
+    Preconditions.checkPreconditionI(
+      this.relatedPosts(),
+      this.relatedPosts() >= 0,
+      n -> "Related post count " + n + " must be non-negative");
+
+    Preconditions.checkPreconditionL(
+      this.renderCacheSize(),
+      this.renderCacheSize() > 0L
+        && this.renderCacheSize() <= (long) Integer.MAX_VALUE,
+      n -> "Render cache size " + n + " must be in the range [1, "
+        + Integer.MAX_VALUE + "]");
   }
 }
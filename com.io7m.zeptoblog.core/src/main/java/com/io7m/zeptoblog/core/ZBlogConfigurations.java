@@ -65,8 +65,11 @@ public final class ZBlogConfigurations
 
     Vector<ZError> errors = Vector.empty();
     errors = configureProperties(path, p, builder, fs, errors);
+    errors = configureRendering(path, p, builder, errors);
+    errors = configureOutput(path, p, builder, errors);
     configureFooter(p, builder, fs);
     configureHeader(p, builder, fs);
+    errors = configureCache(path, p, builder, fs, errors);
     errors = configureGenerators(path, p, builder, errors, fs);
     return validate(builder, errors);
   }
@@ -133,6 +136,107 @@ public final class ZBlogConfigurations
     } catch (final Exception e) {
       errors = errors.append(ofException(path, e));
     }
+
+    try {
+      builder.setRelatedPosts(
+        JProperties.getBigIntegerWithDefault(
+          p,
+          "com.io7m.zeptoblog.related_posts",
+          BigInteger.ZERO).intValueExact());
+    } catch (final Exception e) {
+      errors = errors.append(ofException(path, e));
+    }
+    return errors;
+  }
+
+  private static Vector<ZError> configureRendering(
+    final Path path,
+    final Properties p,
+    final ZBlogConfiguration.Builder builder,
+    final Vector<ZError> errors_initial)
+  {
+    Vector<ZError> errors = errors_initial;
+
+    try {
+      builder.setFeedArchiveSize(
+        JProperties.getBigIntegerWithDefault(
+          p,
+          "com.io7m.zeptoblog.feed_archive_size",
+          BigInteger.ZERO).intValueExact());
+    } catch (final Exception e) {
+      errors = errors.append(ofException(path, e));
+    }
+
+    try {
+      builder.setPassthrough(
+        JProperties.getBooleanWithDefault(
+          p,
+          "com.io7m.zeptoblog.passthrough",
+          false));
+    } catch (final Exception e) {
+      errors = errors.append(ofException(path, e));
+    }
+
+    try {
+      builder.setLowMemory(
+        JProperties.getBooleanWithDefault(
+          p,
+          "com.io7m.zeptoblog.low_memory",
+          false));
+    } catch (final Exception e) {
+      errors = errors.append(ofException(path, e));
+    }
+
+    try {
+      builder.setLowMemoryBudget(
+        JProperties.getBigInteger(
+          p,
+          "com.io7m.zeptoblog.low_memory_budget").longValueExact());
+    } catch (final JPropertyNonexistent e) {
+      // Ignore
+    } catch (final Exception e) {
+      errors = errors.append(ofException(path, e));
+    }
+    return errors;
+  }
+
+  private static Vector<ZError> configureOutput(
+    final Path path,
+    final Properties p,
+    final ZBlogConfiguration.Builder builder,
+    final Vector<ZError> errors_initial)
+  {
+    Vector<ZError> errors = errors_initial;
+
+    try {
+      builder.setRenderThreads(
+        JProperties.getBigIntegerWithDefault(
+          p,
+          "com.io7m.zeptoblog.render_threads",
+          BigInteger.ZERO).intValueExact());
+    } catch (final Exception e) {
+      errors = errors.append(ofException(path, e));
+    }
+
+    try {
+      builder.setWriteThreads(
+        JProperties.getBigIntegerWithDefault(
+          p,
+          "com.io7m.zeptoblog.write_threads",
+          BigInteger.valueOf(4L)).intValueExact());
+    } catch (final Exception e) {
+      errors = errors.append(ofException(path, e));
+    }
+
+    try {
+      builder.setOutputSync(
+        JProperties.getBooleanWithDefault(
+          p,
+          "com.io7m.zeptoblog.output_sync",
+          false));
+    } catch (final Exception e) {
+      errors = errors.append(ofException(path, e));
+    }
     return errors;
   }
 
@@ -193,6 +297,36 @@ public final class ZBlogConfigurations
     }
   }
 
+  private static Vector<ZError> configureCache(
+    final Path path,
+    final Properties p,
+    final ZBlogConfiguration.Builder builder,
+    final FileSystem fs,
+    final Vector<ZError> errors_initial)
+  {
+    Vector<ZError> errors = errors_initial;
+
+    try {
+      builder.setRenderCache(fs.getPath(
+        JProperties.getString(p, "com.io7m.zeptoblog.render_cache"))
+                               .toAbsolutePath());
+    } catch (final JPropertyNonexistent e) {
+      // Ignore
+    }
+
+    try {
+      builder.setRenderCacheSize(
+        JProperties.getBigInteger(
+          p,
+          "com.io7m.zeptoblog.render_cache_size").longValueExact());
+    } catch (final JPropertyNonexistent e) {
+      // Ignore
+    } catch (final Exception e) {
+      errors = errors.append(ofException(path, e));
+    }
+    return errors;
+  }
+
   private static Vector<ZError> configureGenerators(
     final Path path,
     final Properties p,
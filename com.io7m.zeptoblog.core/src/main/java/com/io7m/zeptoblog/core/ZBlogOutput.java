@@ -0,0 +1,500 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * <p>The output layer used for every file written by the renderer.</p>
+ *
+ * <p>Each file is written through a {@link FileChannel} to a temporary sibling
+ * file, from a pool of reusable direct buffers, and is then atomically moved
+ * into place. A build that is interrupted therefore never leaves a partially
+ * written file in place of an existing one.</p>
+ *
+ * <p>If durable output is requested, the temporary files are not moved into
+ * place as they are written. They are instead synchronized together, and then
+ * moved into place, when {@link #commit(ZErrorCollector)} is called. The
+ * synchronization requests are issued concurrently so that the filesystem
+ * can satisfy them with as few journal commits as possible.</p>
+ *
+ * <p>Outputs are thread-safe.</p>
+ */
+
+final class ZBlogOutput
+{
+  private static final Logger LOG;
+  private static final int BUFFER_SIZE = 65536;
+  private static final int BUFFERS_RETAINED = 64;
+  private static final int SYNC_THREADS = 16;
+
+  static {
+    LOG = LoggerFactory.getLogger(ZBlogOutput.class);
+  }
+
+  private final boolean sync;
+  private final Queue<ByteBuffer> buffers;
+  private final Set<Path> directories;
+  private final Map<Path, Path> pending;
+
+  /**
+   * Create an output.
+   *
+   * @param in_sync {@code true} if output should be durable
+   */
+
+  ZBlogOutput(
+    final boolean in_sync)
+  {
+    this.sync = in_sync;
+    this.buffers = new ConcurrentLinkedQueue<>();
+    this.directories = ConcurrentHashMap.newKeySet();
+    this.pending = new ConcurrentHashMap<>(128);
+  }
+
+  /**
+   * The type of functions that produce file content.
+   */
+
+  @FunctionalInterface
+  interface ContentType
+  {
+    /**
+     * Write content to the given stream.
+     *
+     * @param output The output stream
+     *
+     * @throws Exception On errors
+     */
+
+    void write(OutputStream output)
+      throws Exception;
+  }
+
+  private static Path temporaryOf(
+    final Path file)
+  {
+    return file.resolveSibling(file.getFileName() + ".tmp");
+  }
+
+  private ByteBuffer acquire()
+  {
+    final ByteBuffer buffer = this.buffers.poll();
+    if (buffer != null) {
+      return buffer;
+    }
+    return ByteBuffer.allocateDirect(BUFFER_SIZE);
+  }
+
+  private void release(
+    final ByteBuffer buffer)
+  {
+    buffer.clear();
+    if (this.buffers.size() < BUFFERS_RETAINED) {
+      this.buffers.offer(buffer);
+    }
+  }
+
+  private void createParent(
+    final Path file)
+    throws IOException
+  {
+    final Path parent = file.toAbsolutePath().getParent();
+    if (parent == null) {
+      throw new IllegalStateException(
+        "Could not resolve the parent path of: " + file);
+    }
+    if (!this.directories.contains(parent)) {
+      Files.createDirectories(parent);
+      this.directories.add(parent);
+    }
+  }
+
+  /**
+   * Write the given data to the given file.
+   *
+   * @param file The file
+   * @param data The data
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void write(
+    final Path file,
+    final byte[] data)
+    throws IOException
+  {
+    Objects.requireNonNull(data, "data");
+
+    this.writeChannel(file, (channel, buffer) -> {
+      try (ChannelOutputStream stream =
+             new ChannelOutputStream(channel, buffer)) {
+        stream.write(data);
+      }
+    });
+  }
+
+  /**
+   * Write the given text to the given file, encoded as UTF-8.
+   *
+   * @param file The file
+   * @param text The text
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void writeString(
+    final Path file,
+    final String text)
+    throws IOException
+  {
+    Objects.requireNonNull(text, "text");
+
+    final CharsetEncoder encoder =
+      StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    this.writeChannel(file, (channel, buffer) -> {
+      final CharBuffer chars = CharBuffer.wrap(text);
+      while (true) {
+        final CoderResult result = encoder.encode(chars, buffer, true);
+        if (result.isOverflow()) {
+          drain(channel, buffer);
+          continue;
+        }
+        break;
+      }
+      while (encoder.flush(buffer).isOverflow()) {
+        drain(channel, buffer);
+      }
+      drain(channel, buffer);
+    });
+  }
+
+  /**
+   * Write content to the given file.
+   *
+   * @param file    The file
+   * @param content The content
+   *
+   * @throws Exception On errors raised by the content, or on I/O errors
+   */
+
+  void write(
+    final Path file,
+    final ContentType content)
+    throws Exception
+  {
+    Objects.requireNonNull(content, "content");
+
+    final Exception[] failure = new Exception[1];
+    try {
+      this.writeChannel(file, (channel, buffer) -> {
+        try (ChannelOutputStream stream =
+               new ChannelOutputStream(channel, buffer)) {
+          content.write(stream);
+        } catch (final IOException | RuntimeException e) {
+          throw e;
+        } catch (final Exception e) {
+          failure[0] = e;
+          throw new IOException(e);
+        }
+      });
+    } catch (final IOException e) {
+      if (failure[0] != null) {
+        throw failure[0];
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Copy the given file.
+   *
+   * @param source The source file
+   * @param target The target file
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void copy(
+    final Path source,
+    final Path target)
+    throws IOException
+  {
+    Objects.requireNonNull(source, "source");
+
+    this.writeChannel(target, (channel, buffer) -> {
+      try (FileChannel input = FileChannel.open(source)) {
+        final long size = input.size();
+        long position = 0L;
+        while (position < size) {
+          final long count =
+            input.transferTo(position, size - position, channel);
+          if (count <= 0L) {
+            break;
+          }
+          position += count;
+        }
+      }
+    });
+  }
+
+  /**
+   * Complete all pending writes. If output is not durable, this has no
+   * effect.
+   *
+   * @param errors The collector for errors
+   */
+
+  void commit(
+    final ZErrorCollector errors)
+  {
+    Objects.requireNonNull(errors, "errors");
+
+    if (this.pending.isEmpty()) {
+      return;
+    }
+
+    final List<Map.Entry<Path, Path>> files =
+      new ArrayList<>(this.pending.entrySet());
+    this.pending.clear();
+
+    LOG.debug("synchronizing {} files", Integer.valueOf(files.size()));
+
+    final ZPipelineStage<Map.Entry<Path, Path>> syncs =
+      ZPipelineStage.start(
+        Thread.ofVirtual().name("com.io7m.zeptoblog.sync-", 0L),
+        SYNC_THREADS,
+        SYNC_THREADS * 4,
+        errors,
+        Map.Entry::getKey,
+        entry -> {
+          try (FileChannel channel =
+                 FileChannel.open(entry.getValue(), StandardOpenOption.WRITE)) {
+            channel.force(true);
+          }
+        });
+
+    try {
+      for (final Map.Entry<Path, Path> entry : files) {
+        syncs.submit(entry);
+      }
+    } finally {
+      syncs.finish();
+    }
+
+    final Set<Path> parents = new HashSet<>(16);
+    for (final Map.Entry<Path, Path> entry : files) {
+      final Path file = entry.getKey();
+      try {
+        move(entry.getValue(), file);
+        parents.add(file.toAbsolutePath().getParent());
+      } catch (final IOException e) {
+        errors.add(ZBlogRendererProvider.errorOf(file, e));
+      }
+    }
+
+    for (final Path parent : parents) {
+      syncDirectory(parent);
+    }
+  }
+
+  /**
+   * Synchronize a directory so that the renames within it are durable. Not
+   * all platforms allow directories to be opened, and so failures are
+   * ignored.
+   */
+
+  private static void syncDirectory(
+    final Path directory)
+  {
+    try (FileChannel channel = FileChannel.open(directory)) {
+      channel.force(true);
+    } catch (final IOException | UnsupportedOperationException e) {
+      LOG.debug("could not synchronize directory {}: ", directory, e);
+    }
+  }
+
+  private static void move(
+    final Path source,
+    final Path target)
+    throws IOException
+  {
+    try {
+      Files.move(
+        source,
+        target,
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    } catch (final AtomicMoveNotSupportedException e) {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private static void drain(
+    final FileChannel channel,
+    final ByteBuffer buffer)
+    throws IOException
+  {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  @FunctionalInterface
+  private interface ChannelWriterType
+  {
+    void write(
+      FileChannel channel,
+      ByteBuffer buffer)
+      throws IOException;
+  }
+
+  private void writeChannel(
+    final Path file,
+    final ChannelWriterType writer)
+    throws IOException
+  {
+    Objects.requireNonNull(file, "file");
+
+    this.createParent(file);
+    final Path temporary = temporaryOf(file);
+    final ByteBuffer buffer = this.acquire();
+
+    try {
+      try (FileChannel channel =
+             FileChannel.open(
+               temporary,
+               StandardOpenOption.CREATE,
+               StandardOpenOption.TRUNCATE_EXISTING,
+               StandardOpenOption.WRITE)) {
+        writer.write(channel, buffer);
+      }
+
+      if (this.sync) {
+        this.pending.put(file, temporary);
+      } else {
+        move(temporary, file);
+      }
+    } catch (final IOException | RuntimeException e) {
+      try {
+        Files.deleteIfExists(temporary);
+      } catch (final IOException ex) {
+        e.addSuppressed(ex);
+      }
+      throw e;
+    } finally {
+      this.release(buffer);
+    }
+  }
+
+  /**
+   * An output stream that writes to a channel through a buffer.
+   */
+
+  private static final class ChannelOutputStream extends OutputStream
+  {
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    ChannelOutputStream(
+      final FileChannel in_channel,
+      final ByteBuffer in_buffer)
+    {
+      this.channel = in_channel;
+      this.buffer = in_buffer;
+    }
+
+    @Override
+    public void write(
+      final int b)
+      throws IOException
+    {
+      if (!this.buffer.hasRemaining()) {
+        drain(this.channel, this.buffer);
+      }
+      this.buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(
+      final byte[] data,
+      final int offset,
+      final int length)
+      throws IOException
+    {
+      Objects.checkFromIndexSize(offset, length, data.length);
+
+      if (length >= this.buffer.capacity()) {
+        drain(this.channel, this.buffer);
+        final ByteBuffer wrapped = ByteBuffer.wrap(data, offset, length);
+        while (wrapped.hasRemaining()) {
+          this.channel.write(wrapped);
+        }
+        return;
+      }
+
+      int position = offset;
+      int remaining = length;
+      while (remaining > 0) {
+        if (!this.buffer.hasRemaining()) {
+          drain(this.channel, this.buffer);
+        }
+        final int count = Math.min(remaining, this.buffer.remaining());
+        this.buffer.put(data, position, count);
+        position += count;
+        remaining -= count;
+      }
+    }
+
+    @Override
+    public void close()
+      throws IOException
+    {
+      drain(this.channel, this.buffer);
+    }
+  }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.core;
+
+import com.io7m.junreachable.UnreachableCodeException;
+import io.vavr.Tuple2;
+import io.vavr.collection.Seq;
+import io.vavr.collection.SortedMap;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.util.List;
+import java.util.Objects;
+
+import static com.io7m.zeptoblog.core.ZBlogPostFormatXHTML.XHTML_URI_TEXT;
+
+/**
+ * Functions that produce the standard elements of blog pages.
+ */
+
+final class ZBlogPageElements
+{
+  private ZBlogPageElements()
+  {
+    throw new UnreachableCodeException();
+  }
+
+  private static String version()
+  {
+    return ZBlogPageElements.class.getPackage().getImplementationVersion();
+  }
+
+  private static Element metaType(final Document document)
+  {
+    final Element e = document.createElementNS(XHTML_URI_TEXT, "meta");
+    e.setAttribute("http-equiv", "Content-Type");
+    e.setAttribute("content", "application/xhtml+xml; charset=UTF-8");
+    return e;
+  }
+
+  private static Element metaGenerator(final Document document)
+  {
+    final Element e = document.createElementNS(XHTML_URI_TEXT, "meta");
+    e.setAttribute("name", "generator");
+    e.setAttribute(
+      "content",
+      "https://github.com/io7m/zeptoblog; version=" + version());
+    return e;
+  }
+
+  /**
+   * @param document The owning document
+   * @param title    The content of the title element
+   *
+   * @return A page head
+   */
+
+  static Element head(
+    final Document document,
+    final Node title)
+  {
+    final Element e = document.createElementNS(XHTML_URI_TEXT, "head");
+    e.appendChild(metaType(document));
+    e.appendChild(metaGenerator(document));
+
+    final Element e_title = document.createElementNS(XHTML_URI_TEXT, "title");
+    e_title.appendChild(title);
+    e.appendChild(e_title);
+
+    {
+      final Element e_link = document.createElementNS(XHTML_URI_TEXT, "link");
+      e_link.setAttribute("rel", "stylesheet");
+      e_link.setAttribute("type", "text/css");
+      e_link.setAttribute("href", "/reset.css");
+      e.appendChild(e_link);
+    }
+
+    {
+      final Element e_link = document.createElementNS(XHTML_URI_TEXT, "link");
+      e_link.setAttribute("rel", "stylesheet");
+      e_link.setAttribute("type", "text/css");
+      e_link.setAttribute("href", "/style.css");
+      e.appendChild(e_link);
+    }
+
+    {
+      final Element e_link = document.createElementNS(XHTML_URI_TEXT, "link");
+      e_link.setAttribute("rel", "alternate");
+      e_link.setAttribute("type", "application/atom+xml");
+      e_link.setAttribute("href", "/blog.atom");
+      e.appendChild(e_link);
+    }
+
+    return e;
+  }
+
+  /**
+   * @param document     The owning document
+   * @param page_current The current page
+   * @param pages        All pages
+   *
+   * @return The footer links for a segment page
+   */
+
+  static Element footerPageLinks(
+    final Document document,
+    final Tuple2<Integer, Seq<ZBlogPost>> page_current,
+    final SortedMap<Integer, Seq<ZBlogPost>> pages)
+  {
+    final Element e = footerPageLinkElement(document);
+    e.appendChild(footerPageLinksByYear(document));
+    e.appendChild(footerPageLinksByPage(document, page_current, pages));
+    return e;
+  }
+
+  /**
+   * @param document The owning document
+   *
+   * @return An empty footer link container
+   */
+
+  static Element footerPageLinkElement(final Document document)
+  {
+    final Element e = document.createElementNS(XHTML_URI_TEXT, "div");
+    e.setAttribute("id", "zb_footer_links");
+    return e;
+  }
+
+  /**
+   * @param document The owning document
+   *
+   * @return A link to the yearly index
+   */
+
+  static Element footerPageLinksByYear(final Document document)
+  {
+    final Element e_yearly = document.createElementNS(XHTML_URI_TEXT, "div");
+    final Element e_a = document.createElementNS(XHTML_URI_TEXT, "a");
+    e_a.setAttribute("href", "/yearly.xhtml");
+    e_a.setTextContent("Posts by year");
+    e_yearly.appendChild(e_a);
+    return e_yearly;
+  }
+
+  private static Element footerPageLinksByPage(
+    final Document document,
+    final Tuple2<Integer, Seq<ZBlogPost>> page_current,
+    final SortedMap<Integer, Seq<ZBlogPost>> pages)
+  {
+    final Element e_pages = document.createElementNS(XHTML_URI_TEXT, "div");
+    e_pages.setTextContent("Posts by page: ");
+    for (final Tuple2<Integer, Seq<ZBlogPost>> pair : pages) {
+      final int page_human = pair._1.intValue() + 1;
+
+      if (Objects.equals(page_current._1, pair._1)) {
+        e_pages.appendChild(document.createTextNode(Integer.toString(
+          page_human)));
+      } else {
+        final Element e_a = document.createElementNS(XHTML_URI_TEXT, "a");
+        e_a.setAttribute("href", "/" + page_human + ".xhtml");
+        e_a.setTextContent(Integer.toString(page_human));
+        e_pages.appendChild(e_a);
+      }
+      e_pages.appendChild(document.createTextNode(" "));
+    }
+
+    return e_pages;
+  }
+
+  /**
+   * Append a list of links to the given related posts to a post footer. If
+   * there are no related posts, the footer is left unchanged.
+   *
+   * @param foot   The post footer
+   * @param config The blog configuration
+   * @param posts  The related posts
+   */
+
+  static void relatedPosts(
+    final Element foot,
+    final ZBlogConfiguration config,
+    final List<ZBlogPost> posts)
+  {
+    if (posts.isEmpty()) {
+      return;
+    }
+
+    final Document document = foot.getOwnerDocument();
+    final Element e = document.createElementNS(XHTML_URI_TEXT, "div");
+    e.setAttribute("class", "zb_post_related");
+    e.setTextContent("Related posts: ");
+
+    final Element e_list = document.createElementNS(XHTML_URI_TEXT, "ul");
+    for (final ZBlogPost post : posts) {
+      final Element e_item = document.createElementNS(XHTML_URI_TEXT, "li");
+      final Element e_a = document.createElementNS(XHTML_URI_TEXT, "a");
+      e_a.setAttribute("href", post.outputPermalinkLink(config));
+      e_a.setTextContent(post.title());
+      e_item.appendChild(e_a);
+      e_list.appendChild(e_item);
+    }
+    e.appendChild(e_list);
+    foot.appendChild(e);
+  }
+
+  /**
+   * @param document The owning document
+   *
+   * @return A page root element
+   */
+
+  static Element root(
+    final Document document)
+  {
+    final Element root = document.createElement("html");
+    root.setAttribute("xmlns", XHTML_URI_TEXT);
+    root.setAttribute("xml:lang", "en");
+    return root;
+  }
+}
@@ -39,7 +39,10 @@ import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -91,12 +94,44 @@ public final class ZBlogParserProvider implements ZBlogParserProviderType
     return new Parser(this.post_provider, config);
   }
 
+  /**
+   * A successfully parsed post, along with the attributes of the file at the
+   * time it was parsed.
+   */
+
+  private static final class Parsed
+  {
+    private final FileTime modified;
+    private final long size;
+    private final ZBlogPost post;
+
+    Parsed(
+      final BasicFileAttributes attrs,
+      final ZBlogPost in_post)
+    {
+      this.modified = attrs.lastModifiedTime();
+      this.size = attrs.size();
+      this.post = in_post;
+    }
+
+    boolean isCurrent(
+      final BasicFileAttributes attrs)
+    {
+      return this.size == attrs.size()
+        && Objects.equals(this.modified, attrs.lastModifiedTime());
+    }
+  }
+
   private static final class Parser
     implements ZBlogParserType, FileVisitor<Path>
   {
     private final ZBlogConfiguration config;
     private final ZBlog.Builder builder;
     private final ZBlogPostParserProviderType post_provider;
+    private final ZBlogPostBodyCache bodies;
+    private Map<Path, Parsed> parsed_previous;
+    private Map<Path, Parsed> parsed;
+    private ZBlogPostSinkType sink;
     private TreeMap<Path, ZBlogPost> posts;
     private Vector<ZError> errors;
 
@@ -112,11 +147,31 @@ public final class ZBlogParserProvider implements ZBlogParserProviderType
       this.builder = ZBlog.builder();
       this.builder.setTitle(in_config.title());
       this.posts = TreeMap.empty();
+      this.parsed_previous = new HashMap<>(128);
+      this.parsed = new HashMap<>(128);
+      this.sink = post -> {
+        // Nothing
+      };
+      this.bodies = new ZBlogPostBodyCache(
+        in_config.lowMemory() ? in_config.lowMemoryBudget() : Long.MAX_VALUE);
     }
 
     @Override
-    public Validation<Seq<ZError>, ZBlog> parse()
+    public Validation<Seq<ZError>, ZBlog> parse(
+      final ZBlogPostSinkType in_sink)
     {
+      this.sink = Objects.requireNonNull(in_sink, "sink");
+
+      /*
+       * A parser may be used to parse the same blog repeatedly. Posts whose
+       * files have not changed since the previous parse are reused as-is,
+       * along with any body text that is still cached.
+       */
+
+      this.errors = Vector.empty();
+      this.posts = TreeMap.empty();
+      this.parsed = new HashMap<>(this.parsed_previous.size());
+
       try {
         Files.walkFileTree(
           this.config.sourceRoot(),
@@ -136,6 +191,13 @@ public final class ZBlogParserProvider implements ZBlogParserProviderType
           Optional.of(e)));
       }
 
+      for (final Path file : this.parsed_previous.keySet()) {
+        if (!this.parsed.containsKey(file)) {
+          this.bodies.invalidate(this.config.sourceRoot().relativize(file));
+        }
+      }
+      this.parsed_previous = this.parsed;
+
       if (this.errors.isEmpty()) {
         return Validation.valid(this.builder.build());
       }
@@ -159,7 +221,7 @@ public final class ZBlogParserProvider implements ZBlogParserProviderType
       final String extension = FilenameUtils.getExtension(file.toString());
       if (extension != null) {
         if (Objects.equals(extension, "zbp")) {
-          this.parsePost(file);
+          this.parsePost(file, attrs);
         }
       }
 
@@ -167,22 +229,52 @@ public final class ZBlogParserProvider implements ZBlogParserProviderType
     }
 
     private void parsePost(
-      final Path file)
+      final Path file,
+      final BasicFileAttributes attrs)
       throws IOException
     {
+      final Parsed previous = this.parsed_previous.get(file);
+      if (previous != null && previous.isCurrent(attrs)) {
+        LOG.debug("unchanged post {}", file);
+        this.posts = this.posts.put(previous.post.path(), previous.post);
+        this.parsed.put(file, previous);
+        this.sink.onPost(previous.post);
+        return;
+      }
+
       LOG.debug("parsing post {}", file);
 
+      final Path relative = this.config.sourceRoot().relativize(file);
+      this.bodies.invalidate(relative);
+
+      final long size = attrs.size();
       try (InputStream stream = Files.newInputStream(file)) {
-        final Path relative = this.config.sourceRoot().relativize(file);
 
         final ZBlogPostParserType parser =
           this.post_provider.createParser(this.config, stream, relative);
-        final Validation<Seq<ZError>, ZBlogPost> r = parser.parse();
+
+        /*
+         * Only the headers of posts are read here. The body text is decoded
+         * from the source file when it is first required during rendering.
+         * In low memory mode, the decoded text is retained only as long as
+         * the cache budget allows.
+         */
+
+        final Validation<Seq<ZError>, ZBlogPost> r =
+          parser.parseHeader((format, offset) -> {
+            final ZBlogPostBodyMapped mapped =
+              new ZBlogPostBodyMapped(format, file, offset, size - offset);
+            return new ZBlogPostBodyDeferred(
+              format, relative, this.bodies, ignored -> mapped.read());
+          });
+
         if (r.isInvalid()) {
           this.errors = this.errors.appendAll(r.getError());
         } else {
           final ZBlogPost post = r.get();
           this.posts = this.posts.put(post.path(), post);
+          this.parsed.put(file, new Parsed(attrs, post));
+          this.sink.onPost(post);
         }
       }
     }
@@ -29,5 +29,25 @@ public interface ZBlogParserType
    * @return A parsed blog, or a list of parse errors
    */
 
-  Validation<Seq<ZError>, ZBlog> parse();
+  default Validation<Seq<ZError>, ZBlog> parse()
+  {
+    return this.parse(post -> {
+      // Nothing
+    });
+  }
+
+  /**
+   * Parse a blog, delivering each post to the given sink as soon as it has
+   * been parsed. The complete blog is returned once every post has been
+   * parsed. Posts are delivered to the sink even if other posts subsequently
+   * fail to parse. A parser may be used more than once; each call parses the
+   * blog as it currently exists on disk, reusing the results of previous
+   * calls for source files that have not changed.
+   *
+   * @param sink The receiver of parsed posts
+   *
+   * @return A parsed blog, or a list of parse errors
+   */
+
+  Validation<Seq<ZError>, ZBlog> parse(ZBlogPostSinkType sink);
 }
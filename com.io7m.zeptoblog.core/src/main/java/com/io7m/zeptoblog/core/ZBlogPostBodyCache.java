@@ -0,0 +1,137 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.core;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A least-recently-used cache of post body text, bounded by the approximate
+ * number of bytes of text held.
+ */
+
+final class ZBlogPostBodyCache
+{
+  private final long budget;
+  private final LinkedHashMap<Path, String> texts;
+  private long size;
+
+  ZBlogPostBodyCache(
+    final long in_budget)
+  {
+    this.budget = in_budget;
+    this.texts = new LinkedHashMap<>(128, 0.75f, true);
+    this.size = 0L;
+  }
+
+  private static long sizeOf(
+    final String text)
+  {
+    return (long) text.length() * 2L;
+  }
+
+  /**
+   * The type of functions that load body text.
+   */
+
+  interface LoaderType
+  {
+    /**
+     * @param path The path of the post
+     *
+     * @return The body text
+     *
+     * @throws IOException On I/O errors
+     */
+
+    String load(Path path)
+      throws IOException;
+  }
+
+  /**
+   * Fetch the body text of the given post, loading it if it is not cached.
+   *
+   * @param path   The path of the post
+   * @param loader A function to load the text
+   *
+   * @return The body text
+   *
+   * @throws IOException On I/O errors
+   */
+
+  String get(
+    final Path path,
+    final LoaderType loader)
+    throws IOException
+  {
+    Objects.requireNonNull(path, "path");
+    Objects.requireNonNull(loader, "loader");
+
+    synchronized (this.texts) {
+      final String existing = this.texts.get(path);
+      if (existing != null) {
+        return existing;
+      }
+    }
+
+    final String text = loader.load(path);
+    final long text_size = sizeOf(text);
+    if (text_size > this.budget) {
+      return text;
+    }
+
+    synchronized (this.texts) {
+      final String previous = this.texts.put(path, text);
+      if (previous != null) {
+        this.size -= sizeOf(previous);
+      }
+      this.size += text_size;
+
+      final Iterator<Map.Entry<Path, String>> iter =
+        this.texts.entrySet().iterator();
+      while (this.size > this.budget && iter.hasNext()) {
+        final Map.Entry<Path, String> entry = iter.next();
+        this.size -= sizeOf(entry.getValue());
+        iter.remove();
+      }
+    }
+    return text;
+  }
+
+  /**
+   * Discard any cached text for the given post.
+   *
+   * @param path The path of the post
+   */
+
+  void invalidate(
+    final Path path)
+  {
+    Objects.requireNonNull(path, "path");
+
+    synchronized (this.texts) {
+      final String previous = this.texts.remove(path);
+      if (previous != null) {
+        this.size -= sizeOf(previous);
+      }
+    }
+  }
+}
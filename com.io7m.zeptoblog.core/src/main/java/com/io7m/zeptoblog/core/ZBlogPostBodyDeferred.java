@@ -0,0 +1,97 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * A post body whose text is read from disk each time it is required, via a
+ * bounded cache. The {@link #text()} method raises
+ * {@link UncheckedIOException} if the text cannot be read.
+ */
+
+final class ZBlogPostBodyDeferred implements ZBlogPostBodyType
+{
+  private final String format;
+  private final Path path;
+  private final ZBlogPostBodyCache cache;
+  private final ZBlogPostBodyCache.LoaderType loader;
+
+  ZBlogPostBodyDeferred(
+    final String in_format,
+    final Path in_path,
+    final ZBlogPostBodyCache in_cache,
+    final ZBlogPostBodyCache.LoaderType in_loader)
+  {
+    this.format = Objects.requireNonNull(in_format, "format");
+    this.path = Objects.requireNonNull(in_path, "path");
+    this.cache = Objects.requireNonNull(in_cache, "cache");
+    this.loader = Objects.requireNonNull(in_loader, "loader");
+  }
+
+  @Override
+  public String format()
+  {
+    return this.format;
+  }
+
+  @Override
+  public String text()
+  {
+    try {
+      return this.cache.get(this.path, this.loader);
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public boolean equals(
+    final Object other)
+  {
+    if (this == other) {
+      return true;
+    }
+    if (other == null || !Objects.equals(this.getClass(), other.getClass())) {
+      return false;
+    }
+    final ZBlogPostBodyDeferred that = (ZBlogPostBodyDeferred) other;
+    return Objects.equals(this.format, that.format)
+      && Objects.equals(this.path, that.path);
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return Objects.hash(this.format, this.path);
+  }
+
+  @Override
+  public String toString()
+  {
+    return new StringBuilder(64)
+      .append("ZBlogPostBodyDeferred{format=")
+      .append(this.format)
+      .append(", path=")
+      .append(this.path)
+      .append('}')
+      .toString();
+  }
+}
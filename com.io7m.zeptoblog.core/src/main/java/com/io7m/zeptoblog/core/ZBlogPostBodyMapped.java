@@ -0,0 +1,202 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.core;
+
+import com.io7m.jaffirm.core.Preconditions;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * <p>A post body that refers to a region of a post file.</p>
+ *
+ * <p>No text is read when the body is created. Each call to {@link #text()}
+ * reads the region of the file into a heap buffer, and decodes the text,
+ * normalizing line endings as it does so. The region is read rather than
+ * mapped: Each mapping would persist until garbage collected, and a file
+ * truncated whilst mapped causes an {@link InternalError} on access rather
+ * than an {@link IOException}. If the file has been truncated, the text that
+ * remains in the region is returned. The method raises
+ * {@link UncheckedIOException} if the text cannot be read.</p>
+ */
+
+final class ZBlogPostBodyMapped implements ZBlogPostBodyType
+{
+  private static final int CHUNK_SIZE = 8192;
+
+  private final String format;
+  private final Path file;
+  private final long offset;
+  private final long length;
+
+  ZBlogPostBodyMapped(
+    final String in_format,
+    final Path in_file,
+    final long in_offset,
+    final long in_length)
+  {
+    this.format = Objects.requireNonNull(in_format, "format");
+    this.file = Objects.requireNonNull(in_file, "file");
+    this.offset = in_offset;
+    this.length = in_length;
+
+    Preconditions.checkPreconditionL(
+      this.offset, this.offset >= 0L, x -> "Offset must be non-negative");
+    Preconditions.checkPreconditionL(
+      this.length,
+      this.length >= 0L && this.length <= (long) Integer.MAX_VALUE,
+      x -> "Length must be in the range [0, 2^31)");
+  }
+
+  private static ByteBuffer readRegion(
+    final FileChannel channel,
+    final long offset,
+    final long length)
+    throws IOException
+  {
+    final ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(length));
+    while (buffer.hasRemaining()) {
+      final int r = channel.read(buffer, offset + (long) buffer.position());
+      if (r < 0) {
+        break;
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static String decode(
+    final ByteBuffer bytes)
+  {
+    final CharsetDecoder decoder =
+      StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    final StringBuilder output = new StringBuilder(bytes.remaining() + 16);
+    final ZLineEndingNormalizer normalizer = new ZLineEndingNormalizer(output);
+    final CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+
+    while (true) {
+      final CoderResult result = decoder.decode(bytes, chars, true);
+      drain(chars, normalizer);
+      if (result.isUnderflow()) {
+        break;
+      }
+    }
+    while (decoder.flush(chars).isOverflow()) {
+      drain(chars, normalizer);
+    }
+    drain(chars, normalizer);
+
+    normalizer.finish();
+    return output.toString();
+  }
+
+  private static void drain(
+    final CharBuffer chars,
+    final ZLineEndingNormalizer normalizer)
+  {
+    chars.flip();
+    normalizer.append(chars.array(), chars.arrayOffset(), chars.limit());
+    chars.clear();
+  }
+
+  /**
+   * Read and decode the body text.
+   *
+   * @return The body text
+   *
+   * @throws IOException On I/O errors
+   */
+
+  String read()
+    throws IOException
+  {
+    try (FileChannel channel =
+           FileChannel.open(this.file, StandardOpenOption.READ)) {
+      final long available = Math.max(0L, channel.size() - this.offset);
+      return decode(
+        readRegion(channel, this.offset, Math.min(available, this.length)));
+    }
+  }
+
+  @Override
+  public String format()
+  {
+    return this.format;
+  }
+
+  @Override
+  public String text()
+  {
+    try {
+      return this.read();
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public boolean equals(
+    final Object other)
+  {
+    if (this == other) {
+      return true;
+    }
+    if (other == null || !Objects.equals(this.getClass(), other.getClass())) {
+      return false;
+    }
+    final ZBlogPostBodyMapped that = (ZBlogPostBodyMapped) other;
+    return this.offset == that.offset
+      && this.length == that.length
+      && Objects.equals(this.format, that.format)
+      && Objects.equals(this.file, that.file);
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return Objects.hash(this.format, this.file, this.offset, this.length);
+  }
+
+  @Override
+  public String toString()
+  {
+    return new StringBuilder(64)
+      .append("ZBlogPostBodyMapped{format=")
+      .append(this.format)
+      .append(", file=")
+      .append(this.file)
+      .append(", offset=")
+      .append(this.offset)
+      .append(", length=")
+      .append(this.length)
+      .append('}')
+      .toString();
+  }
+}
@@ -17,11 +17,13 @@
 package com.io7m.zeptoblog.core;
 
 import io.vavr.collection.Seq;
+import io.vavr.collection.Vector;
 import io.vavr.control.Validation;
 import org.osgi.annotation.versioning.ProviderType;
 import org.w3c.dom.Element;
 
 import java.nio.file.Path;
+import java.util.Optional;
 
 /**
  * A post body format.
@@ -56,4 +58,80 @@ public interface ZBlogPostFormatType extends ZServiceType
   Validation<Seq<ZError>, String> producePlain(
     Path path,
     String text);
+
+  /**
+   * Produce an excerpt of the plain text for the given body text. The
+   * excerpt is the prefix of the text that would be returned by
+   * {@link #producePlain(Path, String)} that is at most {@code length}
+   * characters long. Implementations are encouraged to stop processing the
+   * body as soon as enough text has been produced.
+   *
+   * @param path   The path of the original file, for error reporting
+   * @param text   The input body text
+   * @param length The maximum length of the excerpt
+   *
+   * @return Plain text, or a list of reasons why plain text could not be
+   * produced
+   */
+
+  default Validation<Seq<ZError>, String> produceExcerpt(
+    final Path path,
+    final String text,
+    final int length)
+  {
+    return this.producePlain(path, text).map(
+      plain -> plain.length() > length ? plain.substring(0, length) : plain);
+  }
+
+  /**
+   * The version of the output of this format. Rendered post bodies are
+   * cached between compilations keyed by the hash of the body text, the
+   * name of the format, and this version, and so the version must change
+   * whenever the XHTML or plain text produced for a given body could change,
+   * such as when the format provider or one of its dependencies is upgraded.
+   * Formats that do not declare a version are never cached.
+   *
+   * @return The cache version of this format, or nothing if the output of
+   * this format must not be cached
+   */
+
+  default Optional<String> cacheVersion()
+  {
+    return Optional.empty();
+  }
+
+  /**
+   * @return {@code true} if this format supports passthrough rendering
+   *
+   * @see #producePassthrough(Path, String)
+   */
+
+  default boolean supportsPassthrough()
+  {
+    return false;
+  }
+
+  /**
+   * Produce passthrough content for the given body text. Passthrough content
+   * is UTF-8 encoded XHTML that has been checked to be well-formed when
+   * placed inside an XHTML {@code div} element, and that can therefore be
+   * copied directly into a generated page without being parsed.
+   *
+   * @param path The path of the original file, for error reporting
+   * @param text The input body text
+   *
+   * @return UTF-8 encoded XHTML, or a list of reasons why passthrough content
+   * could not be produced
+   *
+   * @see #supportsPassthrough()
+   */
+
+  default Validation<Seq<ZError>, byte[]> producePassthrough(
+    final Path path,
+    final String text)
+  {
+    return Validation.invalid(Vector.of(ZErrors.ofMessagePath(
+      "Format " + this.name() + " does not support passthrough rendering",
+      path)));
+  }
 }
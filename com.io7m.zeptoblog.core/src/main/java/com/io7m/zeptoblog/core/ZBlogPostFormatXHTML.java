@@ -23,7 +23,10 @@ import io.vavr.collection.Vector;
 import io.vavr.control.Validation;
 import org.osgi.service.component.annotations.Component;
 import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
@@ -31,7 +34,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringWriter;
+import java.io.StringReader;
 import java.net.URI;
 import java.nio.file.Path;
 import java.util.Objects;
@@ -71,13 +74,15 @@ public final class ZBlogPostFormatXHTML implements ZBlogPostFormatType
     XHTML_URI_TEXT = XHTML_URI.toString();
   }
 
+  private final ThreadLocal<ZPlainTextExtractor> extractors;
+
   /**
    * Create a format provider.
    */
 
   public ZBlogPostFormatXHTML()
   {
-
+    this.extractors = ThreadLocal.withInitial(ZPlainTextExtractor::new);
   }
 
   /**
@@ -99,33 +104,22 @@ public final class ZBlogPostFormatXHTML implements ZBlogPostFormatType
     }
   }
 
-  private static Validation<Seq<ZError>, String> plain(
-    final Path path,
-    final Element e)
+  private static String wrap(
+    final String body)
   {
-    try (InputStream is =
-           ZBlogPostFormatXHTML.class.getResourceAsStream("plain.xsl")) {
-      try (ByteArrayOutputStream output = new ByteArrayOutputStream()) {
-
-        ZXML.xmlTransformElementStream(output, e, is);
-        final String raw_text = output.toString(UTF_8.name());
-        final String[] lines = raw_text.split("\\r?\\n");
-        final StringBuilder text = new StringBuilder(256);
-        text.setLength(0);
-        for (int index = 0; index < lines.length; ++index) {
-          text.append(lines[index].trim());
-          text.append(System.lineSeparator());
-        }
-
-        return valid(text.toString());
-      }
-    } catch (final IOException | ParserConfigurationException | TransformerException ex) {
-      return invalid(Vector.of(
-        ZError.of(
-          ex.getMessage(),
-          LexicalPosition.of(0, 0, Optional.of(path)),
-          Optional.of(ex))));
-    }
+    final String separator = System.lineSeparator();
+    final StringBuilder text = new StringBuilder(body.length() + 128);
+    text.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+    text.append(separator);
+    text.append("<div xmlns=\"");
+    text.append(XHTML_URI_TEXT);
+    text.append("\">");
+    text.append(separator);
+    text.append(body);
+    text.append(separator);
+    text.append("</div>");
+    text.append(separator);
+    return text.toString();
   }
 
   @Override
@@ -140,6 +134,12 @@ public final class ZBlogPostFormatXHTML implements ZBlogPostFormatType
     return "XHTML 1.0 Strict";
   }
 
+  @Override
+  public Optional<String> cacheVersion()
+  {
+    return Optional.of("1");
+  }
+
   @Override
   public Validation<Seq<ZError>, Element> produceXHTML(
     final Path path,
@@ -148,31 +148,16 @@ public final class ZBlogPostFormatXHTML implements ZBlogPostFormatType
     Objects.requireNonNull(path, "Path");
     Objects.requireNonNull(body, "Body");
 
-    final String separator = System.lineSeparator();
-    try (StringWriter writer = new StringWriter(1024)) {
-      writer.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-      writer.append(separator);
-      writer.append("<div xmlns=\"");
-      writer.append(XHTML_URI_TEXT);
-      writer.append("\">");
-      writer.append(separator);
-      writer.append(body);
-      writer.append(separator);
-      writer.append("</div>");
-      writer.append(separator);
-      writer.flush();
-
-      try (InputStream stream =
-             new ByteArrayInputStream(writer.toString().getBytes(UTF_8))) {
-        return valid(ZXML.xmlParseFromStream(path, stream)
-                       .getDocumentElement());
-      } catch (final SAXException | ParserConfigurationException ex) {
-        return invalid(Vector.of(
-          ZError.of(
-            ex.getMessage(),
-            LexicalPosition.of(0, 0, Optional.of(path)),
-            Optional.of(ex))));
-      }
+    try (InputStream stream =
+           new ByteArrayInputStream(wrap(body).getBytes(UTF_8))) {
+      return valid(ZXML.xmlParseFromStream(path, stream)
+                     .getDocumentElement());
+    } catch (final SAXException | ParserConfigurationException ex) {
+      return invalid(Vector.of(
+        ZError.of(
+          ex.getMessage(),
+          LexicalPosition.of(0, 0, Optional.of(path)),
+          Optional.of(ex))));
     } catch (final IOException e) {
       throw new UnreachableCodeException(e);
     }
@@ -182,10 +167,67 @@ public final class ZBlogPostFormatXHTML implements ZBlogPostFormatType
   public Validation<Seq<ZError>, String> producePlain(
     final Path path,
     final String text)
+  {
+    return this.produceExcerpt(path, text, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public Validation<Seq<ZError>, String> produceExcerpt(
+    final Path path,
+    final String text,
+    final int length)
+  {
+    Objects.requireNonNull(path, "Path");
+    Objects.requireNonNull(text, "Text");
+
+    try (InputStream stream =
+           new ByteArrayInputStream(wrap(text).getBytes(UTF_8))) {
+      final InputSource source = new InputSource(stream);
+      source.setSystemId(path.toString());
+      return valid(this.extractors.get().extract(source, length));
+    } catch (final SAXException | ParserConfigurationException ex) {
+      return invalid(Vector.of(
+        ZError.of(
+          ex.getMessage(),
+          LexicalPosition.of(0, 0, Optional.of(path)),
+          Optional.of(ex))));
+    } catch (final IOException e) {
+      throw new UnreachableCodeException(e);
+    }
+  }
+
+  @Override
+  public boolean supportsPassthrough()
+  {
+    return true;
+  }
+
+  @Override
+  public Validation<Seq<ZError>, byte[]> producePassthrough(
+    final Path path,
+    final String text)
   {
     Objects.requireNonNull(path, "Path");
     Objects.requireNonNull(text, "Text");
 
-    return this.produceXHTML(path, text).flatMap(e -> plain(path, e));
+    try (StringReader stream = new StringReader(wrap(text))) {
+      final InputSource source = new InputSource(stream);
+      source.setSystemId(path.toString());
+
+      final DefaultHandler handler = new DefaultHandler();
+      final XMLReader reader = ZXML.xmlNewReader();
+      reader.setContentHandler(handler);
+      reader.setErrorHandler(handler);
+      reader.parse(source);
+      return valid(text.getBytes(UTF_8));
+    } catch (final SAXException | ParserConfigurationException ex) {
+      return invalid(Vector.of(
+        ZError.of(
+          ex.getMessage(),
+          LexicalPosition.of(0, 0, Optional.of(path)),
+          Optional.of(ex))));
+    } catch (final IOException e) {
+      throw new UnreachableCodeException(e);
+    }
   }
 }
@@ -21,6 +21,7 @@ import io.vavr.collection.List;
 import io.vavr.collection.Seq;
 import io.vavr.collection.SortedMap;
 import io.vavr.collection.Vector;
+import io.vavr.control.Option;
 import io.vavr.control.Validation;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
@@ -34,6 +35,7 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
@@ -90,21 +92,57 @@ public final class ZBlogPostGeneratorExecutor
     return generator.generate(config, props).mapError(List::ofAll);
   }
 
+  private static Validation<Seq<ZError>, Optional<ZBlogPostProcessorType>>
+  runProcessor(
+    final ZBlogConfiguration config,
+    final ZBlogPostGeneratorType generator,
+    final Properties props)
+  {
+    try {
+      return valid(generator.processor(config, props));
+    } catch (final RuntimeException e) {
+      return invalid(List.of(ZErrors.ofException(e)));
+    }
+  }
+
   private static Validation<Seq<ZError>, Void> serializeFile(
     final ZBlogPost post,
     final String text)
   {
     final Path path = post.path();
-    LOG.debug("writing {}", path);
+    final byte[] data = text.getBytes(StandardCharsets.UTF_8);
 
     try {
-      Files.write(path, text.getBytes(StandardCharsets.UTF_8));
+      if (isUnchanged(path, data)) {
+        LOG.debug("unchanged {}", path);
+        return valid(null);
+      }
+
+      LOG.debug("writing {}", path);
+      Files.write(path, data);
       return valid(null);
     } catch (final IOException e) {
       return invalid(List.of(ZErrors.ofExceptionPath(e, path)));
     }
   }
 
+  /*
+   * A generated file is not rewritten if it already has the content that
+   * would be written, so that its modification time is preserved and it is
+   * not subsequently treated as a changed post.
+   */
+
+  private static boolean isUnchanged(
+    final Path path,
+    final byte[] data)
+    throws IOException
+  {
+    if (!Files.isRegularFile(path) || Files.size(path) != (long) data.length) {
+      return false;
+    }
+    return Arrays.equals(Files.readAllBytes(path), data);
+  }
+
   /**
    * Set the generator resolver.
    *
@@ -150,7 +188,8 @@ public final class ZBlogPostGeneratorExecutor
   }
 
   @Override
-  public Validation<Seq<ZError>, Void> executeAll(
+  public Validation<Seq<ZError>, Seq<ZBlogPostProcessorType>>
+  executeAllWithProcessors(
     final ZBlogConfiguration config)
   {
     Objects.requireNonNull(config, "config");
@@ -162,8 +201,10 @@ public final class ZBlogPostGeneratorExecutor
       values.map(request -> this.lookupGenerator(request.generatorName())
         .flatMap(generator -> loadProperties(request.configFile())
           .flatMap(props -> runGenerator(config, generator, props)
-            .flatMap(this::serialize)))))
-      .map(x -> (Void) null)
+            .flatMap(this::serialize)
+            .flatMap(x -> runProcessor(config, generator, props))))))
+      .<Seq<ZBlogPostProcessorType>>map(
+        processors -> processors.flatMap(Option::ofOptional).toVector())
       .mapError(Vector::ofAll);
   }
 
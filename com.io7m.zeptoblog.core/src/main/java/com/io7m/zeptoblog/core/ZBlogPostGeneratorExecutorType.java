@@ -19,6 +19,8 @@ package com.io7m.zeptoblog.core;
 import io.vavr.collection.Seq;
 import io.vavr.control.Validation;
 
+import java.util.Properties;
+
 /**
  * The type of generator executors.
  */
@@ -33,6 +35,23 @@ public interface ZBlogPostGeneratorExecutorType
    * @return Nothing on success, a list of errors on failure
    */
 
-  Validation<Seq<ZError>, Void> executeAll(
+  default Validation<Seq<ZError>, Void> executeAll(
+    final ZBlogConfiguration config)
+  {
+    return this.executeAllWithProcessors(config).map(x -> null);
+  }
+
+  /**
+   * Execute all requested generators, writing the results to the filesystem.
+   *
+   * @param config The blog configuration
+   *
+   * @return The post processors provided by the generators, in the order
+   * in which the generators were executed, or a list of errors on failure
+   *
+   * @see ZBlogPostGeneratorType#processor(ZBlogConfiguration, Properties)
+   */
+
+  Validation<Seq<ZError>, Seq<ZBlogPostProcessorType>> executeAllWithProcessors(
     ZBlogConfiguration config);
 }
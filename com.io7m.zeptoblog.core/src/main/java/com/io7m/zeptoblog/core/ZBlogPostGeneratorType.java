@@ -22,6 +22,7 @@ import io.vavr.control.Validation;
 import org.osgi.annotation.versioning.ProviderType;
 
 import java.nio.file.Path;
+import java.util.Optional;
 import java.util.Properties;
 
 /**
@@ -43,4 +44,23 @@ public interface ZBlogPostGeneratorType extends ZServiceType
   Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>> generate(
     ZBlogConfiguration config,
     Properties props);
+
+  /**
+   * Retrieve a processor that should be applied to every post rendered
+   * after the generator has been executed. The method is called after
+   * {@link #generate(ZBlogConfiguration, Properties)} has succeeded, with
+   * the same arguments.
+   *
+   * @param config The blog configuration
+   * @param props  Implementation-specific properties
+   *
+   * @return A post processor, if the generator provides one
+   */
+
+  default Optional<ZBlogPostProcessorType> processor(
+    final ZBlogConfiguration config,
+    final Properties props)
+  {
+    return Optional.empty();
+  }
 }
@@ -29,17 +29,18 @@ import org.osgi.service.component.annotations.ReferencePolicyOption;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 import static io.vavr.control.Validation.invalid;
 import static io.vavr.control.Validation.valid;
@@ -94,6 +95,12 @@ public final class ZBlogPostParserProvider implements
     return new Parser(config, stream, path);
   }
 
+  private interface BodyParserType
+  {
+    ZBlogPostBodyType parse(InputStream input)
+      throws IOException;
+  }
+
   private static final class Parser implements ZBlogPostParserType
   {
     private final InputStream stream;
@@ -101,10 +108,13 @@ public final class ZBlogPostParserProvider implements
     private final DateTimeFormatter formatter;
     private final Path path;
     private final ZBlogConfiguration config;
+    private final ByteArrayOutputStream line_bytes;
+    private final ZHeaderLexer lexer;
     private Vector<ZError> errors;
     private String title;
     private Optional<ZonedDateTime> date;
     private String format_name;
+    private long offset;
 
     Parser(
       final ZBlogConfiguration in_config,
@@ -119,24 +129,45 @@ public final class ZBlogPostParserProvider implements
       this.formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ");
       this.errors = Vector.empty();
       this.date = Optional.empty();
+      this.line_bytes = new ByteArrayOutputStream(128);
+      this.lexer = new ZHeaderLexer();
     }
 
     @Override
     public Validation<Seq<ZError>, ZBlogPost> parse()
     {
-      try (BufferedReader reader =
-             new BufferedReader(
-               new InputStreamReader(
-                 new CloseShieldInputStream(this.stream),
-                 StandardCharsets.UTF_8))) {
+      return this.parseWith(input -> {
+        final String body_text = parseBody(input);
+        return ZBlogPostBody.of(this.format_name, body_text);
+      });
+    }
 
-        this.parseHeader(reader);
+    @Override
+    public Validation<Seq<ZError>, ZBlogPost> parseHeader(
+      final BodyProviderType bodies)
+    {
+      Objects.requireNonNull(bodies, "bodies");
+      return this.parseWith(
+        input -> bodies.body(this.format_name, this.offset));
+    }
+
+    private Validation<Seq<ZError>, ZBlogPost> parseWith(
+      final BodyParserType body_parser)
+    {
+      try (InputStream input =
+             new BufferedInputStream(new CloseShieldInputStream(this.stream))) {
+
+        this.parseHeader(input);
 
         if (!this.errors.isEmpty()) {
           return invalid(this.errors);
         }
 
-        final String body_text = this.parseBody(reader);
+        if (this.format_name == null) {
+          this.format_name = this.config.formatDefault();
+        }
+
+        final ZBlogPostBodyType body = body_parser.parse(input);
 
         if (LOG.isDebugEnabled()) {
           LOG.debug("file:  {}", this.path);
@@ -146,152 +177,165 @@ public final class ZBlogPostParserProvider implements
           LOG.debug("title: {}", this.title);
         }
 
-        if (this.format_name == null) {
-          this.format_name = this.config.formatDefault();
-        }
-
-        return valid(ZBlogPost.of(
-          this.title,
-          this.date,
-          this.path,
-          ZBlogPostBody.of(this.format_name, body_text)));
+        return valid(ZBlogPost.of(this.title, this.date, this.path, body));
       } catch (final IOException e) {
         return this.fail("I/O error: " + e.getMessage(), Optional.of(e));
       }
     }
 
-    private String parseBody(
-      final BufferedReader reader)
+    private static String parseBody(
+      final InputStream input)
       throws IOException
     {
       final StringBuilder sb = new StringBuilder(128);
-      while (true) {
-        this.position.setLine(this.position.line() + 1);
+      final ZLineEndingNormalizer normalizer = new ZLineEndingNormalizer(sb);
+      final char[] buffer = new char[4096];
 
-        final String raw_line = reader.readLine();
-        if (raw_line == null) {
+      final Reader reader = new InputStreamReader(input, StandardCharsets.UTF_8);
+      while (true) {
+        final int r = reader.read(buffer);
+        if (r < 0) {
           break;
         }
-        sb.append(raw_line);
-        sb.append(System.lineSeparator());
+        normalizer.append(buffer, 0, r);
       }
 
+      normalizer.finish();
       return sb.toString();
     }
 
+    /**
+     * Read a single header line, tracking the byte offset of the end of the
+     * line. The line terminators are those accepted by
+     * {@link java.io.BufferedReader#readLine()}. Neither terminator byte can
+     * appear within a multibyte UTF-8 sequence, and so lines can be split
+     * before they are decoded.
+     */
+
+    private String readHeaderLine(
+      final InputStream input)
+      throws IOException
+    {
+      this.line_bytes.reset();
+
+      while (true) {
+        final int b = input.read();
+        if (b < 0) {
+          if (this.line_bytes.size() == 0) {
+            return null;
+          }
+          break;
+        }
+
+        ++this.offset;
+        if (b == '\n') {
+          break;
+        }
+        if (b == '\r') {
+          input.mark(1);
+          if (input.read() == '\n') {
+            ++this.offset;
+          } else {
+            input.reset();
+          }
+          break;
+        }
+        this.line_bytes.write(b);
+      }
+
+      return this.line_bytes.toString(StandardCharsets.UTF_8);
+    }
+
     private void parseHeader(
-      final BufferedReader reader)
+      final InputStream input)
       throws IOException
     {
       while (true) {
         this.position.setLine(this.position.line() + 1);
+        this.position.setColumn(0);
 
-        final String raw_line = reader.readLine();
+        final String raw_line = this.readHeaderLine(input);
         if (raw_line == null) {
           this.fail("Unexpected EOF", Optional.empty());
           break;
         }
-        final String line = raw_line.trim();
-        if (Objects.equals(line, "")) {
+        if (!this.lexer.lex(raw_line)) {
           break;
         }
-        this.parseHeaderCommand(line);
+        this.parseHeaderCommand();
       }
 
+      this.position.setColumn(0);
       if (this.title == null) {
         this.fail("Title not specified", Optional.empty());
       }
     }
 
-    private void parseHeaderCommand(
-      final String line)
+    private void parseHeaderCommand()
     {
-      final Vector<String> tokens = Vector.of(line.split("\\s+"));
-      switch (tokens.get(0)) {
-        case "title": {
-          this.parseHeaderCommandTitle(line, tokens);
-          break;
-        }
-        case "date": {
-          this.parseHeaderCommandDate(line, tokens);
-          break;
-        }
-        case "format": {
-          this.parseHeaderCommandFormat(line, tokens);
-          break;
-        }
-        default: {
-          this.fail("Unrecognized command", Optional.empty());
-          break;
-        }
+      final ZHeaderLexer lex = this.lexer;
+      if (lex.tokenIs(0, "title")) {
+        this.parseHeaderCommandTitle();
+      } else if (lex.tokenIs(0, "date")) {
+        this.parseHeaderCommandDate();
+      } else if (lex.tokenIs(0, "format")) {
+        this.parseHeaderCommandFormat();
+      } else {
+        this.failAt(0, "Unrecognized command", Optional.empty());
       }
     }
 
-    private void parseHeaderCommandDate(
-      final String line,
-      final Vector<String> tokens)
+    private void parseHeaderCommandDate()
     {
-      if (tokens.size() == 2) {
+      final ZHeaderLexer lex = this.lexer;
+      if (lex.tokenCount() == 2) {
         try {
           this.date =
-            Optional.of(ZonedDateTime.parse(tokens.get(1), this.formatter));
+            Optional.of(ZonedDateTime.parse(lex.token(1), this.formatter));
         } catch (final Exception e) {
-          this.fail(e.getMessage(), Optional.of(e));
+          this.failAt(1, e.getMessage(), Optional.of(e));
         }
       } else {
-        final String separator = System.lineSeparator();
-        final StringBuilder sb = new StringBuilder(128);
-        sb.append("Syntax error.");
-        sb.append(separator);
-        sb.append("  Expected: date <date>");
-        sb.append(separator);
-        sb.append("  Received: ");
-        sb.append(line);
-        sb.append(separator);
-        this.fail(sb.toString(), Optional.empty());
+        this.failAt(
+          Math.min(2, lex.tokenCount() - 1),
+          lex.syntaxError("date <date>"),
+          Optional.empty());
       }
     }
 
-    private void parseHeaderCommandFormat(
-      final String line,
-      final Vector<String> tokens)
+    private void parseHeaderCommandFormat()
     {
-      if (tokens.size() == 2) {
-        this.format_name = tokens.get(1);
+      final ZHeaderLexer lex = this.lexer;
+      if (lex.tokenCount() == 2) {
+        this.format_name = lex.token(1);
       } else {
-        final StringBuilder sb = new StringBuilder(128);
-        final String separator = System.lineSeparator();
-        sb.append("Syntax error.");
-        sb.append(separator);
-        sb.append("  Expected: format <format-name>");
-        sb.append(separator);
-        sb.append("  Received: ");
-        sb.append(line);
-        sb.append(separator);
-        this.fail(sb.toString(), Optional.empty());
+        this.failAt(
+          Math.min(2, lex.tokenCount() - 1),
+          lex.syntaxError("format <format-name>"),
+          Optional.empty());
       }
     }
 
-    private void parseHeaderCommandTitle(
-      final String line,
-      final Vector<String> tokens)
+    private void parseHeaderCommandTitle()
     {
-      if (tokens.size() >= 2) {
-        this.title = tokens.tail().collect(Collectors.joining(" "));
+      final ZHeaderLexer lex = this.lexer;
+      if (lex.tokenCount() >= 2) {
+        this.title = lex.tokensFrom(1);
       } else {
-        final StringBuilder sb = new StringBuilder(128);
-        final String separator = System.lineSeparator();
-        sb.append("Syntax error.");
-        sb.append(separator);
-        sb.append("  Expected: title <text> <text>*");
-        sb.append(separator);
-        sb.append("  Received: ");
-        sb.append(line);
-        sb.append(separator);
-        this.fail(sb.toString(), Optional.empty());
+        this.failAt(
+          0, lex.syntaxError("title <text> <text>*"), Optional.empty());
       }
     }
 
+    private void failAt(
+      final int token,
+      final String message,
+      final Optional<Exception> exception)
+    {
+      this.position.setColumn(this.lexer.column(token));
+      this.fail(message, exception);
+    }
+
     private Validation<Seq<ZError>, ZBlogPost> fail(
       final String message,
       final Optional<Exception> exception)
@@ -30,4 +30,41 @@ public interface ZBlogPostParserType
    */
 
   Validation<Seq<ZError>, ZBlogPost> parse();
+
+  /**
+   * Parse only the header of the post. The body text is not read, and the
+   * body of the returned post is produced by the given body provider. The
+   * default implementation parses the entire post with {@link #parse()},
+   * and does not use the body provider.
+   *
+   * @param bodies A provider of post bodies
+   *
+   * @return A parsed blog post, or a list of parse errors
+   */
+
+  default Validation<Seq<ZError>, ZBlogPost> parseHeader(
+    final BodyProviderType bodies)
+  {
+    return this.parse();
+  }
+
+  /**
+   * The type of functions that produce post bodies for parsed headers.
+   */
+
+  @FunctionalInterface
+  interface BodyProviderType
+  {
+    /**
+     * @param format The name of the post's format
+     * @param offset The offset in bytes of the start of the body within the
+     *               post file
+     *
+     * @return A post body
+     */
+
+    ZBlogPostBodyType body(
+      String format,
+      long offset);
+  }
 }
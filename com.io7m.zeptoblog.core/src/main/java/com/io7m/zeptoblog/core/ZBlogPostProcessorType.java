@@ -0,0 +1,45 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.core;
+
+import org.osgi.annotation.versioning.ProviderType;
+import org.w3c.dom.Element;
+
+/**
+ * The type of post processors. A post processor is applied to the XHTML
+ * body of each post after the body has been produced by the post's format,
+ * and before the body is inserted into any page. Processors are shared
+ * between rendering threads, and so must be safe to call concurrently.
+ */
+
+@ProviderType
+@FunctionalInterface
+public interface ZBlogPostProcessorType
+{
+  /**
+   * Process the body of the given post. Implementations may modify the
+   * given element and its descendants, but must not modify any other part
+   * of the element's document.
+   *
+   * @param post The post
+   * @param body The rendered XHTML body of the post
+   */
+
+  void process(
+    ZBlogPost post,
+    Element body);
+}
@@ -60,7 +60,7 @@ public final class ZBlogPostSerializer implements ZBlogPostSerializerType
     });
 
     sb.append("format ");
-    final ZBlogPostBody body = post.body();
+    final ZBlogPostBodyType body = post.content();
     sb.append(body.format());
     sb.append(separator);
 
@@ -55,11 +55,31 @@ public interface ZBlogPostType extends Comparable<ZBlogPostType>
   Path path();
 
   /**
+   * The body of the post. The body text may be read from the post file
+   * when it is first required, rather than when the post is parsed.
+   *
    * @return The body of the post
    */
 
   @Value.Parameter
-  ZBlogPostBody body();
+  ZBlogPostBodyType content();
+
+  /**
+   * @return The body of the post, with the body text read into memory
+   *
+   * @deprecated Use {@link #content()}, which does not require the body text
+   * to be read
+   */
+
+  @Deprecated
+  default ZBlogPostBody body()
+  {
+    final ZBlogPostBodyType content = this.content();
+    if (content instanceof ZBlogPostBody) {
+      return (ZBlogPostBody) content;
+    }
+    return ZBlogPostBody.of(content.format(), content.text());
+  }
 
   /**
    * @param config The blog configuration
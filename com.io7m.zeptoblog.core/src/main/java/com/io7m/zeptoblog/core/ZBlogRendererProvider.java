@@ -18,23 +18,15 @@ package com.io7m.zeptoblog.core;
 
 import com.io7m.jaffirm.core.Preconditions;
 import com.io7m.jlexing.core.LexicalPosition;
-import com.rometools.rome.feed.atom.Content;
-import com.rometools.rome.feed.synd.SyndContent;
-import com.rometools.rome.feed.synd.SyndContentImpl;
-import com.rometools.rome.feed.synd.SyndEntry;
-import com.rometools.rome.feed.synd.SyndEntryImpl;
 import com.rometools.rome.feed.synd.SyndFeed;
 import com.rometools.rome.feed.synd.SyndFeedImpl;
 import com.rometools.rome.io.FeedException;
 import com.rometools.rome.io.SyndFeedOutput;
 import io.vavr.Tuple2;
-import io.vavr.collection.Iterator;
 import io.vavr.collection.Seq;
 import io.vavr.collection.SortedMap;
 import io.vavr.collection.Vector;
-import io.vavr.control.Option;
 import io.vavr.control.Validation;
-import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
@@ -44,6 +36,7 @@ import org.osgi.service.component.annotations.ReferencePolicyOption;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -52,27 +45,26 @@ import org.xml.sax.SAXException;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.FileVisitOption;
-import java.nio.file.FileVisitResult;
-import java.nio.file.FileVisitor;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 
 import static com.io7m.zeptoblog.core.ZBlogPostFormatXHTML.XHTML_URI_TEXT;
@@ -85,20 +77,28 @@ import static com.io7m.zeptoblog.core.ZBlogPostFormatXHTML.XHTML_URI_TEXT;
 public final class ZBlogRendererProvider implements ZBlogRendererProviderType
 {
   private static final Logger LOG;
+  private static final int PIPELINE_CAPACITY = 64;
+  private static final AtomicBoolean FEEDS_PREPARED;
 
   static {
     LOG = LoggerFactory.getLogger(ZBlogRendererProvider.class);
+    FEEDS_PREPARED = new AtomicBoolean(false);
   }
 
+  private final ZRelatedPosts related;
+  private final ZRenderCaches caches;
   private ZBlogPostFormatResolverType resolver;
 
   /**
-   * Construct a blog post renderer provider.
+   * Construct a blog post renderer provider. The provider retains related
+   * post signatures and the render cache between renderers.
    */
 
   public ZBlogRendererProvider()
   {
     this.resolver = new ZBlogPostFormatResolverSL();
+    this.related = new ZRelatedPosts();
+    this.caches = new ZRenderCaches();
   }
 
   /**
@@ -119,205 +119,224 @@ public final class ZBlogRendererProvider implements ZBlogRendererProviderType
 
   @Override
   public ZBlogRendererType createRenderer(
-    final ZBlogConfiguration config)
+    final ZBlogConfiguration config,
+    final Seq<ZBlogPostProcessorType> processors)
   {
-    return new Writer(this.resolver, config);
+    return new Writer(
+      this.caches.resolver(this.resolver, config), config, processors, this.related);
   }
 
+  /**
+   * Loading and configuring the feed generators takes a significant fraction
+   * of the time taken to compile a small blog in a new process. The
+   * generators are therefore loaded on a background thread, once per
+   * process, while posts are parsed and rendered, so that they are ready by
+   * the time that the feed is written.
+   */
+
+  private static void prepareFeeds()
+  {
+    if (FEEDS_PREPARED.compareAndSet(false, true)) {
+      Thread.ofPlatform()
+        .daemon()
+        .name("com.io7m.zeptoblog.feeds")
+        .start(ZBlogRendererProvider::prepareFeedsNow);
+    }
+  }
+
+  private static void prepareFeedsNow()
+  {
+    try {
+      final SyndFeed feed = new SyndFeedImpl();
+      feed.setFeedType("atom_1.0");
+      feed.setTitle("");
+      feed.setUri("urn:zeptoblog");
+      feed.setPublishedDate(new Date(0L));
+      new SyndFeedOutput().outputString(feed);
+    } catch (final FeedException | RuntimeException e) {
+      LOG.debug("could not prepare feed generators: ", e);
+    }
+  }
+
+  /**
+   * Page markers must only be unlikely to occur in the content of pages, and
+   * so are not taken from {@link java.util.UUID#randomUUID()}: Seeding the
+   * secure random number generator that it uses is measurably slow.
+   *
+   * @return A random hexadecimal string
+   */
+
+  private static String nonce()
+  {
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    return Long.toHexString(random.nextLong())
+      + Long.toHexString(random.nextLong());
+  }
+
+  static ZError errorOf(
+    final Path path,
+    final Exception e)
+  {
+    return ZError.of(
+      e.getMessage(),
+      LexicalPosition.of(0, 0, Optional.of(path.toAbsolutePath())),
+      Optional.of(e));
+  }
+
+  /**
+   * A function that writes rendered output.
+   */
+
+  private interface OutputType
+  {
+    void write(
+      Path file,
+      byte[] data)
+      throws IOException;
+  }
+
+  private static final class Output
+  {
+    private final Path file;
+    private final byte[] data;
+
+    Output(
+      final Path in_file,
+      final byte[] in_data)
+    {
+      this.file = Objects.requireNonNull(in_file, "file");
+      this.data = Objects.requireNonNull(in_data, "data");
+    }
+  }
+
+  /**
+   * The XML machinery used to assemble and serialize pages. Neither document
+   * builders nor transformers are thread-safe, and so each rendering thread
+   * holds its own.
+   */
+
+  private static final class XMLContext
+  {
+    private final DocumentBuilder builder;
+    private final Transformer serializer;
+
+    XMLContext()
+      throws ParserConfigurationException, TransformerException
+    {
+      this.builder =
+        DocumentBuilderFactory.newDefaultInstance().newDocumentBuilder();
+      this.serializer = ZXML.xmlNewSerializer();
+    }
+  }
+
+  /**
+   * The variable parts of a page.
+   */
+
+  private enum Slot
+  {
+    TITLE,
+    SIGNATURE,
+    UPDATED,
+    FOOTER_LINKS,
+    CONTENT
+  }
+
+  /**
+   * A page under construction. Only the values of the slots of the page
+   * template are held; the rest of the page is shared by every page.
+   */
+
   private static final class Page
   {
     private final Document document;
-    private final Element content;
-    private final Element footer;
+    private final DocumentFragment[] slots;
+    private final Node content;
+    private final Node footer;
+    private final List<byte[]> splices;
 
     Page(
-      final Document in_document,
-      final Element in_header,
-      final Element in_content,
-      final Element in_footer)
+      final Document in_document)
     {
       this.document = in_document;
-      this.content = in_content;
-      this.footer = in_footer;
+      this.slots = new DocumentFragment[Slot.values().length];
+      for (int index = 0; index < this.slots.length; ++index) {
+        this.slots[index] = in_document.createDocumentFragment();
+      }
+      this.content = this.slots[Slot.CONTENT.ordinal()];
+      this.footer = this.slots[Slot.FOOTER_LINKS.ordinal()];
+      this.splices = new ArrayList<>(8);
+    }
+
+    Node slot(
+      final Slot slot)
+    {
+      return this.slots[slot.ordinal()];
     }
   }
 
-  private static final class Writer implements ZBlogRendererType,
-    FileVisitor<Path>
+  private static final class Writer implements ZBlogRendererType
   {
     private final ZBlogConfiguration config;
     private final DateTimeFormatter format_date;
     private final DateTimeFormatter format_time;
     private final ZServiceResolverType<ZBlogPostFormatType> resolver;
-    private Vector<ZError> errors;
+    private final Seq<ZBlogPostProcessorType> processors;
+    private final ZRelatedPosts related;
+    private volatile Map<Path, List<ZBlogPost>> related_posts;
+    private final Map<Path, byte[]> passthrough;
+    private final Map<Path, Element> fragments;
+    private final Set<Path> fragments_failed;
+    private final String passthrough_target;
+    private final String slot_target;
+    private final byte[] slot_marker;
+    private final ZErrorCollector errors;
+    private final ThreadLocal<XMLContext> xml;
+    private final ZBlogOutput files;
     private Optional<Element> footer_pre;
     private Optional<Element> footer_post;
     private Optional<Element> header_replace;
     private Optional<Element> header_pre;
     private Optional<Element> header_post;
+    private ZPageTemplate template;
+    private ZPageTemplate template_xhtml;
 
     Writer(
       final ZServiceResolverType<ZBlogPostFormatType> in_resolver,
-      final ZBlogConfiguration in_config)
+      final ZBlogConfiguration in_config,
+      final Seq<ZBlogPostProcessorType> in_processors,
+      final ZRelatedPosts in_related)
     {
       this.resolver = Objects.requireNonNull(in_resolver, "Resolver");
+      this.processors = Objects.requireNonNull(in_processors, "Processors");
+      this.related = Objects.requireNonNull(in_related, "Related");
+      this.related_posts = Map.of();
       this.config = Objects.requireNonNull(in_config, "config");
-      this.errors = Vector.empty();
+      this.errors = new ZErrorCollector();
+      this.xml = new ThreadLocal<>();
+      this.files = new ZBlogOutput(in_config.outputSync());
       this.format_date = DateTimeFormatter.ofPattern("yyyy-MM-dd");
       this.format_time = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ");
       this.footer_pre = Optional.empty();
       this.footer_post = Optional.empty();
-    }
-
-    private static String version()
-    {
-      return Writer.class.getPackage().getImplementationVersion();
-    }
-
-    private static String ellipsize(
-      final String input,
-      final int max)
-    {
-      if (input.length() < max) {
-        return input;
-      }
-      return input.substring(0, max) + "...";
-    }
-
-    private static Date dateToTime(final ZonedDateTime time)
-    {
-      return new Date(TimeUnit.MILLISECONDS.convert(
-        time.toEpochSecond(),
-        TimeUnit.SECONDS));
-    }
-
-    private static Element metaType(final Document document)
-    {
-      final Element e = document.createElementNS(XHTML_URI_TEXT, "meta");
-      e.setAttribute("http-equiv", "Content-Type");
-      e.setAttribute("content", "application/xhtml+xml; charset=UTF-8");
-      return e;
-    }
-
-    private static Element metaGenerator(final Document document)
-    {
-      final Element e = document.createElementNS(XHTML_URI_TEXT, "meta");
-      e.setAttribute("name", "generator");
-      e.setAttribute(
-        "content",
-        "https://github.com/io7m/zeptoblog; version=" + version());
-      return e;
-    }
-
-    private static Element head(
-      final Document document,
-      final String title)
-    {
-      final Element e = document.createElementNS(XHTML_URI_TEXT, "head");
-      e.appendChild(metaType(document));
-      e.appendChild(metaGenerator(document));
-
-      final Element e_title = document.createElementNS(XHTML_URI_TEXT, "title");
-      e_title.setTextContent(title);
-      e.appendChild(e_title);
-
-      {
-        final Element e_link = document.createElementNS(XHTML_URI_TEXT, "link");
-        e_link.setAttribute("rel", "stylesheet");
-        e_link.setAttribute("type", "text/css");
-        e_link.setAttribute("href", "/reset.css");
-        e.appendChild(e_link);
-      }
-
-      {
-        final Element e_link = document.createElementNS(XHTML_URI_TEXT, "link");
-        e_link.setAttribute("rel", "stylesheet");
-        e_link.setAttribute("type", "text/css");
-        e_link.setAttribute("href", "/style.css");
-        e.appendChild(e_link);
-      }
-
-      {
-        final Element e_link = document.createElementNS(XHTML_URI_TEXT, "link");
-        e_link.setAttribute("rel", "alternate");
-        e_link.setAttribute("type", "application/atom+xml");
-        e_link.setAttribute("href", "/blog.atom");
-        e.appendChild(e_link);
-      }
-
-      return e;
+      this.passthrough = new ConcurrentHashMap<>(128);
+      this.fragments = new ConcurrentHashMap<>(128);
+      this.fragments_failed = ConcurrentHashMap.newKeySet();
+      this.passthrough_target = "zeptoblog-passthrough-" + nonce();
+      this.slot_target = "zeptoblog-slot-" + nonce();
+      this.slot_marker = ZPageTemplate.marker(this.slot_target);
     }
 
     private static void writeFooter(
       final Page page)
     {
-      final Element e = footerPageLinkElement(page.document);
-      e.appendChild(footerPageLinksByYear(page.document));
+      final Element e = ZBlogPageElements.footerPageLinkElement(page.document);
+      e.appendChild(ZBlogPageElements.footerPageLinksByYear(page.document));
       page.footer.insertBefore(e, page.footer.getFirstChild());
     }
 
-    private static Element footerPageLinks(
-      final Document document,
-      final Tuple2<Integer, Seq<ZBlogPost>> page_current,
-      final SortedMap<Integer, Seq<ZBlogPost>> pages)
-    {
-      final Element e = footerPageLinkElement(document);
-      e.appendChild(footerPageLinksByYear(document));
-      e.appendChild(footerPageLinksByPage(document, page_current, pages));
-      return e;
-    }
-
-    private static Element footerPageLinkElement(final Document document)
-    {
-      final Element e = document.createElementNS(XHTML_URI_TEXT, "div");
-      e.setAttribute("id", "zb_footer_links");
-      return e;
-    }
-
-    private static Element footerPageLinksByYear(final Document document)
-    {
-      final Element e_yearly = document.createElementNS(XHTML_URI_TEXT, "div");
-      final Element e_a = document.createElementNS(XHTML_URI_TEXT, "a");
-      e_a.setAttribute("href", "/yearly.xhtml");
-      e_a.setTextContent("Posts by year");
-      e_yearly.appendChild(e_a);
-      return e_yearly;
-    }
-
-    private static Element footerPageLinksByPage(
-      final Document document,
-      final Tuple2<Integer, Seq<ZBlogPost>> page_current,
-      final SortedMap<Integer, Seq<ZBlogPost>> pages)
-    {
-      final Element e_pages = document.createElementNS(XHTML_URI_TEXT, "div");
-      e_pages.setTextContent("Posts by page: ");
-      for (final Tuple2<Integer, Seq<ZBlogPost>> pair : pages) {
-        final int page_human = pair._1.intValue() + 1;
-
-        if (Objects.equals(page_current._1, pair._1)) {
-          e_pages.appendChild(document.createTextNode(Integer.toString(
-            page_human)));
-        } else {
-          final Element e_a = document.createElementNS(XHTML_URI_TEXT, "a");
-          e_a.setAttribute("href", "/" + page_human + ".xhtml");
-          e_a.setTextContent(Integer.toString(page_human));
-          e_pages.appendChild(e_a);
-        }
-        e_pages.appendChild(document.createTextNode(" "));
-      }
-
-      return e_pages;
-    }
-
-    private static boolean extensionIsKnown(
-      final String extension)
-    {
-      return Objects.equals(extension, "zbp");
-    }
-
     private Element body(
-      final Document document,
-      final Path current_file)
+      final Document document)
     {
       final Element e = document.createElementNS(XHTML_URI_TEXT, "body");
       final Element e_head = document.createElementNS(XHTML_URI_TEXT, "div");
@@ -339,7 +358,7 @@ public final class ZBlogRendererProvider implements ZBlogRendererProviderType
       e_content.setAttribute("class", "zb_body");
       e_content.setAttribute("id", "zb_body");
 
-      final Element e_footer = this.footer(document, current_file);
+      final Element e_footer = this.footer(document);
       e.appendChild(e_head);
       e.appendChild(e_content);
       e.appendChild(e_footer);
@@ -347,8 +366,7 @@ public final class ZBlogRendererProvider implements ZBlogRendererProviderType
     }
 
     private Element footer(
-      final Document document,
-      final Path current_file)
+      final Document document)
     {
       final Element e_table = document.createElementNS(XHTML_URI_TEXT, "table");
 
@@ -360,32 +378,7 @@ public final class ZBlogRendererProvider implements ZBlogRendererProviderType
         e_td0.setTextContent("Signed:");
         final Element e_td1 = document.createElementNS(XHTML_URI_TEXT, "td");
         e_tr.appendChild(e_td1);
-
-        final String replaced =
-          current_file.toString()
-            .replaceAll("\\.xhtml$", ".xhtml.asc");
-
-        final Path absolute =
-          current_file.getFileSystem()
-            .getPath(replaced)
-            .toAbsolutePath();
-
-        final Path relative =
-          this.config.outputRoot()
-            .toAbsolutePath()
-            .relativize(absolute);
-
-        final Path sig_file_name = relative.getFileName();
-        if (sig_file_name == null) {
-          throw new IllegalStateException(
-            "Could not resolve a filename for: " + relative);
-        }
-
-        final String sig_name = sig_file_name.toString();
-        final Element e_a = document.createElementNS(XHTML_URI_TEXT, "a");
-        e_a.setAttribute("href", "/" + relative.toString());
-        e_a.setTextContent(sig_name);
-        e_td1.appendChild(e_a);
+        e_td1.appendChild(this.slotMarker(document, Slot.SIGNATURE));
       }
 
       {
@@ -396,7 +389,7 @@ public final class ZBlogRendererProvider implements ZBlogRendererProviderType
         e_td0.setTextContent("Updated:");
         final Element e_td1 = document.createElementNS(XHTML_URI_TEXT, "td");
         e_tr.appendChild(e_td1);
-        e_td1.setTextContent(ZonedDateTime.now().format(this.format_time));
+        e_td1.appendChild(this.slotMarker(document, Slot.UPDATED));
       }
 
       final Element e_footer = document.createElementNS(XHTML_URI_TEXT, "div");
@@ -406,33 +399,65 @@ public final class ZBlogRendererProvider implements ZBlogRendererProviderType
       return e_footer;
     }
 
-    private Page page(
-      final Path current_file,
-      final String title)
-      throws ParserConfigurationException
+    private XMLContext xmlContext()
+      throws ParserConfigurationException, TransformerException
     {
-      final DocumentBuilderFactory builder_factory =
-        DocumentBuilderFactory.newDefaultInstance();
-      final DocumentBuilder builder =
-        builder_factory.newDocumentBuilder();
+      final XMLContext existing = this.xml.get();
+      if (existing != null) {
+        return existing;
+      }
+      final XMLContext created = new XMLContext();
+      this.xml.set(created);
+      return created;
+    }
 
-      final Document doc = builder.newDocument();
+    /**
+     * Import a node that is shared between pages, such as a header element
+     * or a rendered post body. The DOM is not thread-safe even for reads, and
+     * so imports from the same document are serialized.
+     */
+
+    private static Node importShared(
+      final Document target,
+      final Node node)
+    {
+      synchronized (node.getOwnerDocument()) {
+        return target.importNode(node, true);
+      }
+    }
+
+    private Node slotMarker(
+      final Document document,
+      final Slot slot)
+    {
+      return document.createProcessingInstruction(
+        this.slot_target, Integer.toString(slot.ordinal()));
+    }
+
+    /**
+     * Build the parts of a page that are shared by every page, with
+     * processing instructions marking the slots that vary between pages.
+     */
+
+    private Document skeleton()
+      throws ParserConfigurationException, TransformerException
+    {
+      final Document doc = this.xmlContext().builder.newDocument();
       doc.setStrictErrorChecking(true);
 
-      final Element root = doc.createElement("html");
-      root.setAttribute("xmlns", XHTML_URI_TEXT);
-      root.setAttribute("xml:lang", "en");
+      final Element root = ZBlogPageElements.root(doc);
       doc.appendChild(root);
 
-      root.appendChild(head(doc, title));
-      final Element body = this.body(doc, current_file);
+      root.appendChild(
+        ZBlogPageElements.head(doc, this.slotMarker(doc, Slot.TITLE)));
+      final Element body = this.body(doc);
       root.appendChild(body);
 
       final Element head;
       if (this.header_replace.isPresent()) {
-        head = this.header_replace.get();
+        head = (Element) importShared(doc, this.header_replace.get());
         body.removeChild(body.getFirstChild());
-        body.appendChild(body.getOwnerDocument().importNode(head, true));
+        body.appendChild(head);
       } else {
         head = (Element) body.getFirstChild();
       }
@@ -440,29 +465,105 @@ public final class ZBlogRendererProvider implements ZBlogRendererProviderType
       this.header_pre.ifPresent(
         element -> {
           head.insertBefore(
-            head.getOwnerDocument().importNode(element, true),
+            importShared(head.getOwnerDocument(), element),
             head.getFirstChild());
         });
       this.header_post.ifPresent(
         element -> {
-          head.appendChild(
-            head.getOwnerDocument().importNode(element, true));
+          head.appendChild(importShared(head.getOwnerDocument(), element));
         });
 
       final Element foot = (Element) body.getChildNodes().item(2);
       this.footer_pre.ifPresent(
         element -> {
           foot.insertBefore(
-            foot.getOwnerDocument().importNode(element, true),
+            importShared(foot.getOwnerDocument(), element),
             foot.getFirstChild());
         });
       this.footer_post.ifPresent(
         element -> {
-          foot.appendChild(
-            foot.getOwnerDocument().importNode(element, true));
+          foot.appendChild(importShared(foot.getOwnerDocument(), element));
         });
 
-      return new Page(doc, head, (Element) body.getChildNodes().item(1), foot);
+      final Element content = (Element) body.getChildNodes().item(1);
+      content.appendChild(this.slotMarker(doc, Slot.CONTENT));
+      foot.insertBefore(
+        this.slotMarker(doc, Slot.FOOTER_LINKS), foot.getFirstChild());
+      return doc;
+    }
+
+    /**
+     * Compile the page templates. The templates are compiled once per build,
+     * and so the header and footer elements are imported once rather than
+     * once per page.
+     */
+
+    private void compileTemplates()
+      throws ParserConfigurationException, TransformerException, IOException
+    {
+      final Document skeleton = this.skeleton();
+
+      try (ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096)) {
+        ZXML.xmlSerializeToStream(
+          bytes, skeleton, this.xmlContext().serializer);
+        this.template =
+          ZPageTemplate.compile(bytes.toByteArray(), this.slot_marker);
+      }
+
+      try (ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096)) {
+        ZXML.xhtmlSerializeToStream(bytes, skeleton, true);
+        this.template_xhtml =
+          ZPageTemplate.compile(bytes.toByteArray(), this.slot_marker);
+      }
+    }
+
+    private Page page(
+      final Path current_file,
+      final String title)
+      throws ParserConfigurationException, TransformerException
+    {
+      final Document doc = this.xmlContext().builder.newDocument();
+      doc.setStrictErrorChecking(true);
+      doc.appendChild(ZBlogPageElements.root(doc));
+
+      final Page page = new Page(doc);
+      page.slot(Slot.TITLE).appendChild(doc.createTextNode(title));
+      page.slot(Slot.SIGNATURE).appendChild(
+        this.signatureLink(doc, current_file));
+      page.slot(Slot.UPDATED).appendChild(
+        doc.createTextNode(ZonedDateTime.now().format(this.format_time)));
+      return page;
+    }
+
+    private Element signatureLink(
+      final Document document,
+      final Path current_file)
+    {
+      final String replaced =
+        current_file.toString()
+          .replaceAll("\\.xhtml$", ".xhtml.asc");
+
+      final Path absolute =
+        current_file.getFileSystem()
+          .getPath(replaced)
+          .toAbsolutePath();
+
+      final Path relative =
+        this.config.outputRoot()
+          .toAbsolutePath()
+          .relativize(absolute);
+
+      final Path sig_file_name = relative.getFileName();
+      if (sig_file_name == null) {
+        throw new IllegalStateException(
+          "Could not resolve a filename for: " + relative);
+      }
+
+      final String sig_name = sig_file_name.toString();
+      final Element e_a = document.createElementNS(XHTML_URI_TEXT, "a");
+      e_a.setAttribute("href", "/" + relative.toString());
+      e_a.setTextContent(sig_name);
+      return e_a;
     }
 
     @Override
@@ -471,21 +572,205 @@ public final class ZBlogRendererProvider implements ZBlogRendererProviderType
     {
       Objects.requireNonNull(blog, "Blog");
 
+      prepareFeeds();
       this.loadReplacementElements();
+      if (!this.compileTemplatesOrFail()) {
+        return this.result();
+      }
 
+      if (this.config.relatedPosts() > 0) {
+        this.forEachConcurrently(
+          "related",
+          blog.posts().values(),
+          ZBlogPost::path,
+          post -> this.errors.addAll(this.related.update(this.resolver, post)));
+        this.related_posts = this.related.related(
+          blog.posts().values(), this.config.relatedPosts());
+      }
       this.generateSegmentPages(blog);
       this.generatePermalinkPages(blog);
       this.generateYearlyPages(blog);
-      this.generateAtomFeed(blog);
+      new ZFeedWriter(this.config, this.files, this.resolver, this.errors)
+        .write(blog);
+      new ZSitemapWriter(this.config, this.files).write(blog, this.errors);
       this.copyResource("reset.css");
       this.copyResource("style.css");
-      this.copyFiles();
+      this.fragments_failed.clear();
+
+      final ZStaticFileCopier copier =
+        new ZStaticFileCopier(this.config, this.files);
+      copier.run();
+      this.errors.addAll(copier.errors());
+      return this.result();
+    }
 
-      if (this.errors.isEmpty()) {
+    private Validation<Seq<ZError>, Void> result()
+    {
+      this.files.commit(this.errors);
+
+      final Vector<ZError> result = this.errors.errors();
+      if (result.isEmpty()) {
         return Validation.valid(null);
       }
+      return Validation.invalid(result);
+    }
+
+    @Override
+    public Validation<Seq<ZError>, Void> parseAndRender(
+      final ZBlogParserType parser)
+    {
+      Objects.requireNonNull(parser, "Parser");
+
+      prepareFeeds();
+      this.loadReplacementElements();
+      if (!this.compileTemplatesOrFail()) {
+        return this.result();
+      }
+
+      /*
+       * Static files are copied on a separate thread while the blog is
+       * parsed. Each post is passed, as soon as it has been parsed, through a
+       * pipeline of stages: The body and permalink page of each post are
+       * rendered on a pool of platform threads, and the rendered pages are
+       * written to disk on virtual threads. The remaining pages depend on the
+       * complete set of posts, and so are rendered once parsing has
+       * completed. If related posts are listed, permalink pages also depend
+       * on the complete set of posts, and so only the signature of each post
+       * is computed during parsing. In that case, rendered bodies would be
+       * held until parsing completes, and so they are not rendered ahead of
+       * time in low-memory mode.
+       */
+
+      final ZStaticFileCopier copier =
+        new ZStaticFileCopier(this.config, this.files);
+      final Thread copier_thread =
+        Thread.ofVirtual()
+          .name("com.io7m.zeptoblog.copier")
+          .start(copier);
+
+      final ZPipelineStage<Output> writes =
+        ZPipelineStage.start(
+          Thread.ofVirtual().name("com.io7m.zeptoblog.writer-", 0L),
+          this.config.writeThreads(),
+          PIPELINE_CAPACITY,
+          this.errors,
+          out -> out.file,
+          out -> {
+            try {
+              this.files.write(out.file, out.data);
+            } catch (final IOException e) {
+              this.errors.add(errorOf(out.file, e));
+            }
+          });
+
+      final ZPipelineStage<ZBlogPost> rendering =
+        ZPipelineStage.start(
+          Thread.ofPlatform().name("com.io7m.zeptoblog.renderer-", 0L),
+          this.renderThreadCount(),
+          PIPELINE_CAPACITY,
+          this.errors,
+          ZBlogPost::path,
+          post -> {
+            if (this.config.relatedPosts() > 0) {
+              if (!this.config.lowMemory()) {
+                this.renderFragment(post);
+              }
+              this.errors.addAll(this.related.update(this.resolver, post));
+            } else {
+              this.renderFragment(post);
+              this.generatePermalinkPage(
+                post, (file, data) -> writes.submit(new Output(file, data)));
+            }
+          });
+
+      final Validation<Seq<ZError>, ZBlog> parsed;
+      try {
+        parsed = parser.parse(rendering::submit);
+      } finally {
+        ZPipelineStage.finishAll(rendering, writes);
+      }
+
+      if (parsed.isValid()) {
+        final ZBlog blog = parsed.get();
+        if (this.config.relatedPosts() > 0) {
+          this.related_posts = this.related.related(
+            blog.posts().values(), this.config.relatedPosts());
+          this.generatePermalinkPages(blog);
+        }
+        this.generateSegmentPages(blog);
+        this.generateYearlyPages(blog);
+        new ZFeedWriter(this.config, this.files, this.resolver, this.errors)
+        .write(blog);
+        new ZSitemapWriter(this.config, this.files).write(blog, this.errors);
+        this.copyResource("reset.css");
+        this.copyResource("style.css");
+      } else {
+        this.errors.addAll(parsed.getError());
+      }
+
+      this.fragments.clear();
+      this.fragments_failed.clear();
+
+      try {
+        copier_thread.join();
+        this.errors.addAll(copier.errors());
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        this.failException(this.config.sourceRoot(), e);
+      }
 
-      return Validation.invalid(this.errors);
+      return this.result();
+    }
+
+    /**
+     * Apply the given handler to each of the given items across the rendering
+     * threads, returning once every item has been handled.
+     */
+
+    private <T> void forEachConcurrently(
+      final String name,
+      final Iterable<T> items,
+      final Function<? super T, Path> item_files,
+      final ZPipelineStage.HandlerType<T> handler)
+    {
+      final ZPipelineStage<T> stage =
+        ZPipelineStage.start(
+          Thread.ofPlatform().name("com.io7m.zeptoblog." + name + "-", 0L),
+          this.renderThreadCount(),
+          PIPELINE_CAPACITY,
+          this.errors,
+          item_files,
+          handler);
+
+      try {
+        for (final T item : items) {
+          stage.submit(item);
+        }
+      } finally {
+        stage.finish();
+      }
+    }
+
+    private int renderThreadCount()
+    {
+      final int configured = this.config.renderThreads();
+      if (configured == 0) {
+        return Runtime.getRuntime().availableProcessors();
+      }
+      return configured;
+    }
+
+    private boolean compileTemplatesOrFail()
+    {
+      try {
+        this.compileTemplates();
+        return true;
+      } catch (final ParserConfigurationException
+                     | TransformerException
+                     | IOException e) {
+        this.failException(this.config.outputRoot(), e);
+        return false;
+      }
     }
 
     private void loadReplacementElements()
@@ -523,14 +808,7 @@ public final class ZBlogRendererProvider implements ZBlogRendererProviderType
       LOG.debug("out: yearly {}", out_xhtml);
 
       try {
-        final Path parent = out_xhtml.getParent();
-        if (parent == null) {
-          throw new IllegalStateException(
-            "Could not resolve the parent path of: " + out_xhtml);
-        }
-
-        Files.createDirectories(parent);
-        try (OutputStream output = Files.newOutputStream(out_xhtml)) {
+        this.files.write(out_xhtml, output -> {
           final Page page = this.page(out_xhtml, sb.toString());
 
           final Vector<Tuple2<Integer, Seq<ZBlogPost>>> posts_reversed =
@@ -541,8 +819,8 @@ public final class ZBlogRendererProvider implements ZBlogRendererProviderType
               this.generateYearlyIndex(page.document, pair._1, pair._2));
           }
 
-          ZXML.xhtmlSerializeToStream(output, page.document, true);
-        }
+          this.serializePage(output, page, this.template_xhtml);
+        });
       } catch (final Exception e) {
         this.failException(out_xhtml, e);
       }
@@ -590,185 +868,167 @@ public final class ZBlogRendererProvider implements ZBlogRendererProviderType
       return e;
     }
 
-    private void generateAtomFeed(
+    private void generateSegmentPages(
       final ZBlog blog)
     {
-      final Path out_atom =
-        this.config.outputRoot().resolve("blog.atom").toAbsolutePath();
+      final SortedMap<Integer, Seq<ZBlogPost>> pages =
+        blog.postsGroupedByPage(this.config.postsPerPage());
 
-      LOG.debug("atom: {}", out_atom);
+      this.forEachConcurrently(
+        "segment",
+        pages,
+        this::segmentFile,
+        pair -> this.generateSegmentPage(pages, pair));
+    }
 
-      try (OutputStream output = Files.newOutputStream(out_atom)) {
-        final SyndFeed feed = new SyndFeedImpl();
-        feed.setFeedType("atom_0.3");
-        feed.setTitle(blog.title());
-        feed.setDescription("Atom feed");
-        feed.setLink(this.config.siteURI().toString());
-        feed.setAuthor(this.config.author());
+    private Path segmentFile(
+      final Tuple2<Integer, Seq<ZBlogPost>> pair)
+    {
+      final int page_human = pair._1.intValue() + 1;
+      return this.config.outputRoot()
+        .resolve(page_human + ".xhtml")
+        .toAbsolutePath();
+    }
 
-        final SortedMap<ZonedDateTime, ZBlogPost> by_date = blog.postsByDate();
-        final Option<Tuple2<ZonedDateTime, ZBlogPost>> last_opt = by_date.lastOption();
+    private void generateSegmentPage(
+      final SortedMap<Integer, Seq<ZBlogPost>> pages,
+      final Tuple2<Integer, Seq<ZBlogPost>> pair)
+    {
+      final int page_human = pair._1.intValue() + 1;
+      final Path out_xhtml = this.segmentFile(pair);
 
-        if (last_opt.isDefined()) {
-          final Tuple2<ZonedDateTime, ZBlogPost> last = last_opt.get();
-          feed.setPublishedDate(dateToTime(last._1));
-        }
+      final StringBuilder sb = new StringBuilder(128);
+      sb.append(this.config.title());
+      sb.append(": Page ");
+      sb.append(page_human);
+      sb.append('/');
+      sb.append(pages.size());
+      LOG.debug("out: segmented {}", out_xhtml);
 
-        final List<SyndEntry> entries =
-          new ArrayList<>(by_date.size());
-        final Iterator<Tuple2<ZonedDateTime, ZBlogPost>> iterator =
-          by_date.map(Function.identity()).reverseIterator();
-
-        while (iterator.hasNext()) {
-          final Tuple2<ZonedDateTime, ZBlogPost> entry = iterator.next();
-          final ZBlogPost post = entry._2;
-
-          Preconditions.checkPrecondition(
-            post.date().isPresent(), "Post must have a date");
-
-          final List<SyndContent> content = new ArrayList<>(1);
-          final SyndContentImpl cc = new SyndContentImpl();
-          cc.setType(Content.TEXT);
-
-          {
-            final Optional<ZBlogPostFormatType> format_opt =
-              this.resolver.resolve(post.body().format());
-            if (format_opt.isPresent()) {
-              final ZBlogPostFormatType format = format_opt.get();
-              final Validation<Seq<ZError>, String> result =
-                format.producePlain(post.path(), post.body().text());
-
-              if (result.isValid()) {
-                cc.setValue(ellipsize(result.get(), 256));
-              } else {
-                this.errors = this.errors.appendAll(result.getError());
-                throw new IOException("An error occurred in a format provider");
-              }
-            } else {
-              throw new UnsupportedOperationException(
-                "No format provider exists for the format: " + post.body().format());
-            }
+      try {
+        this.files.write(out_xhtml, output -> {
+          final Page page = this.page(out_xhtml, sb.toString());
+
+          for (final ZBlogPost post : pair._2) {
+            page.content.appendChild(this.writePost(page, post));
           }
 
-          cc.setMode(Content.ESCAPED);
-          content.add(cc);
-
-          final SyndEntry feed_entry = new SyndEntryImpl();
-          final Date date = dateToTime(post.date().get());
-          feed_entry.setTitle(post.title());
-          feed_entry.setUpdatedDate(date);
-          feed_entry.setPublishedDate(date);
-          feed_entry.setContents(content);
-          feed_entry.setAuthor(this.config.author());
-          final String link = post.outputPermalinkLink(this.config);
-          LOG.debug("feed link: {}", link);
-          feed_entry.setLink(link);
-          entries.add(feed_entry);
-        }
+          page.footer.insertBefore(
+            ZBlogPageElements.footerPageLinks(page.document, pair, pages),
+            page.footer.getFirstChild());
 
-        feed.setEntries(entries);
-        output.write(new SyndFeedOutput().outputString(feed)
-                       .getBytes(StandardCharsets.UTF_8));
-        output.flush();
-      } catch (final IOException | FeedException e) {
-        this.failException(out_atom, e);
+          this.serializePage(output, page, this.template);
+        });
+      } catch (final Exception e) {
+        this.failException(out_xhtml, e);
       }
     }
 
-    private void generateSegmentPages(
+    private void generatePermalinkPages(
       final ZBlog blog)
     {
-      final SortedMap<Integer, Seq<ZBlogPost>> pages =
-        blog.postsGroupedByPage(this.config.postsPerPage());
+      this.forEachConcurrently(
+        "permalink",
+        blog.posts().values(),
+        ZBlogPost::path,
+        post -> this.generatePermalinkPage(post, this.files::write));
+    }
 
-      for (final Tuple2<Integer, Seq<ZBlogPost>> pair : pages) {
-        final int page_human = pair._1.intValue() + 1;
-
-        final Path out_xhtml =
-          this.config.outputRoot().resolve(page_human + ".xhtml").toAbsolutePath();
-
-        final StringBuilder sb = new StringBuilder(128);
-        sb.append(this.config.title());
-        sb.append(": Page ");
-        sb.append(page_human);
-        sb.append('/');
-        sb.append(pages.size());
-        LOG.debug("out: segmented {}", out_xhtml);
-
-        try {
-          final Path parent = out_xhtml.getParent();
-          if (parent == null) {
-            throw new IllegalStateException(
-              "Could not resolve the parent path of: " + out_xhtml);
-          }
+    private void generatePermalinkPage(
+      final ZBlogPost post,
+      final OutputType output)
+    {
+      final Path out_xhtml =
+        post.outputPermalinkFileAbsolute(this.config).toAbsolutePath();
 
-          Files.createDirectories(parent);
-          try (OutputStream output = Files.newOutputStream(out_xhtml)) {
-            final Page page = this.page(out_xhtml, sb.toString());
+      final StringBuilder sb = new StringBuilder(128);
+      sb.append(this.config.title());
+      sb.append(": ");
+      sb.append(post.title());
+      LOG.debug("out: permalink {}", out_xhtml);
+
+      try (ByteArrayOutputStream bytes = new ByteArrayOutputStream(16384)) {
+        final Page page = this.page(out_xhtml, sb.toString());
+        final Element e_post = this.writePost(page, post);
+        ZBlogPageElements.relatedPosts(
+          (Element) e_post.getLastChild(),
+          this.config,
+          this.related_posts.getOrDefault(post.path(), List.of()));
+        page.content.appendChild(e_post);
+        writeFooter(page);
+        this.serializePage(bytes, page, this.template);
+        output.write(out_xhtml, bytes.toByteArray());
+      } catch (final ParserConfigurationException
+                     | TransformerException
+                     | IOException e) {
+        this.failException(out_xhtml, e);
+      }
+    }
 
-            for (final ZBlogPost post : pair._2) {
-              page.content.appendChild(this.writePost(page.document, post));
-            }
+    /**
+     * Render the body of the given post ahead of page assembly, so that the
+     * result can be reused by every page that contains the post.
+     */
 
-            page.footer.insertBefore(
-              footerPageLinks(page.document, pair, pages),
-              page.footer.getFirstChild());
+    private void renderFragment(
+      final ZBlogPost post)
+    {
+      final Optional<ZBlogPostFormatType> format_opt =
+        this.resolver.resolve(post.content().format());
+      if (format_opt.isEmpty()) {
+        return;
+      }
 
-            ZXML.xmlSerializeToStream(output, page.document);
-          } catch (final ParserConfigurationException | TransformerException e) {
-            this.failException(out_xhtml, e);
+      final ZBlogPostFormatType format = format_opt.get();
+      try {
+        final Seq<ZError> failures;
+        if (this.isPassthrough(format)) {
+          if (this.config.lowMemory()) {
+            return;
           }
-        } catch (final IOException e) {
-          this.failException(out_xhtml, e);
+          final Validation<Seq<ZError>, byte[]> result =
+            format.producePassthrough(post.path(), bodyText(post));
+          result.forEach(data -> this.passthrough.put(post.path(), data));
+          failures = result.isInvalid() ? result.getError() : Vector.empty();
+        } else {
+          final Validation<Seq<ZError>, Element> result =
+            this.produceXHTML(format, post);
+          result.forEach(element -> this.fragments.put(post.path(), element));
+          failures = result.isInvalid() ? result.getError() : Vector.empty();
+        }
+
+        if (!failures.isEmpty()) {
+          this.failFragment(post, failures);
+        }
+      } catch (final IOException e) {
+        if (this.fragments_failed.add(post.path())) {
+          this.failException(post.path(), e);
         }
       }
     }
 
-    private void generatePermalinkPages(
-      final ZBlog blog)
-    {
-      for (final ZBlogPost post : blog.posts().values()) {
-        final Path out_xhtml =
-          post.outputPermalinkFileAbsolute(this.config).toAbsolutePath();
-
-        final StringBuilder sb = new StringBuilder(128);
-        sb.append(this.config.title());
-        sb.append(": ");
-        sb.append(post.title());
-        LOG.debug("out: permalink {}", out_xhtml);
-
-        try {
-          final Path parent = out_xhtml.getParent();
-          if (parent == null) {
-            throw new IllegalStateException(
-              "Could not resolve the parent path of: " + out_xhtml);
-          }
+    /**
+     * Record that the body of the given post could not be rendered. A post
+     * body may be rendered for several pages, and so the errors are only
+     * reported for the first failure.
+     */
 
-          Files.createDirectories(parent);
-          try (OutputStream output = Files.newOutputStream(out_xhtml)) {
-            final Page page = this.page(out_xhtml, sb.toString());
-            page.content.appendChild(this.writePost(page.document, post));
-            writeFooter(page);
-            ZXML.xmlSerializeToStream(output, page.document);
-          } catch (final ParserConfigurationException | TransformerException e) {
-            this.failException(out_xhtml, e);
-          }
-        } catch (final IOException e) {
-          this.failException(out_xhtml, e);
-        }
+    private IOException failFragment(
+      final ZBlogPost post,
+      final Seq<ZError> failures)
+    {
+      if (this.fragments_failed.add(post.path())) {
+        this.errors.addAll(failures);
       }
+      return new IOException("An error occurred in a format provider");
     }
 
-    private void copyFiles()
+    private void checkFragmentNotFailed(
+      final ZBlogPost post)
+      throws IOException
     {
-      try {
-        Files.walkFileTree(
-          this.config.sourceRoot(),
-          EnumSet.noneOf(FileVisitOption.class),
-          Integer.MAX_VALUE,
-          this);
-      } catch (final IOException e) {
-        this.failException(this.config.sourceRoot(), e);
+      if (this.fragments_failed.contains(post.path())) {
+        throw new IOException("An error occurred in a format provider");
       }
     }
 
@@ -779,15 +1039,12 @@ public final class ZBlogRendererProvider implements ZBlogRendererProviderType
       try {
         LOG.debug("write {} -> {}", name, out_path);
 
-        try (OutputStream out = Files.newOutputStream(out_path)) {
-          final Class<ZBlogRendererProvider> c = ZBlogRendererProvider.class;
-          try (InputStream in =
-                 c.getResourceAsStream("/com/io7m/zeptoblog/core/" + name)) {
-            IOUtils.copy(in, out);
-            out.flush();
-          }
+        final Class<ZBlogRendererProvider> c = ZBlogRendererProvider.class;
+        try (InputStream in =
+               c.getResourceAsStream("/com/io7m/zeptoblog/core/" + name)) {
+          this.files.write(out_path, out -> IOUtils.copy(in, out));
         }
-      } catch (final IOException e) {
+      } catch (final Exception e) {
         this.failException(out_path, e);
       }
     }
@@ -796,17 +1053,15 @@ public final class ZBlogRendererProvider implements ZBlogRendererProviderType
       final Path out,
       final Exception e)
     {
-      this.errors = this.errors.append(ZError.of(
-        e.getMessage(),
-        LexicalPosition.of(0, 0, Optional.of(out.toAbsolutePath())),
-        Optional.of(e)));
+      this.errors.add(errorOf(out, e));
     }
 
     private Element writePost(
-      final Document document,
+      final Page page,
       final ZBlogPost post)
       throws IOException
     {
+      final Document document = page.document;
       final Element e = document.createElementNS(XHTML_URI_TEXT, "div");
       e.setAttribute("class", "zb_post");
 
@@ -843,28 +1098,21 @@ public final class ZBlogRendererProvider implements ZBlogRendererProviderType
 
       {
         final Optional<ZBlogPostFormatType> format_opt =
-          this.resolver.resolve(post.body().format());
+          this.resolver.resolve(post.content().format());
 
         if (format_opt.isPresent()) {
           final ZBlogPostFormatType format = format_opt.get();
-          final Validation<Seq<ZError>, Element> result =
-            format.produceXHTML(post.path(), post.body().text());
-
-          if (result.isValid()) {
-            final Element content = result.get();
-            final NodeList nodes = content.getChildNodes();
-            for (int index = 0; index < nodes.getLength(); ++index) {
-              final Node node = nodes.item(index);
-              final Document e_body_owner = e_body.getOwnerDocument();
-              e_body.appendChild(e_body_owner.importNode(node, true));
-            }
+          if (this.isPassthrough(format)) {
+            page.splices.add(this.passthroughContent(format, post));
+            e_body.appendChild(document.createProcessingInstruction(
+              this.passthrough_target,
+              Integer.toString(page.splices.size() - 1)));
           } else {
-            this.errors = this.errors.appendAll(result.getError());
-            throw new IOException("An error occurred in a format provider");
+            this.writePostBodyXHTML(format, e_body, post);
           }
         } else {
           throw new UnsupportedOperationException(
-            "No format provider exists for the format: " + post.body().format());
+            "No format provider exists for the format: " + post.content().format());
         }
       }
 
@@ -874,52 +1122,188 @@ public final class ZBlogRendererProvider implements ZBlogRendererProviderType
       return e;
     }
 
-    @Override
-    public FileVisitResult preVisitDirectory(
-      final Path dir,
-      final BasicFileAttributes attrs)
+    /**
+     * Fetch the body text of the given post. Bodies that are read lazily in
+     * low memory mode report I/O errors as unchecked exceptions.
+     */
+
+    private static String bodyText(
+      final ZBlogPost post)
+      throws IOException
     {
-      return FileVisitResult.CONTINUE;
+      try {
+        return post.content().text();
+      } catch (final UncheckedIOException e) {
+        throw e.getCause();
+      }
     }
 
-    @Override
-    public FileVisitResult visitFile(
-      final Path file,
-      final BasicFileAttributes attrs)
+    /**
+     * Passthrough content is never parsed into a document, and so cannot be
+     * given to post processors.
+     */
+
+    private boolean isPassthrough(
+      final ZBlogPostFormatType format)
+    {
+      return this.config.passthrough()
+        && format.supportsPassthrough()
+        && this.processors.isEmpty();
+    }
+
+    private Validation<Seq<ZError>, Element> produceXHTML(
+      final ZBlogPostFormatType format,
+      final ZBlogPost post)
       throws IOException
     {
-      final String extension = FilenameUtils.getExtension(file.toString());
-      if (extension != null && !extensionIsKnown(extension)) {
-        final Path relative =
-          this.config.sourceRoot().relativize(file.toAbsolutePath());
-        final Path output =
-          this.config.outputRoot().resolve(relative);
+      final Validation<Seq<ZError>, Element> result =
+        format.produceXHTML(post.path(), bodyText(post));
+      if (result.isValid()) {
+        final Element body = result.get();
+        this.processors.forEach(processor -> processor.process(post, body));
+      }
+      return result;
+    }
 
-        if (Files.isSymbolicLink(file)) {
-          Files.createSymbolicLink(output, Files.readSymbolicLink(file));
-        } else {
-          LOG.debug("copying {} -> {}", file, output);
-          Files.copy(file, output, StandardCopyOption.REPLACE_EXISTING);
+    private void writePostBodyXHTML(
+      final ZBlogPostFormatType format,
+      final Element e_body,
+      final ZBlogPost post)
+      throws IOException
+    {
+      this.checkFragmentNotFailed(post);
+
+      final Element fragment =
+        this.config.lowMemory()
+          ? this.fragments.remove(post.path())
+          : this.fragments.get(post.path());
+
+      final Validation<Seq<ZError>, Element> result;
+      if (fragment != null) {
+        result = Validation.valid(fragment);
+      } else {
+        result = this.produceXHTML(format, post);
+      }
+
+      if (result.isValid()) {
+        final Element content = result.get();
+        final Document e_body_owner = e_body.getOwnerDocument();
+        synchronized (content.getOwnerDocument()) {
+          final NodeList nodes = content.getChildNodes();
+          for (int index = 0; index < nodes.getLength(); ++index) {
+            e_body.appendChild(e_body_owner.importNode(nodes.item(index), true));
+          }
         }
+      } else {
+        throw this.failFragment(post, result.getError());
       }
-      return FileVisitResult.CONTINUE;
     }
 
-    @Override
-    public FileVisitResult visitFileFailed(
-      final Path file,
-      final IOException exc)
+    /**
+     * Fetch the passthrough content for the given post. The content is
+     * validated once and is then reused for every page that contains the post.
+     */
+
+    private byte[] passthroughContent(
+      final ZBlogPostFormatType format,
+      final ZBlogPost post)
+      throws IOException
     {
-      this.failException(file, exc);
-      return FileVisitResult.CONTINUE;
+      this.checkFragmentNotFailed(post);
+
+      final byte[] existing = this.passthrough.get(post.path());
+      if (existing != null) {
+        return existing;
+      }
+
+      final Validation<Seq<ZError>, byte[]> result =
+        format.producePassthrough(post.path(), bodyText(post));
+      if (result.isInvalid()) {
+        throw this.failFragment(post, result.getError());
+      }
+
+      /*
+       * In low memory mode, post bodies are not held in memory for the
+       * duration of the build, and so neither is the passthrough content.
+       */
+
+      final byte[] content = result.get();
+      if (!this.config.lowMemory()) {
+        this.passthrough.put(post.path(), content);
+      }
+      return content;
     }
 
-    @Override
-    public FileVisitResult postVisitDirectory(
-      final Path dir,
-      final IOException exc)
+    /**
+     * Serialize the given page. The values of the slots of the page are
+     * serialized and are then written into the given template. Passthrough
+     * content is represented in the document by processing instructions,
+     * and these are replaced in the serialized output with the content
+     * itself.
+     */
+
+    private void serializePage(
+      final OutputStream output,
+      final Page page,
+      final ZPageTemplate page_template)
+      throws TransformerException, IOException, ParserConfigurationException
+    {
+      final Document document = page.document;
+      final Element root = document.getDocumentElement();
+      for (final Slot slot : Slot.values()) {
+        root.appendChild(this.slotMarker(document, slot));
+        root.appendChild(page.slot(slot));
+      }
+
+      final ByteArrayOutputStream buffer = new ByteArrayOutputStream(16384);
+      ZXML.xmlSerializeToStream(
+        buffer, document, this.xmlContext().serializer);
+
+      final byte[] values = buffer.toByteArray();
+      final int[] ranges =
+        ZPageTemplate.ranges(values, this.slot_marker, Slot.values().length);
+
+      if (page.splices.isEmpty()) {
+        page_template.write(
+          output,
+          values,
+          ranges,
+          (out, data, start, end) -> out.write(data, start, end - start));
+      } else {
+        page_template.write(
+          output,
+          values,
+          ranges,
+          (out, data, start, end) ->
+            this.writeSpliced(out, page, data, start, end));
+      }
+      output.flush();
+    }
+
+    private void writeSpliced(
+      final OutputStream output,
+      final Page page,
+      final byte[] bytes,
+      final int start,
+      final int end)
+      throws IOException
     {
-      return FileVisitResult.CONTINUE;
+      final byte[] marker = ZPageTemplate.marker(this.passthrough_target);
+      final int[] index = new int[1];
+
+      int position = start;
+      while (true) {
+        final int found = ZPageTemplate.indexOf(bytes, marker, position, end);
+        if (found == -1) {
+          output.write(bytes, position, end - position);
+          break;
+        }
+
+        output.write(bytes, position, found - position);
+        position =
+          ZPageTemplate.markerIndex(bytes, found + marker.length, index);
+        output.write(page.splices.get(index[0]));
+      }
     }
   }
 }
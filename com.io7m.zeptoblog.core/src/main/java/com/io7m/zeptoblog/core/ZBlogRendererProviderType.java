@@ -16,6 +16,8 @@
 
 package com.io7m.zeptoblog.core;
 
+import io.vavr.collection.Seq;
+import io.vavr.collection.Vector;
 import org.osgi.annotation.versioning.ProviderType;
 
 /**
@@ -31,6 +33,21 @@ public interface ZBlogRendererProviderType
    * @return A new blog renderer
    */
 
+  default ZBlogRendererType createRenderer(
+    final ZBlogConfiguration config)
+  {
+    return this.createRenderer(config, Vector.empty());
+  }
+
+  /**
+   * @param config     A blog configuration
+   * @param processors The processors applied to the body of each post, in
+   *                   order
+   *
+   * @return A new blog renderer
+   */
+
   ZBlogRendererType createRenderer(
-    ZBlogConfiguration config);
+    ZBlogConfiguration config,
+    Seq<ZBlogPostProcessorType> processors);
 }
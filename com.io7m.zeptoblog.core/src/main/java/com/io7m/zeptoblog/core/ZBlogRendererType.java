@@ -35,4 +35,23 @@ public interface ZBlogRendererType
 
   Validation<Seq<ZError>, Void> render(
     ZBlog blog);
+
+  /**
+   * Parse and render a blog. Implementations may begin rendering individual
+   * posts, and copying static files, before parsing has completed.
+   *
+   * @param parser The blog parser
+   *
+   * @return Nothing, or a list of parsing and rendering errors
+   */
+
+  default Validation<Seq<ZError>, Void> parseAndRender(
+    final ZBlogParserType parser)
+  {
+    final Validation<Seq<ZError>, ZBlog> result = parser.parse();
+    if (result.isInvalid()) {
+      return Validation.invalid(result.getError());
+    }
+    return this.render(result.get());
+  }
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.core;
+
+import io.vavr.collection.Vector;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * <p>A thread-safe collector of errors.</p>
+ *
+ * <p>Errors may be added from any thread, in any order. The collected errors
+ * are returned ordered by the file to which each error refers. Errors that
+ * refer to the same file are returned in the order in which they were added,
+ * so as long as each file is processed by at most one thread at a time,
+ * the returned order is the same on every run.</p>
+ */
+
+final class ZErrorCollector
+{
+  private static final Comparator<ZError> ORDER =
+    Comparator.comparing(
+      error -> error.position().file().map(Path::toString).orElse(""));
+
+  private final List<ZError> errors;
+
+  ZErrorCollector()
+  {
+    this.errors = new ArrayList<>(16);
+  }
+
+  /**
+   * Add an error.
+   *
+   * @param error The error
+   */
+
+  void add(
+    final ZError error)
+  {
+    Objects.requireNonNull(error, "error");
+    synchronized (this.errors) {
+      this.errors.add(error);
+    }
+  }
+
+  /**
+   * Add a sequence of errors.
+   *
+   * @param in_errors The errors
+   */
+
+  void addAll(
+    final Iterable<ZError> in_errors)
+  {
+    Objects.requireNonNull(in_errors, "errors");
+    synchronized (this.errors) {
+      for (final ZError error : in_errors) {
+        this.errors.add(Objects.requireNonNull(error, "error"));
+      }
+    }
+  }
+
+  /**
+   * @return The collected errors, in a stable order
+   */
+
+  Vector<ZError> errors()
+  {
+    final List<ZError> sorted;
+    synchronized (this.errors) {
+      sorted = new ArrayList<>(this.errors);
+    }
+    sorted.sort(ORDER);
+    return Vector.ofAll(sorted);
+  }
+}
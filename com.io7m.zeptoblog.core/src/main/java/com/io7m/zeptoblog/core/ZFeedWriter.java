@@ -0,0 +1,454 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.zeptoblog.core;
+
+import com.io7m.jaffirm.core.Preconditions;
+import com.rometools.rome.feed.atom.Content;
+import com.rometools.rome.feed.synd.SyndContent;
+import com.rometools.rome.feed.synd.SyndContentImpl;
+import com.rometools.rome.feed.synd.SyndEntry;
+import com.rometools.rome.feed.synd.SyndEntryImpl;
+import com.rometools.rome.feed.synd.SyndFeed;
+import com.rometools.rome.feed.synd.SyndFeedImpl;
+import com.rometools.rome.feed.synd.SyndLink;
+import com.rometools.rome.feed.synd.SyndLinkImpl;
+import com.rometools.rome.io.FeedException;
+import com.rometools.rome.io.SyndFeedOutput;
+import io.vavr.collection.Iterator;
+import io.vavr.collection.Seq;
+import io.vavr.collection.Vector;
+import io.vavr.control.Option;
+import io.vavr.control.Validation;
+import org.jdom2.Namespace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>A writer that produces the Atom feed of a blog.</p>
+ *
+ * <p>If {@link ZBlogConfiguration#feedArchiveSize()} is positive, the feed
+ * is split into RFC 5005 archived feeds: The dated posts are split, oldest
+ * first, into blocks of that many posts. Each full block is written to its
+ * own archive document, and the remaining posts are written to the
+ * subscription document. Each archive document records a fingerprint of the
+ * paths, dates, titles, and bodies of its posts, and of its links, and an
+ * existing archive is rewritten only if its fingerprint has changed. An
+ * archive therefore changes when a post is added to, removed from, or
+ * edited within its block, and the newest archive gains its next-archive
+ * link when its successor is first written.</p>
+ */
+
+final class ZFeedWriter
+{
+  private static final Logger LOG;
+  private static final Namespace FEED_HISTORY;
+  private static final Namespace FEED_ZEPTOBLOG;
+  private static final Pattern ARCHIVE_NAME;
+  private static final int FEED_EXCERPT_LENGTH = 256;
+
+  static {
+    LOG = LoggerFactory.getLogger(ZFeedWriter.class);
+    FEED_HISTORY = Namespace.getNamespace(
+      "fh", "http://purl.org/syndication/history/1.0");
+    FEED_ZEPTOBLOG = Namespace.getNamespace(
+      "zb", "urn:com.io7m.zeptoblog:feed:1");
+    ARCHIVE_NAME = Pattern.compile("blog-archive-([0-9]+)\\.atom");
+  }
+
+  private final ZBlogConfiguration config;
+  private final ZBlogOutput files;
+  private final ZServiceResolverType<ZBlogPostFormatType> resolver;
+  private final ZErrorCollector errors;
+
+  ZFeedWriter(
+    final ZBlogConfiguration in_config,
+    final ZBlogOutput in_files,
+    final ZServiceResolverType<ZBlogPostFormatType> in_resolver,
+    final ZErrorCollector in_errors)
+  {
+    this.config = Objects.requireNonNull(in_config, "config");
+    this.files = Objects.requireNonNull(in_files, "files");
+    this.resolver = Objects.requireNonNull(in_resolver, "resolver");
+    this.errors = Objects.requireNonNull(in_errors, "errors");
+  }
+
+  private static String ellipsize(
+    final String input,
+    final int max)
+  {
+    if (input.length() < max) {
+      return input;
+    }
+    return input.substring(0, max) + "...";
+  }
+
+  private static String feedArchiveName(
+    final int index)
+  {
+    return "blog-archive-" + (index + 1) + ".atom";
+  }
+
+  private static Date dateToTime(final ZonedDateTime time)
+  {
+    return new Date(TimeUnit.MILLISECONDS.convert(
+      time.toEpochSecond(),
+      TimeUnit.SECONDS));
+  }
+
+  private static String bodyText(
+    final ZBlogPost post)
+    throws IOException
+  {
+    try {
+      return post.content().text();
+    } catch (final UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private static void digestString(
+    final MessageDigest digest,
+    final String text)
+  {
+    final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    digest.update(ByteBuffer.allocate(4).putInt(bytes.length).flip());
+    digest.update(bytes);
+  }
+
+  /**
+   * Write the feed for the given blog.
+   *
+   * @param blog The blog
+   */
+
+  void write(
+    final ZBlog blog)
+  {
+    Objects.requireNonNull(blog, "blog");
+
+    if (this.config.feedArchiveSize() > 0) {
+      this.writeArchived(blog);
+      return;
+    }
+
+    this.deleteStale(0);
+
+    final Path out_atom =
+      this.config.outputRoot().resolve("blog.atom").toAbsolutePath();
+
+    LOG.debug("atom: {}", out_atom);
+
+    try {
+      final SyndFeed feed = this.feedCreate(
+        blog, "atom_0.3", blog.postsByDate().values().toVector());
+      this.feedWrite(out_atom, feed);
+    } catch (final IOException | FeedException e) {
+      this.errors.add(ZErrors.ofExceptionPath(e, out_atom));
+    }
+  }
+
+  private void writeArchived(
+    final ZBlog blog)
+  {
+    final int size = this.config.feedArchiveSize();
+    final Vector<ZBlogPost> posts = blog.postsByDate().values().toVector();
+    final int complete = posts.size() / size;
+    final Path root = this.config.outputRoot().toAbsolutePath();
+
+    for (int index = 0; index < complete; ++index) {
+      final Path out_atom = root.resolve(feedArchiveName(index));
+      try {
+        this.writeArchive(
+          blog,
+          out_atom,
+          index,
+          index + 1 == complete,
+          posts.subSequence(index * size, (index + 1) * size));
+      } catch (final IOException | FeedException e) {
+        this.errors.add(ZErrors.ofExceptionPath(e, out_atom));
+      }
+    }
+
+    this.deleteStale(complete);
+
+    final Path out_atom = root.resolve("blog.atom");
+    LOG.debug("atom: {}", out_atom);
+
+    try {
+      final SyndFeed feed = this.feedCreateArchived(
+        blog, "blog.atom", posts.subSequence(complete * size));
+
+      final List<SyndLink> links = new ArrayList<>(2);
+      links.add(this.feedLink("self", "blog.atom"));
+      if (complete > 0) {
+        links.add(this.feedLink("prev-archive", feedArchiveName(complete - 1)));
+      }
+      feed.setLinks(links);
+      this.feedWrite(out_atom, feed);
+    } catch (final IOException | FeedException e) {
+      this.errors.add(ZErrors.ofExceptionPath(e, out_atom));
+    }
+  }
+
+  private void writeArchive(
+    final ZBlog blog,
+    final Path out_atom,
+    final int index,
+    final boolean newest,
+    final Seq<ZBlogPost> posts)
+    throws IOException, FeedException
+  {
+    final String fingerprint = this.fingerprint(blog, newest, posts);
+
+    /*
+     * The fingerprint is a 64 digit hexadecimal string, and so cannot
+     * plausibly appear in an archive that does not contain it as the
+     * fingerprint element.
+     */
+
+    if (Files.isRegularFile(out_atom)
+      && Files.readString(out_atom).contains(">" + fingerprint + "<")) {
+      LOG.debug("atom archive: {} (unchanged)", out_atom);
+      return;
+    }
+
+    LOG.debug("atom archive: {}", out_atom);
+
+    final String name = feedArchiveName(index);
+    final SyndFeed feed = this.feedCreateArchived(blog, name, posts);
+
+    final List<SyndLink> links = new ArrayList<>(4);
+    links.add(this.feedLink("self", name));
+    links.add(this.feedLink("current", "blog.atom"));
+    if (index > 0) {
+      links.add(this.feedLink("prev-archive", feedArchiveName(index - 1)));
+    }
+    if (!newest) {
+      links.add(this.feedLink("next-archive", feedArchiveName(index + 1)));
+    }
+    feed.setLinks(links);
+
+    final org.jdom2.Element e_fingerprint =
+      new org.jdom2.Element("fingerprint", FEED_ZEPTOBLOG);
+    e_fingerprint.setText(fingerprint);
+
+    final List<org.jdom2.Element> markup = new ArrayList<>(2);
+    markup.add(new org.jdom2.Element("archive", FEED_HISTORY));
+    markup.add(e_fingerprint);
+    feed.setForeignMarkup(markup);
+
+    this.feedWrite(out_atom, feed);
+  }
+
+  /*
+   * The fingerprint covers everything from which an archive document is
+   * produced.
+   */
+
+  private String fingerprint(
+    final ZBlog blog,
+    final boolean newest,
+    final Seq<ZBlogPost> posts)
+    throws IOException
+  {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+
+    digestString(digest, blog.title());
+    digestString(digest, this.config.author());
+    digestString(digest, this.config.siteURI().toString());
+    digestString(digest, Boolean.toString(newest));
+    for (final ZBlogPost post : posts) {
+      digestString(digest, post.path().toString());
+      digestString(digest, post.date().map(ZonedDateTime::toString).orElse(""));
+      digestString(digest, post.title());
+      digestString(digest, post.content().format());
+      digestString(digest, bodyText(post));
+    }
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  /*
+   * Delete any archive documents beyond the given number of archives, as
+   * are left behind when posts are deleted or archiving is disabled.
+   */
+
+  private void deleteStale(
+    final int complete)
+  {
+    final Path root = this.config.outputRoot().toAbsolutePath();
+    if (!Files.isDirectory(root)) {
+      return;
+    }
+
+    try (DirectoryStream<Path> stream =
+           Files.newDirectoryStream(root, "blog-archive-*.atom")) {
+      for (final Path file : stream) {
+        final Matcher matcher =
+          ARCHIVE_NAME.matcher(String.valueOf(file.getFileName()));
+        if (matcher.matches()
+          && Long.parseLong(matcher.group(1)) > (long) complete) {
+          LOG.debug("deleting {}", file);
+          Files.deleteIfExists(file);
+        }
+      }
+    } catch (final IOException | NumberFormatException e) {
+      this.errors.add(ZErrors.ofExceptionPath(e, root));
+    }
+  }
+
+  private String siteLink(
+    final String name)
+  {
+    return this.config.siteURI().resolve("/" + name).toString();
+  }
+
+  private SyndFeed feedCreateArchived(
+    final ZBlog blog,
+    final String name,
+    final Seq<ZBlogPost> posts)
+    throws IOException
+  {
+    final SyndFeed feed = this.feedCreate(blog, "atom_1.0", posts);
+    feed.setUri(this.siteLink(name));
+    for (final SyndEntry entry : feed.getEntries()) {
+      entry.setUri(this.config.siteURI().resolve(entry.getLink()).toString());
+    }
+    return feed;
+  }
+
+  private SyndLink feedLink(
+    final String rel,
+    final String name)
+  {
+    final SyndLink link = new SyndLinkImpl();
+    link.setRel(rel);
+    link.setType("application/atom+xml");
+    link.setHref(this.siteLink(name));
+    return link;
+  }
+
+  private void feedWrite(
+    final Path out_atom,
+    final SyndFeed feed)
+    throws IOException, FeedException
+  {
+    this.files.writeString(out_atom, new SyndFeedOutput().outputString(feed));
+  }
+
+  private SyndFeed feedCreate(
+    final ZBlog blog,
+    final String type,
+    final Seq<ZBlogPost> posts)
+    throws IOException
+  {
+    final SyndFeed feed = new SyndFeedImpl();
+    feed.setFeedType(type);
+    feed.setTitle(blog.title());
+    feed.setDescription("Atom feed");
+    feed.setLink(this.config.siteURI().toString());
+    feed.setAuthor(this.config.author());
+
+    final Option<ZBlogPost> last_opt = posts.lastOption();
+    if (last_opt.isDefined()) {
+      final ZBlogPost last = last_opt.get();
+      feed.setPublishedDate(dateToTime(last.date().get()));
+    }
+
+    final List<SyndEntry> entries = new ArrayList<>(posts.size());
+    final Iterator<ZBlogPost> iterator = posts.reverseIterator();
+    while (iterator.hasNext()) {
+      entries.add(this.feedEntry(iterator.next()));
+    }
+
+    feed.setEntries(entries);
+    return feed;
+  }
+
+  private SyndEntry feedEntry(
+    final ZBlogPost post)
+    throws IOException
+  {
+    Preconditions.checkPrecondition(
+      post.date().isPresent(), "Post must have a date");
+
+    final List<SyndContent> content = new ArrayList<>(1);
+    final SyndContentImpl cc = new SyndContentImpl();
+    cc.setType(Content.TEXT);
+
+    {
+      final Optional<ZBlogPostFormatType> format_opt =
+        this.resolver.resolve(post.content().format());
+      if (format_opt.isPresent()) {
+        final ZBlogPostFormatType format = format_opt.get();
+        final Validation<Seq<ZError>, String> result =
+          format.produceExcerpt(
+            post.path(), bodyText(post), FEED_EXCERPT_LENGTH);
+
+        if (result.isValid()) {
+          cc.setValue(ellipsize(result.get(), FEED_EXCERPT_LENGTH));
+        } else {
+          this.errors.addAll(result.getError());
+          throw new IOException("An error occurred in a format provider");
+        }
+      } else {
+        throw new IOException(
+          "No format provider exists for the format: " + post.content().format());
+      }
+    }
+
+    cc.setMode(Content.ESCAPED);
+    content.add(cc);
+
+    final SyndEntry feed_entry = new SyndEntryImpl();
+    final Date date = dateToTime(post.date().get());
+    feed_entry.setTitle(post.title());
+    feed_entry.setUpdatedDate(date);
+    feed_entry.setPublishedDate(date);
+    feed_entry.setContents(content);
+    feed_entry.setAuthor(this.config.author());
+    final String link = post.outputPermalinkLink(this.config);
+    LOG.debug("feed link: {}", link);
+    feed_entry.setLink(link);
+    return feed_entry;
+  }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.core;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * <p>A lexer for the header lines of post and glossary item files.</p>
+ *
+ * <p>A header line consists of a command keyword followed by zero or more
+ * arguments, separated by whitespace. The lexer scans each line in place,
+ * recording the bounds of each token without copying any text, and so a
+ * single lexer should be reused for every line of a file. Tokens are only
+ * copied into strings when they are explicitly requested. Lexers are not
+ * thread-safe.</p>
+ */
+
+public final class ZHeaderLexer
+{
+  private String line;
+  private int[] starts;
+  private int[] ends;
+  private int count;
+  private int trim_start;
+  private int trim_end;
+
+  /**
+   * Create a new lexer.
+   */
+
+  public ZHeaderLexer()
+  {
+    this.line = "";
+    this.starts = new int[8];
+    this.ends = new int[8];
+  }
+
+  private static boolean isSpace(
+    final char c)
+  {
+    switch (c) {
+      case ' ':
+      case '\t':
+      case '\n':
+      case '\u000b':
+      case '\f':
+      case '\r':
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Lex the given line. Leading and trailing characters less than or equal to
+   * {@code U+0020} are ignored, and the remaining text is split into tokens
+   * at each run of whitespace.
+   *
+   * @param in_line The line
+   *
+   * @return {@code false} iff the line is blank
+   */
+
+  public boolean lex(
+    final String in_line)
+  {
+    this.line = Objects.requireNonNull(in_line, "line");
+    this.count = 0;
+
+    int start = 0;
+    int end = in_line.length();
+    while (start < end && in_line.charAt(start) <= ' ') {
+      ++start;
+    }
+    while (end > start && in_line.charAt(end - 1) <= ' ') {
+      --end;
+    }
+    this.trim_start = start;
+    this.trim_end = end;
+
+    int index = start;
+    while (index < end) {
+      final int token_start = index;
+      while (index < end && !isSpace(in_line.charAt(index))) {
+        ++index;
+      }
+      this.push(token_start, index);
+      while (index < end && isSpace(in_line.charAt(index))) {
+        ++index;
+      }
+    }
+    return this.count > 0;
+  }
+
+  private void push(
+    final int start,
+    final int end)
+  {
+    if (this.count == this.starts.length) {
+      this.starts = Arrays.copyOf(this.starts, this.count * 2);
+      this.ends = Arrays.copyOf(this.ends, this.count * 2);
+    }
+    this.starts[this.count] = start;
+    this.ends[this.count] = end;
+    ++this.count;
+  }
+
+  private void checkIndex(
+    final int index)
+  {
+    Objects.checkIndex(index, this.count);
+  }
+
+  /**
+   * @return The number of tokens on the current line, including the command
+   */
+
+  public int tokenCount()
+  {
+    return this.count;
+  }
+
+  /**
+   * @param index The token index
+   * @param text  The text
+   *
+   * @return {@code true} iff the token at {@code index} is exactly {@code text}
+   */
+
+  public boolean tokenIs(
+    final int index,
+    final String text)
+  {
+    this.checkIndex(index);
+    final int start = this.starts[index];
+    final int length = this.ends[index] - start;
+    return length == text.length()
+      && this.line.regionMatches(start, text, 0, length);
+  }
+
+  /**
+   * @param index The token index
+   *
+   * @return The token at {@code index}
+   */
+
+  public String token(
+    final int index)
+  {
+    this.checkIndex(index);
+    return this.line.substring(this.starts[index], this.ends[index]);
+  }
+
+  /**
+   * @param index The index of the first token
+   *
+   * @return The tokens starting at {@code index}, separated by single spaces
+   */
+
+  public String tokensFrom(
+    final int index)
+  {
+    this.checkIndex(index);
+
+    int length = 0;
+    for (int current = index; current < this.count; ++current) {
+      length += this.ends[current] - this.starts[current] + 1;
+    }
+
+    final StringBuilder text = new StringBuilder(length);
+    for (int current = index; current < this.count; ++current) {
+      if (current > index) {
+        text.append(' ');
+      }
+      text.append(this.line, this.starts[current], this.ends[current]);
+    }
+    return text.toString();
+  }
+
+  /**
+   * @param index The token index
+   *
+   * @return The column at which the token at {@code index} starts
+   */
+
+  public int column(
+    final int index)
+  {
+    this.checkIndex(index);
+    return this.starts[index];
+  }
+
+  /**
+   * @return The current line without leading or trailing whitespace
+   */
+
+  public String trimmed()
+  {
+    return this.line.substring(this.trim_start, this.trim_end);
+  }
+
+  /**
+   * @param expected A description of the expected syntax
+   *
+   * @return A syntax error message for the current line
+   */
+
+  public String syntaxError(
+    final String expected)
+  {
+    final String separator = System.lineSeparator();
+    return new StringBuilder(128)
+      .append("Syntax error.")
+      .append(separator)
+      .append("  Expected: ")
+      .append(expected)
+      .append(separator)
+      .append("  Received: ")
+      .append(this.line, this.trim_start, this.trim_end)
+      .append(separator)
+      .toString();
+  }
+}
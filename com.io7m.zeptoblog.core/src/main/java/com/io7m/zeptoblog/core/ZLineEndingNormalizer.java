@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.core;
+
+import java.util.Objects;
+
+/**
+ * <p>A normalizer that replaces line endings in text with the platform line
+ * separator as the text is written.</p>
+ *
+ * <p>The output is exactly that which would be produced by reading each line
+ * of the text with {@link java.io.BufferedReader#readLine()} and appending
+ * the line and {@link System#lineSeparator()} to a buffer: Lines may be
+ * terminated with {@code \n}, {@code \r}, or {@code \r\n}, and a final line
+ * that has no terminator is given one.</p>
+ */
+
+final class ZLineEndingNormalizer
+{
+  private final StringBuilder output;
+  private final String separator;
+  private boolean skip_lf;
+  private boolean pending;
+
+  ZLineEndingNormalizer(
+    final StringBuilder in_output)
+  {
+    this.output = Objects.requireNonNull(in_output, "output");
+    this.separator = System.lineSeparator();
+  }
+
+  /**
+   * Append the given characters.
+   *
+   * @param chars  The characters
+   * @param offset The offset of the first character
+   * @param length The number of characters
+   */
+
+  void append(
+    final char[] chars,
+    final int offset,
+    final int length)
+  {
+    final int end = offset + length;
+    int start = offset;
+    for (int index = offset; index < end; ++index) {
+      final char c = chars[index];
+      if (c == '\r' || c == '\n') {
+        this.output.append(chars, start, index - start);
+        start = index + 1;
+        if (c == '\n' && this.skip_lf) {
+          this.skip_lf = false;
+          continue;
+        }
+        this.output.append(this.separator);
+        this.skip_lf = c == '\r';
+        this.pending = false;
+      } else {
+        this.skip_lf = false;
+        this.pending = true;
+      }
+    }
+    this.output.append(chars, start, end - start);
+  }
+
+  /**
+   * Terminate the final line, if necessary.
+   */
+
+  void finish()
+  {
+    if (this.pending) {
+      this.output.append(this.separator);
+      this.pending = false;
+    }
+    this.skip_lf = false;
+  }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * <p>A compiled page template.</p>
+ *
+ * <p>A template is produced from a serialized document in which each variable
+ * part of the page is marked with a processing instruction whose target is
+ * a given marker and whose data is the index of a slot. The constant parts of
+ * the document are held as UTF-8 bytes, and so only the values of the slots
+ * need to be serialized for each page.</p>
+ */
+
+final class ZPageTemplate
+{
+  private final byte[][] segments;
+  private final int[] order;
+
+  private ZPageTemplate(
+    final byte[][] in_segments,
+    final int[] in_order)
+  {
+    this.segments = in_segments;
+    this.order = in_order;
+  }
+
+  /**
+   * The type of functions that write ranges of serialized slot values.
+   */
+
+  @FunctionalInterface
+  interface RangeWriterType
+  {
+    /**
+     * Write the given range of bytes.
+     *
+     * @param output The output stream
+     * @param data   The data
+     * @param start  The start of the range (inclusive)
+     * @param end    The end of the range (exclusive)
+     *
+     * @throws IOException On I/O errors
+     */
+
+    void write(
+      OutputStream output,
+      byte[] data,
+      int start,
+      int end)
+      throws IOException;
+  }
+
+  /**
+   * @param target The processing instruction target
+   *
+   * @return The bytes that begin a processing instruction with the given target
+   */
+
+  static byte[] marker(
+    final String target)
+  {
+    return ("<?" + target + " ").getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Find the given pattern in the given range of data.
+   *
+   * @param data    The data
+   * @param pattern The pattern
+   * @param from    The start of the range (inclusive)
+   * @param to      The end of the range (exclusive)
+   *
+   * @return The index of the pattern, or {@code -1} if it does not occur
+   */
+
+  static int indexOf(
+    final byte[] data,
+    final byte[] pattern,
+    final int from,
+    final int to)
+  {
+    final int last = to - pattern.length;
+    for (int index = from; index <= last; ++index) {
+      if (Arrays.equals(
+        data, index, index + pattern.length, pattern, 0, pattern.length)) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Parse the decimal index that follows a marker, returning the position
+   * of the end of the processing instruction.
+   *
+   * @param data   The data
+   * @param cursor The position immediately after the marker
+   * @param index  The parsed index is written to element {@code 0}
+   *
+   * @return The position after the processing instruction
+   */
+
+  static int markerIndex(
+    final byte[] data,
+    final int cursor,
+    final int[] index)
+  {
+    int value = 0;
+    int position = cursor;
+    while (data[position] >= '0' && data[position] <= '9') {
+      value = (value * 10) + (data[position] - '0');
+      ++position;
+    }
+    index[0] = value;
+    return position + 2;
+  }
+
+  /**
+   * Compile a template from the given serialized document.
+   *
+   * @param document The serialized document
+   * @param marker   The bytes that begin a slot marker
+   *
+   * @return A compiled template
+   */
+
+  static ZPageTemplate compile(
+    final byte[] document,
+    final byte[] marker)
+  {
+    Objects.requireNonNull(document, "document");
+    Objects.requireNonNull(marker, "marker");
+
+    final List<byte[]> segments = new ArrayList<>(8);
+    final List<Integer> order = new ArrayList<>(8);
+    final int[] index = new int[1];
+
+    int position = 0;
+    while (true) {
+      final int start = indexOf(document, marker, position, document.length);
+      if (start == -1) {
+        segments.add(Arrays.copyOfRange(document, position, document.length));
+        break;
+      }
+      segments.add(Arrays.copyOfRange(document, position, start));
+      position = markerIndex(document, start + marker.length, index);
+      order.add(Integer.valueOf(index[0]));
+    }
+
+    return new ZPageTemplate(
+      segments.toArray(new byte[0][]),
+      order.stream().mapToInt(Integer::intValue).toArray());
+  }
+
+  /**
+   * Locate the slot values in a serialized document. The document element
+   * must contain, for each slot in ascending order, a marker followed by the
+   * value of the slot, and nothing else.
+   *
+   * @param values The serialized slot values
+   * @param marker The bytes that begin a slot marker
+   * @param count  The number of slots
+   *
+   * @return The start (inclusive) and end (exclusive) of each slot value
+   */
+
+  static int[] ranges(
+    final byte[] values,
+    final byte[] marker,
+    final int count)
+  {
+    Objects.requireNonNull(values, "values");
+    Objects.requireNonNull(marker, "marker");
+
+    final int[] ranges = new int[count * 2];
+    final int[] index = new int[1];
+    final int end = lastIndexOf(values, (byte) '<');
+
+    int position = 0;
+    for (int slot = 0; slot < count; ++slot) {
+      final int start = indexOf(values, marker, position, end);
+      if (start == -1) {
+        throw new IllegalStateException("Missing marker for slot " + slot);
+      }
+      if (slot > 0) {
+        ranges[(slot * 2) - 1] = start;
+      }
+      position = markerIndex(values, start + marker.length, index);
+      if (index[0] != slot) {
+        throw new IllegalStateException(
+          "Expected slot " + slot + " but received " + index[0]);
+      }
+      ranges[slot * 2] = position;
+    }
+    if (count > 0) {
+      ranges[(count * 2) - 1] = end;
+    }
+    return ranges;
+  }
+
+  private static int lastIndexOf(
+    final byte[] data,
+    final byte value)
+  {
+    for (int index = data.length - 1; index >= 0; --index) {
+      if (data[index] == value) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Write a page, taking the slot values from the given ranges of data.
+   *
+   * @param output The output stream
+   * @param values The serialized slot values
+   * @param ranges The ranges of each slot value
+   * @param writer The function used to write slot values
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void write(
+    final OutputStream output,
+    final byte[] values,
+    final int[] ranges,
+    final RangeWriterType writer)
+    throws IOException
+  {
+    for (int index = 0; index < this.order.length; ++index) {
+      output.write(this.segments[index]);
+      final int slot = this.order[index];
+      writer.write(output, values, ranges[slot * 2], ranges[(slot * 2) + 1]);
+    }
+    output.write(this.segments[this.order.length]);
+  }
+}
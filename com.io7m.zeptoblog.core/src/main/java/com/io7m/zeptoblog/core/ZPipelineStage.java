@@ -0,0 +1,269 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.core;
+
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jlexing.core.LexicalPosition;
+
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * <p>A stage in a build pipeline.</p>
+ *
+ * <p>A stage consists of a fixed number of worker threads that take items
+ * from a bounded queue and pass them to a handler. Submitting an item to a
+ * stage whose queue is full blocks until a worker has taken an item, and so
+ * a slow stage applies backpressure to the stages that feed it. Exceptions
+ * raised by the handler are recorded in an error collector against the file
+ * of the item that raised them, so that the collected errors are ordered
+ * independently of the order in which the workers finish.</p>
+ *
+ * <p>If the handler raises an {@link Error}, the stage fails: the workers
+ * discard the remaining items rather than handling them, items submitted
+ * afterwards are discarded, and the error is rethrown from
+ * {@link #finish()}. The workers themselves survive, so a failed stage never
+ * leaves a producer blocked on a full queue.</p>
+ *
+ * @param <T> The type of items
+ */
+
+final class ZPipelineStage<T>
+{
+  private static final Object END = new Object();
+
+  private final BlockingQueue<Object> queue;
+  private final HandlerType<T> handler;
+  private final Function<? super T, Path> files;
+  private final ZErrorCollector errors;
+  private final Thread[] workers;
+  private final AtomicReference<Throwable> failure;
+
+  private ZPipelineStage(
+    final int capacity,
+    final int worker_count,
+    final Function<? super T, Path> in_files,
+    final HandlerType<T> in_handler,
+    final ZErrorCollector in_errors)
+  {
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.files = Objects.requireNonNull(in_files, "files");
+    this.handler = Objects.requireNonNull(in_handler, "handler");
+    this.errors = Objects.requireNonNull(in_errors, "errors");
+    this.workers = new Thread[worker_count];
+    this.failure = new AtomicReference<>();
+  }
+
+  /**
+   * Create and start a stage.
+   *
+   * @param threads  A builder for worker threads
+   * @param count    The number of worker threads
+   * @param capacity The maximum number of queued items
+   * @param errors   The collector for errors raised by the handler
+   * @param files    A function that returns the file to which each item
+   *                 refers, against which errors are recorded
+   * @param handler  The item handler
+   * @param <T>      The type of items
+   *
+   * @return A running stage
+   */
+
+  static <T> ZPipelineStage<T> start(
+    final Thread.Builder threads,
+    final int count,
+    final int capacity,
+    final ZErrorCollector errors,
+    final Function<? super T, Path> files,
+    final HandlerType<T> handler)
+  {
+    Objects.requireNonNull(threads, "threads");
+    Preconditions.checkPreconditionI(
+      count, count > 0, n -> "Worker count must be positive");
+    Preconditions.checkPreconditionI(
+      capacity, capacity > 0, n -> "Capacity must be positive");
+
+    final ZPipelineStage<T> stage =
+      new ZPipelineStage<>(capacity, count, files, handler, errors);
+    for (int index = 0; index < count; ++index) {
+      stage.workers[index] = threads.start(stage::work);
+    }
+    return stage;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void work()
+  {
+    try {
+      while (true) {
+        final Object item = this.queue.take();
+        if (item == END) {
+          return;
+        }
+        if (this.failure.get() != null) {
+          continue;
+        }
+        try {
+          this.handler.handle((T) item);
+        } catch (final Exception e) {
+          this.errors.add(ZError.of(
+            e.getMessage() == null ? e.getClass().getName() : e.getMessage(),
+            LexicalPosition.of(0, 0, Optional.of(this.files.apply((T) item))),
+            Optional.of(e)));
+        } catch (final Throwable e) {
+          if (!this.failure.compareAndSet(null, e)) {
+            this.failure.get().addSuppressed(e);
+          }
+        }
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Submit an item, blocking until there is space in the queue. If the
+   * stage has failed, the item is discarded.
+   *
+   * @param item The item
+   */
+
+  void submit(
+    final T item)
+  {
+    Objects.requireNonNull(item, "item");
+    if (this.failure.get() == null) {
+      this.putUninterruptibly(item);
+    }
+  }
+
+  /**
+   * Finish each of the given stages in order, and then rethrow the first
+   * error raised by any of them. Every stage is finished even if an earlier
+   * stage has failed.
+   *
+   * @param stages The stages
+   */
+
+  static void finishAll(
+    final ZPipelineStage<?>... stages)
+  {
+    Throwable first = null;
+    for (final ZPipelineStage<?> stage : stages) {
+      try {
+        stage.finish();
+      } catch (final Error | RuntimeException e) {
+        if (first == null) {
+          first = e;
+        } else {
+          first.addSuppressed(e);
+        }
+      }
+    }
+    if (first != null) {
+      rethrow(first);
+    }
+  }
+
+  private static void rethrow(
+    final Throwable e)
+  {
+    if (e instanceof Error) {
+      throw (Error) e;
+    }
+    if (e instanceof RuntimeException) {
+      throw (RuntimeException) e;
+    }
+    throw new IllegalStateException(e);
+  }
+
+  /**
+   * Indicate that no more items will be submitted, and wait for the workers
+   * to process all queued items. If the handler raised an error, the error
+   * is rethrown once every worker has stopped.
+   */
+
+  void finish()
+  {
+    for (int index = 0; index < this.workers.length; ++index) {
+      this.putUninterruptibly(END);
+    }
+
+    boolean interrupted = false;
+    for (final Thread worker : this.workers) {
+      while (true) {
+        try {
+          worker.join();
+          break;
+        } catch (final InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+
+    final Throwable failed = this.failure.get();
+    if (failed != null) {
+      rethrow(failed);
+    }
+  }
+
+  private void putUninterruptibly(
+    final Object item)
+  {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        this.queue.put(item);
+        break;
+      } catch (final InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * The type of item handlers.
+   *
+   * @param <T> The type of items
+   */
+
+  @FunctionalInterface
+  interface HandlerType<T>
+  {
+    /**
+     * Handle an item.
+     *
+     * @param item The item
+     *
+     * @throws Exception On errors
+     */
+
+    void handle(T item)
+      throws Exception;
+  }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.core;
+
+import com.io7m.junreachable.UnreachableCodeException;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.ProcessingInstruction;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * <p>An engine that extracts plain text from XHTML.</p>
+ *
+ * <p>Headings are underlined, paragraphs, block quotes and list items are
+ * separated by blank lines, table cells are bracketed, and links and images
+ * are written along with their targets. Text is written into a single buffer
+ * that is reused for each extraction, and so an extractor should be reused
+ * rather than created for each document. Extractors are not thread-safe.</p>
+ */
+
+public final class ZPlainTextExtractor
+{
+  private final ZPlainTextWriter writer;
+  private final ZPlainTextHandler handler;
+  private final AttributesImpl attributes;
+  private char[] chars;
+  private XMLReader reader;
+
+  /**
+   * Create a new extractor.
+   */
+
+  public ZPlainTextExtractor()
+  {
+    this.writer = new ZPlainTextWriter();
+    this.handler = new ZPlainTextHandler(this.writer);
+    this.attributes = new AttributesImpl();
+    this.chars = new char[256];
+  }
+
+  /**
+   * Extract plain text from the given XHTML element.
+   *
+   * @param element The element
+   *
+   * @return Plain text
+   */
+
+  public String extract(
+    final Element element)
+  {
+    return this.extract(element, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Extract at most {@code length} characters of plain text from the given
+   * XHTML element. Processing stops as soon as enough text has been produced.
+   *
+   * @param element The element
+   * @param length  The maximum number of characters to produce
+   *
+   * @return Plain text
+   */
+
+  public String extract(
+    final Element element,
+    final int length)
+  {
+    Objects.requireNonNull(element, "element");
+
+    this.writer.reset(length);
+    this.handler.reset();
+
+    try {
+      this.walk(element);
+    } catch (final ZPlainTextHandler.LimitReachedException e) {
+      // The text is complete
+    } catch (final SAXException e) {
+      throw new UnreachableCodeException(e);
+    }
+    return this.writer.finish();
+  }
+
+  /**
+   * Parse XHTML from the given source and extract at most {@code length}
+   * characters of plain text from it. Parsing stops as soon as enough text has
+   * been produced, and so errors in the document that occur after that point
+   * are not reported.
+   *
+   * @param source The XHTML source
+   * @param length The maximum number of characters to produce
+   *
+   * @return Plain text
+   *
+   * @throws ParserConfigurationException On parser configuration errors
+   * @throws IOException                  On I/O errors
+   * @throws SAXException                 On parse errors
+   */
+
+  public String extract(
+    final InputSource source,
+    final int length)
+    throws ParserConfigurationException, SAXException, IOException
+  {
+    Objects.requireNonNull(source, "source");
+
+    if (this.reader == null) {
+      final XMLReader new_reader = ZXML.xmlNewReader();
+      new_reader.setContentHandler(this.handler);
+      new_reader.setErrorHandler(this.handler);
+      new_reader.setProperty(
+        "http://xml.org/sax/properties/lexical-handler", this.handler);
+      this.reader = new_reader;
+    }
+
+    this.writer.reset(length);
+    this.handler.reset();
+
+    try {
+      this.reader.parse(source);
+    } catch (final ZPlainTextHandler.LimitReachedException e) {
+      // The text is complete
+    }
+    return this.writer.finish();
+  }
+
+  private void walk(
+    final Node node)
+    throws SAXException
+  {
+    switch (node.getNodeType()) {
+      case Node.ELEMENT_NODE: {
+        final String uri = node.getNamespaceURI();
+        final String name = node.getLocalName();
+        this.handler.startElement(
+          uri == null ? "" : uri,
+          name == null ? node.getNodeName() : name,
+          node.getNodeName(),
+          this.attributesOf(node));
+        this.walkChildren(node);
+        this.handler.endElement(uri, name, node.getNodeName());
+        break;
+      }
+      case Node.TEXT_NODE:
+      case Node.CDATA_SECTION_NODE: {
+        final String text = node.getNodeValue();
+        final int length = text.length();
+        if (length > this.chars.length) {
+          this.chars = new char[Math.max(length, this.chars.length * 2)];
+        }
+        text.getChars(0, length, this.chars, 0);
+        this.handler.characters(this.chars, 0, length);
+        break;
+      }
+      case Node.COMMENT_NODE: {
+        this.handler.comment(this.chars, 0, 0);
+        break;
+      }
+      case Node.PROCESSING_INSTRUCTION_NODE: {
+        final ProcessingInstruction pi = (ProcessingInstruction) node;
+        this.handler.processingInstruction(pi.getTarget(), pi.getData());
+        break;
+      }
+      case Node.ENTITY_REFERENCE_NODE:
+      case Node.DOCUMENT_NODE:
+      case Node.DOCUMENT_FRAGMENT_NODE: {
+        this.walkChildren(node);
+        break;
+      }
+      default: {
+        break;
+      }
+    }
+  }
+
+  private void walkChildren(
+    final Node node)
+    throws SAXException
+  {
+    for (Node child = node.getFirstChild();
+         child != null;
+         child = child.getNextSibling()) {
+      this.walk(child);
+    }
+  }
+
+  private AttributesImpl attributesOf(
+    final Node node)
+  {
+    this.attributes.clear();
+
+    final NamedNodeMap map = node.getAttributes();
+    final int count = map.getLength();
+    for (int index = 0; index < count; ++index) {
+      final Attr attr = (Attr) map.item(index);
+      final String uri = attr.getNamespaceURI();
+      final String name = attr.getLocalName();
+      this.attributes.addAttribute(
+        uri == null ? "" : uri,
+        name == null ? attr.getName() : name,
+        attr.getName(),
+        "CDATA",
+        attr.getValue());
+    }
+    return this.attributes;
+  }
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.core;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.DefaultHandler2;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import static com.io7m.zeptoblog.core.ZBlogPostFormatXHTML.XHTML_URI_TEXT;
+
+/**
+ * A SAX handler that produces plain text from XHTML for
+ * {@link ZPlainTextExtractor}. Text is written to a {@link ZPlainTextWriter},
+ * and parsing is stopped with a {@link LimitReachedException} as soon as the
+ * writer is full.
+ */
+
+final class ZPlainTextHandler extends DefaultHandler2
+{
+  private static final Map<String, Rule> RULES = rules();
+
+  private final ZPlainTextWriter writer;
+  private final StringBuilder text;
+  private final StringBuilder capture;
+  private Rule[] rules;
+  private int depth;
+  private Rule capture_rule;
+  private int capture_depth;
+  private boolean capture_done;
+  private String capture_href;
+
+  ZPlainTextHandler(
+    final ZPlainTextWriter in_writer)
+  {
+    this.writer = Objects.requireNonNull(in_writer, "writer");
+    this.text = new StringBuilder(256);
+    this.capture = new StringBuilder(256);
+    this.rules = new Rule[16];
+    this.reset();
+  }
+
+  private static Rule ruleFor(
+    final String uri,
+    final String name)
+  {
+    if (!Objects.equals(uri, XHTML_URI_TEXT)) {
+      return Rule.DEFAULT;
+    }
+    return RULES.getOrDefault(name, Rule.DEFAULT);
+  }
+
+  private static Map<String, Rule> rules()
+  {
+    final Map<String, Rule> m = new HashMap<>(32);
+    m.put("h1", Rule.HEADING);
+    m.put("h2", Rule.HEADING);
+    m.put("h3", Rule.HEADING);
+    m.put("h4", Rule.HEADING);
+    m.put("h5", Rule.HEADING);
+    m.put("p", Rule.BLOCK);
+    m.put("blockquote", Rule.BLOCK);
+    m.put("li", Rule.BLOCK);
+    m.put("div", Rule.BLOCK);
+    m.put("table", Rule.ROWS);
+    m.put("tr", Rule.ROWS);
+    m.put("td", Rule.CELL);
+    m.put("a", Rule.LINK);
+    m.put("b", Rule.INLINE);
+    m.put("strong", Rule.INLINE);
+    m.put("em", Rule.INLINE);
+    m.put("span", Rule.INLINE);
+    m.put("strike", Rule.INLINE);
+    m.put("img", Rule.IMAGE);
+    m.put("hr", Rule.RULE);
+    m.put("br", Rule.BREAK);
+    return Map.copyOf(m);
+  }
+
+  private static String attribute(
+    final Attributes attributes,
+    final String name)
+  {
+    final String value = attributes.getValue("", name);
+    return value == null ? "" : value;
+  }
+
+  /**
+   * Reset the handler so that it can be used for a new document.
+   */
+
+  void reset()
+  {
+    this.text.setLength(0);
+    this.capture.setLength(0);
+    this.depth = 0;
+    this.capture_rule = null;
+    this.capture_depth = 0;
+    this.capture_done = false;
+    this.capture_href = "";
+  }
+
+  @Override
+  public void startElement(
+    final String uri,
+    final String local_name,
+    final String qualified_name,
+    final Attributes attributes)
+    throws SAXException
+  {
+    if (this.capture_depth > 0) {
+      this.captureBoundary();
+      ++this.capture_depth;
+      return;
+    }
+
+    this.flushText();
+
+    final Rule rule = ruleFor(uri, local_name);
+    switch (rule) {
+      case HEADING:
+      case INLINE:
+      case LINK: {
+        this.captureStart(rule);
+        this.capture_href = attribute(attributes, "href");
+        return;
+      }
+      case IMAGE: {
+        this.writer.append("[image: ");
+        this.writer.append(attribute(attributes, "src"));
+        this.writer.append(' ');
+        this.writer.append(attribute(attributes, "alt"));
+        this.writer.append("]\n\n");
+        this.captureStart(rule);
+        this.checkLimit();
+        return;
+      }
+      case RULE: {
+        this.writer.append("----\n\n");
+        this.captureStart(rule);
+        this.checkLimit();
+        return;
+      }
+      case BREAK: {
+        this.writer.append('\n');
+        this.captureStart(rule);
+        this.checkLimit();
+        return;
+      }
+      case CELL: {
+        this.writer.append("[ ");
+        this.push(rule);
+        this.checkLimit();
+        return;
+      }
+      case DEFAULT:
+      case BLOCK:
+      case ROWS: {
+        this.push(rule);
+        return;
+      }
+    }
+  }
+
+  @Override
+  public void endElement(
+    final String uri,
+    final String local_name,
+    final String qualified_name)
+    throws SAXException
+  {
+    if (this.capture_depth > 0) {
+      --this.capture_depth;
+      if (this.capture_depth == 0) {
+        this.captureFinish();
+        this.checkLimit();
+      }
+      return;
+    }
+
+    this.flushText();
+
+    --this.depth;
+    switch (this.rules[this.depth]) {
+      case BLOCK: {
+        this.writer.append("\n\n");
+        break;
+      }
+      case ROWS: {
+        this.writer.append('\n');
+        break;
+      }
+      case CELL: {
+        this.writer.append(" ]");
+        break;
+      }
+      case DEFAULT:
+      case HEADING:
+      case LINK:
+      case INLINE:
+      case IMAGE:
+      case RULE:
+      case BREAK: {
+        break;
+      }
+    }
+    this.checkLimit();
+  }
+
+  @Override
+  public void characters(
+    final char[] ch,
+    final int start,
+    final int length)
+  {
+    if (this.capture_depth > 0) {
+      switch (this.capture_rule) {
+        case HEADING:
+        case INLINE: {
+          this.capture.append(ch, start, length);
+          break;
+        }
+        case LINK: {
+          if (this.capture_depth == 1 && !this.capture_done) {
+            this.capture.append(ch, start, length);
+          }
+          break;
+        }
+        default: {
+          break;
+        }
+      }
+      return;
+    }
+
+    if (this.depth > 0 && this.rules[this.depth - 1] != Rule.ROWS) {
+      this.text.append(ch, start, length);
+    }
+  }
+
+  @Override
+  public void ignorableWhitespace(
+    final char[] ch,
+    final int start,
+    final int length)
+  {
+    this.characters(ch, start, length);
+  }
+
+  @Override
+  public void comment(
+    final char[] ch,
+    final int start,
+    final int length)
+    throws SAXException
+  {
+    this.nodeBoundary();
+  }
+
+  @Override
+  public void processingInstruction(
+    final String target,
+    final String data)
+    throws SAXException
+  {
+    this.nodeBoundary();
+  }
+
+  /*
+   * Comments and processing instructions are not processed, but they do
+   * separate the text nodes on either side of them.
+   */
+
+  private void nodeBoundary()
+    throws SAXException
+  {
+    if (this.capture_depth > 0) {
+      this.captureBoundary();
+      return;
+    }
+    this.flushText();
+  }
+
+  private void push(
+    final Rule rule)
+  {
+    if (this.depth == this.rules.length) {
+      this.rules = Arrays.copyOf(this.rules, this.rules.length * 2);
+    }
+    this.rules[this.depth] = rule;
+    ++this.depth;
+  }
+
+  private void flushText()
+    throws SAXException
+  {
+    if (this.text.length() > 0) {
+      this.writer.appendNormalized(this.text);
+      this.writer.append(' ');
+      this.text.setLength(0);
+      this.checkLimit();
+    }
+  }
+
+  private void captureStart(
+    final Rule rule)
+  {
+    this.capture_rule = rule;
+    this.capture_depth = 1;
+    this.capture_done = false;
+    this.capture.setLength(0);
+  }
+
+  /*
+   * A link only yields its first text node, and so any node that follows
+   * the start of that text node completes it.
+   */
+
+  private void captureBoundary()
+  {
+    if (this.capture_depth == 1 && this.capture.length() > 0) {
+      this.capture_done = true;
+    }
+  }
+
+  private void captureFinish()
+  {
+    switch (this.capture_rule) {
+      case HEADING: {
+        this.writer.appendNormalized(this.capture);
+        this.writer.append("\n====\n\n");
+        break;
+      }
+      case INLINE: {
+        this.writer.appendNormalized(this.capture);
+        break;
+      }
+      case LINK: {
+        this.writer.append('[');
+        this.writer.append(this.capture);
+        this.writer.append(" (");
+        this.writer.append(this.capture_href);
+        this.writer.append(")]");
+        break;
+      }
+      default: {
+        break;
+      }
+    }
+
+    this.capture.setLength(0);
+    this.capture_rule = null;
+  }
+
+  private void checkLimit()
+    throws LimitReachedException
+  {
+    if (this.writer.isFull()) {
+      throw new LimitReachedException();
+    }
+  }
+
+  private enum Rule
+  {
+    DEFAULT,
+    HEADING,
+    BLOCK,
+    ROWS,
+    CELL,
+    LINK,
+    INLINE,
+    IMAGE,
+    RULE,
+    BREAK
+  }
+
+  /**
+   * The exception raised to stop parsing when the writer is full.
+   */
+
+  static final class LimitReachedException extends SAXException
+  {
+    private static final long serialVersionUID = 1L;
+
+    LimitReachedException()
+    {
+      super("Limit reached");
+    }
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.core;
+
+/**
+ * A writer that accepts raw plain text and produces the same text that would
+ * be obtained by splitting the complete raw text on {@code \r?\n}, trimming
+ * each of the resulting lines, and terminating each line with the platform
+ * line separator. Text is produced incrementally: anything that has been
+ * written to the output is guaranteed to be a prefix of the final text, and
+ * so the writer can stop early once a given number of characters have been
+ * produced.
+ */
+
+final class ZPlainTextWriter
+{
+  private final String separator;
+  private final StringBuilder output;
+  private final StringBuilder held_space;
+  private int limit;
+  private int held_empty;
+  private boolean any_separator;
+  private boolean line_nonempty;
+  private boolean line_started;
+  private boolean cr_pending;
+
+  ZPlainTextWriter()
+  {
+    this.separator = System.lineSeparator();
+    this.output = new StringBuilder(1024);
+    this.held_space = new StringBuilder(16);
+    this.reset(Integer.MAX_VALUE);
+  }
+
+  /**
+   * Reset the writer, discarding all text.
+   *
+   * @param in_limit The maximum number of characters to produce
+   */
+
+  void reset(
+    final int in_limit)
+  {
+    this.limit = in_limit;
+    this.output.setLength(0);
+    this.held_space.setLength(0);
+    this.held_empty = 0;
+    this.any_separator = false;
+    this.line_nonempty = false;
+    this.line_started = false;
+    this.cr_pending = false;
+  }
+
+  /**
+   * @return {@code true} if at least the maximum number of characters have
+   * been produced
+   */
+
+  boolean isFull()
+  {
+    return this.output.length() >= this.limit;
+  }
+
+  void append(
+    final char c)
+  {
+    if (this.cr_pending) {
+      this.cr_pending = false;
+      if (c == '\n') {
+        this.lineEnd();
+        return;
+      }
+      this.content('\r');
+    }
+
+    switch (c) {
+      case '\r': {
+        this.cr_pending = true;
+        break;
+      }
+      case '\n': {
+        this.lineEnd();
+        break;
+      }
+      default: {
+        this.content(c);
+        break;
+      }
+    }
+  }
+
+  void append(
+    final CharSequence text)
+  {
+    final int length = text.length();
+    for (int index = 0; index < length; ++index) {
+      this.append(text.charAt(index));
+    }
+  }
+
+  /**
+   * Append the given text after applying the XPath {@code normalize-space}
+   * function to it.
+   *
+   * @param text The text
+   */
+
+  void appendNormalized(
+    final CharSequence text)
+  {
+    boolean space = false;
+    boolean any = false;
+
+    final int length = text.length();
+    for (int index = 0; index < length; ++index) {
+      final char c = text.charAt(index);
+      switch (c) {
+        case ' ':
+        case '\t':
+        case '\r':
+        case '\n': {
+          space = any;
+          break;
+        }
+        default: {
+          if (space) {
+            this.append(' ');
+            space = false;
+          }
+          this.append(c);
+          any = true;
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Finish the text.
+   *
+   * @return The produced text, truncated to the maximum number of characters
+   */
+
+  String finish()
+  {
+    if (this.cr_pending) {
+      this.cr_pending = false;
+      this.content('\r');
+    }
+
+    if (!this.any_separator || this.line_nonempty) {
+      this.output.append(this.separator);
+    }
+
+    if (this.output.length() > this.limit) {
+      this.output.setLength(this.limit);
+    }
+    return this.output.toString();
+  }
+
+  private void content(
+    final char c)
+  {
+    if (!this.line_nonempty) {
+      this.line_nonempty = true;
+      for (int index = 0; index < this.held_empty; ++index) {
+        this.output.append(this.separator);
+      }
+      this.held_empty = 0;
+    }
+
+    if (c <= ' ') {
+      if (this.line_started) {
+        this.held_space.append(c);
+      }
+      return;
+    }
+
+    if (this.held_space.length() > 0) {
+      this.output.append(this.held_space);
+      this.held_space.setLength(0);
+    }
+    this.output.append(c);
+    this.line_started = true;
+  }
+
+  private void lineEnd()
+  {
+    this.any_separator = true;
+    if (this.line_nonempty) {
+      this.output.append(this.separator);
+    } else {
+      ++this.held_empty;
+    }
+
+    this.line_nonempty = false;
+    this.line_started = false;
+    this.held_space.setLength(0);
+  }
+}
@@ -0,0 +1,431 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.core;
+
+import io.vavr.collection.Seq;
+import io.vavr.collection.Vector;
+import io.vavr.control.Validation;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Related posts, found by comparing MinHash signatures of the plain text
+ * of each post.</p>
+ *
+ * <p>The signature of a post is the minimum value of each of
+ * {@link #HASHES} hash functions over the set of three-word shingles of the
+ * post's text, and the fraction of equal values in two signatures estimates
+ * the Jaccard similarity of the two posts. Rather than comparing every pair
+ * of posts, each signature is divided into {@link #BANDS} bands, and only
+ * posts that share every value of at least one band are compared. Posts
+ * without any words have an empty signature and are never related to other
+ * posts.</p>
+ *
+ * <p>Signatures are retained between builds, keyed by the path of each post,
+ * and are only recomputed when the body text of a post changes.</p>
+ */
+
+final class ZRelatedPosts
+{
+  /**
+   * The number of hash functions in each signature.
+   */
+
+  static final int HASHES = 128;
+
+  /**
+   * The number of bands into which each signature is divided.
+   */
+
+  static final int BANDS = 32;
+
+  private static final int ROWS = HASHES / BANDS;
+  private static final int SHINGLE_WORDS = 3;
+  private static final int BUCKET_WINDOW = 64;
+  private static final long[] HASH_MULTIPLIERS;
+  private static final long[] HASH_OFFSETS;
+
+  static {
+    HASH_MULTIPLIERS = new long[HASHES];
+    HASH_OFFSETS = new long[HASHES];
+
+    long state = 0x9e3779b97f4a7c15L;
+    for (int index = 0; index < HASHES; ++index) {
+      state = mix(state + 0x9e3779b97f4a7c15L);
+      HASH_MULTIPLIERS[index] = state | 1L;
+      state = mix(state + 0x9e3779b97f4a7c15L);
+      HASH_OFFSETS[index] = state;
+    }
+  }
+
+  private final Map<Path, Signature> signatures;
+
+  ZRelatedPosts()
+  {
+    this.signatures = new ConcurrentHashMap<>(128);
+  }
+
+  private static final class Signature
+  {
+    private final byte[] hash;
+    private final int[] values;
+
+    Signature(
+      final byte[] in_hash,
+      final int[] in_values)
+    {
+      this.hash = in_hash;
+      this.values = in_values;
+    }
+  }
+
+  private static long mix(
+    final long x)
+  {
+    long z = x;
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  private static byte[] hash(
+    final String text)
+  {
+    try {
+      return MessageDigest.getInstance("SHA-256")
+        .digest(text.getBytes(StandardCharsets.UTF_8));
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Update the signature of the given post, if the post's text has changed
+   * since the signature was last computed. This method may be called
+   * concurrently.
+   *
+   * @param formats The post formats
+   * @param post    The post
+   *
+   * @return The errors encountered, if any
+   */
+
+  Seq<ZError> update(
+    final ZServiceResolverType<ZBlogPostFormatType> formats,
+    final ZBlogPost post)
+  {
+    Objects.requireNonNull(formats, "formats");
+    Objects.requireNonNull(post, "post");
+
+    final Path path = post.path();
+    final Optional<ZBlogPostFormatType> format =
+      formats.resolve(post.content().format());
+    if (format.isEmpty()) {
+      return Vector.of(ZErrors.ofMessagePath(
+        "No format provider exists for the format: " + post.content().format(),
+        path));
+    }
+
+    final String text;
+    try {
+      text = post.content().text();
+    } catch (final UncheckedIOException e) {
+      return Vector.of(ZErrors.ofExceptionPath(e.getCause(), path));
+    }
+
+    final byte[] text_hash = hash(text);
+    final Signature existing = this.signatures.get(path);
+    if (existing != null && MessageDigest.isEqual(existing.hash, text_hash)) {
+      return Vector.empty();
+    }
+
+    final Validation<Seq<ZError>, String> plain =
+      format.get().producePlain(path, text);
+    if (plain.isInvalid()) {
+      this.signatures.remove(path);
+      return plain.getError();
+    }
+
+    final int[] values = minHash(shingles(plain.get()));
+    this.signatures.put(path, new Signature(text_hash, values));
+    return Vector.empty();
+  }
+
+  /*
+   * The distinct hashes of each run of three consecutive words in the text.
+   * Texts with fewer words than a shingle are treated as a single shingle.
+   */
+
+  private static long[] shingles(
+    final String plain)
+  {
+    final long[] words = words(plain);
+    if (words.length == 0) {
+      return words;
+    }
+
+    final int count = Math.max(1, words.length - SHINGLE_WORDS + 1);
+    final long[] shingles = new long[count];
+    for (int index = 0; index < count; ++index) {
+      long h = 0L;
+      final int end = Math.min(words.length, index + SHINGLE_WORDS);
+      for (int word = index; word < end; ++word) {
+        h = mix(h ^ words[word]);
+      }
+      shingles[index] = h;
+    }
+
+    Arrays.sort(shingles);
+    int unique = 0;
+    for (int index = 0; index < shingles.length; ++index) {
+      if (unique == 0 || shingles[unique - 1] != shingles[index]) {
+        shingles[unique] = shingles[index];
+        unique += 1;
+      }
+    }
+    return Arrays.copyOf(shingles, unique);
+  }
+
+  private static long[] words(
+    final String plain)
+  {
+    long[] words = new long[64];
+    int count = 0;
+    long h = 0xcbf29ce484222325L;
+    int length = 0;
+
+    int index = 0;
+    while (index <= plain.length()) {
+      final int cp = index < plain.length() ? plain.codePointAt(index) : ' ';
+      if (Character.isLetterOrDigit(cp)) {
+        h = (h ^ (long) Character.toLowerCase(cp)) * 0x100000001b3L;
+        length += 1;
+      } else if (length > 0) {
+        if (count == words.length) {
+          words = Arrays.copyOf(words, count * 2);
+        }
+        words[count] = h;
+        count += 1;
+        h = 0xcbf29ce484222325L;
+        length = 0;
+      }
+      index += Character.charCount(cp);
+    }
+    return Arrays.copyOf(words, count);
+  }
+
+  private static int[] minHash(
+    final long[] shingles)
+  {
+    if (shingles.length == 0) {
+      return new int[0];
+    }
+
+    final int[] values = new int[HASHES];
+    Arrays.fill(values, Integer.MAX_VALUE);
+
+    for (final long shingle : shingles) {
+      for (int index = 0; index < HASHES; ++index) {
+        final int value = (int) ((HASH_MULTIPLIERS[index] * shingle
+          + HASH_OFFSETS[index]) >>> 33);
+        if (value < values[index]) {
+          values[index] = value;
+        }
+      }
+    }
+    return values;
+  }
+
+  private static int similarity(
+    final int[] a,
+    final int[] b)
+  {
+    int equal = 0;
+    for (int index = 0; index < HASHES; ++index) {
+      if (a[index] == b[index]) {
+        equal += 1;
+      }
+    }
+    return equal;
+  }
+
+  /**
+   * Find the related posts of each of the given posts, using the signatures
+   * most recently computed by {@link #update(ZServiceResolverType,
+   * ZBlogPost)}. The signatures of any other posts are discarded. Only posts that
+   * are likely to be similar are compared, and so the result may omit posts
+   * that are only slightly similar.
+   *
+   * @param posts The posts
+   * @param count The maximum number of related posts for each post
+   *
+   * @return The related posts of each post, most similar first
+   */
+
+  Map<Path, List<ZBlogPost>> related(
+    final Seq<ZBlogPost> posts,
+    final int count)
+  {
+    Objects.requireNonNull(posts, "posts");
+
+    final Set<Path> paths = new HashSet<>(posts.size());
+    final List<ZBlogPost> signed = new ArrayList<>(posts.size());
+    final List<int[]> values = new ArrayList<>(posts.size());
+    for (final ZBlogPost post : posts) {
+      paths.add(post.path());
+      final Signature signature = this.signatures.get(post.path());
+      if (signature != null && signature.values.length == HASHES) {
+        signed.add(post);
+        values.add(signature.values);
+      }
+    }
+    this.signatures.keySet().retainAll(paths);
+
+    final int[][] candidates = candidates(values);
+    final Map<Path, List<ZBlogPost>> result = new HashMap<>(signed.size());
+    for (int index = 0; index < signed.size(); ++index) {
+      result.put(
+        signed.get(index).path(),
+        best(signed, values, index, candidates[index], count));
+    }
+    return result;
+  }
+
+  private static List<ZBlogPost> best(
+    final List<ZBlogPost> posts,
+    final List<int[]> values,
+    final int index,
+    final int[] candidates,
+    final int count)
+  {
+    final int[] signature = values.get(index);
+    final long[] scored = new long[candidates.length];
+    for (int c = 0; c < candidates.length; ++c) {
+      final int other = candidates[c];
+      final int score = similarity(signature, values.get(other));
+      scored[c] = ((long) (HASHES - score) << 32) | (long) other;
+    }
+    Arrays.sort(scored);
+
+    final int size = Math.min(count, scored.length);
+    final List<ZBlogPost> result = new ArrayList<>(size);
+    for (int c = 0; c < size; ++c) {
+      result.add(posts.get((int) scored[c]));
+    }
+    return result;
+  }
+
+  /*
+   * Each band of each signature is hashed into the upper 40 bits of a key,
+   * with the index of the post in the lower 24 bits, and the sorted keys
+   * then yield runs of posts that share a band. Posts in very large runs are
+   * only paired with their nearest neighbours in the run.
+   */
+
+  private static int[][] candidates(
+    final List<int[]> values)
+  {
+    final int count = values.size();
+    final long[] keys = new long[count * BANDS];
+    for (int index = 0; index < count; ++index) {
+      final int[] signature = values.get(index);
+      for (int band = 0; band < BANDS; ++band) {
+        long h = mix((long) band);
+        for (int row = 0; row < ROWS; ++row) {
+          h = mix(h ^ (long) signature[band * ROWS + row]);
+        }
+        keys[index * BANDS + band] = (h & 0xffffffffff000000L) | (long) index;
+      }
+    }
+    Arrays.sort(keys);
+
+    final int[][] lists = new int[count][];
+    final int[] sizes = new int[count];
+    for (int index = 0; index < count; ++index) {
+      lists[index] = new int[4];
+    }
+
+    int start = 0;
+    while (start < keys.length) {
+      int end = start + 1;
+      while (end < keys.length
+        && (keys[end] & 0xffffffffff000000L) == (keys[start] & 0xffffffffff000000L)) {
+        end += 1;
+      }
+      for (int a = start; a < end; ++a) {
+        final int limit = Math.min(end, a + 1 + BUCKET_WINDOW);
+        for (int b = a + 1; b < limit; ++b) {
+          final int ia = (int) (keys[a] & 0xffffffL);
+          final int ib = (int) (keys[b] & 0xffffffL);
+          add(lists, sizes, ia, ib);
+          add(lists, sizes, ib, ia);
+        }
+      }
+      start = end;
+    }
+
+    for (int index = 0; index < count; ++index) {
+      lists[index] = distinct(lists[index], sizes[index]);
+    }
+    return lists;
+  }
+
+  private static void add(
+    final int[][] lists,
+    final int[] sizes,
+    final int index,
+    final int value)
+  {
+    if (index == value) {
+      return;
+    }
+    if (sizes[index] == lists[index].length) {
+      lists[index] = Arrays.copyOf(lists[index], sizes[index] * 2);
+    }
+    lists[index][sizes[index]] = value;
+    sizes[index] += 1;
+  }
+
+  private static int[] distinct(
+    final int[] list,
+    final int size)
+  {
+    Arrays.sort(list, 0, size);
+    int unique = 0;
+    for (int index = 0; index < size; ++index) {
+      if (unique == 0 || list[unique - 1] != list[index]) {
+        list[unique] = list[index];
+        unique += 1;
+      }
+    }
+    return Arrays.copyOf(list, unique);
+  }
+}
@@ -0,0 +1,646 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.zip.CRC32C;
+
+/**
+ * <p>A persistent cache of rendered post bodies.</p>
+ *
+ * <p>The cache is a single append-only file. The records present when the
+ * file is opened or compacted are read through a memory mapping of the file,
+ * and records appended since then are read with positional reads, so the
+ * file is never remapped as it grows. The file consists of a header followed
+ * by records, each of which holds the SHA-256 hash of a post body, the name
+ * and cache version of the format that rendered the body, the serialized
+ * XHTML fragment, and the plain text. Each record is protected by a CRC32C
+ * checksum, and the file is truncated at the first damaged record when it is
+ * opened. The index of records is held in memory and is rebuilt by scanning
+ * the file when it is opened; a record supersedes any earlier record with
+ * the same key.</p>
+ *
+ * <p>When the file grows beyond the size limit, it is compacted: superseded
+ * records are discarded, the least recently used records are evicted until
+ * the remaining records occupy at most three quarters of the limit, and the
+ * remaining records are written to a new file in order of use that then
+ * atomically replaces the original. Records are therefore stored in order
+ * of use, and the order is recovered when the file is reopened.</p>
+ *
+ * <p>The file is locked while it is open, and so may be used by only one
+ * cache at a time. If the file cannot be locked, opened, or written, the
+ * cache is disabled and behaves as if it were empty.</p>
+ */
+
+final class ZRenderCache implements Closeable
+{
+  private static final Logger LOG;
+  private static final int MAGIC = 0x5a425243;
+  private static final int VERSION = 1;
+  private static final int FILE_HEADER_SIZE = 8;
+  private static final int RECORD_HEADER_SIZE = 8;
+  private static final int HASH_SIZE = 32;
+
+  static {
+    LOG = LoggerFactory.getLogger(ZRenderCache.class);
+  }
+
+  private final Path file;
+  private final long limit;
+  private final HashMap<Key, Slot> index;
+  private FileChannel channel;
+  private FileLock lock;
+  private MappedByteBuffer map;
+  private long end;
+  private long clock;
+
+  private ZRenderCache(
+    final Path in_file,
+    final long in_limit)
+  {
+    this.file = Objects.requireNonNull(in_file, "file");
+    this.limit = in_limit;
+    this.index = new HashMap<>(256);
+  }
+
+  /**
+   * Open the cache in the given file, creating it if necessary. If the file
+   * cannot be opened, the returned cache is disabled.
+   *
+   * @param file  The cache file
+   * @param limit The maximum size of the cache file in bytes
+   *
+   * @return A cache
+   */
+
+  static ZRenderCache open(
+    final Path file,
+    final long limit)
+  {
+    Objects.requireNonNull(file, "file");
+
+    final ZRenderCache cache = new ZRenderCache(file, limit);
+    try {
+      cache.load();
+    } catch (final IOException | OverlappingFileLockException
+      | UnsupportedOperationException e) {
+      cache.disable(e);
+    }
+    return cache;
+  }
+
+  /**
+   * @return The cache file
+   */
+
+  Path file()
+  {
+    return this.file;
+  }
+
+  /**
+   * @return The maximum size of the cache file in bytes
+   */
+
+  long limit()
+  {
+    return this.limit;
+  }
+
+  /**
+   * Find the entry with the given key.
+   *
+   * @param key The key
+   *
+   * @return The entry, if one exists
+   */
+
+  synchronized Optional<Entry> find(
+    final Key key)
+  {
+    Objects.requireNonNull(key, "key");
+
+    final Slot slot = this.index.get(key);
+    if (slot == null) {
+      return Optional.empty();
+    }
+
+    try {
+      this.clock += 1L;
+      slot.stamp = this.clock;
+      final ByteBuffer record = this.view(slot);
+      record.position(RECORD_HEADER_SIZE);
+      decodeKey(record);
+      final String xhtml = decodeString(record, record.getInt());
+      final String plain = decodeString(record, record.getInt());
+      return Optional.of(new Entry(xhtml, plain));
+    } catch (final IOException | RuntimeException e) {
+      this.disable(e);
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Append an entry to the cache, compacting the cache if it has grown beyond
+   * the size limit. Entries that would not fit into the cache are ignored.
+   *
+   * @param key   The key
+   * @param entry The entry
+   */
+
+  synchronized void put(
+    final Key key,
+    final Entry entry)
+  {
+    Objects.requireNonNull(key, "key");
+    Objects.requireNonNull(entry, "entry");
+
+    if (this.channel == null) {
+      return;
+    }
+
+    final ByteBuffer record = encode(key, entry);
+    if ((long) record.capacity() > this.limit / 2L) {
+      return;
+    }
+
+    try {
+      final long offset = this.end;
+      while (record.hasRemaining()) {
+        this.channel.write(record, offset + (long) record.position());
+      }
+      this.end += (long) record.capacity();
+      this.clock += 1L;
+      this.index.put(key, new Slot(offset, record.capacity(), this.clock));
+      if (this.end > this.limit) {
+        this.compact();
+      }
+    } catch (final IOException | RuntimeException e) {
+      this.disable(e);
+    }
+  }
+
+  @Override
+  public synchronized void close()
+    throws IOException
+  {
+    this.index.clear();
+    this.map = null;
+    this.lock = null;
+    final FileChannel current = this.channel;
+    this.channel = null;
+    if (current != null) {
+      current.close();
+    }
+  }
+
+  private void disable(
+    final Exception e)
+  {
+    LOG.warn("render cache {} disabled: ", this.file, e);
+    try {
+      this.close();
+    } catch (final IOException x) {
+      e.addSuppressed(x);
+    }
+  }
+
+  private void load()
+    throws IOException
+  {
+    final Path parent = this.file.toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+
+    this.channel = FileChannel.open(
+      this.file,
+      StandardOpenOption.CREATE,
+      StandardOpenOption.READ,
+      StandardOpenOption.WRITE);
+    this.lock = this.channel.tryLock();
+    if (this.lock == null) {
+      throw new IOException("The cache file is locked by another process");
+    }
+
+    this.end = this.channel.size();
+    if (!this.hasValidHeader()) {
+      this.reset();
+    }
+
+    this.map = this.channel.map(FileChannel.MapMode.READ_ONLY, 0L, this.end);
+
+    long position = FILE_HEADER_SIZE;
+    while (position < this.end) {
+      final int size = this.recordSizeAt(position);
+      if (size == 0) {
+        break;
+      }
+      final ByteBuffer record = this.map.slice((int) position, size);
+      record.position(RECORD_HEADER_SIZE);
+      this.clock += 1L;
+      this.index.put(decodeKey(record), new Slot(position, size, this.clock));
+      position += (long) size;
+    }
+
+    /*
+     * Records appended after the damaged tail is truncated must be read with
+     * positional reads, and so the mapping is limited to the intact records.
+     */
+
+    if (position < this.end) {
+      LOG.debug("truncating damaged cache {} at {}", this.file, position);
+      this.map = this.map.slice(0, (int) position);
+      this.channel.truncate(position);
+      this.end = position;
+    }
+
+    LOG.debug("opened cache {} ({} entries)", this.file, this.index.size());
+    if (this.end > this.limit) {
+      this.compact();
+    }
+  }
+
+  private boolean hasValidHeader()
+    throws IOException
+  {
+    if (this.end < (long) FILE_HEADER_SIZE
+      || this.end > (long) Integer.MAX_VALUE) {
+      return false;
+    }
+
+    final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+    while (header.hasRemaining()) {
+      if (this.channel.read(header, (long) header.position()) < 0) {
+        return false;
+      }
+    }
+    return header.getInt(0) == MAGIC && header.getInt(4) == VERSION;
+  }
+
+  private void reset()
+    throws IOException
+  {
+    final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+    header.putInt(MAGIC);
+    header.putInt(VERSION);
+    header.flip();
+
+    this.channel.truncate(0L);
+    while (header.hasRemaining()) {
+      this.channel.write(header, (long) header.position());
+    }
+    this.end = FILE_HEADER_SIZE;
+    this.index.clear();
+  }
+
+  /*
+   * Return the size of the intact record at the given position, or 0 if
+   * the record is truncated or damaged.
+   */
+
+  private int recordSizeAt(
+    final long position)
+  {
+    if (this.end - position < (long) RECORD_HEADER_SIZE) {
+      return 0;
+    }
+
+    final int payload = this.map.getInt((int) position);
+    final long size = (long) RECORD_HEADER_SIZE + (long) payload;
+    if (payload < HASH_SIZE || size > this.end - position) {
+      return 0;
+    }
+
+    final CRC32C crc = new CRC32C();
+    crc.update(this.map.slice((int) position + RECORD_HEADER_SIZE, payload));
+    if ((int) crc.getValue() != this.map.getInt((int) position + 4)) {
+      return 0;
+    }
+    return (int) size;
+  }
+
+  private ByteBuffer view(
+    final Slot slot)
+    throws IOException
+  {
+    if (slot.offset + (long) slot.size <= (long) this.map.capacity()) {
+      return this.map.slice((int) slot.offset, slot.size);
+    }
+
+    final ByteBuffer record = ByteBuffer.allocate(slot.size);
+    while (record.hasRemaining()) {
+      final long position = slot.offset + (long) record.position();
+      if (this.channel.read(record, position) < 0) {
+        throw new IOException("Unexpected end of cache file");
+      }
+    }
+    return record.flip();
+  }
+
+  private void compact()
+    throws IOException
+  {
+    final List<Map.Entry<Key, Slot>> slots =
+      new ArrayList<>(this.index.entrySet());
+    slots.sort(Comparator.comparingLong(e -> -e.getValue().stamp));
+
+    final long target = this.limit / 4L * 3L;
+    long size = FILE_HEADER_SIZE;
+    int keep = 0;
+    while (keep < slots.size()) {
+      final long next = size + (long) slots.get(keep).getValue().size;
+      if (next > target) {
+        break;
+      }
+      size = next;
+      keep += 1;
+    }
+
+    final List<Map.Entry<Key, Slot>> kept = slots.subList(0, keep);
+    kept.sort(Comparator.comparingLong(e -> e.getValue().stamp));
+    LOG.debug(
+      "compacting cache {}: keeping {} of {} entries ({} bytes)",
+      this.file,
+      Integer.valueOf(keep),
+      Integer.valueOf(slots.size()),
+      Long.valueOf(size));
+
+    final Path temporary =
+      this.file.resolveSibling(this.file.getFileName() + ".tmp");
+    final FileChannel output = FileChannel.open(
+      temporary,
+      StandardOpenOption.CREATE,
+      StandardOpenOption.TRUNCATE_EXISTING,
+      StandardOpenOption.READ,
+      StandardOpenOption.WRITE);
+
+    final HashMap<Key, Slot> moved = new HashMap<>(keep * 2);
+    final FileLock output_lock;
+    try {
+      final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+      header.putInt(MAGIC);
+      header.putInt(VERSION);
+      header.flip();
+      long position = writeFully(output, header, 0L);
+      for (final Map.Entry<Key, Slot> e : kept) {
+        final Slot slot = e.getValue();
+        final long offset = position;
+        position = writeFully(output, this.view(slot), position);
+        moved.put(e.getKey(), new Slot(offset, slot.size, slot.stamp));
+      }
+
+      output_lock = output.tryLock();
+      if (output_lock == null) {
+        throw new IOException("The cache file is locked by another process");
+      }
+      output.force(true);
+      Files.move(
+        temporary,
+        this.file,
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    } catch (final IOException | RuntimeException e) {
+      output.close();
+      Files.deleteIfExists(temporary);
+      throw e;
+    }
+
+    this.channel.close();
+    this.channel = output;
+    this.lock = output_lock;
+    this.end = output.size();
+    this.map = output.map(FileChannel.MapMode.READ_ONLY, 0L, this.end);
+    this.index.clear();
+    this.index.putAll(moved);
+  }
+
+  private static long writeFully(
+    final FileChannel output,
+    final ByteBuffer data,
+    final long position)
+    throws IOException
+  {
+    long offset = position;
+    while (data.hasRemaining()) {
+      offset += (long) output.write(data, offset);
+    }
+    return offset;
+  }
+
+  private static ByteBuffer encode(
+    final Key key,
+    final Entry entry)
+  {
+    final byte[] format = key.format.getBytes(StandardCharsets.UTF_8);
+    final byte[] version = key.version.getBytes(StandardCharsets.UTF_8);
+    final byte[] xhtml = entry.xhtml.getBytes(StandardCharsets.UTF_8);
+    final byte[] plain = entry.plain.getBytes(StandardCharsets.UTF_8);
+
+    final long payload =
+      (long) HASH_SIZE
+        + 4L + (long) format.length
+        + 4L + (long) version.length
+        + 4L + (long) xhtml.length
+        + 4L + (long) plain.length;
+    final int size = Math.toIntExact((long) RECORD_HEADER_SIZE + payload);
+
+    final ByteBuffer record = ByteBuffer.allocate(size);
+    record.putInt((int) payload);
+    record.putInt(0);
+    record.put(key.hash);
+    record.putInt(format.length);
+    record.put(format);
+    record.putInt(version.length);
+    record.put(version);
+    record.putInt(xhtml.length);
+    record.put(xhtml);
+    record.putInt(plain.length);
+    record.put(plain);
+
+    final CRC32C crc = new CRC32C();
+    crc.update(record.array(), RECORD_HEADER_SIZE, (int) payload);
+    record.putInt(4, (int) crc.getValue());
+    record.flip();
+    return record;
+  }
+
+  private static Key decodeKey(
+    final ByteBuffer record)
+  {
+    final byte[] hash = new byte[HASH_SIZE];
+    record.get(hash);
+    final String format = decodeString(record, record.getInt());
+    final String version = decodeString(record, record.getInt());
+    return new Key(hash, format, version);
+  }
+
+  private static String decodeString(
+    final ByteBuffer record,
+    final int length)
+  {
+    final ByteBuffer data = record.slice(record.position(), length);
+    record.position(record.position() + length);
+    return StandardCharsets.UTF_8.decode(data).toString();
+  }
+
+  /**
+   * The key of a cache entry.
+   */
+
+  static final class Key
+  {
+    private final byte[] hash;
+    private final String format;
+    private final String version;
+    private final int code;
+
+    /**
+     * Construct a key.
+     *
+     * @param in_hash    The SHA-256 hash of the post body
+     * @param in_format  The name of the format
+     * @param in_version The cache version of the format
+     */
+
+    Key(
+      final byte[] in_hash,
+      final String in_format,
+      final String in_version)
+    {
+      this.hash = Objects.requireNonNull(in_hash, "hash").clone();
+      this.format = Objects.requireNonNull(in_format, "format");
+      this.version = Objects.requireNonNull(in_version, "version");
+      if (this.hash.length != HASH_SIZE) {
+        throw new IllegalArgumentException(
+          "Hash must be " + HASH_SIZE + " bytes");
+      }
+      this.code = Objects.hash(
+        Integer.valueOf(Arrays.hashCode(this.hash)),
+        this.format,
+        this.version);
+    }
+
+    @Override
+    public boolean equals(
+      final Object other)
+    {
+      if (this == other) {
+        return true;
+      }
+      if (other == null || !Objects.equals(this.getClass(), other.getClass())) {
+        return false;
+      }
+      final Key that = (Key) other;
+      return Arrays.equals(this.hash, that.hash)
+        && Objects.equals(this.format, that.format)
+        && Objects.equals(this.version, that.version);
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return this.code;
+    }
+  }
+
+  /**
+   * A cache entry.
+   */
+
+  static final class Entry
+  {
+    private final String xhtml;
+    private final String plain;
+
+    /**
+     * Construct an entry.
+     *
+     * @param in_xhtml The serialized XHTML fragment
+     * @param in_plain The plain text
+     */
+
+    Entry(
+      final String in_xhtml,
+      final String in_plain)
+    {
+      this.xhtml = Objects.requireNonNull(in_xhtml, "xhtml");
+      this.plain = Objects.requireNonNull(in_plain, "plain");
+    }
+
+    /**
+     * @return The serialized XHTML fragment
+     */
+
+    String xhtml()
+    {
+      return this.xhtml;
+    }
+
+    /**
+     * @return The plain text
+     */
+
+    String plain()
+    {
+      return this.plain;
+    }
+  }
+
+  /*
+   * The location and last use of a record.
+   */
+
+  private static final class Slot
+  {
+    private final long offset;
+    private final int size;
+    private long stamp;
+
+    Slot(
+      final long in_offset,
+      final int in_size,
+      final long in_stamp)
+    {
+      this.offset = in_offset;
+      this.size = in_size;
+      this.stamp = in_stamp;
+    }
+  }
+}
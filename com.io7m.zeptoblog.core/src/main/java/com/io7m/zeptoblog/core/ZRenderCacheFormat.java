@@ -0,0 +1,223 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.core;
+
+import io.vavr.collection.Seq;
+import io.vavr.control.Validation;
+import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
+import java.util.Optional;
+
+import static io.vavr.control.Validation.valid;
+
+/**
+ * A format that serves XHTML and plain text from a render cache, delegating
+ * to the underlying format for bodies that are not cached. Bodies that are
+ * not cached are rendered to both XHTML and plain text so that a single
+ * entry serves every subsequent request for the body.
+ */
+
+final class ZRenderCacheFormat implements ZBlogPostFormatType
+{
+  private static final ThreadLocal<DocumentBuilder> BUILDERS;
+
+  static {
+    BUILDERS = new ThreadLocal<>();
+  }
+
+  private final ZRenderCache cache;
+  private final ZBlogPostFormatType format;
+  private final String version;
+
+  ZRenderCacheFormat(
+    final ZRenderCache in_cache,
+    final ZBlogPostFormatType in_format,
+    final String in_version)
+  {
+    this.cache = Objects.requireNonNull(in_cache, "cache");
+    this.format = Objects.requireNonNull(in_format, "format");
+    this.version = Objects.requireNonNull(in_version, "version");
+  }
+
+  private static byte[] sha256(
+    final String text)
+  {
+    try {
+      return MessageDigest.getInstance("SHA-256")
+        .digest(text.getBytes(StandardCharsets.UTF_8));
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String excerpt(
+    final String plain,
+    final int length)
+  {
+    return plain.length() > length ? plain.substring(0, length) : plain;
+  }
+
+  private static Optional<String> serialize(
+    final Element element)
+  {
+    try (ByteArrayOutputStream bao = new ByteArrayOutputStream(1024)) {
+      ZXML.xmlSerializeElementToStream(bao, element);
+      return Optional.of(bao.toString(StandardCharsets.UTF_8));
+    } catch (final IOException | TransformerException
+      | ParserConfigurationException e) {
+      return Optional.empty();
+    }
+  }
+
+  private static Optional<Element> parse(
+    final Path path,
+    final String xhtml)
+  {
+    try (InputStream stream =
+           new ByteArrayInputStream(xhtml.getBytes(StandardCharsets.UTF_8))) {
+      DocumentBuilder builder = BUILDERS.get();
+      if (builder == null) {
+        builder = ZXML.xmlNewDocumentBuilder();
+        BUILDERS.set(builder);
+      }
+      builder.reset();
+      return Optional.of(
+        builder.parse(stream, path.toString()).getDocumentElement());
+    } catch (final IOException | SAXException | ParserConfigurationException e) {
+      return Optional.empty();
+    }
+  }
+
+  @Override
+  public String name()
+  {
+    return this.format.name();
+  }
+
+  @Override
+  public String description()
+  {
+    return this.format.description();
+  }
+
+  @Override
+  public Optional<String> cacheVersion()
+  {
+    return Optional.of(this.version);
+  }
+
+  @Override
+  public Validation<Seq<ZError>, Element> produceXHTML(
+    final Path path,
+    final String text)
+  {
+    Objects.requireNonNull(path, "Path");
+    Objects.requireNonNull(text, "Text");
+
+    final ZRenderCache.Key key = this.key(text);
+    final Optional<Element> cached =
+      this.cache.find(key).flatMap(entry -> parse(path, entry.xhtml()));
+    if (cached.isPresent()) {
+      return valid(cached.get());
+    }
+
+    final Validation<Seq<ZError>, Element> xhtml =
+      this.format.produceXHTML(path, text);
+    if (xhtml.isValid()) {
+      this.format.producePlain(path, text)
+        .forEach(plain -> this.store(key, xhtml.get(), plain));
+    }
+    return xhtml;
+  }
+
+  @Override
+  public Validation<Seq<ZError>, String> producePlain(
+    final Path path,
+    final String text)
+  {
+    return this.produceExcerpt(path, text, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public Validation<Seq<ZError>, String> produceExcerpt(
+    final Path path,
+    final String text,
+    final int length)
+  {
+    Objects.requireNonNull(path, "Path");
+    Objects.requireNonNull(text, "Text");
+
+    final ZRenderCache.Key key = this.key(text);
+    final Optional<ZRenderCache.Entry> cached = this.cache.find(key);
+    if (cached.isPresent()) {
+      return valid(excerpt(cached.get().plain(), length));
+    }
+
+    final Validation<Seq<ZError>, Element> xhtml =
+      this.format.produceXHTML(path, text);
+    if (xhtml.isInvalid()) {
+      return this.format.produceExcerpt(path, text, length);
+    }
+
+    final Validation<Seq<ZError>, String> plain =
+      this.format.producePlain(path, text);
+    plain.forEach(p -> this.store(key, xhtml.get(), p));
+    return plain.map(p -> excerpt(p, length));
+  }
+
+  @Override
+  public boolean supportsPassthrough()
+  {
+    return this.format.supportsPassthrough();
+  }
+
+  @Override
+  public Validation<Seq<ZError>, byte[]> producePassthrough(
+    final Path path,
+    final String text)
+  {
+    return this.format.producePassthrough(path, text);
+  }
+
+  private ZRenderCache.Key key(
+    final String text)
+  {
+    return new ZRenderCache.Key(sha256(text), this.format.name(), this.version);
+  }
+
+  private void store(
+    final ZRenderCache.Key key,
+    final Element xhtml,
+    final String plain)
+  {
+    serialize(xhtml).ifPresent(
+      text -> this.cache.put(key, new ZRenderCache.Entry(text, plain)));
+  }
+}
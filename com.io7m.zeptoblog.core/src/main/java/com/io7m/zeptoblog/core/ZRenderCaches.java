@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.core;
+
+import io.vavr.collection.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * The render cache used by a renderer provider. The cache file is kept open
+ * between renderers, and is reopened when the configured file or size limit
+ * changes.
+ */
+
+final class ZRenderCaches
+{
+  private static final Logger LOG;
+
+  static {
+    LOG = LoggerFactory.getLogger(ZRenderCaches.class);
+  }
+
+  private ZRenderCache cache;
+
+  ZRenderCaches()
+  {
+
+  }
+
+  /**
+   * Produce a format resolver that caches the output of the formats resolved
+   * by the given resolver, if the configuration specifies a render cache.
+   *
+   * @param formats The underlying format resolver
+   * @param config  The blog configuration
+   *
+   * @return A format resolver
+   */
+
+  synchronized ZServiceResolverType<ZBlogPostFormatType> resolver(
+    final ZServiceResolverType<ZBlogPostFormatType> formats,
+    final ZBlogConfiguration config)
+  {
+    Objects.requireNonNull(formats, "formats");
+    Objects.requireNonNull(config, "config");
+
+    final Optional<Path> file = config.renderCache();
+    if (this.cache != null) {
+      final boolean same =
+        file.isPresent()
+          && Objects.equals(this.cache.file(), file.get())
+          && this.cache.limit() == config.renderCacheSize();
+      if (!same) {
+        this.close();
+      }
+    }
+
+    if (!file.isPresent()) {
+      return formats;
+    }
+    if (this.cache == null) {
+      this.cache = ZRenderCache.open(file.get(), config.renderCacheSize());
+    }
+    return new Resolver(this.cache, formats);
+  }
+
+  private void close()
+  {
+    try {
+      this.cache.close();
+    } catch (final IOException e) {
+      LOG.debug("could not close cache {}: ", this.cache.file(), e);
+    }
+    this.cache = null;
+  }
+
+  private static final class Resolver
+    implements ZServiceResolverType<ZBlogPostFormatType>
+  {
+    private final ZRenderCache cache;
+    private final ZServiceResolverType<ZBlogPostFormatType> formats;
+
+    Resolver(
+      final ZRenderCache in_cache,
+      final ZServiceResolverType<ZBlogPostFormatType> in_formats)
+    {
+      this.cache = Objects.requireNonNull(in_cache, "cache");
+      this.formats = Objects.requireNonNull(in_formats, "formats");
+    }
+
+    private ZBlogPostFormatType wrap(
+      final ZBlogPostFormatType format)
+    {
+      return format.cacheVersion()
+        .<ZBlogPostFormatType>map(
+          version -> new ZRenderCacheFormat(this.cache, format, version))
+        .orElse(format);
+    }
+
+    @Override
+    public Optional<ZBlogPostFormatType> resolve(
+      final String name)
+    {
+      return this.formats.resolve(name).map(this::wrap);
+    }
+
+    @Override
+    public Set<ZBlogPostFormatType> available()
+    {
+      return this.formats.available().map(this::wrap);
+    }
+  }
+}
@@ -0,0 +1,505 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * <p>An inverted index of the words in a set of documents, and its encoding
+ * as a manifest and a set of size-bounded shards that a browser can load
+ * independently.</p>
+ *
+ * <p>The manifest is a JSON object that lists the documents in index order,
+ * and the first and last term held by each shard. Each shard is a sequence
+ * of unsigned LEB128 integers and UTF-8 strings:</p>
+ *
+ * <pre>
+ * shard   := count:varint entry{count}
+ * entry   := length:varint term:utf8{length} postings:varint posting{postings}
+ * posting := gap:varint frequency:varint
+ * </pre>
+ *
+ * <p>Entries appear in ascending order of term, and the terms of each shard
+ * follow those of the previous shard. The postings of each term appear in
+ * ascending order of document index. The gap of each posting is the
+ * difference between its document index and that of the previous posting
+ * of the same term, or the document index itself for the first
+ * posting.</p>
+ */
+
+final class ZSearchIndex
+{
+  /**
+   * The version of the index format.
+   */
+
+  static final int VERSION = 1;
+
+  private static final int TERM_LENGTH_MINIMUM = 2;
+  private static final int TERM_LENGTH_MAXIMUM = 64;
+
+  private final List<Document> documents;
+  private final TreeMap<String, Postings> postings;
+
+  private ZSearchIndex(
+    final List<Document> in_documents,
+    final TreeMap<String, Postings> in_postings)
+  {
+    this.documents = in_documents;
+    this.postings = in_postings;
+  }
+
+  /**
+   * A tokenized document.
+   */
+
+  static final class Document
+  {
+    private final String title;
+    private final String link;
+    private final String date;
+    private final String[] terms;
+    private final int[] frequencies;
+
+    private Document(
+      final String in_title,
+      final String in_link,
+      final String in_date,
+      final String[] in_terms,
+      final int[] in_frequencies)
+    {
+      this.title = in_title;
+      this.link = in_link;
+      this.date = in_date;
+      this.terms = in_terms;
+      this.frequencies = in_frequencies;
+    }
+
+    /**
+     * @return The number of distinct terms in the document
+     */
+
+    int termCount()
+    {
+      return this.terms.length;
+    }
+  }
+
+  /**
+   * A shard of an encoded index.
+   */
+
+  static final class Shard
+  {
+    private final String file;
+    private final String first;
+    private final String last;
+    private final int count;
+    private final byte[] data;
+
+    private Shard(
+      final String in_file,
+      final String in_first,
+      final String in_last,
+      final int in_count,
+      final byte[] in_data)
+    {
+      this.file = in_file;
+      this.first = in_first;
+      this.last = in_last;
+      this.count = in_count;
+      this.data = in_data;
+    }
+
+    /**
+     * @return The name of the shard file
+     */
+
+    String file()
+    {
+      return this.file;
+    }
+
+    /**
+     * @return The encoded shard
+     */
+
+    byte[] data()
+    {
+      return this.data;
+    }
+  }
+
+  private static final class Postings
+  {
+    private int[] documents;
+    private int[] frequencies;
+    private int size;
+
+    Postings()
+    {
+      this.documents = new int[4];
+      this.frequencies = new int[4];
+      this.size = 0;
+    }
+
+    void add(
+      final int document,
+      final int frequency)
+    {
+      if (this.size == this.documents.length) {
+        this.documents = Arrays.copyOf(this.documents, this.size * 2);
+        this.frequencies = Arrays.copyOf(this.frequencies, this.size * 2);
+      }
+      this.documents[this.size] = document;
+      this.frequencies[this.size] = frequency;
+      ++this.size;
+    }
+  }
+
+  /**
+   * A growable byte buffer with unsigned LEB128 encoding.
+   */
+
+  private static final class Encoder
+  {
+    private byte[] data;
+    private int size;
+
+    Encoder(
+      final int capacity)
+    {
+      this.data = new byte[capacity];
+      this.size = 0;
+    }
+
+    private void reserve(
+      final int count)
+    {
+      if (this.size + count > this.data.length) {
+        this.data = Arrays.copyOf(
+          this.data, Math.max(this.data.length * 2, this.size + count));
+      }
+    }
+
+    void writeByte(
+      final int value)
+    {
+      this.reserve(1);
+      this.data[this.size] = (byte) value;
+      ++this.size;
+    }
+
+    void writeVarint(
+      final int value)
+    {
+      int remaining = value;
+      while ((remaining & ~0x7f) != 0) {
+        this.writeByte((remaining & 0x7f) | 0x80);
+        remaining >>>= 7;
+      }
+      this.writeByte(remaining);
+    }
+
+    void writeBytes(
+      final byte[] bytes,
+      final int count)
+    {
+      this.reserve(count);
+      System.arraycopy(bytes, 0, this.data, this.size, count);
+      this.size += count;
+    }
+
+    void writeEncoder(
+      final Encoder other)
+    {
+      this.writeBytes(other.data, other.size);
+    }
+
+    int size()
+    {
+      return this.size;
+    }
+
+    void clear()
+    {
+      this.size = 0;
+    }
+
+    byte[] toByteArray()
+    {
+      return Arrays.copyOf(this.data, this.size);
+    }
+  }
+
+  /**
+   * Tokenize the given text. Terms are maximal runs of letters and digits,
+   * converted to lower case. Terms that are very short or very long are
+   * ignored.
+   *
+   * @param title The title of the document
+   * @param link  The link to the document
+   * @param date  The date of the document, or the empty string
+   * @param text  The plain text of the document
+   *
+   * @return A tokenized document
+   */
+
+  static Document tokenize(
+    final String title,
+    final String link,
+    final String date,
+    final String text)
+  {
+    Objects.requireNonNull(title, "title");
+    Objects.requireNonNull(link, "link");
+    Objects.requireNonNull(date, "date");
+    Objects.requireNonNull(text, "text");
+
+    final Map<String, int[]> counts = new HashMap<>(256);
+    final StringBuilder term = new StringBuilder(TERM_LENGTH_MAXIMUM);
+    tokenizeInto(title, term, counts);
+    tokenizeInto(text, term, counts);
+
+    final String[] terms = counts.keySet().toArray(new String[0]);
+    Arrays.sort(terms);
+    final int[] frequencies = new int[terms.length];
+    for (int index = 0; index < terms.length; ++index) {
+      frequencies[index] = counts.get(terms[index])[0];
+    }
+    return new Document(title, link, date, terms, frequencies);
+  }
+
+  private static void tokenizeInto(
+    final String text,
+    final StringBuilder term,
+    final Map<String, int[]> counts)
+  {
+    term.setLength(0);
+    int length = 0;
+
+    int index = 0;
+    while (index <= text.length()) {
+      final int cp = index < text.length() ? text.codePointAt(index) : ' ';
+      if (Character.isLetterOrDigit(cp)) {
+        if (length < TERM_LENGTH_MAXIMUM) {
+          term.appendCodePoint(Character.toLowerCase(cp));
+        }
+        ++length;
+      } else {
+        if (length >= TERM_LENGTH_MINIMUM && length <= TERM_LENGTH_MAXIMUM) {
+          counts.computeIfAbsent(term.toString(), k -> new int[1])[0] += 1;
+        }
+        term.setLength(0);
+        length = 0;
+      }
+      index += Character.charCount(cp);
+    }
+  }
+
+  /**
+   * Build an index of the given documents. Documents are numbered in the
+   * order given.
+   *
+   * @param documents The documents
+   *
+   * @return An index
+   */
+
+  static ZSearchIndex build(
+    final List<Document> documents)
+  {
+    Objects.requireNonNull(documents, "documents");
+
+    final Map<String, Postings> by_term = new HashMap<>(4096);
+    for (int index = 0; index < documents.size(); ++index) {
+      final Document document = documents.get(index);
+      for (int t = 0; t < document.terms.length; ++t) {
+        by_term.computeIfAbsent(document.terms[t], k -> new Postings())
+          .add(index, document.frequencies[t]);
+      }
+    }
+    return new ZSearchIndex(List.copyOf(documents), new TreeMap<>(by_term));
+  }
+
+  /**
+   * Encode the index as a sequence of shards. A shard is closed once it
+   * reaches the given size, so a shard exceeds the size only if it holds
+   * a single term whose postings alone exceed the size.
+   *
+   * @param shard_size The approximate maximum size of each shard in bytes
+   *
+   * @return The encoded shards
+   */
+
+  List<Shard> shards(
+    final int shard_size)
+  {
+    final List<Shard> shards = new ArrayList<>(16);
+    final Encoder shard = new Encoder(shard_size);
+    final Encoder entry = new Encoder(256);
+
+    String first = null;
+    String last = null;
+    int count = 0;
+
+    for (final Map.Entry<String, Postings> e : this.postings.entrySet()) {
+      entry.clear();
+      encodeEntry(entry, e.getKey(), e.getValue());
+
+      if (count > 0 && shard.size() + entry.size() > shard_size) {
+        shards.add(finishShard(shards.size(), first, last, count, shard));
+        shard.clear();
+        count = 0;
+      }
+
+      if (count == 0) {
+        first = e.getKey();
+      }
+      last = e.getKey();
+      shard.writeEncoder(entry);
+      ++count;
+    }
+
+    if (count > 0) {
+      shards.add(finishShard(shards.size(), first, last, count, shard));
+    }
+    return shards;
+  }
+
+  private static void encodeEntry(
+    final Encoder entry,
+    final String term,
+    final Postings postings)
+  {
+    final byte[] term_bytes = term.getBytes(StandardCharsets.UTF_8);
+    entry.writeVarint(term_bytes.length);
+    entry.writeBytes(term_bytes, term_bytes.length);
+    entry.writeVarint(postings.size);
+
+    int previous = 0;
+    for (int index = 0; index < postings.size; ++index) {
+      entry.writeVarint(postings.documents[index] - previous);
+      entry.writeVarint(postings.frequencies[index]);
+      previous = postings.documents[index];
+    }
+  }
+
+  private static Shard finishShard(
+    final int index,
+    final String first,
+    final String last,
+    final int count,
+    final Encoder shard)
+  {
+    final Encoder output = new Encoder(shard.size() + 5);
+    output.writeVarint(count);
+    output.writeEncoder(shard);
+    return new Shard(
+      String.format("shard-%04d.bin", Integer.valueOf(index)),
+      first,
+      last,
+      count,
+      output.toByteArray());
+  }
+
+  /**
+   * Produce the manifest for the given shards of this index.
+   *
+   * @param shards The shards
+   *
+   * @return The manifest, as JSON text
+   */
+
+  String manifest(
+    final List<Shard> shards)
+  {
+    Objects.requireNonNull(shards, "shards");
+
+    final StringBuilder text = new StringBuilder(4096);
+    text.append("{\n  \"version\": ").append(VERSION).append(",\n");
+    text.append("  \"documents\": [");
+    for (int index = 0; index < this.documents.size(); ++index) {
+      final Document document = this.documents.get(index);
+      text.append(index == 0 ? "\n" : ",\n");
+      text.append("    {\"title\": ");
+      appendString(text, document.title);
+      text.append(", \"link\": ");
+      appendString(text, document.link);
+      text.append(", \"date\": ");
+      appendString(text, document.date);
+      text.append('}');
+    }
+    text.append("\n  ],\n");
+    text.append("  \"shards\": [");
+    for (int index = 0; index < shards.size(); ++index) {
+      final Shard shard = shards.get(index);
+      text.append(index == 0 ? "\n" : ",\n");
+      text.append("    {\"file\": ");
+      appendString(text, shard.file);
+      text.append(", \"first\": ");
+      appendString(text, shard.first);
+      text.append(", \"last\": ");
+      appendString(text, shard.last);
+      text.append(", \"terms\": ").append(shard.count).append('}');
+    }
+    text.append("\n  ]\n}\n");
+    return text.toString();
+  }
+
+  private static void appendString(
+    final StringBuilder text,
+    final String value)
+  {
+    text.append('"');
+    for (int index = 0; index < value.length(); ++index) {
+      final char c = value.charAt(index);
+      switch (c) {
+        case '"':
+          text.append("\\\"");
+          break;
+        case '\\':
+          text.append("\\\\");
+          break;
+        case '\n':
+          text.append("\\n");
+          break;
+        case '\r':
+          text.append("\\r");
+          break;
+        case '\t':
+          text.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            text.append(String.format("\\u%04x", Integer.valueOf(c)));
+          } else {
+            text.append(c);
+          }
+          break;
+      }
+    }
+    text.append('"');
+  }
+}
@@ -0,0 +1,479 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.core;
+
+import com.io7m.jproperties.JProperties;
+import com.io7m.jproperties.JPropertyException;
+import io.vavr.collection.Seq;
+import io.vavr.collection.SortedMap;
+import io.vavr.collection.TreeMap;
+import io.vavr.collection.Vector;
+import io.vavr.control.Validation;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static io.vavr.control.Validation.invalid;
+import static io.vavr.control.Validation.valid;
+
+/**
+ * <p>A generator that writes a full-text search index of the blog to the
+ * output directory, for use by client-side search. The generator does not
+ * produce any posts.</p>
+ *
+ * <p>The index is written to the directory named by the
+ * {@code com.io7m.zeptoblog.search.directory} property (default:
+ * {@code search}), relative to the output root, and consists of a manifest
+ * named {@code index.json} and a set of shards whose size is bounded by the
+ * {@code com.io7m.zeptoblog.search.shard_size} property (default:
+ * {@code 65536} bytes). See {@link ZSearchIndex} for the format.</p>
+ *
+ * <p>The generator parses the blog itself, and so the index includes the
+ * posts produced by generators that are executed before it. The plain text
+ * of each post is produced by the post's format and is tokenized on a pool
+ * of threads. The generator retains the tokenized posts, so only posts that
+ * have changed are tokenized when the generator is executed again, and index
+ * files whose content would not change are not rewritten.</p>
+ */
+
+@Component(service = ZBlogPostGeneratorType.class)
+public final class ZSearchIndexGenerator implements ZBlogPostGeneratorType
+{
+  private static final Logger LOG;
+  private static final int PIPELINE_CAPACITY = 64;
+  private static final String MANIFEST = "index.json";
+
+  static {
+    LOG = LoggerFactory.getLogger(ZSearchIndexGenerator.class);
+  }
+
+  private volatile ZBlogParserProviderType parsers;
+  private volatile ZBlogPostFormatResolverType formats;
+  private final Map<Path, State> states;
+
+  /**
+   * Construct a search index generator.
+   */
+
+  public ZSearchIndexGenerator()
+  {
+    this.parsers = new ZBlogParserProvider();
+    this.formats = new ZBlogPostFormatResolverSL();
+    this.states = new ConcurrentHashMap<>(4);
+  }
+
+  /**
+   * Introduce a blog parser provider.
+   *
+   * @param in_parsers The parser provider
+   */
+
+  @Reference(
+    policyOption = ReferencePolicyOption.RELUCTANT,
+    policy = ReferencePolicy.STATIC,
+    cardinality = ReferenceCardinality.MANDATORY)
+  public void setBlogParserProvider(
+    final ZBlogParserProviderType in_parsers)
+  {
+    this.parsers = Objects.requireNonNull(in_parsers, "parsers");
+  }
+
+  /**
+   * Introduce a post format resolver.
+   *
+   * @param in_formats The post formats
+   */
+
+  @Reference(
+    policyOption = ReferencePolicyOption.RELUCTANT,
+    policy = ReferencePolicy.STATIC,
+    cardinality = ReferenceCardinality.MANDATORY)
+  public void setPostFormatResolver(
+    final ZBlogPostFormatResolverType in_formats)
+  {
+    this.formats = Objects.requireNonNull(in_formats, "formats");
+  }
+
+  @Override
+  public String name()
+  {
+    return "com.io7m.zeptoblog.search";
+  }
+
+  @Override
+  public String description()
+  {
+    return "A full-text search index generator";
+  }
+
+  private static Validation<Seq<ZError>, Path> getDirectory(
+    final ZBlogConfiguration config,
+    final Properties props)
+  {
+    return valid(config.outputRoot().resolve(
+      JProperties.getStringWithDefault(
+        props, "com.io7m.zeptoblog.search.directory", "search")));
+  }
+
+  private static Validation<Seq<ZError>, Integer> getShardSize(
+    final Properties props)
+  {
+    try {
+      final int size =
+        JProperties.getBigIntegerWithDefault(
+          props,
+          "com.io7m.zeptoblog.search.shard_size",
+          BigInteger.valueOf(65536L)).intValueExact();
+      if (size <= 0) {
+        return invalid(Vector.of(ZErrors.ofMessage(
+          "Search index shard size must be positive")));
+      }
+      return valid(Integer.valueOf(size));
+    } catch (final JPropertyException | ArithmeticException e) {
+      return invalid(Vector.of(ZErrors.ofException(e)));
+    }
+  }
+
+  @Override
+  public Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>> generate(
+    final ZBlogConfiguration config,
+    final Properties props)
+  {
+    Objects.requireNonNull(config, "config");
+    Objects.requireNonNull(props, "props");
+
+    return getDirectory(config, props)
+      .flatMap(directory -> getShardSize(props)
+        .flatMap(size -> this.run(config, directory, size.intValue())));
+  }
+
+  private Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>> run(
+    final ZBlogConfiguration config,
+    final Path directory,
+    final int shard_size)
+  {
+    final ZBlogPostFormatResolverType fs = this.formats;
+    final State state = this.states.compute(
+      directory.toAbsolutePath(),
+      (key, existing) -> {
+        if (existing != null && existing.isFor(config, fs)) {
+          return existing;
+        }
+        return new State(config, fs, this.parsers.createParser(config));
+      });
+
+    synchronized (state) {
+      final Validation<Seq<ZError>, ZBlog> parsed = state.parser.parse();
+      if (parsed.isInvalid()) {
+        return invalid(parsed.getError());
+      }
+
+      final ZErrorCollector errors = new ZErrorCollector();
+      final ZBlog blog = parsed.get();
+      final Map<Path, Indexed> indexed = state.tokenize(blog, errors);
+      if (!errors.errors().isEmpty()) {
+        return invalid(errors.errors());
+      }
+
+      final List<ZSearchIndex.Document> documents =
+        new ArrayList<>(indexed.size());
+      for (final ZBlogPost post : blog.posts().values()) {
+        documents.add(indexed.get(post.path()).document);
+      }
+
+      final ZSearchIndex index = ZSearchIndex.build(documents);
+      final List<ZSearchIndex.Shard> shards = index.shards(shard_size);
+      LOG.debug(
+        "indexed {} posts into {} shards",
+        Integer.valueOf(documents.size()),
+        Integer.valueOf(shards.size()));
+
+      writeIndex(config, directory, index, shards, errors);
+      if (!errors.errors().isEmpty()) {
+        return invalid(errors.errors());
+      }
+      return valid(TreeMap.empty());
+    }
+  }
+
+  private static void writeIndex(
+    final ZBlogConfiguration config,
+    final Path directory,
+    final ZSearchIndex index,
+    final List<ZSearchIndex.Shard> shards,
+    final ZErrorCollector errors)
+  {
+    final ZBlogOutput output = new ZBlogOutput(config.outputSync());
+    final Set<String> names = new HashSet<>(shards.size());
+
+    for (final ZSearchIndex.Shard shard : shards) {
+      names.add(shard.file());
+      writeIfChanged(output, directory.resolve(shard.file()), shard.data(), errors);
+    }
+    writeIfChanged(
+      output,
+      directory.resolve(MANIFEST),
+      index.manifest(shards).getBytes(StandardCharsets.UTF_8),
+      errors);
+
+    try (DirectoryStream<Path> stream =
+           Files.newDirectoryStream(directory, "shard-*.bin")) {
+      for (final Path file : stream) {
+        final Path name = file.getFileName();
+        if (name != null && !names.contains(name.toString())) {
+          LOG.debug("deleting {}", file);
+          Files.deleteIfExists(file);
+        }
+      }
+    } catch (final IOException e) {
+      errors.add(ZErrors.ofExceptionPath(e, directory));
+    }
+
+    output.commit(errors);
+  }
+
+  private static void writeIfChanged(
+    final ZBlogOutput output,
+    final Path file,
+    final byte[] data,
+    final ZErrorCollector errors)
+  {
+    try {
+      if (Files.isRegularFile(file)
+        && Files.size(file) == (long) data.length
+        && MessageDigest.isEqual(Files.readAllBytes(file), data)) {
+        LOG.debug("unchanged {}", file);
+        return;
+      }
+
+      LOG.debug("writing {}", file);
+      output.write(file, data);
+    } catch (final IOException e) {
+      errors.add(ZErrors.ofExceptionPath(e, file));
+    }
+  }
+
+  private static byte[] hash(
+    final String text)
+  {
+    try {
+      return MessageDigest.getInstance("SHA-256")
+        .digest(text.getBytes(StandardCharsets.UTF_8));
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /*
+   * A tokenized post, and the title, permalink, date, format, and hash of
+   * the body text from which it was produced. The permalink and date are
+   * stored in the index document, so a change to either must also cause
+   * the post to be tokenized again.
+   */
+
+  private static final class Indexed
+  {
+    private final String title;
+    private final String link;
+    private final String date;
+    private final String format;
+    private final byte[] hash;
+    private final ZSearchIndex.Document document;
+
+    Indexed(
+      final String in_title,
+      final String in_link,
+      final String in_date,
+      final String in_format,
+      final byte[] in_hash,
+      final ZSearchIndex.Document in_document)
+    {
+      this.title = Objects.requireNonNull(in_title, "title");
+      this.link = Objects.requireNonNull(in_link, "link");
+      this.date = Objects.requireNonNull(in_date, "date");
+      this.format = Objects.requireNonNull(in_format, "format");
+      this.hash = Objects.requireNonNull(in_hash, "hash");
+      this.document = Objects.requireNonNull(in_document, "document");
+    }
+
+    boolean isCurrent(
+      final ZBlogPost post,
+      final String other_link,
+      final String other_date,
+      final byte[] other_hash)
+    {
+      final boolean same_header =
+        Objects.equals(this.title, post.title())
+          && Objects.equals(this.link, other_link)
+          && Objects.equals(this.date, other_date);
+      return same_header
+        && Objects.equals(this.format, post.content().format())
+        && MessageDigest.isEqual(this.hash, other_hash);
+    }
+  }
+
+  /*
+   * The retained state of a single index. The state is discarded if the
+   * index is subsequently generated with a different configuration or set
+   * of formats.
+   */
+
+  private static final class State
+  {
+    private final ZBlogConfiguration config;
+    private final ZBlogPostFormatResolverType formats;
+    private final ZBlogParserType parser;
+    private final DateTimeFormatter format_date;
+    private Map<Path, Indexed> indexed;
+
+    State(
+      final ZBlogConfiguration in_config,
+      final ZBlogPostFormatResolverType in_formats,
+      final ZBlogParserType in_parser)
+    {
+      this.config = Objects.requireNonNull(in_config, "config");
+      this.formats = Objects.requireNonNull(in_formats, "formats");
+      this.parser = Objects.requireNonNull(in_parser, "parser");
+      this.format_date = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+      this.indexed = new ConcurrentHashMap<>(0);
+    }
+
+    boolean isFor(
+      final ZBlogConfiguration other_config,
+      final ZBlogPostFormatResolverType other_formats)
+    {
+      return this.formats == other_formats
+        && Objects.equals(this.config, other_config);
+    }
+
+    private int threadCount()
+    {
+      final int configured = this.config.renderThreads();
+      if (configured == 0) {
+        return Runtime.getRuntime().availableProcessors();
+      }
+      return configured;
+    }
+
+    /*
+     * Each post is hashed, and if necessary tokenized, on a pool of
+     * threads. Posts whose title, format, and body text are unchanged since
+     * the previous run reuse their previous tokens.
+     */
+
+    Map<Path, Indexed> tokenize(
+      final ZBlog blog,
+      final ZErrorCollector errors)
+    {
+      final Map<Path, Indexed> previous = this.indexed;
+      final Map<Path, Indexed> next =
+        new ConcurrentHashMap<>(blog.posts().size());
+
+      final ZPipelineStage<ZBlogPost> stage =
+        ZPipelineStage.start(
+          Thread.ofPlatform().name("com.io7m.zeptoblog.search-", 0L),
+          this.threadCount(),
+          PIPELINE_CAPACITY,
+          errors,
+          ZBlogPost::path,
+          post -> this.tokenizePost(previous, post, errors)
+            .ifPresent(result -> next.put(post.path(), result)));
+
+      try {
+        for (final ZBlogPost post : blog.posts().values()) {
+          stage.submit(post);
+        }
+      } finally {
+        stage.finish();
+      }
+
+      this.indexed = next;
+      return next;
+    }
+
+    private Optional<Indexed> tokenizePost(
+      final Map<Path, Indexed> previous,
+      final ZBlogPost post,
+      final ZErrorCollector errors)
+    {
+      final Path path = post.path();
+      final String text;
+      try {
+        text = post.content().text();
+      } catch (final UncheckedIOException e) {
+        errors.add(ZErrors.ofExceptionPath(e.getCause(), path));
+        return Optional.empty();
+      }
+
+      final byte[] text_hash = hash(text);
+      final String link = post.outputPermalinkLink(this.config);
+      final String date =
+        post.date().map(this.format_date::format).orElse("");
+      final Indexed existing = previous.get(path);
+      if (existing != null && existing.isCurrent(post, link, date, text_hash)) {
+        return Optional.of(existing);
+      }
+
+      final String format_name = post.content().format();
+      final Optional<ZBlogPostFormatType> format_opt =
+        this.formats.resolve(format_name);
+      if (format_opt.isEmpty()) {
+        errors.add(ZErrors.ofMessagePath(
+          "No format provider exists for the format: " + format_name, path));
+        return Optional.empty();
+      }
+
+      LOG.trace("tokenizing {}", path);
+      final Validation<Seq<ZError>, String> plain =
+        format_opt.get().producePlain(path, text);
+      if (plain.isInvalid()) {
+        errors.addAll(plain.getError());
+        return Optional.empty();
+      }
+
+      final ZSearchIndex.Document document =
+        ZSearchIndex.tokenize(post.title(), link, date, plain.get());
+
+      return Optional.of(new Indexed(
+        post.title(), link, date, format_name, text_hash, document));
+    }
+  }
+}
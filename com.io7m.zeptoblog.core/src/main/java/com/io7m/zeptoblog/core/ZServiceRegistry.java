@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.core;
+
+import com.io7m.junreachable.UnreachableCodeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A process-wide registry of services. The services of a given type are
+ * located with {@link ServiceLoader} the first time they are requested, and
+ * the results are shared by every {@link ZServiceResolverAbstractSL}
+ * resolver for that type. Services registered explicitly with
+ * {@link #register(Class, ZServiceType)} before the first request for their
+ * type replace the {@link ServiceLoader} scan for that type entirely.
+ */
+
+public final class ZServiceRegistry
+{
+  private static final Logger LOG;
+  private static final Map<Class<?>, Services> SERVICES;
+
+  static {
+    LOG = LoggerFactory.getLogger(ZServiceRegistry.class);
+    SERVICES = new ConcurrentHashMap<>(4);
+  }
+
+  private ZServiceRegistry()
+  {
+    throw new UnreachableCodeException();
+  }
+
+  /**
+   * Register a service. If no services of the given type have been requested
+   * yet, the classpath will not be scanned for services of the type.
+   *
+   * @param type    The type of service
+   * @param service The service
+   * @param <T>     The precise type of service
+   */
+
+  public static <T extends ZServiceType> void register(
+    final Class<T> type,
+    final T service)
+  {
+    Objects.requireNonNull(type, "type");
+    Objects.requireNonNull(service, "service");
+
+    final Services entry = SERVICES.computeIfAbsent(type, k -> new Services());
+    synchronized (entry) {
+      entry.located = true;
+      entry.services.put(service.name(), type.cast(service));
+    }
+  }
+
+  /**
+   * @param type The type of service
+   * @param <T>  The precise type of service
+   *
+   * @return A read-only view of the services of the given type, by name
+   */
+
+  @SuppressWarnings("unchecked")
+  static <T extends ZServiceType> Map<String, T> services(
+    final Class<T> type)
+  {
+    Objects.requireNonNull(type, "type");
+
+    final Services entry = SERVICES.computeIfAbsent(type, k -> new Services());
+    if (!entry.located) {
+      synchronized (entry) {
+        if (!entry.located) {
+          LOG.debug("locating services: {}", type.getCanonicalName());
+          for (final T service : ServiceLoader.load(type)) {
+            entry.services.putIfAbsent(service.name(), service);
+          }
+          entry.located = true;
+        }
+      }
+    }
+    return (Map<String, T>) (Map<String, ?>) entry.view;
+  }
+
+  private static final class Services
+  {
+    private final Map<String, Object> services;
+    private final Map<String, Object> view;
+    private volatile boolean located;
+
+    Services()
+    {
+      this.services = new ConcurrentHashMap<>(8);
+      this.view = Collections.unmodifiableMap(this.services);
+      this.located = false;
+    }
+  }
+}
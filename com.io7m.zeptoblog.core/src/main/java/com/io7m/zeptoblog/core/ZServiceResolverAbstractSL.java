@@ -21,15 +21,14 @@ import io.vavr.collection.HashSet;
 import io.vavr.collection.Set;
 import org.osgi.service.component.annotations.Component;
 
-import java.util.Iterator;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.ServiceLoader;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * A {@link ServiceLoader} resolver implementation.
+ * A {@link ServiceLoader} resolver implementation. Services are located on
+ * first use and shared with all other resolvers of the same type via
+ * {@link ZServiceRegistry}.
  *
  * @param <T> The precise type of service
  */
@@ -38,24 +37,17 @@ import java.util.concurrent.ConcurrentHashMap;
 public abstract class ZServiceResolverAbstractSL<T extends ZServiceType>
   implements ZServiceResolverType<T>
 {
-  private final Map<String, T> services;
+  private final Class<T> type;
 
   /**
    * Construct a service resolver.
    *
-   * @param type The type of service
+   * @param in_type The type of service
    */
 
-  public ZServiceResolverAbstractSL(final Class<T> type)
+  public ZServiceResolverAbstractSL(final Class<T> in_type)
   {
-    this.services = new ConcurrentHashMap<>();
-
-    final ServiceLoader<T> loader = ServiceLoader.load(type);
-    final Iterator<T> iter = loader.iterator();
-    while (iter.hasNext()) {
-      final T service = iter.next();
-      this.services.put(service.name(), service);
-    }
+    this.type = Objects.requireNonNull(in_type, "type");
   }
 
   @Override
@@ -63,12 +55,12 @@ public abstract class ZServiceResolverAbstractSL<T extends ZServiceType>
     final String name)
   {
     Objects.requireNonNull(name, "name");
-    return Optional.ofNullable(this.services.get(name));
+    return Optional.ofNullable(ZServiceRegistry.services(this.type).get(name));
   }
 
   @Override
   public final Set<T> available()
   {
-    return HashSet.ofAll(this.services.values());
+    return HashSet.ofAll(ZServiceRegistry.services(this.type).values());
   }
 }
@@ -0,0 +1,352 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.core;
+
+import io.vavr.collection.Iterator;
+import io.vavr.collection.Seq;
+import io.vavr.collection.SortedMap;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p>A writer that produces a sitemap of the permalink, segment, and yearly
+ * pages of a blog.</p>
+ *
+ * <p>Entries are streamed into gzip-compressed sitemap files named
+ * {@code sitemap-N.xml.gz}, and a new file is started whenever the current
+ * file would exceed {@link #MAXIMUM_URLS} entries or {@link #MAXIMUM_BYTES}
+ * uncompressed bytes. A sitemap index named {@code sitemap.xml} lists every
+ * file, and so is the only file that needs to be given to search
+ * engines.</p>
+ */
+
+final class ZSitemapWriter
+{
+  /**
+   * The maximum number of entries in a single sitemap file.
+   */
+
+  static final int MAXIMUM_URLS = 50_000;
+
+  /**
+   * The maximum uncompressed size in bytes of a single sitemap file.
+   */
+
+  static final long MAXIMUM_BYTES = 50L * 1024L * 1024L;
+
+  private static final Logger LOG;
+  private static final String NAMESPACE =
+    "http://www.sitemaps.org/schemas/sitemap/0.9";
+  private static final int ENTRY_OVERHEAD = 128;
+  private static final int CLOSING_SIZE = 16;
+
+  static {
+    LOG = LoggerFactory.getLogger(ZSitemapWriter.class);
+  }
+
+  private final ZBlogConfiguration config;
+  private final ZBlogOutput files;
+  private final XMLOutputFactory factory;
+  private final DateTimeFormatter format_time;
+
+  ZSitemapWriter(
+    final ZBlogConfiguration in_config,
+    final ZBlogOutput in_files)
+  {
+    this.config = Objects.requireNonNull(in_config, "config");
+    this.files = Objects.requireNonNull(in_files, "files");
+    this.factory = XMLOutputFactory.newFactory();
+    this.format_time = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssXXX");
+  }
+
+  private static final class Entry
+  {
+    private final String location;
+    private final Optional<ZonedDateTime> modified;
+
+    Entry(
+      final String in_location,
+      final Optional<ZonedDateTime> in_modified)
+    {
+      this.location = in_location;
+      this.modified = in_modified;
+    }
+
+    /*
+     * An upper bound on the encoded size of the entry: Every character may
+     * be escaped as an entity of up to six bytes.
+     */
+
+    long sizeBound()
+    {
+      return (long) this.location.length() * 6L + (long) ENTRY_OVERHEAD;
+    }
+  }
+
+  /*
+   * The state of the sitemap file currently being written.
+   */
+
+  private static final class Part
+  {
+    private final String name;
+    private Optional<ZonedDateTime> modified;
+    private Entry pending;
+
+    Part(
+      final String in_name,
+      final Entry in_pending)
+    {
+      this.name = in_name;
+      this.modified = Optional.empty();
+      this.pending = in_pending;
+    }
+  }
+
+  private static Optional<ZonedDateTime> latest(
+    final Optional<ZonedDateTime> a,
+    final Optional<ZonedDateTime> b)
+  {
+    if (a.isEmpty()) {
+      return b;
+    }
+    if (b.isEmpty()) {
+      return a;
+    }
+    return a.get().isAfter(b.get()) ? a : b;
+  }
+
+  private static Optional<ZonedDateTime> latestOf(
+    final Seq<ZBlogPost> posts)
+  {
+    Optional<ZonedDateTime> result = Optional.empty();
+    for (final ZBlogPost post : posts) {
+      result = latest(result, post.date());
+    }
+    return result;
+  }
+
+  private String link(
+    final String path)
+  {
+    return this.config.siteURI().resolve(path).toString();
+  }
+
+  /*
+   * The permalink and segment page entries are produced lazily as the
+   * sitemap files are written.
+   */
+
+  private Iterator<Entry> entries(
+    final ZBlog blog)
+  {
+    final SortedMap<Integer, Seq<ZBlogPost>> pages =
+      blog.postsGroupedByPage(this.config.postsPerPage());
+
+    final Iterator<Entry> permalinks =
+      blog.posts().values().iterator().map(post -> new Entry(
+        this.link(post.outputPermalinkLink(this.config)), post.date()));
+
+    final Iterator<Entry> segments =
+      pages.iterator().map(page -> new Entry(
+        this.link("/" + (page._1.intValue() + 1) + ".xhtml"),
+        latestOf(page._2)));
+
+    final Entry yearly =
+      new Entry(this.link("/yearly.xhtml"), latestOf(blog.posts().values()));
+
+    return permalinks.concat(segments).concat(Iterator.of(yearly));
+  }
+
+  /**
+   * Write the sitemap for the given blog, removing any sitemap files left
+   * over from previous builds.
+   *
+   * @param blog   The blog
+   * @param errors The collector to which errors are added
+   */
+
+  void write(
+    final ZBlog blog,
+    final ZErrorCollector errors)
+  {
+    Objects.requireNonNull(blog, "blog");
+    Objects.requireNonNull(errors, "errors");
+
+    final Path root = this.config.outputRoot();
+    final Iterator<Entry> entries = this.entries(blog);
+    final List<Part> parts = new ArrayList<>(4);
+
+    Entry pending = entries.hasNext() ? entries.next() : null;
+    while (pending != null) {
+      final Part part = new Part(
+        String.format("sitemap-%d.xml.gz", Integer.valueOf(parts.size() + 1)),
+        pending);
+      final Path file = root.resolve(part.name);
+      LOG.debug("out: sitemap {}", file);
+
+      try {
+        this.files.write(file, output -> this.writePart(output, part, entries));
+      } catch (final Exception e) {
+        errors.add(ZErrors.ofExceptionPath(e, file));
+        return;
+      }
+      parts.add(part);
+      pending = part.pending;
+    }
+
+    final Path index = root.resolve("sitemap.xml");
+    LOG.debug("out: sitemap index {}", index);
+    try {
+      this.files.write(index, output -> this.writeIndex(output, parts));
+    } catch (final Exception e) {
+      errors.add(ZErrors.ofExceptionPath(e, index));
+    }
+
+    deleteStale(root, parts, errors);
+  }
+
+  private static void deleteStale(
+    final Path root,
+    final List<Part> parts,
+    final ZErrorCollector errors)
+  {
+    final Set<String> names = new HashSet<>(parts.size());
+    for (final Part part : parts) {
+      names.add(part.name);
+    }
+
+    try (DirectoryStream<Path> stream =
+           Files.newDirectoryStream(root, "sitemap-*.xml.gz")) {
+      for (final Path file : stream) {
+        final Path name = file.getFileName();
+        if (name != null && !names.contains(name.toString())) {
+          LOG.debug("deleting {}", file);
+          Files.deleteIfExists(file);
+        }
+      }
+    } catch (final IOException e) {
+      errors.add(ZErrors.ofExceptionPath(e, root));
+    }
+  }
+
+  /*
+   * Write entries into a single sitemap file until either the entries are
+   * exhausted or the next entry would exceed the limits of the file. The
+   * entry that did not fit is left in the part for the next file.
+   */
+
+  private void writePart(
+    final OutputStream output,
+    final Part part,
+    final Iterator<Entry> entries)
+    throws IOException, XMLStreamException
+  {
+    final GZIPOutputStream gzip = new GZIPOutputStream(output, 8192);
+    final CountingOutputStream counter = new CountingOutputStream(gzip);
+    final XMLStreamWriter writer =
+      this.factory.createXMLStreamWriter(counter, "UTF-8");
+
+    writer.writeStartDocument("UTF-8", "1.0");
+    writer.writeStartElement("urlset");
+    writer.writeDefaultNamespace(NAMESPACE);
+
+    int count = 0;
+    Entry entry = part.pending;
+    while (entry != null) {
+      writer.flush();
+      if (count > 0
+        && (count >= MAXIMUM_URLS
+        || counter.getByteCount() + entry.sizeBound() + CLOSING_SIZE
+        > MAXIMUM_BYTES)) {
+        break;
+      }
+
+      writer.writeStartElement("url");
+      this.writeLocation(writer, entry);
+      writer.writeEndElement();
+      part.modified = latest(part.modified, entry.modified);
+      count += 1;
+      entry = entries.hasNext() ? entries.next() : null;
+    }
+
+    writer.writeEndElement();
+    writer.writeEndDocument();
+    writer.flush();
+    writer.close();
+    gzip.finish();
+    part.pending = entry;
+  }
+
+  private void writeLocation(
+    final XMLStreamWriter writer,
+    final Entry entry)
+    throws XMLStreamException
+  {
+    writer.writeStartElement("loc");
+    writer.writeCharacters(entry.location);
+    writer.writeEndElement();
+
+    if (entry.modified.isPresent()) {
+      writer.writeStartElement("lastmod");
+      writer.writeCharacters(entry.modified.get().format(this.format_time));
+      writer.writeEndElement();
+    }
+  }
+
+  private void writeIndex(
+    final OutputStream output,
+    final List<Part> parts)
+    throws XMLStreamException
+  {
+    final XMLStreamWriter writer =
+      this.factory.createXMLStreamWriter(output, "UTF-8");
+
+    writer.writeStartDocument("UTF-8", "1.0");
+    writer.writeStartElement("sitemapindex");
+    writer.writeDefaultNamespace(NAMESPACE);
+    for (final Part part : parts) {
+      writer.writeStartElement("sitemap");
+      this.writeLocation(
+        writer, new Entry(this.link("/" + part.name), part.modified));
+      writer.writeEndElement();
+    }
+    writer.writeEndElement();
+    writer.writeEndDocument();
+    writer.flush();
+    writer.close();
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.core;
+
+import io.vavr.collection.Vector;
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+import java.util.Objects;
+
+/**
+ * A file visitor that copies static files from the source directory to the
+ * output directory. A copier accumulates its own errors, and so may run on
+ * a different thread to the renderer.
+ */
+
+final class ZStaticFileCopier implements FileVisitor<Path>, Runnable
+{
+  private static final Logger LOG;
+
+  static {
+    LOG = LoggerFactory.getLogger(ZStaticFileCopier.class);
+  }
+
+  private final ZBlogConfiguration config;
+  private final ZBlogOutput output;
+  private Vector<ZError> errors;
+
+  ZStaticFileCopier(
+    final ZBlogConfiguration in_config,
+    final ZBlogOutput in_output)
+  {
+    this.config = Objects.requireNonNull(in_config, "config");
+    this.output = Objects.requireNonNull(in_output, "output");
+    this.errors = Vector.empty();
+  }
+
+  /**
+   * @return The errors encountered whilst copying
+   */
+
+  Vector<ZError> errors()
+  {
+    return this.errors;
+  }
+
+  private static boolean extensionIsKnown(
+    final String extension)
+  {
+    return Objects.equals(extension, "zbp");
+  }
+
+  @Override
+  public void run()
+  {
+    try {
+      Files.walkFileTree(
+        this.config.sourceRoot(),
+        EnumSet.noneOf(FileVisitOption.class),
+        Integer.MAX_VALUE,
+        this);
+    } catch (final IOException e) {
+      this.errors = this.errors.append(ZBlogRendererProvider.errorOf(this.config.sourceRoot(), e));
+    }
+  }
+
+  @Override
+  public FileVisitResult preVisitDirectory(
+    final Path dir,
+    final BasicFileAttributes attrs)
+  {
+    return FileVisitResult.CONTINUE;
+  }
+
+  @Override
+  public FileVisitResult visitFile(
+    final Path file,
+    final BasicFileAttributes attrs)
+    throws IOException
+  {
+    final String extension = FilenameUtils.getExtension(file.toString());
+    if (extension != null && !extensionIsKnown(extension)) {
+      final Path relative =
+        this.config.sourceRoot().relativize(file.toAbsolutePath());
+      final Path target =
+        this.config.outputRoot().resolve(relative);
+
+      if (Files.isSymbolicLink(file)) {
+        final Path parent = target.getParent();
+        if (parent != null) {
+          Files.createDirectories(parent);
+        }
+        Files.createSymbolicLink(target, Files.readSymbolicLink(file));
+      } else {
+        LOG.debug("copying {} -> {}", file, target);
+        this.output.copy(file, target);
+      }
+    }
+    return FileVisitResult.CONTINUE;
+  }
+
+  @Override
+  public FileVisitResult visitFileFailed(
+    final Path file,
+    final IOException exc)
+  {
+    this.errors = this.errors.append(ZBlogRendererProvider.errorOf(file, exc));
+    return FileVisitResult.CONTINUE;
+  }
+
+  @Override
+  public FileVisitResult postVisitDirectory(
+    final Path dir,
+    final IOException exc)
+  {
+    return FileVisitResult.CONTINUE;
+  }
+}
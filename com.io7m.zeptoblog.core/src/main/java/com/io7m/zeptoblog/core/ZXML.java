@@ -21,11 +21,13 @@ import org.w3c.dom.Document;
 import org.w3c.dom.DocumentType;
 import org.w3c.dom.Element;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
 import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
@@ -36,8 +38,6 @@ import javax.xml.transform.stream.StreamSource;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Objects;
@@ -125,12 +125,49 @@ public final class ZXML
     Objects.requireNonNull(stream, "stream");
     Objects.requireNonNull(document, "document");
 
+    xmlSerialize(stream, document, xmlNewSerializer());
+  }
+
+  /**
+   * Create a new transformer for use with
+   * {@link #xmlSerializeToStream(OutputStream, Document, Transformer)}.
+   * Transformers are not thread-safe, but a transformer may be reused for
+   * any number of documents on a single thread.
+   *
+   * @return A new transformer
+   *
+   * @throws TransformerException On transformer configuration errors
+   */
+
+  public static Transformer xmlNewSerializer()
+    throws TransformerException
+  {
     final TransformerFactory transformer_factory =
       TransformerFactory.newInstance();
     transformer_factory.setAttribute("indent-number", Integer.valueOf(2));
+    return transformer_factory.newTransformer();
+  }
 
-    final Transformer transformer =
-      transformer_factory.newTransformer();
+  /**
+   * Serialize the given document to the output stream using the given
+   * transformer.
+   *
+   * @param stream      The output stream
+   * @param document    The input document
+   * @param transformer A transformer created with {@link #xmlNewSerializer()}
+   *
+   * @throws TransformerException On transform errors
+   */
+
+  public static void xmlSerializeToStream(
+    final OutputStream stream,
+    final Document document,
+    final Transformer transformer)
+    throws TransformerException
+  {
+    Objects.requireNonNull(stream, "stream");
+    Objects.requireNonNull(document, "document");
+    Objects.requireNonNull(transformer, "transformer");
 
     xmlSerialize(stream, document, transformer);
   }
@@ -203,9 +240,11 @@ public final class ZXML
     transformer.setOutputProperty(
       OutputKeys.OMIT_XML_DECLARATION, "yes");
 
+    transformer.setOutputProperty(
+      OutputKeys.ENCODING, "UTF-8");
     transformer.transform(
       new DOMSource(document),
-      new StreamResult(new OutputStreamWriter(stream, StandardCharsets.UTF_8)));
+      new StreamResult(stream));
   }
 
   /**
@@ -290,6 +329,23 @@ public final class ZXML
     Objects.requireNonNull(path, "path");
     Objects.requireNonNull(stream, "stream");
 
+    return xmlNewDocumentBuilder().parse(stream, path.toString());
+  }
+
+  /**
+   * Create a new non-validating, namespace-aware document builder, configured
+   * with the same security features as
+   * {@link #xmlParseFromStream(Path, InputStream)}. Document builders are not
+   * thread-safe, but may be reused.
+   *
+   * @return A new document builder
+   *
+   * @throws ParserConfigurationException On parser configuration errors
+   */
+
+  public static DocumentBuilder xmlNewDocumentBuilder()
+    throws ParserConfigurationException
+  {
     final DocumentBuilderFactory factory =
       DocumentBuilderFactory.newDefaultInstance();
     factory.setValidating(false);
@@ -307,7 +363,37 @@ public final class ZXML
     factory.setFeature(
       "http://apache.org/xml/features/validation/schema", false);
 
-    final DocumentBuilder builder = factory.newDocumentBuilder();
-    return builder.parse(stream, path.toString());
+    return factory.newDocumentBuilder();
+  }
+
+  /**
+   * Create a new namespace-aware SAX reader, configured with the same
+   * security features as {@link #xmlParseFromStream(Path, InputStream)}.
+   *
+   * @return A new XML reader
+   *
+   * @throws ParserConfigurationException On parser configuration errors
+   * @throws SAXException                 On parser errors
+   */
+
+  public static XMLReader xmlNewReader()
+    throws ParserConfigurationException, SAXException
+  {
+    final SAXParserFactory factory = SAXParserFactory.newDefaultInstance();
+    factory.setValidating(false);
+    factory.setNamespaceAware(true);
+    factory.setFeature(
+      XMLConstants.FEATURE_SECURE_PROCESSING, true);
+    factory.setFeature(
+      "http://apache.org/xml/features/nonvalidating/load-external-dtd",
+      false);
+    factory.setFeature(
+      "http://apache.org/xml/features/xinclude", false);
+    factory.setFeature(
+      "http://xml.org/sax/features/validation", false);
+    factory.setFeature(
+      "http://apache.org/xml/features/validation/schema", false);
+
+    return factory.newSAXParser().getXMLReader();
   }
 }
@@ -37,10 +37,14 @@ module com.io7m.zeptoblog.core
   requires io.vavr;
   requires java.xml;
   requires org.apache.commons.io;
+  requires org.jdom2;
   requires org.slf4j;
 
   uses ZBlogPostFormatType;
   uses ZBlogPostGeneratorType;
 
+  provides ZBlogPostGeneratorType
+    with com.io7m.zeptoblog.core.ZSearchIndexGenerator;
+
   exports com.io7m.zeptoblog.core;
 }
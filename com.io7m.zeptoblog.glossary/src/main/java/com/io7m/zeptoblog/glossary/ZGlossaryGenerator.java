@@ -17,6 +17,7 @@
 package com.io7m.zeptoblog.glossary;
 
 import com.io7m.jproperties.JProperties;
+import com.io7m.jproperties.JPropertyException;
 import com.io7m.jproperties.JPropertyNonexistent;
 import com.io7m.zeptoblog.core.ZBlogConfiguration;
 import com.io7m.zeptoblog.core.ZBlogPost;
@@ -26,8 +27,10 @@ import com.io7m.zeptoblog.core.ZBlogPostFormatResolverType;
 import com.io7m.zeptoblog.core.ZBlogPostFormatType;
 import com.io7m.zeptoblog.core.ZBlogPostFormatXHTML;
 import com.io7m.zeptoblog.core.ZBlogPostGeneratorType;
+import com.io7m.zeptoblog.core.ZBlogPostProcessorType;
 import com.io7m.zeptoblog.core.ZError;
 import com.io7m.zeptoblog.core.ZXML;
+import io.vavr.collection.HashSet;
 import io.vavr.collection.List;
 import io.vavr.collection.Seq;
 import io.vavr.collection.Set;
@@ -35,6 +38,7 @@ import io.vavr.collection.SortedMap;
 import io.vavr.collection.TreeMap;
 import io.vavr.collection.Vector;
 import io.vavr.control.Validation;
+import org.apache.commons.io.FilenameUtils;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
@@ -46,20 +50,44 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 import static com.io7m.zeptoblog.core.ZBlogPostFormatXHTML.XHTML_URI_TEXT;
 import static com.io7m.zeptoblog.core.ZErrors.ofException;
+import static com.io7m.zeptoblog.core.ZErrors.ofExceptionPath;
 import static com.io7m.zeptoblog.core.ZErrors.ofMessagePath;
 import static io.vavr.control.Validation.invalid;
 import static io.vavr.control.Validation.sequence;
 import static io.vavr.control.Validation.valid;
 
 /**
- * A glossary generator.
+ * A glossary generator. The generator retains the parsed items and rendered
+ * item fragments of each glossary that it produces, and only parses and
+ * renders the items that have changed when the same glossary is generated
+ * again.
+ *
+ * If the {@code com.io7m.zeptoblog.glossary.shard_by_letter} property is
+ * {@code true}, the terms of each letter are written to a separate page
+ * named after the output file (such as {@code glossary-a.zbp} for an output
+ * file {@code glossary.zbp}), and the output file contains an index of the
+ * letters.
+ *
+ * If the {@code com.io7m.zeptoblog.glossary.auto_link} property is
+ * {@code true}, the generator provides a post processor that links each
+ * occurrence of a glossary term in the text of every rendered post to the
+ * term's entry in the glossary.
  */
 
 @Component(service = ZBlogPostGeneratorType.class)
@@ -73,6 +101,7 @@ public final class ZGlossaryGenerator implements ZBlogPostGeneratorType
 
   private volatile ZGlossaryParserProviderType parsers;
   private volatile ZBlogPostFormatResolverType formats;
+  private final Map<Path, State> states;
 
   /**
    * Construct a glossary generator.
@@ -82,6 +111,7 @@ public final class ZGlossaryGenerator implements ZBlogPostGeneratorType
   {
     this.parsers = new ZGlossaryParserProvider();
     this.formats = new ZBlogPostFormatResolverSL();
+    this.states = new ConcurrentHashMap<>(4);
   }
 
   /**
@@ -133,7 +163,83 @@ public final class ZGlossaryGenerator implements ZBlogPostGeneratorType
     final ZBlogConfiguration config,
     final Properties props)
   {
-    return new Generator(this.parsers, this.formats, config, props).run();
+    return new Generator(
+      this.parsers, this.formats, this.states, config, props).run();
+  }
+
+  @Override
+  public Optional<ZBlogPostProcessorType> processor(
+    final ZBlogConfiguration config,
+    final Properties props)
+  {
+    return new Generator(
+      this.parsers, this.formats, this.states, config, props).processor();
+  }
+
+  /*
+   * The retained state of a single glossary. The state is discarded if the
+   * glossary is subsequently generated with a different configuration,
+   * source directory, output mode, or set of formats.
+   */
+
+  private static final class State
+  {
+    private final ZBlogConfiguration config;
+    private final ZBlogPostFormatResolverType formats;
+    private final Path source;
+    private final boolean sharded;
+    private final ZGlossaryParserType parser;
+    private Map<ZGlossaryItem, Element> rendered;
+    private Map<String, Letter> letters;
+    private ZGlossary glossary;
+    private SortedMap<Path, ZBlogPost> posts;
+    private ZGlossaryLinker linker;
+
+    State(
+      final ZBlogConfiguration in_config,
+      final ZBlogPostFormatResolverType in_formats,
+      final Path in_source,
+      final boolean in_sharded,
+      final ZGlossaryParserType in_parser)
+    {
+      this.config = Objects.requireNonNull(in_config, "Config");
+      this.formats = Objects.requireNonNull(in_formats, "Formats");
+      this.source = Objects.requireNonNull(in_source, "Source");
+      this.sharded = in_sharded;
+      this.parser = Objects.requireNonNull(in_parser, "Parser");
+      this.rendered = new HashMap<>(0);
+      this.letters = new HashMap<>(0);
+    }
+
+    boolean isFor(
+      final ZBlogConfiguration other_config,
+      final ZBlogPostFormatResolverType other_formats,
+      final Path other_source,
+      final boolean other_sharded)
+    {
+      return this.formats == other_formats
+        && this.sharded == other_sharded
+        && Objects.equals(this.source, other_source)
+        && Objects.equals(this.config, other_config);
+    }
+  }
+
+  /*
+   * A generated letter page, and the items from which it was generated.
+   */
+
+  private static final class Letter
+  {
+    private final SortedMap<String, ZGlossaryItem> items;
+    private final ZBlogPost post;
+
+    Letter(
+      final SortedMap<String, ZGlossaryItem> in_items,
+      final ZBlogPost in_post)
+    {
+      this.items = Objects.requireNonNull(in_items, "Items");
+      this.post = Objects.requireNonNull(in_post, "Post");
+    }
   }
 
   private static final class Generator
@@ -142,41 +248,322 @@ public final class ZGlossaryGenerator implements ZBlogPostGeneratorType
     private final Properties props;
     private final ZGlossaryParserProviderType parsers;
     private final ZBlogPostFormatResolverType formats;
+    private final Map<Path, State> states;
 
     Generator(
       final ZGlossaryParserProviderType in_parsers,
       final ZBlogPostFormatResolverType in_formats,
+      final Map<Path, State> in_states,
       final ZBlogConfiguration in_config,
       final Properties in_props)
     {
       this.parsers = Objects.requireNonNull(in_parsers, "Parsers");
       this.formats = Objects.requireNonNull(in_formats, "Formats");
+      this.states = Objects.requireNonNull(in_states, "States");
       this.config = Objects.requireNonNull(in_config, "Config");
       this.props = Objects.requireNonNull(in_props, "Props");
     }
 
     private static Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>>
-    generate(
-      final Document document,
-      final ZBlogPostFormatResolverType formats,
+    generateSingle(
+      final ZBlogConfiguration config,
+      final State state,
       final Path output_file,
       final ZGlossary glossary)
     {
-      return createGlossaryPost(document, formats, output_file, glossary)
-        .<SortedMap<Path, ZBlogPost>>flatMap(post -> valid(TreeMap.of(output_file, post)))
+      final Vector<ZError> errors =
+        deleteLetterPages(output_file, HashSet.empty());
+      if (!errors.isEmpty()) {
+        return invalid(errors);
+      }
+
+      final Document document;
+      try {
+        document = ZXML.xmlNewDocument();
+      } catch (final ParserConfigurationException e) {
+        return invalid(Vector.of(ofException(e)));
+      }
+
+      return transformGlossary(config, document, state, glossary)
+        .<SortedMap<Path, ZBlogPost>>flatMap(e -> valid(TreeMap.of(
+          output_file,
+          ZBlogPost.of(
+            "Glossary", Optional.empty(), output_file, bodyOfElement(e)))))
         .mapError(Vector::ofAll);
     }
 
-    private static Validation<Seq<ZError>, ZBlogPost>
-    createGlossaryPost(
-      final Document document,
-      final ZBlogPostFormatResolverType formats,
+    /*
+     * In sharded mode, each letter is written to its own page, and the
+     * output file becomes an index of the letters. Only the letters whose
+     * items have changed since the previous run are rendered; the pages
+     * of those letters are then assembled and serialized on a pool of
+     * threads, each page in its own document. The pages of letters that
+     * no longer have any items are deleted.
+     */
+
+    private static Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>>
+    generateSharded(
+      final ZBlogConfiguration config,
+      final State state,
       final Path output_file,
       final ZGlossary glossary)
     {
-      return transformGlossary(document, formats, glossary)
-        .flatMap(e -> valid(ZBlogPost.of(
-          "Glossary", Optional.empty(), output_file, bodyOfElement(e))));
+      final SortedMap<String, SortedMap<String, ZGlossaryItem>> letters =
+        glossary.itemsByLetter();
+      final java.util.List<String> changed = changedLetters(state, letters);
+
+      LOG.debug(
+        "rendering {} of {} glossary letters",
+        Integer.valueOf(changed.size()),
+        Integer.valueOf(letters.size()));
+
+      final java.util.List<Validation<Seq<ZError>, ZBlogPost>> pages;
+      try {
+        pages = transformLetterPages(config, state, output_file, letters, changed);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return invalid(Vector.of(ofException(e)));
+      }
+
+      final Vector<ZError> errors =
+        collectLetterPages(state, letters, changed, pages)
+          .appendAll(deleteLetterPages(output_file, letters.keySet()));
+
+      if (!errors.isEmpty()) {
+        return invalid(errors);
+      }
+
+      return transformIndex(output_file, letters)
+        .<SortedMap<Path, ZBlogPost>>map(index -> {
+          SortedMap<Path, ZBlogPost> posts = TreeMap.of(output_file, index);
+          for (final Letter letter : state.letters.values()) {
+            posts = posts.put(letter.post.path(), letter.post);
+          }
+          return posts;
+        })
+        .mapError(Vector::ofAll);
+    }
+
+    private static java.util.List<String> changedLetters(
+      final State state,
+      final SortedMap<String, SortedMap<String, ZGlossaryItem>> letters)
+    {
+      final java.util.List<String> changed = new ArrayList<>(letters.size());
+      letters.forEach((letter, terms) -> {
+        final Letter previous = state.letters.get(letter);
+        if (previous == null || !Objects.equals(previous.items, terms)) {
+          changed.add(letter);
+        }
+      });
+      return changed;
+    }
+
+    private static java.util.List<Validation<Seq<ZError>, ZBlogPost>>
+    transformLetterPages(
+      final ZBlogConfiguration config,
+      final State state,
+      final Path output_file,
+      final SortedMap<String, SortedMap<String, ZGlossaryItem>> letters,
+      final java.util.List<String> changed)
+      throws InterruptedException
+    {
+      final Map<ZGlossaryItem, Element> rendered =
+        new HashMap<>(state.rendered.size());
+      final java.util.List<ZGlossaryItem> ordered =
+        new ArrayList<>(state.rendered.size());
+
+      letters.forEach((letter, terms) -> {
+        if (changed.contains(letter)) {
+          terms.values().forEach(ordered::add);
+        } else {
+          terms.values().forEach(item -> {
+            final Element element = state.rendered.get(item);
+            if (element != null) {
+              rendered.put(item, element);
+            }
+          });
+        }
+      });
+
+      final Iterator<Validation<Seq<ZError>, Element>> iter =
+        renderItems(config, state, ordered, rendered).iterator();
+      state.rendered = rendered;
+
+      final java.util.List<ZGlossaryTasks.TaskType<Validation<Seq<ZError>, ZBlogPost>>> tasks =
+        new ArrayList<>(changed.size());
+      for (final String letter : changed) {
+        final Seq<Validation<Seq<ZError>, Element>> items =
+          List.fill(letters.get(letter).get().size(), iter::next);
+        tasks.add(() -> transformLetterPage(output_file, letter, items));
+      }
+      return ZGlossaryTasks.runAll(config, "page", tasks);
+    }
+
+    private static Vector<ZError> collectLetterPages(
+      final State state,
+      final SortedMap<String, SortedMap<String, ZGlossaryItem>> letters,
+      final java.util.List<String> changed,
+      final java.util.List<Validation<Seq<ZError>, ZBlogPost>> pages)
+    {
+      final Map<String, Letter> letters_next = new HashMap<>(letters.size());
+      letters.keySet().forEach(letter -> {
+        final Letter previous = state.letters.get(letter);
+        if (previous != null && !changed.contains(letter)) {
+          letters_next.put(letter, previous);
+        }
+      });
+
+      Vector<ZError> errors = Vector.empty();
+      for (int index = 0; index < changed.size(); ++index) {
+        final String letter = changed.get(index);
+        final Validation<Seq<ZError>, ZBlogPost> page = pages.get(index);
+        if (page.isValid()) {
+          letters_next.put(
+            letter, new Letter(letters.get(letter).get(), page.get()));
+        } else {
+          errors = errors.appendAll(page.getError());
+        }
+      }
+
+      state.letters = letters_next;
+      return errors;
+    }
+
+    /*
+     * Letter pages are found by listing the directory of the output file
+     * rather than by consulting the retained state, so that pages left
+     * behind by earlier processes, or by a sharded configuration that has
+     * since been disabled, are also deleted. Only files whose names could
+     * have been produced by letterFile() are considered.
+     */
+
+    private static Vector<ZError> deleteLetterPages(
+      final Path output_file,
+      final Set<String> letters)
+    {
+      final Path directory = output_file.toAbsolutePath().getParent();
+      if (directory == null || !Files.isDirectory(directory)) {
+        return Vector.empty();
+      }
+
+      final Pattern pattern = Pattern.compile(
+        Pattern.quote(baseName(output_file))
+          + "-([a-z0-9]|u[0-9a-f]{4,6})\\.zbp");
+      final Set<String> keep =
+        letters.map(letter -> letterFile(output_file, letter)
+          .getFileName()
+          .toString());
+
+      final java.util.List<Path> stale = new ArrayList<>(4);
+      try (Stream<Path> files = Files.list(directory)) {
+        files.forEach(file -> {
+          final String name = file.getFileName().toString();
+          if (pattern.matcher(name).matches() && !keep.contains(name)) {
+            stale.add(file);
+          }
+        });
+      } catch (final IOException e) {
+        return Vector.of(ofExceptionPath(e, directory));
+      }
+
+      Vector<ZError> errors = Vector.empty();
+      for (final Path file : stale) {
+        LOG.debug("deleting {}", file);
+        try {
+          Files.deleteIfExists(file);
+        } catch (final IOException e) {
+          errors = errors.append(ofExceptionPath(e, file));
+        }
+      }
+      return errors;
+    }
+
+    private static String letterName(
+      final String letter)
+    {
+      final String lower = letter.toLowerCase();
+      if (lower.matches("[a-z0-9]")) {
+        return lower;
+      }
+      return String.format("u%04x", Integer.valueOf(letter.codePointAt(0)));
+    }
+
+    private static String baseName(
+      final Path output_file)
+    {
+      final Path file_name = output_file.getFileName();
+      if (file_name == null) {
+        throw new IllegalStateException(
+          "Could not resolve a filename for path: " + output_file);
+      }
+      return FilenameUtils.removeExtension(file_name.toString());
+    }
+
+    private static Path letterFile(
+      final Path output_file,
+      final String letter)
+    {
+      return output_file.resolveSibling(
+        baseName(output_file) + "-" + letterName(letter) + ".zbp");
+    }
+
+    private static Validation<Seq<ZError>, ZBlogPost> transformLetterPage(
+      final Path output_file,
+      final String letter,
+      final Seq<Validation<Seq<ZError>, Element>> items)
+    {
+      final Document document;
+      try {
+        document = ZXML.xmlNewDocument();
+      } catch (final ParserConfigurationException e) {
+        return invalid(List.of(ofException(e)));
+      }
+
+      return transformLetter(document, letter, items)
+        .map(e_letter -> {
+          final Element e_container =
+            document.createElementNS(XHTML_URI_TEXT, "div");
+          e_container.appendChild(e_letter);
+          return ZBlogPost.of(
+            "Glossary: " + letter,
+            Optional.empty(),
+            letterFile(output_file, letter),
+            bodyOfElement(e_container));
+        });
+    }
+
+    private static Validation<Seq<ZError>, ZBlogPost> transformIndex(
+      final Path output_file,
+      final SortedMap<String, SortedMap<String, ZGlossaryItem>> letters)
+    {
+      final Document document;
+      try {
+        document = ZXML.xmlNewDocument();
+      } catch (final ParserConfigurationException e) {
+        return invalid(List.of(ofException(e)));
+      }
+
+      final Element e_container =
+        document.createElementNS(XHTML_URI_TEXT, "div");
+      final Element e_index =
+        document.createElementNS(XHTML_URI_TEXT, "div");
+      e_index.setAttribute("class", "zb_glossary_index");
+
+      final String base = baseName(output_file);
+      letters.forEach((letter, terms) -> {
+        final Element e_link = document.createElementNS(XHTML_URI_TEXT, "a");
+        e_link.setAttribute(
+          "href", base + "-" + letterName(letter) + ".xhtml");
+        e_link.setAttribute(
+          "title", String.format("%d terms", Integer.valueOf(terms.size())));
+        e_link.setTextContent(letter);
+        e_index.appendChild(e_link);
+        e_index.appendChild(document.createTextNode(" "));
+      });
+
+      e_container.appendChild(e_index);
+      return valid(ZBlogPost.of(
+        "Glossary", Optional.empty(), output_file, bodyOfElement(e_container)));
     }
 
     private static ZBlogPostBody bodyOfElement(
@@ -187,16 +574,94 @@ public final class ZGlossaryGenerator implements ZBlogPostGeneratorType
         ZBlogPostFormatXHTML.serializeXML(e));
     }
 
+    /*
+     * The body of each item that was not rendered by a previous run is
+     * rendered, and enclosed in its own container, on a pool of threads.
+     * Each item is rendered into the document produced for it by its format,
+     * so no document is shared between threads. Successfully rendered items
+     * are retained, keyed by the item itself, so an item is rendered again
+     * only if its term, body, related terms, or path change. Rendered items
+     * are copied into output documents so that the retained fragments are
+     * left intact.
+     */
+
+    private static java.util.List<Validation<Seq<ZError>, Element>>
+    renderItems(
+      final ZBlogConfiguration config,
+      final State state,
+      final java.util.List<ZGlossaryItem> ordered,
+      final Map<ZGlossaryItem, Element> rendered)
+      throws InterruptedException
+    {
+      final Map<ZGlossaryItem, Element> rendered_previous = state.rendered;
+      final java.util.List<ZGlossaryTasks.TaskType<Validation<Seq<ZError>, Element>>> tasks =
+        new ArrayList<>(ordered.size());
+      for (final ZGlossaryItem item : ordered) {
+        if (!rendered_previous.containsKey(item)) {
+          tasks.add(() -> transformItem(state.formats, item));
+        }
+      }
+
+      LOG.debug(
+        "rendering {} of {} glossary items",
+        Integer.valueOf(tasks.size()),
+        Integer.valueOf(ordered.size()));
+
+      final java.util.List<Validation<Seq<ZError>, Element>> results =
+        ZGlossaryTasks.runAll(config, "render", tasks);
+
+      final java.util.List<Validation<Seq<ZError>, Element>> items =
+        new ArrayList<>(ordered.size());
+      final Iterator<Validation<Seq<ZError>, Element>> results_iter =
+        results.iterator();
+
+      for (final ZGlossaryItem item : ordered) {
+        final Element existing = rendered_previous.get(item);
+        if (existing != null) {
+          rendered.put(item, existing);
+          items.add(valid(existing));
+        } else {
+          final Validation<Seq<ZError>, Element> result = results_iter.next();
+          if (result.isValid()) {
+            rendered.put(item, result.get());
+          }
+          items.add(result);
+        }
+      }
+      return items;
+    }
+
     private static Validation<Seq<ZError>, Element>
     transformGlossary(
+      final ZBlogConfiguration config,
       final Document document,
-      final ZBlogPostFormatResolverType formats,
+      final State state,
       final ZGlossary glossary)
     {
+      final SortedMap<String, SortedMap<String, ZGlossaryItem>> letters =
+        glossary.itemsByLetter();
+
+      final int count = glossary.items().size();
+      final java.util.List<ZGlossaryItem> ordered = new ArrayList<>(count);
+      letters.values().forEach(terms -> terms.values().forEach(ordered::add));
+
+      final Map<ZGlossaryItem, Element> rendered = new HashMap<>(count);
+      final java.util.List<Validation<Seq<ZError>, Element>> items;
+      try {
+        items = renderItems(config, state, ordered, rendered);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return invalid(List.of(ofException(e)));
+      }
+      state.rendered = rendered;
+
+      final Iterator<Validation<Seq<ZError>, Element>> iter = items.iterator();
       return sequence(
-        glossary.itemsByLetter()
-          .toList()
-          .map(p -> transformLetter(document, formats, p._1, p._2)))
+        letters.toList()
+          .map(p -> transformLetter(
+            document,
+            p._1,
+            List.fill(p._2.size(), iter::next))))
         .flatMap(elements -> {
           final Element e_container = document.createElementNS(
             XHTML_URI_TEXT,
@@ -247,9 +712,7 @@ public final class ZGlossaryGenerator implements ZBlogPostGeneratorType
         "h3",
         item_target_id,
         item_term));
-
-      final Document elem_document = e_container.getOwnerDocument();
-      e_container.appendChild(elem_document.importNode(e_body, true));
+      e_container.appendChild(e_body);
 
       final Set<String> related = item.seeAlso();
       if (!related.isEmpty()) {
@@ -274,31 +737,27 @@ public final class ZGlossaryGenerator implements ZBlogPostGeneratorType
 
     private static Validation<Seq<ZError>, Element>
     transformItem(
-      final Document document,
       final ZBlogPostFormatResolverType formats,
       final ZGlossaryItem item)
     {
       LOG.trace("transformItem: {}", item.term());
       return transformItemBody(formats, item)
-        .flatMap(body -> transformItemEnclose(document, item, body));
+        .flatMap(body -> transformItemEnclose(
+          body.getOwnerDocument(), item, body));
     }
 
     private static Validation<Seq<ZError>, Element>
     transformLetter(
       final Document document,
-      final ZBlogPostFormatResolverType formats,
       final String letter,
-      final SortedMap<String, ZGlossaryItem> terms)
+      final Seq<Validation<Seq<ZError>, Element>> items)
     {
       LOG.trace(
         "transformLetter: {} ({} terms)",
         letter,
-        Integer.valueOf(terms.size()));
+        Integer.valueOf(items.size()));
 
-      return sequence(terms.values().map(item -> transformItem(
-        document,
-        formats,
-        item)))
+      return sequence(items)
         .flatMap(elements -> {
           final Element e_container = document.createElementNS(
             XHTML_URI_TEXT,
@@ -309,7 +768,8 @@ public final class ZGlossaryGenerator implements ZBlogPostGeneratorType
             "h2",
             letter.toLowerCase(),
             letter));
-          elements.forEach(e_container::appendChild);
+          elements.forEach(
+            e -> e_container.appendChild(document.importNode(e, true)));
           e_container.appendChild(document.createElementNS(
             XHTML_URI_TEXT,
             "hr"));
@@ -332,15 +792,6 @@ public final class ZGlossaryGenerator implements ZBlogPostGeneratorType
       return e_title_h2;
     }
 
-    private static Validation<Seq<ZError>, ZGlossary> runParse(
-      final ZBlogConfiguration in_config,
-      final ZGlossaryParserProviderType in_parsers,
-      final Path in_path)
-    {
-      LOG.debug("parsing {}", in_path);
-      return in_parsers.createParser(in_config, in_path).parse();
-    }
-
     private static Validation<Seq<ZError>, Path> getSourcePath(
       final ZBlogConfiguration config,
       final Properties in_props)
@@ -369,24 +820,194 @@ public final class ZGlossaryGenerator implements ZBlogPostGeneratorType
       }
     }
 
-    public Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>> run()
+    private static Validation<Seq<ZError>, Boolean> getSharded(
+      final Properties in_props)
+    {
+      try {
+        return valid(Boolean.valueOf(
+          JProperties.getBooleanWithDefault(
+            in_props, "com.io7m.zeptoblog.glossary.shard_by_letter", false)));
+      } catch (final JPropertyException ex) {
+        return invalid(Vector.of(ofException(ex)));
+      }
+    }
+
+    private static Validation<Seq<ZError>, Boolean> getAutoLink(
+      final Properties in_props)
+    {
+      try {
+        return valid(Boolean.valueOf(
+          JProperties.getBooleanWithDefault(
+            in_props, "com.io7m.zeptoblog.glossary.auto_link", false)));
+      } catch (final JPropertyException ex) {
+        return invalid(Vector.of(ofException(ex)));
+      }
+    }
+
+    private State state(
+      final Path source_path,
+      final Path output_path,
+      final boolean sharded)
     {
       final ZBlogConfiguration c = this.config;
-      final Properties p = this.props;
-      final ZGlossaryParserProviderType ps = this.parsers;
       final ZBlogPostFormatResolverType fs = this.formats;
+      return this.states.compute(
+        output_path.toAbsolutePath(),
+        (key, existing) -> {
+          if (existing != null && existing.isFor(c, fs, source_path, sharded)) {
+            return existing;
+          }
+          return new State(
+            c,
+            fs,
+            source_path,
+            sharded,
+            this.parsers.createParser(c, source_path));
+        });
+    }
 
-      final Document doc;
-      try {
-        doc = ZXML.xmlNewDocument();
-      } catch (final ParserConfigurationException e) {
-        return invalid(Vector.of(ofException(e)));
+    /*
+     * If the parsed glossary is equal to the glossary that produced the
+     * previously generated posts, the previous posts are returned as they
+     * are. The executor does not rewrite output files whose content would
+     * not change, so an unchanged glossary does not invalidate anything that
+     * depends on the generated posts.
+     */
+
+    private Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>> runIncremental(
+      final Path source_path,
+      final Path output_path,
+      final boolean sharded)
+    {
+      final State state = this.state(source_path, output_path, sharded);
+
+      synchronized (state) {
+        LOG.debug("parsing {}", source_path);
+        final Validation<Seq<ZError>, ZGlossary> parsed = state.parser.parse();
+        if (parsed.isInvalid()) {
+          return invalid(parsed.getError());
+        }
+
+        final ZGlossary glossary = parsed.get();
+        if (state.posts != null && Objects.equals(state.glossary, glossary)) {
+          LOG.debug("glossary unchanged: {}", output_path);
+          return valid(state.posts);
+        }
+
+        final Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>> result;
+        if (sharded) {
+          result = generateSharded(this.config, state, output_path, glossary);
+        } else {
+          result = generateSingle(this.config, state, output_path, glossary);
+        }
+
+        if (result.isInvalid()) {
+          state.glossary = null;
+          state.posts = null;
+          return result;
+        }
+
+        state.glossary = glossary;
+        state.posts = result.get();
+        state.linker = null;
+        return result;
       }
+    }
+
+    public Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>> run()
+    {
+      final ZBlogConfiguration c = this.config;
+      final Properties p = this.props;
 
       return getSourcePath(c, p)
         .flatMap(source_path -> getOutputPath(c, p)
-          .flatMap(output_path -> runParse(c, ps, source_path)
-            .flatMap(glossary -> generate(doc, fs, output_path, glossary))));
+          .flatMap(output_path -> getSharded(p)
+            .flatMap(sharded -> getAutoLink(p)
+              .flatMap(auto_link -> this.runIncremental(
+                source_path, output_path, sharded.booleanValue())))));
+    }
+
+    /*
+     * The linker is built from the glossary most recently generated for the
+     * output file, and is retained until the glossary changes.
+     */
+
+    Optional<ZBlogPostProcessorType> processor()
+    {
+      final ZBlogConfiguration c = this.config;
+      final Properties p = this.props;
+
+      if (!getAutoLink(p).getOrElse(Boolean.FALSE).booleanValue()) {
+        return Optional.empty();
+      }
+
+      final Validation<Seq<ZError>, Path> output_path = getOutputPath(c, p);
+      if (output_path.isInvalid()) {
+        return Optional.empty();
+      }
+
+      final Path output_file = output_path.get();
+      final State state = this.states.get(output_file.toAbsolutePath());
+      if (state == null) {
+        return Optional.empty();
+      }
+
+      synchronized (state) {
+        if (state.glossary == null) {
+          return Optional.empty();
+        }
+        if (state.linker == null) {
+          state.linker = linker(c, state, output_file);
+        }
+        return Optional.of(state.linker);
+      }
+    }
+
+    private static ZGlossaryLinker linker(
+      final ZBlogConfiguration config,
+      final State state,
+      final Path output_file)
+    {
+      final SortedMap<String, ZGlossaryItem> items = state.glossary.items();
+      final java.util.List<String> terms = new ArrayList<>(items.size());
+      final java.util.List<String> links = new ArrayList<>(items.size());
+      final Map<Path, String> pages = new HashMap<>(64);
+
+      items.values().forEach(item -> {
+        final Path page;
+        if (state.sharded) {
+          page = letterFile(
+            output_file, item.term().toUpperCase().substring(0, 1));
+        } else {
+          page = output_file;
+        }
+
+        final String page_link =
+          pages.computeIfAbsent(
+            page, file -> pageLink(config, state.posts.get(file).get()));
+        terms.add(item.term());
+        links.add(page_link + "#" + item.targetID());
+      });
+
+      LOG.debug("linking {} glossary terms", Integer.valueOf(terms.size()));
+      return new ZGlossaryLinker(terms, links);
+    }
+
+    /*
+     * Generated posts are parsed from the source tree along with every other
+     * post, and so are published at the location derived from their path
+     * relative to the source root.
+     */
+
+    private static String pageLink(
+      final ZBlogConfiguration config,
+      final ZBlogPost page)
+    {
+      return ZBlogPost.builder()
+        .from(page)
+        .setPath(config.sourceRoot().relativize(page.path().toAbsolutePath()))
+        .build()
+        .outputPermalinkLink(config);
     }
   }
 }
@@ -21,6 +21,7 @@ import com.io7m.zeptoblog.core.ZBlogConfiguration;
 import com.io7m.zeptoblog.core.ZBlogPostFormatResolverSL;
 import com.io7m.zeptoblog.core.ZBlogPostFormatResolverType;
 import com.io7m.zeptoblog.core.ZError;
+import com.io7m.zeptoblog.core.ZHeaderLexer;
 import io.vavr.collection.HashSet;
 import io.vavr.collection.Seq;
 import io.vavr.collection.Set;
@@ -43,7 +44,6 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 import static io.vavr.control.Validation.invalid;
 import static io.vavr.control.Validation.valid;
@@ -57,7 +57,6 @@ public final class ZGlossaryItemParserProvider implements
   ZGlossaryItemParserProviderType
 {
   private static final Logger LOG;
-  private static final String LINE_SEPARATOR = System.lineSeparator();
 
   static {
     LOG = LoggerFactory.getLogger(ZGlossaryItemParserProvider.class);
@@ -105,6 +104,7 @@ public final class ZGlossaryItemParserProvider implements
     private final LexicalPositionMutable<Path> position;
     private final Path path;
     private final ZBlogConfiguration config;
+    private final ZHeaderLexer lexer;
     private Vector<ZError> errors;
     private String term;
     private String format_name;
@@ -122,6 +122,7 @@ public final class ZGlossaryItemParserProvider implements
       this.position = LexicalPositionMutable.create(0, 0, Optional.of(in_path));
       this.errors = Vector.empty();
       this.related = HashSet.empty();
+      this.lexer = new ZHeaderLexer();
     }
 
     @Override
@@ -185,105 +186,87 @@ public final class ZGlossaryItemParserProvider implements
     {
       while (true) {
         this.position.setLine(this.position.line() + 1);
+        this.position.setColumn(0);
 
         final String raw_line = reader.readLine();
         if (raw_line == null) {
           this.fail("Unexpected EOF", Optional.empty());
           break;
         }
-        final String line = raw_line.trim();
-        if (Objects.equals(line, "")) {
+        if (!this.lexer.lex(raw_line)) {
           break;
         }
-        this.parseHeaderCommand(line);
+        this.parseHeaderCommand();
       }
 
+      this.position.setColumn(0);
       if (this.term == null) {
         this.fail("Term not specified", Optional.empty());
       }
     }
 
-    private void parseHeaderCommand(
-      final String line)
+    private void parseHeaderCommand()
     {
-      final Vector<String> tokens = Vector.of(line.split("\\s+"));
-      switch (tokens.get(0)) {
-        case "term": {
-          this.parseHeaderCommandTerm(line, tokens);
-          break;
-        }
-        case "format": {
-          this.parseHeaderCommandFormat(line, tokens);
-          break;
-        }
-        case "related": {
-          this.parseHeaderCommandRelated(line, tokens);
-          break;
-        }
-        default: {
-          this.fail("Unrecognized command", Optional.empty());
-          break;
-        }
+      final ZHeaderLexer lex = this.lexer;
+      if (lex.tokenIs(0, "term")) {
+        this.parseHeaderCommandTerm();
+      } else if (lex.tokenIs(0, "format")) {
+        this.parseHeaderCommandFormat();
+      } else if (lex.tokenIs(0, "related")) {
+        this.parseHeaderCommandRelated();
+      } else {
+        this.failAt(0, "Unrecognized command", Optional.empty());
       }
     }
 
-    private void parseHeaderCommandRelated(
-      final String line,
-      final Vector<String> tokens)
+    private void parseHeaderCommandRelated()
     {
-      if (tokens.size() >= 2) {
-        this.related = HashSet.ofAll(tokens.tail());
+      final ZHeaderLexer lex = this.lexer;
+      if (lex.tokenCount() >= 2) {
+        Set<String> terms = HashSet.empty();
+        for (int index = 1; index < lex.tokenCount(); ++index) {
+          terms = terms.add(lex.token(index));
+        }
+        this.related = terms;
       } else {
-        final StringBuilder sb = new StringBuilder(128);
-        sb.append("Syntax error.");
-        sb.append(LINE_SEPARATOR);
-        sb.append("  Expected: related <term> <term>*");
-        sb.append(LINE_SEPARATOR);
-        sb.append("  Received: ");
-        sb.append(line);
-        sb.append(LINE_SEPARATOR);
-        this.fail(sb.toString(), Optional.empty());
+        this.failAt(
+          0, lex.syntaxError("related <term> <term>*"), Optional.empty());
       }
     }
 
-    private void parseHeaderCommandFormat(
-      final String line,
-      final Vector<String> tokens)
+    private void parseHeaderCommandFormat()
     {
-      if (tokens.size() == 2) {
-        this.format_name = tokens.get(1);
+      final ZHeaderLexer lex = this.lexer;
+      if (lex.tokenCount() == 2) {
+        this.format_name = lex.token(1);
       } else {
-        final StringBuilder sb = new StringBuilder(128);
-        sb.append("Syntax error.");
-        sb.append(LINE_SEPARATOR);
-        sb.append("  Expected: format <format-name>");
-        sb.append(LINE_SEPARATOR);
-        sb.append("  Received: ");
-        sb.append(line);
-        sb.append(LINE_SEPARATOR);
-        this.fail(sb.toString(), Optional.empty());
+        this.failAt(
+          Math.min(2, lex.tokenCount() - 1),
+          lex.syntaxError("format <format-name>"),
+          Optional.empty());
       }
     }
 
-    private void parseHeaderCommandTerm(
-      final String line,
-      final Vector<String> tokens)
+    private void parseHeaderCommandTerm()
     {
-      if (tokens.size() >= 2) {
-        this.term = tokens.tail().collect(Collectors.joining(" "));
+      final ZHeaderLexer lex = this.lexer;
+      if (lex.tokenCount() >= 2) {
+        this.term = lex.tokensFrom(1);
       } else {
-        final StringBuilder sb = new StringBuilder(128);
-        sb.append("Syntax error.");
-        sb.append(LINE_SEPARATOR);
-        sb.append("  Expected: term <text> <text>*");
-        sb.append(LINE_SEPARATOR);
-        sb.append("  Received: ");
-        sb.append(line);
-        sb.append(LINE_SEPARATOR);
-        this.fail(sb.toString(), Optional.empty());
+        this.failAt(
+          0, lex.syntaxError("term <text> <text>*"), Optional.empty());
       }
     }
 
+    private void failAt(
+      final int token,
+      final String message,
+      final Optional<Exception> exception)
+    {
+      this.position.setColumn(this.lexer.column(token));
+      this.fail(message, exception);
+    }
+
     private Validation<Seq<ZError>, ZGlossaryItem> fail(
       final String message,
       final Optional<Exception> exception)
@@ -0,0 +1,155 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.glossary;
+
+import com.io7m.zeptoblog.core.ZBlogPost;
+import com.io7m.zeptoblog.core.ZBlogPostProcessorType;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import static com.io7m.zeptoblog.core.ZBlogPostFormatXHTML.XHTML_URI_TEXT;
+
+/**
+ * A post processor that links each occurrence of a glossary term in the text
+ * of a post to the term's glossary entry. All of the terms are compiled into
+ * a single matcher, and so each text node is scanned exactly once. Linkers
+ * are immutable and may be shared between threads.
+ */
+
+final class ZGlossaryLinker implements ZBlogPostProcessorType
+{
+  private static final Set<String> SKIPPED =
+    Set.of("a", "code", "kbd", "pre", "samp", "script", "style", "var");
+
+  private final ZGlossaryMatcher matcher;
+  private final List<String> links;
+
+  /**
+   * Construct a linker.
+   *
+   * @param in_terms The glossary terms
+   * @param in_links The link to the glossary entry of each term
+   */
+
+  ZGlossaryLinker(
+    final List<String> in_terms,
+    final List<String> in_links)
+  {
+    Objects.requireNonNull(in_terms, "terms");
+    Objects.requireNonNull(in_links, "links");
+
+    if (in_terms.size() != in_links.size()) {
+      throw new IllegalArgumentException(
+        "Each term must have exactly one link");
+    }
+
+    this.matcher = ZGlossaryMatcher.compile(in_terms);
+    this.links = List.copyOf(in_links);
+  }
+
+  private static boolean isSkipped(
+    final Node node)
+  {
+    if (node.getNodeType() != Node.ELEMENT_NODE) {
+      return false;
+    }
+
+    final String name = node.getLocalName();
+    return SKIPPED.contains(name != null ? name : node.getNodeName());
+  }
+
+  private static void collectText(
+    final Node node,
+    final List<Text> texts)
+  {
+    for (Node child = node.getFirstChild();
+         child != null;
+         child = child.getNextSibling()) {
+      switch (child.getNodeType()) {
+        case Node.TEXT_NODE:
+        case Node.CDATA_SECTION_NODE:
+          texts.add((Text) child);
+          break;
+        case Node.ELEMENT_NODE:
+          if (!isSkipped(child)) {
+            collectText(child, texts);
+          }
+          break;
+        default:
+          break;
+      }
+    }
+  }
+
+  @Override
+  public void process(
+    final ZBlogPost post,
+    final Element body)
+  {
+    Objects.requireNonNull(post, "post");
+    Objects.requireNonNull(body, "body");
+
+    final List<Text> texts = new ArrayList<>(64);
+    collectText(body, texts);
+
+    final Document document = body.getOwnerDocument();
+    for (final Text text : texts) {
+      this.link(document, text);
+    }
+  }
+
+  private void link(
+    final Document document,
+    final Text text)
+  {
+    final String data = text.getData();
+    final DocumentFragment replacement = document.createDocumentFragment();
+    final int[] position = {0};
+
+    this.matcher.match(data, (term, start, end) -> {
+      if (start > position[0]) {
+        replacement.appendChild(
+          document.createTextNode(data.substring(position[0], start)));
+      }
+
+      final Element e_link = document.createElementNS(XHTML_URI_TEXT, "a");
+      e_link.setAttribute("class", "zb_glossary_link");
+      e_link.setAttribute("href", this.links.get(term));
+      e_link.setTextContent(data.substring(start, end));
+      replacement.appendChild(e_link);
+      position[0] = end;
+    });
+
+    if (position[0] == 0) {
+      return;
+    }
+
+    if (position[0] < data.length()) {
+      replacement.appendChild(
+        document.createTextNode(data.substring(position[0])));
+    }
+    text.getParentNode().replaceChild(replacement, text);
+  }
+}
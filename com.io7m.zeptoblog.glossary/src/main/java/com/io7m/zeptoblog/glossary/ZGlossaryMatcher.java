@@ -0,0 +1,289 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.glossary;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * An Aho-Corasick automaton that finds occurrences of a fixed set of terms
+ * in text in a single pass, regardless of the number of terms. Terms are
+ * matched without regard to case, and only where they form whole words.
+ * Matchers are immutable and may be shared between threads.
+ */
+
+final class ZGlossaryMatcher
+{
+  private final char[][] keys;
+  private final int[][] targets;
+  private final int[] fail;
+  private final int[] output;
+  private final int[] output_next;
+  private final int[] lengths;
+
+  private ZGlossaryMatcher(
+    final char[][] in_keys,
+    final int[][] in_targets,
+    final int[] in_fail,
+    final int[] in_output,
+    final int[] in_output_next,
+    final int[] in_lengths)
+  {
+    this.keys = in_keys;
+    this.targets = in_targets;
+    this.fail = in_fail;
+    this.output = in_output;
+    this.output_next = in_output_next;
+    this.lengths = in_lengths;
+  }
+
+  /**
+   * The type of receivers of matches.
+   */
+
+  interface ReceiverType
+  {
+    /**
+     * A term was matched.
+     *
+     * @param term  The index of the term
+     * @param start The offset of the first character of the match
+     * @param end   The offset following the last character of the match
+     */
+
+    void receive(
+      int term,
+      int start,
+      int end);
+  }
+
+  private static char fold(
+    final char c)
+  {
+    return Character.toLowerCase(c);
+  }
+
+  /**
+   * Compile a matcher for the given terms. Empty terms are ignored, as are
+   * terms that differ from an earlier term only in case.
+   *
+   * @param terms The terms
+   *
+   * @return A matcher that reports matches using indices into {@code terms}
+   */
+
+  static ZGlossaryMatcher compile(
+    final List<String> terms)
+  {
+    Objects.requireNonNull(terms, "terms");
+
+    final List<Map<Character, Integer>> transitions = new ArrayList<>(1024);
+    final List<Integer> outputs = new ArrayList<>(1024);
+    transitions.add(new HashMap<>(64));
+    outputs.add(Integer.valueOf(-1));
+
+    final int[] lengths = new int[terms.size()];
+    for (int term = 0; term < terms.size(); ++term) {
+      final String text = terms.get(term);
+      lengths[term] = text.length();
+      if (text.isEmpty()) {
+        continue;
+      }
+
+      int state = 0;
+      for (int index = 0; index < text.length(); ++index) {
+        final Character c = Character.valueOf(fold(text.charAt(index)));
+        final Integer next = transitions.get(state).get(c);
+        if (next != null) {
+          state = next.intValue();
+        } else {
+          final int created = transitions.size();
+          transitions.add(new HashMap<>(4));
+          outputs.add(Integer.valueOf(-1));
+          transitions.get(state).put(c, Integer.valueOf(created));
+          state = created;
+        }
+      }
+
+      if (outputs.get(state).intValue() == -1) {
+        outputs.set(state, Integer.valueOf(term));
+      }
+    }
+
+    final int count = transitions.size();
+    final char[][] keys = new char[count][];
+    final int[][] targets = new int[count][];
+    final int[] output = new int[count];
+    for (int state = 0; state < count; ++state) {
+      final Map<Character, Integer> edges = transitions.get(state);
+      final char[] state_keys = new char[edges.size()];
+      int index = 0;
+      for (final Character c : edges.keySet()) {
+        state_keys[index] = c.charValue();
+        ++index;
+      }
+      Arrays.sort(state_keys);
+
+      final int[] state_targets = new int[state_keys.length];
+      for (index = 0; index < state_keys.length; ++index) {
+        state_targets[index] =
+          edges.get(Character.valueOf(state_keys[index])).intValue();
+      }
+
+      keys[state] = state_keys;
+      targets[state] = state_targets;
+      output[state] = outputs.get(state).intValue();
+    }
+
+    final int[] fail = new int[count];
+    final int[] output_next = new int[count];
+    output_next[0] = -1;
+    linkFailures(keys, targets, fail, output, output_next);
+    return new ZGlossaryMatcher(
+      keys, targets, fail, output, output_next, lengths);
+  }
+
+  /*
+   * The failure link of each state is computed in breadth-first order, so
+   * the failure links of all shallower states are available. The output
+   * link of each state refers to the nearest state on its failure chain
+   * that completes a term, allowing all of the terms ending at a given
+   * position to be enumerated without walking the entire failure chain.
+   */
+
+  private static void linkFailures(
+    final char[][] keys,
+    final int[][] targets,
+    final int[] fail,
+    final int[] output,
+    final int[] output_next)
+  {
+    final ArrayDeque<Integer> queue = new ArrayDeque<>(keys.length);
+    for (final int child : targets[0]) {
+      fail[child] = 0;
+      output_next[child] = -1;
+      queue.add(Integer.valueOf(child));
+    }
+
+    while (!queue.isEmpty()) {
+      final int state = queue.remove().intValue();
+      final char[] state_keys = keys[state];
+      final int[] state_targets = targets[state];
+
+      for (int index = 0; index < state_keys.length; ++index) {
+        final int child = state_targets[index];
+        final int child_fail =
+          step(keys, targets, fail, fail[state], state_keys[index]);
+        fail[child] = child_fail;
+        output_next[child] =
+          output[child_fail] != -1 ? child_fail : output_next[child_fail];
+        queue.add(Integer.valueOf(child));
+      }
+    }
+  }
+
+  private static int step(
+    final char[][] keys,
+    final int[][] targets,
+    final int[] fail,
+    final int state_initial,
+    final char c)
+  {
+    int state = state_initial;
+    while (true) {
+      final int index = Arrays.binarySearch(keys[state], c);
+      if (index >= 0) {
+        return targets[state][index];
+      }
+      if (state == 0) {
+        return 0;
+      }
+      state = fail[state];
+    }
+  }
+
+  private static boolean isWordBoundary(
+    final CharSequence text,
+    final int start,
+    final int end)
+  {
+    return (start == 0 || !Character.isLetterOrDigit(text.charAt(start - 1)))
+      && (end == text.length() || !Character.isLetterOrDigit(text.charAt(end)));
+  }
+
+  /**
+   * Find the terms that occur in the given text. Where matches overlap, the
+   * match that starts first is preferred, and the longest of the matches
+   * that start at the same position is preferred. Matches are delivered in
+   * the order in which they occur in the text.
+   *
+   * @param text     The text
+   * @param receiver The receiver of matches
+   */
+
+  void match(
+    final CharSequence text,
+    final ReceiverType receiver)
+  {
+    Objects.requireNonNull(text, "text");
+    Objects.requireNonNull(receiver, "receiver");
+
+    final int length = text.length();
+    int[] best_end = null;
+    int[] best_term = null;
+
+    int state = 0;
+    for (int index = 0; index < length; ++index) {
+      state = step(this.keys, this.targets, this.fail, state, fold(text.charAt(index)));
+
+      int found = this.output[state] != -1 ? state : this.output_next[state];
+      while (found != -1) {
+        final int term = this.output[found];
+        final int end = index + 1;
+        final int start = end - this.lengths[term];
+        if (isWordBoundary(text, start, end)) {
+          if (best_end == null) {
+            best_end = new int[length];
+            best_term = new int[length];
+          }
+          if (end > best_end[start]) {
+            best_end[start] = end;
+            best_term[start] = term;
+          }
+        }
+        found = this.output_next[found];
+      }
+    }
+
+    if (best_end == null) {
+      return;
+    }
+
+    int position = 0;
+    for (int start = 0; start < length; ++start) {
+      if (start >= position && best_end[start] != 0) {
+        receiver.receive(best_term[start], start, best_end[start]);
+        position = best_end[start];
+      }
+    }
+  }
+}
@@ -32,6 +32,7 @@ import org.osgi.service.component.annotations.ReferencePolicyOption;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.FileVisitOption;
@@ -41,7 +42,14 @@ import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -99,13 +107,58 @@ public final class ZGlossaryParserProvider
     return new Parser(this.item_provider, config, path);
   }
 
+  /*
+   * The fingerprint of a successfully parsed item file, and the item that
+   * was parsed from it. A file whose size and modification time are
+   * unchanged is assumed to be unchanged. Otherwise, the file is read and
+   * its hash is compared, so that a file that was merely touched or
+   * rewritten with the same content is not parsed again.
+   */
+
+  private static final class Parsed
+  {
+    private final long size;
+    private final FileTime time;
+    private final byte[] hash;
+    private final ZGlossaryItem item;
+
+    Parsed(
+      final BasicFileAttributes in_attrs,
+      final byte[] in_hash,
+      final ZGlossaryItem in_item)
+    {
+      Objects.requireNonNull(in_attrs, "attrs");
+      this.size = in_attrs.size();
+      this.time = in_attrs.lastModifiedTime();
+      this.hash = Objects.requireNonNull(in_hash, "hash");
+      this.item = Objects.requireNonNull(in_item, "item");
+    }
+
+    boolean isCurrent(
+      final BasicFileAttributes attrs)
+    {
+      return this.size == attrs.size()
+        && Objects.equals(this.time, attrs.lastModifiedTime());
+    }
+
+    boolean isSameContent(
+      final byte[] other_hash)
+    {
+      return MessageDigest.isEqual(this.hash, other_hash);
+    }
+  }
+
   private static final class Parser implements ZGlossaryParserType,
     FileVisitor<Path>
   {
     private final ZBlogConfiguration config;
-    private final ZGlossary.Builder builder;
     private final ZGlossaryItemParserProviderType item_provider;
     private final Path path;
+    private final List<Path> files;
+    private final List<BasicFileAttributes> files_attributes;
+    private final List<Parsed> files_parsed;
+    private Map<Path, Parsed> parsed_previous;
+    private Map<Path, Parsed> parsed;
     private TreeMap<String, ZGlossaryItem> items;
     private Vector<ZError> errors;
 
@@ -122,20 +175,48 @@ public final class ZGlossaryParserProvider
         Objects.requireNonNull(in_path, "Path");
 
       this.errors = Vector.empty();
-      this.builder = ZGlossary.builder();
       this.items = TreeMap.empty();
+      this.files = new ArrayList<>(128);
+      this.files_attributes = new ArrayList<>(128);
+      this.files_parsed = new ArrayList<>(128);
+      this.parsed_previous = new HashMap<>(128);
+      this.parsed = new HashMap<>(128);
+    }
+
+    private static byte[] hash(
+      final byte[] data)
+    {
+      try {
+        return MessageDigest.getInstance("SHA-256").digest(data);
+      } catch (final NoSuchAlgorithmException e) {
+        throw new IllegalStateException(e);
+      }
     }
 
+    /*
+     * The parser may be reused: items parsed by the previous call whose
+     * files have not changed are not parsed again.
+     */
+
     @Override
     public Validation<Seq<ZError>, ZGlossary> parse()
     {
+      final ZGlossary.Builder builder = ZGlossary.builder();
+      this.errors = Vector.empty();
+      this.items = TreeMap.empty();
+      this.files.clear();
+      this.files_attributes.clear();
+      this.parsed_previous = this.parsed;
+      this.parsed = new HashMap<>(this.parsed_previous.size());
+
       try {
         Files.walkFileTree(
           this.path,
           EnumSet.noneOf(FileVisitOption.class),
           Integer.MAX_VALUE,
           this);
-        this.builder.setItems(this.items);
+        this.parseItems();
+        builder.setItems(this.items);
       } catch (final NoSuchFileException e) {
         this.errors = this.errors.append(ZError.of(
           "No such file: " + e.getMessage(),
@@ -146,10 +227,16 @@ public final class ZGlossaryParserProvider
           "I/O error: " + e.getMessage(),
           LexicalPosition.of(0, 0, Optional.empty()),
           Optional.of(e)));
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        this.errors = this.errors.append(ZError.of(
+          "Interrupted",
+          LexicalPosition.of(0, 0, Optional.empty()),
+          Optional.of(e)));
       }
 
       if (this.errors.isEmpty()) {
-        return valid(this.builder.build());
+        return valid(builder.build());
       }
       return invalid(this.errors);
     }
@@ -166,52 +253,135 @@ public final class ZGlossaryParserProvider
     public FileVisitResult visitFile(
       final Path file,
       final BasicFileAttributes attrs)
-      throws IOException
     {
       final String extension = FilenameUtils.getExtension(file.toString());
       if (extension != null) {
         if (Objects.equals(extension, "zbp")) {
-          this.parsePost(file);
+          this.files.add(file);
+          this.files_attributes.add(attrs);
         }
       }
 
       return FileVisitResult.CONTINUE;
     }
 
-    private void parsePost(
-      final Path file)
-      throws IOException
+    /*
+     * Items are parsed independently on a pool of threads, and the results
+     * are then collected in the order in which the files were visited, so
+     * that errors and the resolution of duplicate terms do not depend on
+     * the order in which parsing happens to complete.
+     */
+
+    private void parseItems()
+      throws InterruptedException
+    {
+      final int count = this.files.size();
+      final List<ZGlossaryTasks.TaskType<Validation<Seq<ZError>, ZGlossaryItem>>> tasks =
+        new ArrayList<>(count);
+
+      this.files_parsed.clear();
+      for (int index = 0; index < count; ++index) {
+        this.files_parsed.add(null);
+      }
+
+      for (int index = 0; index < count; ++index) {
+        final int file_index = index;
+        tasks.add(() -> this.parseItemIfChanged(file_index));
+      }
+
+      final List<Validation<Seq<ZError>, ZGlossaryItem>> results =
+        ZGlossaryTasks.runAll(this.config, "parse", tasks);
+
+      for (int index = 0; index < results.size(); ++index) {
+        final Validation<Seq<ZError>, ZGlossaryItem> r = results.get(index);
+        if (r.isInvalid()) {
+          this.errors = this.errors.appendAll(r.getError());
+        } else {
+          final Path file = this.files.get(index);
+          this.parsed.put(file, this.files_parsed.get(index));
+          this.addItem(file, r.get());
+        }
+      }
+    }
+
+    private Validation<Seq<ZError>, ZGlossaryItem> parseItemIfChanged(
+      final int index)
+    {
+      final Path file = this.files.get(index);
+      final BasicFileAttributes attrs = this.files_attributes.get(index);
+      final Parsed previous = this.parsed_previous.get(file);
+
+      if (previous != null && previous.isCurrent(attrs)) {
+        LOG.trace("unchanged item {}", file);
+        this.files_parsed.set(index, previous);
+        return valid(previous.item);
+      }
+
+      final byte[] data;
+      try {
+        data = Files.readAllBytes(file);
+      } catch (final IOException e) {
+        return invalid(Vector.of(ZError.of(
+          "I/O error: " + e.getMessage(),
+          LexicalPosition.of(0, 0, Optional.of(file.toAbsolutePath())),
+          Optional.of(e))));
+      }
+
+      final byte[] data_hash = hash(data);
+      if (previous != null && previous.isSameContent(data_hash)) {
+        LOG.trace("unchanged item content {}", file);
+        this.files_parsed.set(index, new Parsed(attrs, data_hash, previous.item));
+        return valid(previous.item);
+      }
+
+      final Validation<Seq<ZError>, ZGlossaryItem> result =
+        this.parseItem(file, data);
+      if (result.isValid()) {
+        this.files_parsed.set(index, new Parsed(attrs, data_hash, result.get()));
+      }
+      return result;
+    }
+
+    private Validation<Seq<ZError>, ZGlossaryItem> parseItem(
+      final Path file,
+      final byte[] data)
     {
       LOG.debug("parsing item {}", file);
 
-      try (InputStream stream = Files.newInputStream(file)) {
+      try (InputStream stream = new ByteArrayInputStream(data)) {
         final Path absolute = file.toAbsolutePath();
         final Path relative = this.config.sourceRoot().relativize(absolute);
 
         final ZGlossaryItemParserType parser =
           this.item_provider.createParser(this.config, stream, relative);
-        final Validation<Seq<ZError>, ZGlossaryItem> r = parser.parse();
-        if (r.isInvalid()) {
-          this.errors = this.errors.appendAll(r.getError());
-        } else {
-          final ZGlossaryItem item = r.get();
-          final String item_term = item.term();
-          if (this.items.containsKey(item_term)) {
-            final StringBuilder sb = new StringBuilder(128);
-            sb.append("Duplicate glossary item.");
-            final String separator = System.lineSeparator();
-            sb.append(separator);
-            sb.append("  Post term: ");
-            sb.append(item_term);
-            sb.append(separator);
-            this.errors.append(ZError.of(
-              sb.toString(),
-              LexicalPosition.of(0, 0, Optional.of(file)),
-              Optional.empty()));
-          } else {
-            this.items = this.items.put(item_term, item);
-          }
-        }
+        return parser.parse();
+      } catch (final IOException e) {
+        return invalid(Vector.of(ZError.of(
+          "I/O error: " + e.getMessage(),
+          LexicalPosition.of(0, 0, Optional.of(file.toAbsolutePath())),
+          Optional.of(e))));
+      }
+    }
+
+    private void addItem(
+      final Path file,
+      final ZGlossaryItem item)
+    {
+      final String item_term = item.term();
+      if (this.items.containsKey(item_term)) {
+        final StringBuilder sb = new StringBuilder(128);
+        sb.append("Duplicate glossary item.");
+        final String separator = System.lineSeparator();
+        sb.append(separator);
+        sb.append("  Post term: ");
+        sb.append(item_term);
+        sb.append(separator);
+        this.errors.append(ZError.of(
+          sb.toString(),
+          LexicalPosition.of(0, 0, Optional.of(file)),
+          Optional.empty()));
+      } else {
+        this.items = this.items.put(item_term, item);
       }
     }
 
@@ -27,6 +27,10 @@ import io.vavr.control.Validation;
 public interface ZGlossaryParserType
 {
   /**
+   * Parse the glossary. A parser may be used more than once; each call
+   * parses the glossary as it currently exists on disk, reusing the results
+   * of previous calls for item files that have not changed.
+   *
    * @return A parsed glossary, or a list of parse errors
    */
 
@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.glossary;
+
+import com.io7m.zeptoblog.core.ZBlogConfiguration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Functions to evaluate independent tasks on a pool of threads.
+ */
+
+final class ZGlossaryTasks
+{
+  private ZGlossaryTasks()
+  {
+    throw new IllegalStateException("Unreachable code");
+  }
+
+  /**
+   * The type of tasks. Tasks are expected to report failures in their
+   * results rather than by raising exceptions.
+   *
+   * @param <T> The type of results
+   */
+
+  interface TaskType<T>
+  {
+    /**
+     * @return The result of the task
+     */
+
+    T run();
+  }
+
+  /**
+   * Evaluate all of the given tasks on a pool of platform threads sized
+   * according to {@link ZBlogConfiguration#renderThreads()}.
+   *
+   * @param config The blog configuration
+   * @param name   The name of the pool
+   * @param tasks  The tasks
+   * @param <T>    The type of results
+   *
+   * @return The results of the tasks, in the same order as the tasks
+   *
+   * @throws InterruptedException If interrupted whilst waiting for tasks
+   */
+
+  static <T> List<T> runAll(
+    final ZBlogConfiguration config,
+    final String name,
+    final List<? extends TaskType<T>> tasks)
+    throws InterruptedException
+  {
+    Objects.requireNonNull(config, "config");
+    Objects.requireNonNull(name, "name");
+    Objects.requireNonNull(tasks, "tasks");
+
+    final int configured = config.renderThreads();
+    final int threads = Math.min(
+      tasks.size(),
+      configured == 0 ? Runtime.getRuntime().availableProcessors() : configured);
+
+    final List<T> results = new ArrayList<>(tasks.size());
+    if (threads <= 1) {
+      for (final TaskType<T> task : tasks) {
+        results.add(task.run());
+      }
+      return results;
+    }
+
+    final List<Callable<T>> callables = new ArrayList<>(tasks.size());
+    for (final TaskType<T> task : tasks) {
+      callables.add(task::run);
+    }
+
+    try (ExecutorService executor = Executors.newFixedThreadPool(
+      threads,
+      Thread.ofPlatform()
+        .name("com.io7m.zeptoblog.glossary." + name + "-", 0L)
+        .daemon()
+        .factory())) {
+      for (final Future<T> future : executor.invokeAll(callables)) {
+        results.add(future.get());
+      }
+    } catch (final ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+    return results;
+  }
+}
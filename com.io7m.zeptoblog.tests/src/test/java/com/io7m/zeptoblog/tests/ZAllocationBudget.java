@@ -0,0 +1,209 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.tests;
+
+import com.io7m.junreachable.UnreachableCodeException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * <p>A harness that measures the number of bytes allocated per item by an
+ * operation, and compares it against a recorded baseline.</p>
+ *
+ * <p>Baselines are recorded in {@code allocation-baselines.properties},
+ * along with the tolerance by which a measurement may exceed its baseline.
+ * Each operation is run several times before it is measured, so that the
+ * measurements reflect compiled code, and the smallest of several
+ * measurements is used. Setting the system property
+ * {@code com.io7m.zeptoblog.tests.allocation_record} to a file name causes
+ * measurements to be written to that file instead of being checked, so that
+ * the baselines can be updated after an intended change.</p>
+ */
+
+public final class ZAllocationBudget
+{
+  private static final Logger LOG;
+  private static final com.sun.management.ThreadMXBean THREADS;
+  private static final String RECORD_PROPERTY =
+    "com.io7m.zeptoblog.tests.allocation_record";
+  private static final int WARMUP_ROUNDS = 10;
+  private static final int MEASURED_ROUNDS = 5;
+
+  static {
+    LOG = LoggerFactory.getLogger(ZAllocationBudget.class);
+    THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+  }
+
+  private ZAllocationBudget()
+  {
+    throw new UnreachableCodeException();
+  }
+
+  /**
+   * The type of measured operations.
+   */
+
+  @FunctionalInterface
+  interface OperationType
+  {
+    /**
+     * Run the operation once.
+     *
+     * @throws Exception On errors
+     */
+
+    void run()
+      throws Exception;
+  }
+
+  /**
+   * The threads whose allocations are counted.
+   */
+
+  enum Scope
+  {
+    /**
+     * Count only the allocations of the calling thread.
+     */
+
+    CURRENT_THREAD,
+
+    /**
+     * Count the allocations of every thread, including threads that
+     * terminate during the operation.
+     */
+
+    ALL_THREADS
+  }
+
+  private static long allocated(
+    final Scope scope)
+  {
+    return switch (scope) {
+      case CURRENT_THREAD ->
+        THREADS.getThreadAllocatedBytes(Thread.currentThread().threadId());
+      case ALL_THREADS -> THREADS.getTotalThreadAllocatedBytes();
+    };
+  }
+
+  /**
+   * Measure the operation and check the result against its baseline.
+   *
+   * @param name      The name of the baseline
+   * @param items     The number of items processed by each run
+   * @param scope     The threads whose allocations are counted
+   * @param operation The operation
+   *
+   * @throws Exception On errors
+   */
+
+  static void check(
+    final String name,
+    final int items,
+    final Scope scope,
+    final OperationType operation)
+    throws Exception
+  {
+    Assumptions.assumeTrue(
+      THREADS.isThreadAllocatedMemorySupported(),
+      "Thread allocation measurement is not supported");
+    THREADS.setThreadAllocatedMemoryEnabled(true);
+
+    for (int round = 0; round < WARMUP_ROUNDS; ++round) {
+      operation.run();
+    }
+
+    long smallest = Long.MAX_VALUE;
+    for (int round = 0; round < MEASURED_ROUNDS; ++round) {
+      final long before = allocated(scope);
+      operation.run();
+      smallest = Math.min(smallest, allocated(scope) - before);
+    }
+
+    final long per_item = smallest / (long) items;
+    final String record = System.getProperty(RECORD_PROPERTY);
+    if (record != null) {
+      record(Paths.get(record), name, per_item);
+      return;
+    }
+
+    final Properties baselines = baselines();
+    final long baseline = Long.parseLong(baselines.getProperty(name));
+    final double tolerance = Double.parseDouble(baselines.getProperty("tolerance"));
+    final long limit = (long) ((double) baseline * (1.0 + tolerance));
+
+    LOG.debug(
+      "{}: {} bytes per item (baseline {}, limit {})",
+      name,
+      Long.valueOf(per_item),
+      Long.valueOf(baseline),
+      Long.valueOf(limit));
+
+    Assertions.assertTrue(
+      per_item <= limit,
+      String.format(
+        "%s allocated %d bytes per item, exceeding the baseline of %d bytes by more than %.0f%%",
+        name,
+        Long.valueOf(per_item),
+        Long.valueOf(baseline),
+        Double.valueOf(tolerance * 100.0)));
+  }
+
+  private static Properties baselines()
+    throws IOException
+  {
+    final Properties p = new Properties();
+    try (InputStream stream =
+           ZAllocationBudget.class.getResourceAsStream(
+             "allocation-baselines.properties")) {
+      p.load(stream);
+    }
+    return p;
+  }
+
+  private static synchronized void record(
+    final Path file,
+    final String name,
+    final long per_item)
+    throws IOException
+  {
+    LOG.info("{}: {} bytes per item", name, Long.valueOf(per_item));
+
+    final Properties p = new Properties();
+    if (Files.isRegularFile(file)) {
+      try (Reader reader = Files.newBufferedReader(file)) {
+        p.load(reader);
+      }
+    }
+    p.setProperty(name, Long.toString(per_item));
+    try (Writer writer = Files.newBufferedWriter(file)) {
+      p.store(writer, "Bytes allocated per item");
+    }
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.tests;
+
+import com.io7m.zeptoblog.commonmark.ZBlogPostFormatCommonMark;
+import com.io7m.zeptoblog.core.ZBlogConfiguration;
+import com.io7m.zeptoblog.core.ZBlogParserProvider;
+import com.io7m.zeptoblog.core.ZBlogPostFormatXHTML;
+import com.io7m.zeptoblog.core.ZBlogPostParserProvider;
+import com.io7m.zeptoblog.core.ZBlogRendererProvider;
+import com.io7m.zeptoblog.core.ZError;
+import io.vavr.collection.Seq;
+import io.vavr.control.Validation;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public final class ZAllocationBudgetTest
+{
+  private static final int POSTS = 64;
+
+  private static ZBlogConfiguration config(
+    final FileSystem fs)
+  {
+    return ZBlogConfiguration.builder()
+      .setOutputRoot(fs.getPath("/output"))
+      .setSourceRoot(fs.getPath("/source"))
+      .setTitle("title")
+      .setPostsPerPage(10)
+      .setAuthor("author")
+      .setFormatDefault(ZBlogPostFormatCommonMark.NAME)
+      .setSiteURI(URI.create("http://example.com"))
+      .setRenderThreads(1)
+      .build();
+  }
+
+  private static String commonMarkBody(
+    final int index)
+  {
+    final StringBuilder text = new StringBuilder(2048);
+    for (int section = 0; section < 3; ++section) {
+      text.append("## Section ").append(section).append("\n\n");
+      text.append("Post ").append(index)
+        .append(" has *emphasised* text, `code`, and a [link](http://example.com/")
+        .append(index).append(").\n");
+      text.append("The quick brown fox jumps over the lazy dog, again and again.\n\n");
+      text.append("- First item\n- Second item\n- Third item\n\n");
+      text.append("    code block line one\n    code block line two\n\n");
+    }
+    return text.toString();
+  }
+
+  private static String xhtmlBody(
+    final int index)
+  {
+    final StringBuilder text = new StringBuilder(2048);
+    text.append("<div xmlns=\"http://www.w3.org/1999/xhtml\">");
+    for (int section = 0; section < 3; ++section) {
+      text.append("<h2>Section ").append(section).append("</h2>");
+      text.append("<p>Post ").append(index)
+        .append(" has <em>emphasised</em> text and a <a href=\"http://example.com/\">link</a>.</p>");
+      text.append("<p>The quick brown fox jumps over the lazy dog, again and again.</p>");
+      text.append("<ul><li>First item</li><li>Second item</li></ul>");
+    }
+    text.append("</div>");
+    return text.toString();
+  }
+
+  private static String post(
+    final int index)
+  {
+    return String.format(
+      "title Post %d\ndate 2020-01-%02dT00:00:00+0000\n\n%s",
+      Integer.valueOf(index),
+      Integer.valueOf(1 + index % 28),
+      commonMarkBody(index));
+  }
+
+  private static <T> T valid(
+    final Validation<Seq<ZError>, T> result)
+  {
+    if (result.isInvalid()) {
+      Assertions.fail(result.getError().map(ZError::show).mkString("\n"));
+    }
+    return result.get();
+  }
+
+  @Test
+  public void testPostParser()
+    throws Exception
+  {
+    try (FileSystem fs = TestFilesystems.makeEmptyUnixFilesystem()) {
+      final ZBlogConfiguration config = config(fs);
+      final ZBlogPostParserProvider parsers = new ZBlogPostParserProvider();
+      final byte[][] posts = new byte[POSTS][];
+      final Path[] paths = new Path[POSTS];
+      for (int index = 0; index < POSTS; ++index) {
+        posts[index] = post(index).getBytes(StandardCharsets.UTF_8);
+        paths[index] = config.sourceRoot().resolve("post" + index + ".zbp");
+      }
+
+      ZAllocationBudget.check(
+        "post_parser",
+        POSTS,
+        ZAllocationBudget.Scope.CURRENT_THREAD,
+        () -> {
+          for (int index = 0; index < POSTS; ++index) {
+            valid(parsers.createParser(
+              config, new ByteArrayInputStream(posts[index]), paths[index])
+                    .parse());
+          }
+        });
+    }
+  }
+
+  @Test
+  public void testCommonMarkXHTML()
+    throws Exception
+  {
+    final ZBlogPostFormatCommonMark format = new ZBlogPostFormatCommonMark();
+    final String[] bodies = new String[POSTS];
+    final Path[] paths = new Path[POSTS];
+    for (int index = 0; index < POSTS; ++index) {
+      bodies[index] = commonMarkBody(index);
+      paths[index] = Path.of("/source", "post" + index + ".zbp");
+    }
+
+    ZAllocationBudget.check(
+      "commonmark_xhtml",
+      POSTS,
+      ZAllocationBudget.Scope.CURRENT_THREAD,
+      () -> {
+        for (int index = 0; index < POSTS; ++index) {
+          valid(format.produceXHTML(paths[index], bodies[index]));
+        }
+      });
+  }
+
+  @Test
+  public void testXHTMLPlain()
+    throws Exception
+  {
+    final ZBlogPostFormatXHTML format = new ZBlogPostFormatXHTML();
+    final String[] bodies = new String[POSTS];
+    final Path[] paths = new Path[POSTS];
+    for (int index = 0; index < POSTS; ++index) {
+      bodies[index] = xhtmlBody(index);
+      paths[index] = Path.of("/source", "post" + index + ".zbp");
+    }
+
+    ZAllocationBudget.check(
+      "xhtml_plain",
+      POSTS,
+      ZAllocationBudget.Scope.CURRENT_THREAD,
+      () -> {
+        for (int index = 0; index < POSTS; ++index) {
+          valid(format.producePlain(paths[index], bodies[index]));
+        }
+      });
+  }
+
+  @Test
+  public void testRender()
+    throws Exception
+  {
+    try (FileSystem fs = TestFilesystems.makeEmptyUnixFilesystem()) {
+      final ZBlogConfiguration config = config(fs);
+      Files.createDirectories(config.sourceRoot());
+      for (int index = 0; index < POSTS; ++index) {
+        Files.writeString(
+          config.sourceRoot().resolve("post" + index + ".zbp"), post(index));
+      }
+
+      final ZBlogParserProvider parsers = new ZBlogParserProvider();
+      final ZBlogRendererProvider renderers = new ZBlogRendererProvider();
+
+      ZAllocationBudget.check(
+        "render",
+        POSTS,
+        ZAllocationBudget.Scope.ALL_THREADS,
+        () -> valid(renderers.createRenderer(config)
+                      .parseAndRender(parsers.createParser(config))));
+    }
+  }
+}
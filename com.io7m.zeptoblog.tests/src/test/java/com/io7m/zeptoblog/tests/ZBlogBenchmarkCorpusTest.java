@@ -0,0 +1,147 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.tests;
+
+import com.io7m.zeptoblog.cmdline.ZBlogBenchmarkCorpus;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+public final class ZBlogBenchmarkCorpusTest
+{
+  private static ZBlogBenchmarkCorpus corpus(
+    final long seed)
+  {
+    return new ZBlogBenchmarkCorpus(seed, 50, 40, 0.5, 0.3, 5, 3);
+  }
+
+  /*
+   * Return the contents of every file in the given directory, keyed by
+   * relative path.
+   */
+
+  private static Map<String, String> tree(
+    final Path directory)
+    throws IOException
+  {
+    final Map<String, String> files = new TreeMap<>();
+    try (Stream<Path> paths = Files.walk(directory)) {
+      for (final Path path : paths.filter(Files::isRegularFile).toList()) {
+        files.put(
+          directory.relativize(path).toString(),
+          Arrays.toString(Files.readAllBytes(path)));
+      }
+    }
+    return files;
+  }
+
+  @Test
+  public void testSameParametersSameTree()
+    throws Exception
+  {
+    try (FileSystem fs = TestFilesystems.makeEmptyUnixFilesystem()) {
+      final Path a = fs.getPath("/a");
+      final Path b = fs.getPath("/b");
+      final Path c = fs.getPath("/c");
+      corpus(1L).prepare(a);
+      corpus(1L).prepare(b);
+      corpus(2L).prepare(c);
+
+      final Map<String, String> tree_a = tree(a);
+      Assertions.assertTrue(tree_a.containsKey("corpus.properties"));
+      Assertions.assertTrue(tree_a.containsKey("source/static/asset-00002.bin"));
+      Assertions.assertEquals(
+        50L,
+        tree_a.keySet()
+          .stream()
+          .filter(name -> name.startsWith("source/posts/"))
+          .count());
+
+      Assertions.assertEquals(tree_a, tree(b));
+      Assertions.assertNotEquals(tree_a, tree(c));
+    }
+  }
+
+  @Test
+  public void testPrepareRefusesNonCorpus()
+    throws Exception
+  {
+    try (FileSystem fs = TestFilesystems.makeEmptyUnixFilesystem()) {
+      final Path directory = fs.getPath("/corpus");
+      Files.createDirectories(directory);
+      final Path other = directory.resolve("other.txt");
+      Files.writeString(other, "Not a corpus.");
+
+      Assertions.assertThrows(
+        IOException.class, () -> corpus(1L).prepare(directory));
+      Assertions.assertEquals(1, tree(directory).size());
+      Assertions.assertEquals("Not a corpus.", Files.readString(other));
+    }
+  }
+
+  @Test
+  public void testPrepareReplacesDifferentCorpus()
+    throws Exception
+  {
+    try (FileSystem fs = TestFilesystems.makeEmptyUnixFilesystem()) {
+      final Path directory = fs.getPath("/corpus");
+      final Path expected = fs.getPath("/expected");
+      corpus(2L).prepare(expected);
+
+      corpus(1L).prepare(directory);
+      corpus(2L).prepare(directory);
+      Assertions.assertEquals(tree(expected), tree(directory));
+    }
+  }
+
+  @Test
+  public void testReviseRestore()
+    throws Exception
+  {
+    try (FileSystem fs = TestFilesystems.makeEmptyUnixFilesystem()) {
+      final Path directory = fs.getPath("/corpus");
+      final ZBlogBenchmarkCorpus corpus = corpus(1L);
+      corpus.prepare(directory);
+      final Map<String, String> original = tree(directory);
+
+      Assertions.assertEquals(5, corpus.revise(directory, 5));
+      final Map<String, String> revised = tree(directory);
+      Assertions.assertTrue(revised.containsKey("revised.txt"));
+      Assertions.assertEquals(
+        5L,
+        original.keySet()
+          .stream()
+          .filter(name -> !original.get(name).equals(revised.get(name)))
+          .count());
+
+      corpus.restore(directory);
+      Assertions.assertEquals(original, tree(directory));
+
+      Assertions.assertEquals(50, corpus.revise(directory, 100));
+      corpus.prepare(directory);
+      Assertions.assertEquals(original, tree(directory));
+    }
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.tests;
+
+import com.io7m.zeptoblog.cmdline.ZBlogClassDataSharing;
+import com.io7m.zeptoblog.cmdline.ZLogLevel;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.security.cert.Certificate;
+import java.util.List;
+import java.util.Optional;
+
+public final class ZBlogClassDataSharingTest
+{
+  @TempDir
+  public Path directory;
+
+  private static CodeSource codeSource(
+    final Path path)
+    throws Exception
+  {
+    return new CodeSource(path.toUri().toURL(), (Certificate[]) null);
+  }
+
+  @Test
+  public void testArchiveFor()
+    throws Exception
+  {
+    try (FileSystem fs = TestFilesystems.makeEmptyUnixFilesystem()) {
+      Assertions.assertEquals(
+        fs.getPath("/opt/zeptoblog/zeptoblog-main.jsa"),
+        ZBlogClassDataSharing.archiveFor(
+          fs.getPath("/opt/zeptoblog/zeptoblog-main.jar")));
+      Assertions.assertEquals(
+        fs.getPath("/opt/zeptoblog/zeptoblog.jsa"),
+        ZBlogClassDataSharing.archiveFor(
+          fs.getPath("/opt/zeptoblog/zeptoblog")));
+      Assertions.assertEquals(
+        fs.getPath("zeptoblog.jar.zip.jsa"),
+        ZBlogClassDataSharing.archiveFor(fs.getPath("zeptoblog.jar.zip")));
+    }
+  }
+
+  @Test
+  public void testJarOfFile()
+    throws Exception
+  {
+    final Path jar = this.directory.resolve("zeptoblog-main.jar");
+    Files.writeString(jar, "");
+    Assertions.assertEquals(
+      Optional.of(jar),
+      ZBlogClassDataSharing.jarOf(codeSource(jar)));
+  }
+
+  @Test
+  public void testJarOfDirectory()
+    throws Exception
+  {
+    Assertions.assertEquals(
+      Optional.empty(),
+      ZBlogClassDataSharing.jarOf(codeSource(this.directory)));
+    Assertions.assertEquals(
+      Optional.empty(),
+      ZBlogClassDataSharing.jarOf(
+        codeSource(this.directory.resolve("nonexistent.jar"))));
+    Assertions.assertEquals(
+      Optional.empty(),
+      ZBlogClassDataSharing.jarOf(null));
+  }
+
+  @Test
+  public void testJar()
+  {
+    final Optional<Path> jar = ZBlogClassDataSharing.jar();
+    jar.ifPresent(path -> {
+      Assertions.assertTrue(Files.isRegularFile(path));
+      Assertions.assertTrue(path.getFileName().toString().endsWith(".jar"));
+    });
+  }
+
+  @Test
+  public void testTrainingCommand()
+  {
+    final Path jar = this.directory.resolve("zeptoblog-main.jar");
+    final Path archive = this.directory.resolve("zeptoblog-main.jsa.tmp");
+    final Path config = Paths.get("blog.conf");
+
+    final List<String> command =
+      ZBlogClassDataSharing.trainingCommand(
+        jar, archive, config, ZLogLevel.LOG_INFO);
+
+    Assertions.assertEquals(
+      List.of(
+        Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+        "-XX:ArchiveClassesAtExit=" + archive,
+        "-Xlog:cds=error",
+        "-jar",
+        jar.toString(),
+        "compile",
+        "-config",
+        config.toAbsolutePath().toString(),
+        "-no-daemon",
+        "-verbose",
+        "info"),
+      command);
+  }
+}
@@ -80,6 +80,128 @@ public final class ZBlogConfigurationsTest
     Assertions.assertTrue(r.getError().get(0).error().get() instanceof JPropertyIncorrectType);
   }
 
+  @Test
+  public void testFeedArchiveSize()
+  {
+    final Properties p = baseProperties();
+    p.put("com.io7m.zeptoblog.feed_archive_size", "100");
+
+    final Validation<Seq<ZError>, ZBlogConfiguration> r =
+      ZBlogConfigurations.fromProperties(Paths.get("/x/y/z"), p);
+    Assertions.assertTrue(r.isValid());
+    Assertions.assertEquals(100, r.get().feedArchiveSize());
+  }
+
+  @Test
+  public void testBadFeedArchiveSize()
+  {
+    final Properties p = baseProperties();
+    p.put("com.io7m.zeptoblog.feed_archive_size", "x");
+
+    final Validation<Seq<ZError>, ZBlogConfiguration> r =
+      ZBlogConfigurations.fromProperties(Paths.get("/x/y/z"), p);
+    Assertions.assertTrue(r.isInvalid());
+    Assertions.assertTrue(r.getError().get(0).error().get() instanceof JPropertyIncorrectType);
+  }
+
+  @Test
+  public void testLowMemory()
+  {
+    final Properties p = baseProperties();
+    p.put("com.io7m.zeptoblog.low_memory", "true");
+    p.put("com.io7m.zeptoblog.low_memory_budget", "1000");
+
+    final Validation<Seq<ZError>, ZBlogConfiguration> r =
+      ZBlogConfigurations.fromProperties(Paths.get("/x/y/z"), p);
+    Assertions.assertTrue(r.isValid());
+    Assertions.assertTrue(r.get().lowMemory());
+    Assertions.assertEquals(1000L, r.get().lowMemoryBudget());
+  }
+
+  @Test
+  public void testBadLowMemoryBudget()
+  {
+    final Properties p = baseProperties();
+    p.put("com.io7m.zeptoblog.low_memory_budget", "x");
+
+    final Validation<Seq<ZError>, ZBlogConfiguration> r =
+      ZBlogConfigurations.fromProperties(Paths.get("/x/y/z"), p);
+    Assertions.assertTrue(r.isInvalid());
+  }
+
+  @Test
+  public void testRenderThreads()
+  {
+    final Properties p = baseProperties();
+    p.put("com.io7m.zeptoblog.render_threads", "3");
+
+    final Validation<Seq<ZError>, ZBlogConfiguration> r =
+      ZBlogConfigurations.fromProperties(Paths.get("/x/y/z"), p);
+    Assertions.assertTrue(r.isValid());
+    Assertions.assertEquals(3, r.get().renderThreads());
+  }
+
+  @Test
+  public void testWriteThreads()
+  {
+    final Properties p = baseProperties();
+    p.put("com.io7m.zeptoblog.write_threads", "3");
+
+    final Validation<Seq<ZError>, ZBlogConfiguration> r =
+      ZBlogConfigurations.fromProperties(Paths.get("/x/y/z"), p);
+    Assertions.assertTrue(r.isValid());
+    Assertions.assertEquals(3, r.get().writeThreads());
+  }
+
+  @Test
+  public void testWriteThreadsDefault()
+  {
+    final Validation<Seq<ZError>, ZBlogConfiguration> r =
+      ZBlogConfigurations.fromProperties(Paths.get("/x/y/z"), baseProperties());
+    Assertions.assertTrue(r.isValid());
+    Assertions.assertEquals(4, r.get().writeThreads());
+  }
+
+  @Test
+  public void testOutputSync()
+  {
+    final Properties p = baseProperties();
+    p.put("com.io7m.zeptoblog.output_sync", "true");
+
+    final Validation<Seq<ZError>, ZBlogConfiguration> r =
+      ZBlogConfigurations.fromProperties(Paths.get("/x/y/z"), p);
+    Assertions.assertTrue(r.isValid());
+    Assertions.assertTrue(r.get().outputSync());
+  }
+
+  @Test
+  public void testRenderCache()
+  {
+    final Properties p = baseProperties();
+    p.put("com.io7m.zeptoblog.render_cache", "cache.bin");
+    p.put("com.io7m.zeptoblog.render_cache_size", "1000000");
+
+    final Validation<Seq<ZError>, ZBlogConfiguration> r =
+      ZBlogConfigurations.fromProperties(Paths.get("/x/y/z"), p);
+    Assertions.assertTrue(r.isValid());
+    Assertions.assertEquals(
+      Paths.get("cache.bin").toAbsolutePath(),
+      r.get().renderCache().get());
+    Assertions.assertEquals(1000000L, r.get().renderCacheSize());
+  }
+
+  @Test
+  public void testBadRenderCacheSize()
+  {
+    final Properties p = baseProperties();
+    p.put("com.io7m.zeptoblog.render_cache_size", "x");
+
+    final Validation<Seq<ZError>, ZBlogConfiguration> r =
+      ZBlogConfigurations.fromProperties(Paths.get("/x/y/z"), p);
+    Assertions.assertTrue(r.isInvalid());
+    Assertions.assertTrue(r.getError().get(0).error().get() instanceof JPropertyIncorrectType);
+  }
+
   @Test
   public void testComplete()
   {
@@ -0,0 +1,300 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.tests;
+
+import com.io7m.zeptoblog.cmdline.ZBlogDaemon;
+import com.io7m.zeptoblog.cmdline.ZBlogDaemonClient;
+import com.io7m.zeptoblog.cmdline.ZBlogDaemonProtocol;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public final class ZBlogDaemonTest
+{
+  @TempDir
+  public Path directory;
+
+  private Path socket;
+  private ZBlogDaemon daemon;
+  private Thread thread;
+  private AtomicReference<Exception> failure;
+
+  private static boolean isPOSIX()
+  {
+    return FileSystems.getDefault()
+      .supportedFileAttributeViews()
+      .contains("posix");
+  }
+
+  private static int request(
+    final Path socket,
+    final String command,
+    final String working_directory,
+    final String config)
+    throws IOException
+  {
+    try (SocketChannel channel =
+           SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+      final DataOutputStream output = new DataOutputStream(
+        new BufferedOutputStream(Channels.newOutputStream(channel)));
+      output.writeInt(ZBlogDaemonProtocol.MAGIC);
+      output.writeInt(ZBlogDaemonProtocol.VERSION);
+      ZBlogDaemonProtocol.writeString(output, command);
+      ZBlogDaemonProtocol.writeString(output, working_directory);
+      ZBlogDaemonProtocol.writeString(output, config);
+      output.flush();
+
+      final DataInputStream input = new DataInputStream(
+        new BufferedInputStream(Channels.newInputStream(channel)));
+      final int message = input.readUnsignedByte();
+      if (message == ZBlogDaemonProtocol.MESSAGE_REFUSED) {
+        ZBlogDaemonProtocol.readString(input);
+      }
+      return message;
+    }
+  }
+
+  @BeforeEach
+  public void setup()
+  {
+    this.socket = this.directory.resolve("run").resolve("daemon.socket");
+    this.daemon = new ZBlogDaemon(this.socket);
+    this.failure = new AtomicReference<>();
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws Exception
+  {
+    this.daemon.close();
+    if (this.thread != null) {
+      this.thread.join(TimeUnit.SECONDS.toMillis(10L));
+      Assertions.assertFalse(this.thread.isAlive());
+    }
+  }
+
+  private void start()
+    throws Exception
+  {
+    this.thread = new Thread(() -> {
+      try {
+        this.daemon.run();
+      } catch (final Exception e) {
+        this.failure.set(e);
+      }
+    });
+    this.thread.setDaemon(true);
+    this.thread.start();
+
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+    while (!ZBlogDaemonClient.isListening(this.socket)) {
+      Assertions.assertNull(this.failure.get());
+      Assertions.assertTrue(System.nanoTime() < deadline);
+      Thread.sleep(10L);
+    }
+  }
+
+  private Path writeBlog()
+    throws IOException
+  {
+    final Path source = this.directory.resolve("source");
+    Files.createDirectories(source);
+    Files.writeString(
+      source.resolve("one.zbp"),
+      "title One\ndate 2020-01-01T00:00:00+0000\n\nHello.\n");
+
+    final Path config = this.directory.resolve("blog.conf");
+    Files.writeString(
+      config,
+      String.join(
+        "\n",
+        "com.io7m.zeptoblog.title=Title",
+        "com.io7m.zeptoblog.author=Author",
+        "com.io7m.zeptoblog.site_uri=http://example.com/",
+        "com.io7m.zeptoblog.format_default=com.io7m.zeptoblog.commonmark",
+        "com.io7m.zeptoblog.source_root=" + source,
+        "com.io7m.zeptoblog.output_root=" + this.directory.resolve("output"),
+        ""));
+    return config;
+  }
+
+  @Test
+  public void testDefaultSocket()
+  {
+    Assertions.assertEquals(
+      Paths.get("/run/user/1000/zeptoblog/daemon.socket"),
+      ZBlogDaemonProtocol.defaultSocket(
+        Optional.of("/run/user/1000"), "/home/someone"));
+    Assertions.assertEquals(
+      Paths.get("/home/someone/.zeptoblog/daemon.socket"),
+      ZBlogDaemonProtocol.defaultSocket(Optional.empty(), "/home/someone"));
+    Assertions.assertEquals(
+      Paths.get("/home/someone/.zeptoblog/daemon.socket"),
+      ZBlogDaemonProtocol.defaultSocket(Optional.of(""), "/home/someone"));
+  }
+
+  @Test
+  public void testCompile()
+    throws Exception
+  {
+    final Path config = this.writeBlog();
+    this.start();
+
+    Assertions.assertTrue(ZBlogDaemonProtocol.isOwnedByCurrentUser(this.socket));
+    if (isPOSIX()) {
+      Assertions.assertEquals(
+        PosixFilePermissions.fromString("rwx------"),
+        Files.getPosixFilePermissions(this.socket.getParent()));
+      Assertions.assertEquals(
+        PosixFilePermissions.fromString("rw-------"),
+        Files.getPosixFilePermissions(this.socket));
+    }
+
+    Assertions.assertEquals(
+      OptionalInt.of(0),
+      ZBlogDaemonClient.compile(this.socket, config));
+    Assertions.assertTrue(
+      Files.isRegularFile(this.directory.resolve("output").resolve("one.xhtml")));
+
+    Assertions.assertEquals(
+      OptionalInt.of(1),
+      ZBlogDaemonClient.compile(
+        this.socket, this.directory.resolve("nonexistent.conf")));
+
+    this.daemon.close();
+    this.thread.join(TimeUnit.SECONDS.toMillis(10L));
+    Assertions.assertFalse(this.thread.isAlive());
+    Assertions.assertNull(this.failure.get());
+    Assertions.assertFalse(Files.exists(this.socket));
+  }
+
+  @Test
+  public void testRefused()
+    throws Exception
+  {
+    final Path config = this.writeBlog();
+    this.start();
+
+    Assertions.assertEquals(
+      ZBlogDaemonProtocol.MESSAGE_REFUSED,
+      request(
+        this.socket,
+        "nonexistent",
+        ZBlogDaemonProtocol.workingDirectory(),
+        config.toString()));
+    Assertions.assertEquals(
+      ZBlogDaemonProtocol.MESSAGE_REFUSED,
+      request(
+        this.socket,
+        ZBlogDaemonProtocol.COMMAND_COMPILE,
+        this.directory.toString(),
+        config.toString()));
+    Assertions.assertFalse(
+      Files.exists(this.directory.resolve("output")));
+
+    Assertions.assertEquals(
+      ZBlogDaemonProtocol.MESSAGE_STATUS,
+      request(
+        this.socket,
+        ZBlogDaemonProtocol.COMMAND_COMPILE,
+        ZBlogDaemonProtocol.workingDirectory(),
+        config.toString()));
+  }
+
+  @Test
+  public void testAlreadyListening()
+    throws Exception
+  {
+    this.start();
+
+    final IOException ex = Assertions.assertThrows(
+      IOException.class,
+      () -> new ZBlogDaemon(this.socket).run());
+    Assertions.assertTrue(ex.getMessage().contains("already listening"));
+  }
+
+  @Test
+  public void testFallbackNoSocket()
+    throws Exception
+  {
+    Assertions.assertEquals(
+      OptionalInt.empty(),
+      ZBlogDaemonClient.compile(this.socket, this.writeBlog()));
+  }
+
+  @Test
+  public void testFallbackRefused()
+    throws Exception
+  {
+    final Path config = this.writeBlog();
+    Files.createDirectories(this.socket.getParent());
+
+    try (ServerSocketChannel server =
+           ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+      server.bind(UnixDomainSocketAddress.of(this.socket));
+
+      final Thread refuser = new Thread(() -> {
+        try (SocketChannel client = server.accept()) {
+          final DataInputStream input = new DataInputStream(
+            new BufferedInputStream(Channels.newInputStream(client)));
+          input.readInt();
+          input.readInt();
+          ZBlogDaemonProtocol.readString(input);
+          ZBlogDaemonProtocol.readString(input);
+          ZBlogDaemonProtocol.readString(input);
+
+          final DataOutputStream output = new DataOutputStream(
+            new BufferedOutputStream(Channels.newOutputStream(client)));
+          output.writeByte(ZBlogDaemonProtocol.MESSAGE_REFUSED);
+          ZBlogDaemonProtocol.writeString(output, "No");
+          output.flush();
+        } catch (final IOException e) {
+          this.failure.set(e);
+        }
+      });
+      refuser.start();
+
+      Assertions.assertEquals(
+        OptionalInt.empty(),
+        ZBlogDaemonClient.compile(this.socket, config));
+      refuser.join(TimeUnit.SECONDS.toMillis(10L));
+      Assertions.assertNull(this.failure.get());
+    }
+  }
+}
@@ -22,21 +22,33 @@ import com.io7m.zeptoblog.core.ZBlogConfiguration;
 import com.io7m.zeptoblog.core.ZBlogParserProviderType;
 import com.io7m.zeptoblog.core.ZBlogParserType;
 import com.io7m.zeptoblog.core.ZBlogPost;
+import com.io7m.zeptoblog.core.ZBlogPostParserProvider;
+import com.io7m.zeptoblog.core.ZBlogPostParserProviderType;
 import com.io7m.zeptoblog.core.ZError;
 import io.vavr.collection.Seq;
 import io.vavr.control.Validation;
+import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedWriter;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 
 public abstract class ZBlogParserContract
 {
@@ -177,4 +189,327 @@ public abstract class ZBlogParserContract
       Assertions.assertTrue(result.isInvalid());
     }
   }
+
+  @Test
+  public final void testLowMemory()
+    throws Exception
+  {
+    final ZBlogParserProviderType prov = this.createParserProvider();
+
+    try (FileSystem fs = this.createFilesystem()) {
+      final ZBlogConfiguration config =
+        ZBlogConfiguration.builder()
+          .from(baseConfig(fs))
+          .setLowMemory(true)
+          .setLowMemoryBudget(16L)
+          .build();
+      Files.createDirectories(config.sourceRoot());
+
+      for (final String name : new String[]{"one", "two"}) {
+        final Path file = config.sourceRoot().resolve(name + ".zbp");
+        try (BufferedWriter writer =
+               Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+          writer.write("title " + name);
+          writer.newLine();
+          writer.write("date 2020-01-01T00:00:00+0000");
+          writer.newLine();
+          writer.newLine();
+          writer.write("Hello " + name + ".");
+          writer.newLine();
+          writer.flush();
+        }
+      }
+
+      final Validation<Seq<ZError>, ZBlog> expected =
+        prov.createParser(baseConfig(fs)).parse();
+      final Validation<Seq<ZError>, ZBlog> result =
+        prov.createParser(config).parse();
+      dumpResult(result);
+      Assertions.assertTrue(expected.isValid());
+      Assertions.assertTrue(result.isValid());
+
+      for (final String name : new String[]{"one", "two"}) {
+        final Path path = fs.getPath(name + ".zbp");
+        final ZBlogPost p_expected = expected.get().posts().get(path).get();
+        final ZBlogPost p_result = result.get().posts().get(path).get();
+        Assertions.assertEquals(p_expected.title(), p_result.title());
+        Assertions.assertEquals(
+          p_expected.content().format(), p_result.content().format());
+        Assertions.assertEquals(
+          p_expected.content().text(), p_result.content().text());
+      }
+    }
+  }
+
+  private static void checkBodies(
+    final ZBlogParserProviderType prov,
+    final ZBlogConfiguration config)
+    throws Exception
+  {
+    final String[] bodies = {
+      "",
+      "Hello.",
+      "Hello.\n",
+      "A\r\nB\rC\nD",
+      "A\r\rB\n\nC\r\n\r\n",
+      "\u00e9t\u00e9 \u2603 \ud83d\ude00\r\nx",
+    };
+
+    Files.createDirectories(config.sourceRoot());
+    for (int index = 0; index < bodies.length; ++index) {
+      final Path file = config.sourceRoot().resolve("p" + index + ".zbp");
+      final String text =
+        "title T\u00eftle " + index + "\r\ndate 2020-01-01T00:00:00+0000\r\n\r\n"
+          + bodies[index];
+      Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    final Validation<Seq<ZError>, ZBlog> result =
+      prov.createParser(config).parse();
+    dumpResult(result);
+    Assertions.assertTrue(result.isValid());
+
+    final ZBlogPostParserProviderType posts = new ZBlogPostParserProvider();
+    for (int index = 0; index < bodies.length; ++index) {
+      final Path relative = config.sourceRoot().getFileSystem()
+        .getPath("p" + index + ".zbp");
+      final ZBlogPost post = result.get().posts().get(relative).get();
+
+      final ZBlogPost expected;
+      try (InputStream stream =
+             Files.newInputStream(config.sourceRoot().resolve(relative))) {
+        expected = posts.createParser(config, stream, relative).parse().get();
+      }
+
+      Assertions.assertEquals(expected.title(), post.title());
+      Assertions.assertEquals(expected.content().format(), post.content().format());
+      Assertions.assertEquals(expected.content().text(), post.content().text());
+      Assertions.assertEquals(
+        bodies[index].isEmpty() ? "" : bodies[index]
+          .replaceAll("\r\n|\r|\n", "\n")
+          .replaceAll("([^\n])\\z", "$1\n")
+          .replace("\n", System.lineSeparator()),
+        post.content().text(),
+        bodies[index]);
+    }
+  }
+
+  @Test
+  public final void testBodyLineEndings()
+    throws Exception
+  {
+    final ZBlogParserProviderType prov = this.createParserProvider();
+
+    try (FileSystem fs = this.createFilesystem()) {
+      checkBodies(prov, baseConfig(fs));
+    }
+  }
+
+  @Test
+  public final void testBodyLineEndingsDefaultFilesystem()
+    throws Exception
+  {
+    final ZBlogParserProviderType prov = this.createParserProvider();
+
+    final Path directory = Files.createTempDirectory("zeptoblog");
+    try {
+      checkBodies(
+        prov,
+        ZBlogConfiguration.builder()
+          .from(baseConfig(directory.getFileSystem()))
+          .setSourceRoot(directory.resolve("source"))
+          .setOutputRoot(directory.resolve("output"))
+          .build());
+    } finally {
+      FileUtils.deleteDirectory(directory.toFile());
+    }
+  }
+
+  @Test
+  public final void testLowMemoryBodyTruncated()
+    throws Exception
+  {
+    final ZBlogParserProviderType prov = this.createParserProvider();
+
+    final Path directory = Files.createTempDirectory("zeptoblog");
+    try {
+      final ZBlogConfiguration config =
+        ZBlogConfiguration.builder()
+          .from(baseConfig(directory.getFileSystem()))
+          .setSourceRoot(directory.resolve("source"))
+          .setOutputRoot(directory.resolve("output"))
+          .setLowMemory(true)
+          .setLowMemoryBudget(16L)
+          .build();
+      Files.createDirectories(config.sourceRoot());
+
+      final String line = "0123456789abcdef0123456789abcdef0123456789abcdef";
+      final StringBuilder body = new StringBuilder(65536);
+      while (body.length() < 65536) {
+        body.append(line);
+        body.append('\n');
+      }
+
+      final Path file = config.sourceRoot().resolve("one.zbp");
+      writePost(file, "one", body.toString());
+      final long body_offset = Files.size(file) - (long) body.length() - 1L;
+
+      final Validation<Seq<ZError>, ZBlog> result =
+        prov.createParser(config).parse();
+      dumpResult(result);
+      Assertions.assertTrue(result.isValid());
+
+      final ZBlogPost post =
+        result.get().posts().get(directory.getFileSystem().getPath("one.zbp"))
+          .get();
+
+      /*
+       * The body is larger than the budget, and so each access reads the
+       * file again.
+       */
+
+      final String text = post.content().text();
+      Assertions.assertTrue(text.startsWith(body.toString()));
+      for (int index = 0; index < 10000; ++index) {
+        Assertions.assertEquals(text, post.content().text());
+      }
+
+      try (FileChannel channel =
+             FileChannel.open(file, StandardOpenOption.WRITE)) {
+        channel.truncate(body_offset + (long) line.length() + 1L);
+      }
+      Assertions.assertEquals(line + "\n", post.content().text());
+
+      Files.delete(file);
+      final UncheckedIOException ex =
+        Assertions.assertThrows(UncheckedIOException.class,
+                                () -> post.content().text());
+      Assertions.assertInstanceOf(NoSuchFileException.class, ex.getCause());
+    } finally {
+      FileUtils.deleteDirectory(directory.toFile());
+    }
+  }
+
+  @Test
+  public final void testSink()
+    throws Exception
+  {
+    final ZBlogParserProviderType prov = this.createParserProvider();
+
+    try (FileSystem fs = this.createFilesystem()) {
+      final ZBlogConfiguration config = baseConfig(fs);
+      Files.createDirectories(config.sourceRoot());
+
+      for (final String name : new String[]{"one", "two", "three"}) {
+        final Path file = config.sourceRoot().resolve(name + ".zbp");
+        try (BufferedWriter writer =
+               Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+          if (!Objects.equals(name, "two")) {
+            writer.write("title " + name);
+            writer.newLine();
+          }
+          writer.newLine();
+          writer.write("Hello.");
+          writer.newLine();
+          writer.flush();
+        }
+      }
+
+      final List<ZBlogPost> received = new ArrayList<>();
+      final Validation<Seq<ZError>, ZBlog> result =
+        prov.createParser(config).parse(received::add);
+      dumpResult(result);
+      Assertions.assertTrue(result.isInvalid());
+      Assertions.assertEquals(2, received.size());
+
+      Files.delete(config.sourceRoot().resolve("two.zbp"));
+      received.clear();
+
+      final Validation<Seq<ZError>, ZBlog> result_ok =
+        prov.createParser(config).parse(received::add);
+      dumpResult(result_ok);
+      Assertions.assertTrue(result_ok.isValid());
+      Assertions.assertEquals(
+        result_ok.get().posts().values().toJavaSet(),
+        Set.copyOf(received));
+      Assertions.assertEquals(2, received.size());
+    }
+  }
+
+  private static void writePost(
+    final Path file,
+    final String title,
+    final String body)
+    throws Exception
+  {
+    try (BufferedWriter writer =
+           Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      if (title != null) {
+        writer.write("title " + title);
+        writer.newLine();
+      }
+      writer.newLine();
+      writer.write(body);
+      writer.newLine();
+      writer.flush();
+    }
+  }
+
+  @Test
+  public final void testReparse()
+    throws Exception
+  {
+    final ZBlogParserProviderType prov = this.createParserProvider();
+
+    try (FileSystem fs = this.createFilesystem()) {
+      final ZBlogConfiguration config = baseConfig(fs);
+      Files.createDirectories(config.sourceRoot());
+
+      final Path one = config.sourceRoot().resolve("one.zbp");
+      final Path two = config.sourceRoot().resolve("two.zbp");
+      final Path three = config.sourceRoot().resolve("three.zbp");
+      writePost(one, "one", "Hello.");
+      writePost(two, null, "Hello.");
+      writePost(three, "three", "Hello.");
+
+      final List<ZBlogPost> received = new ArrayList<>();
+      final ZBlogParserType parser = prov.createParser(config);
+      final Validation<Seq<ZError>, ZBlog> result_0 =
+        parser.parse(received::add);
+      dumpResult(result_0);
+      Assertions.assertTrue(result_0.isInvalid());
+      Assertions.assertEquals(1, result_0.getError().size());
+
+      final ZBlogPost three_0 =
+        received.stream()
+          .filter(post -> Objects.equals(post.title(), "three"))
+          .findFirst()
+          .orElseThrow();
+      Assertions.assertEquals("Hello.\n", three_0.content().text());
+
+      writePost(one, "one", "Goodbye.");
+      Files.setLastModifiedTime(
+        one, FileTime.fromMillis(Files.getLastModifiedTime(one).toMillis() + 1000L));
+      writePost(two, "two", "Hello.");
+
+      final Validation<Seq<ZError>, ZBlog> result_1 = parser.parse();
+      dumpResult(result_1);
+      Assertions.assertTrue(result_1.isValid());
+
+      final ZBlog blog_1 = result_1.get();
+      Assertions.assertEquals(3, blog_1.posts().size());
+      Assertions.assertEquals(
+        "Goodbye.\n",
+        blog_1.posts().get(fs.getPath("one.zbp")).get().content().text());
+      Assertions.assertSame(
+        three_0, blog_1.posts().get(fs.getPath("three.zbp")).get());
+
+      Files.delete(three);
+
+      final Validation<Seq<ZError>, ZBlog> result_2 = parser.parse();
+      dumpResult(result_2);
+      Assertions.assertTrue(result_2.isValid());
+      Assertions.assertEquals(2, result_2.get().posts().size());
+    }
+  }
 }
@@ -65,4 +65,32 @@ public final class ZBlogPostFormatXHTMLTest
       System.out.println(result.get());
     }
   }
+
+  @Test
+  public void testExcerpt()
+    throws Exception
+  {
+    final ZBlogPostFormatXHTML format = new ZBlogPostFormatXHTML();
+
+    try (InputStream is =
+           ZBlogPostFormatXHTMLTest.class.getResourceAsStream("simple.xhtml")) {
+      final String text = IOUtils.toString(is, StandardCharsets.UTF_8);
+
+      final Validation<Seq<ZError>, String> plain =
+        format.producePlain(Paths.get("/simple.xhtml"), text);
+      dumpError(plain);
+      Assertions.assertTrue(plain.isValid());
+
+      final String plain_text = plain.get();
+      for (int length = 0; length <= plain_text.length() + 1; ++length) {
+        final Validation<Seq<ZError>, String> excerpt =
+          format.produceExcerpt(Paths.get("/simple.xhtml"), text, length);
+        dumpError(excerpt);
+        Assertions.assertTrue(excerpt.isValid());
+        Assertions.assertEquals(
+          plain_text.substring(0, Math.min(length, plain_text.length())),
+          excerpt.get());
+      }
+    }
+  }
 }
@@ -156,6 +156,36 @@ public abstract class ZBlogPostParserContract
     }
   }
 
+  @Test
+  public final void testBadDatePosition()
+    throws Exception
+  {
+    final ZBlogConfiguration config = this.config();
+
+    final ZBlogPostParserProviderType p_prov = this.createParserProvider();
+
+    try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
+      try (BufferedWriter w = writer(os)) {
+        w.write("title A");
+        w.newLine();
+        w.write("  date   2010");
+        w.newLine();
+        w.flush();
+      }
+
+      try (ByteArrayInputStream is = byteStream(os)) {
+        final ZBlogPostParserType p =
+          p_prov.createParser(config, is, Paths.get("/x/y/z"));
+
+        final Validation<Seq<ZError>, ZBlogPost> r = p.parse();
+        dumpResult(r);
+        Assertions.assertTrue(r.isInvalid());
+        Assertions.assertEquals(2, r.getError().get(0).position().line());
+        Assertions.assertEquals(9, r.getError().get(0).position().column());
+      }
+    }
+  }
+
   @Test
   public final void testBadTitle0()
     throws Exception
@@ -272,8 +302,8 @@ public abstract class ZBlogPostParserContract
 
         final ZBlogPost i = r.get();
         Assertions.assertEquals("A", i.title());
-        Assertions.assertEquals("F", i.body().format());
-        Assertions.assertTrue(i.body().text().contains("Hello."));
+        Assertions.assertEquals("F", i.content().format());
+        Assertions.assertTrue(i.content().text().contains("Hello."));
       }
     }
   }
@@ -310,8 +340,8 @@ public abstract class ZBlogPostParserContract
         Assertions.assertEquals("A", i.title());
         Assertions.assertEquals(
           ZBlogPostFormatCommonMark.NAME,
-          i.body().format());
-        Assertions.assertTrue(i.body().text().contains("Hello."));
+          i.content().format());
+        Assertions.assertTrue(i.content().text().contains("Hello."));
       }
     }
   }
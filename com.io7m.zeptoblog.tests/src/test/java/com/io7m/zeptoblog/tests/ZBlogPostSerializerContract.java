@@ -104,7 +104,7 @@ public abstract class ZBlogPostSerializerContract
             5,
             0,
             ZoneId.of("Z"))))
-          .setBody(ZBlogPostBody.of(
+          .setContent(ZBlogPostBody.of(
             ZBlogPostFormatCommonMark.NAME,
             "Content." + System.lineSeparator()))
           .build();
@@ -0,0 +1,390 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.tests;
+
+import com.io7m.zeptoblog.commonmark.ZBlogPostFormatCommonMark;
+import com.io7m.zeptoblog.core.ZBlogConfiguration;
+import com.io7m.zeptoblog.core.ZBlogParserProvider;
+import com.io7m.zeptoblog.core.ZBlogPostFormatResolverType;
+import com.io7m.zeptoblog.core.ZBlogPostFormatType;
+import com.io7m.zeptoblog.core.ZBlogPostParserProvider;
+import com.io7m.zeptoblog.core.ZBlogRendererProvider;
+import com.io7m.zeptoblog.core.ZError;
+import io.vavr.collection.HashSet;
+import io.vavr.collection.Seq;
+import io.vavr.collection.Set;
+import io.vavr.control.Validation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class ZBlogRenderCacheTest
+{
+  private static final Logger LOG;
+
+  static {
+    LOG = LoggerFactory.getLogger(ZBlogRenderCacheTest.class);
+  }
+
+  @TempDir
+  public Path directory;
+
+  private FileSystem fs;
+  private CountingFormat format;
+  private ZBlogRendererProvider renderers;
+  private ZBlogParserProvider parsers;
+
+  private static String withoutTimestamp(
+    final Path file)
+    throws IOException
+  {
+    return Files.readString(file)
+      .replaceAll("<td>Updated:</td><td>[^<]*</td>", "")
+      .replaceAll("<updated>[^<]*</updated>", "");
+  }
+
+  @BeforeEach
+  public void setup()
+  {
+    this.fs = TestFilesystems.makeEmptyUnixFilesystem();
+    this.format = new CountingFormat(new ZBlogPostFormatCommonMark());
+    this.renderers = new ZBlogRendererProvider();
+    this.renderers.resolverRegister(new Resolver(this.format));
+    this.parsers = new ZBlogParserProvider();
+    this.parsers.setBlogPostParserProvider(new ZBlogPostParserProvider());
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws IOException
+  {
+    this.fs.close();
+  }
+
+  private ZBlogConfiguration config(
+    final long size)
+  {
+    return ZBlogConfiguration.builder()
+      .setOutputRoot(this.fs.getPath("output").toAbsolutePath())
+      .setSourceRoot(this.fs.getPath("source").toAbsolutePath())
+      .setTitle("title")
+      .setPostsPerPage(10)
+      .setAuthor("author")
+      .setFormatDefault(ZBlogPostFormatCommonMark.NAME)
+      .setSiteURI(URI.create("http://example.com"))
+      .setRenderCache(this.directory.resolve("cache.bin"))
+      .setRenderCacheSize(size)
+      .build();
+  }
+
+  private void writePosts(
+    final ZBlogConfiguration config,
+    final int count,
+    final int words)
+    throws IOException
+  {
+    final Path root = config.sourceRoot();
+    Files.createDirectories(root);
+    for (int index = 0; index < count; ++index) {
+      final StringBuilder text = new StringBuilder(128);
+      text.append("title Title ").append(index).append('\n');
+      text.append("date 2020-01-01T00:00:00+0000\n\n");
+      text.append("Hello *number* ").append(index).append(".\n\n");
+      for (int word = 0; word < words; ++word) {
+        text.append("word").append(word).append(' ');
+      }
+      text.append('\n');
+      Files.writeString(root.resolve("post" + index + ".zbp"), text);
+    }
+  }
+
+  private void compile(
+    final ZBlogConfiguration config)
+  {
+    this.format.xhtml.set(0);
+    this.format.plain.set(0);
+    final Validation<Seq<ZError>, Void> result =
+      this.renderers.createRenderer(config)
+        .parseAndRender(this.parsers.createParser(config));
+    if (result.isInvalid()) {
+      result.getError().forEach(e -> LOG.error("{}", e));
+    }
+    Assertions.assertTrue(result.isValid());
+  }
+
+  @Test
+  public void testCacheReused()
+    throws Exception
+  {
+    final ZBlogConfiguration config = this.config(1024L * 1024L);
+    this.writePosts(config, 5, 10);
+
+    this.compile(config);
+    Assertions.assertEquals(5, this.format.xhtml.get());
+    final Path out = config.outputRoot();
+    final String post0 = withoutTimestamp(out.resolve("post0.xhtml"));
+    final String page0 = withoutTimestamp(out.resolve("1.xhtml"));
+    final String feed0 = withoutTimestamp(out.resolve("blog.atom"));
+    Assertions.assertTrue(post0.contains("<em>number</em>"));
+
+    this.compile(config);
+    Assertions.assertEquals(0, this.format.xhtml.get());
+    Assertions.assertEquals(0, this.format.plain.get());
+    Assertions.assertEquals(post0, withoutTimestamp(out.resolve("post0.xhtml")));
+    Assertions.assertEquals(page0, withoutTimestamp(out.resolve("1.xhtml")));
+    Assertions.assertEquals(feed0, withoutTimestamp(out.resolve("blog.atom")));
+
+    Files.writeString(
+      config.sourceRoot().resolve("post1.zbp"),
+      "title Title 1\ndate 2020-01-01T00:00:00+0000\n\nChanged.\n");
+    this.compile(config);
+    Assertions.assertEquals(1, this.format.xhtml.get());
+    Assertions.assertTrue(
+      Files.readString(out.resolve("post1.xhtml")).contains("Changed."));
+  }
+
+  @Test
+  public void testCacheReopened()
+    throws Exception
+  {
+    this.writePosts(this.config(1024L * 1024L), 5, 10);
+    this.compile(this.config(1024L * 1024L));
+    Assertions.assertEquals(5, this.format.xhtml.get());
+
+    this.compile(this.config(2048L * 1024L));
+    Assertions.assertEquals(0, this.format.xhtml.get());
+  }
+
+  @Test
+  public void testCacheVersion()
+    throws Exception
+  {
+    final ZBlogConfiguration config = this.config(1024L * 1024L);
+    this.writePosts(config, 5, 10);
+
+    this.compile(config);
+    Assertions.assertEquals(5, this.format.xhtml.get());
+    this.format.version = Optional.of("2");
+    this.compile(config);
+    Assertions.assertEquals(5, this.format.xhtml.get());
+    this.compile(config);
+    Assertions.assertEquals(0, this.format.xhtml.get());
+
+    this.format.version = Optional.empty();
+    this.compile(config);
+    Assertions.assertEquals(5, this.format.xhtml.get());
+    this.compile(config);
+    Assertions.assertEquals(5, this.format.xhtml.get());
+  }
+
+  @Test
+  public void testCacheEviction()
+    throws Exception
+  {
+    final long size = 16L * 1024L;
+    final ZBlogConfiguration config = this.config(size);
+    this.writePosts(config, 40, 100);
+
+    this.compile(config);
+    Assertions.assertTrue(this.format.xhtml.get() >= 40);
+    final Path file = config.renderCache().get();
+    Assertions.assertTrue(Files.size(file) <= size);
+
+    this.compile(config);
+    Assertions.assertTrue(this.format.xhtml.get() > 0);
+    Assertions.assertTrue(Files.size(file) <= size);
+    Assertions.assertTrue(
+      Files.readString(config.outputRoot().resolve("post39.xhtml"))
+        .contains("word99"));
+  }
+
+  @Test
+  public void testCacheDamaged()
+    throws Exception
+  {
+    final ZBlogConfiguration config = this.config(1024L * 1024L);
+    this.writePosts(config, 5, 10);
+    this.compile(config);
+
+    final Path file = config.renderCache().get();
+    try (FileChannel channel =
+           FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 1L);
+    }
+
+    this.compile(this.config(2048L * 1024L));
+    Assertions.assertEquals(1, this.format.xhtml.get());
+    this.compile(this.config(2048L * 1024L));
+    Assertions.assertEquals(0, this.format.xhtml.get());
+  }
+
+  @Test
+  public void testCacheAppendedRead()
+    throws Exception
+  {
+    /*
+     * In low memory mode with related posts, each post body is rendered for
+     * its permalink page, and then fetched from the cache for the segment
+     * pages. The records fetched were appended after the cache file was
+     * mapped.
+     */
+
+    final ZBlogConfiguration config =
+      ZBlogConfiguration.builder()
+        .from(this.config(1024L * 1024L))
+        .setLowMemory(true)
+        .setRelatedPosts(2)
+        .build();
+    Files.createDirectories(config.sourceRoot());
+    for (int index = 0; index < 5; ++index) {
+      Files.writeString(
+        config.sourceRoot().resolve("post" + index + ".zbp"),
+        "title Title " + index + "\n"
+          + "date 2020-01-0" + (index + 1) + "T00:00:00+0000\n\n"
+          + "Hello <em>number</em> " + index + ".\n");
+    }
+
+    this.compile(config);
+    Assertions.assertEquals(5, this.format.xhtml.get());
+    final Path out = config.outputRoot();
+    final String page0 = withoutTimestamp(out.resolve("1.xhtml"));
+    for (int index = 0; index < 5; ++index) {
+      Assertions.assertTrue(page0.contains("Hello <em>number</em> " + index));
+    }
+
+    final Path file = config.renderCache().get();
+    try (FileChannel channel =
+           FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 1L);
+    }
+
+    /*
+     * The cache is reopened with a different size. The damaged record is
+     * discarded when the cache is opened, and the replacement record is
+     * appended where the damaged record began.
+     */
+
+    final ZBlogConfiguration reopened =
+      ZBlogConfiguration.builder()
+        .from(config)
+        .setRenderCacheSize(2048L * 1024L)
+        .build();
+
+    this.compile(reopened);
+    Assertions.assertEquals(1, this.format.xhtml.get());
+    Assertions.assertEquals(page0, withoutTimestamp(out.resolve("1.xhtml")));
+
+    this.compile(reopened);
+    Assertions.assertEquals(0, this.format.xhtml.get());
+    Assertions.assertEquals(page0, withoutTimestamp(out.resolve("1.xhtml")));
+  }
+
+  private static final class CountingFormat implements ZBlogPostFormatType
+  {
+    private final ZBlogPostFormatType delegate;
+    private final AtomicInteger xhtml;
+    private final AtomicInteger plain;
+    private volatile Optional<String> version;
+
+    CountingFormat(
+      final ZBlogPostFormatType in_delegate)
+    {
+      this.delegate = in_delegate;
+      this.xhtml = new AtomicInteger(0);
+      this.plain = new AtomicInteger(0);
+      this.version = Optional.of("1");
+    }
+
+    @Override
+    public String name()
+    {
+      return this.delegate.name();
+    }
+
+    @Override
+    public String description()
+    {
+      return this.delegate.description();
+    }
+
+    @Override
+    public Optional<String> cacheVersion()
+    {
+      return this.version;
+    }
+
+    @Override
+    public Validation<Seq<ZError>, Element> produceXHTML(
+      final Path path,
+      final String text)
+    {
+      this.xhtml.incrementAndGet();
+      return this.delegate.produceXHTML(path, text);
+    }
+
+    @Override
+    public Validation<Seq<ZError>, String> producePlain(
+      final Path path,
+      final String text)
+    {
+      this.plain.incrementAndGet();
+      return this.delegate.producePlain(path, text);
+    }
+  }
+
+  private static final class Resolver implements ZBlogPostFormatResolverType
+  {
+    private final ZBlogPostFormatType format;
+
+    Resolver(
+      final ZBlogPostFormatType in_format)
+    {
+      this.format = in_format;
+    }
+
+    @Override
+    public Optional<ZBlogPostFormatType> resolve(
+      final String name)
+    {
+      if (this.format.name().equals(name)) {
+        return Optional.of(this.format);
+      }
+      return Optional.empty();
+    }
+
+    @Override
+    public Set<ZBlogPostFormatType> available()
+    {
+      return HashSet.of(this.format);
+    }
+  }
+}
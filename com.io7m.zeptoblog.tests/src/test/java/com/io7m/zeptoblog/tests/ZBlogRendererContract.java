@@ -23,20 +23,34 @@ import com.io7m.zeptoblog.core.ZBlogParserProviderType;
 import com.io7m.zeptoblog.core.ZBlogParserType;
 import com.io7m.zeptoblog.core.ZBlogRendererProviderType;
 import com.io7m.zeptoblog.core.ZBlogRendererType;
+import com.io7m.zeptoblog.core.ZBlogPostFormatXHTML;
+import com.io7m.zeptoblog.core.ZBlogPostProcessorType;
 import com.io7m.zeptoblog.core.ZError;
+import com.io7m.zeptoblog.core.ZXML;
 import io.vavr.collection.Seq;
+import io.vavr.collection.Vector;
 import io.vavr.control.Validation;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
 
 import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 public abstract class ZBlogRendererContract
 {
@@ -67,6 +81,29 @@ public abstract class ZBlogRendererContract
     }
   }
 
+  private static String gunzip(
+    final Path file)
+    throws IOException
+  {
+    try (InputStream input =
+           new GZIPInputStream(Files.newInputStream(file))) {
+      return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  private static String withoutTimestamp(
+    final Path file)
+    throws IOException
+  {
+    final String text;
+    if (file.getFileName().toString().endsWith(".gz")) {
+      text = gunzip(file);
+    } else {
+      text = Files.readString(file);
+    }
+    return text.replaceAll("<td>Updated:</td><td>[^<]*</td>", "");
+  }
+
   private static void runOne(
     final ZBlogParserProviderType p_prov,
     final ZBlogRendererProviderType w_prov,
@@ -195,6 +232,43 @@ public abstract class ZBlogRendererContract
     }
   }
 
+  @Test
+  public final void testHeaderReplaceDecoratedOnce()
+    throws Exception
+  {
+    final ZBlogParserProviderType p_prov = this.createParserProvider();
+    final ZBlogRendererProviderType w_prov = this.createWriterProvider();
+
+    try (FileSystem fs = this.createFilesystem()) {
+      final Path mod_path = fs.getPath("insert.xml");
+      Files.copy(
+        ZBlogRendererContract.class.getResourceAsStream(
+          "/com/io7m/zeptoblog/tests/insertable.xml"),
+        mod_path);
+
+      final ZBlogConfiguration config =
+        ZBlogConfiguration.builder()
+          .from(baseConfig(fs))
+          .setHeaderReplace(mod_path)
+          .setHeaderPost(mod_path)
+          .build();
+
+      Files.createDirectories(config.sourceRoot());
+      Files.createDirectories(config.sourceRoot());
+      writeNumberedPosts(config.sourceRoot(), 5);
+      runOne(p_prov, w_prov, config);
+
+      for (int index = 1; index < 5; ++index) {
+        final String text =
+          Files.readString(config.outputRoot().resolve("post" + index + ".xhtml"));
+        Assertions.assertEquals(
+          2,
+          text.split("Checksums</a>", -1).length - 1,
+          "Header appears once per page");
+      }
+    }
+  }
+
   @Test
   public final void testFooterPost()
     throws Exception
@@ -358,4 +432,1055 @@ public abstract class ZBlogRendererContract
       runOne(p_prov, w_prov, config);
     }
   }
+
+  @Test
+  public final void testFeedArchives()
+    throws Exception
+  {
+    final ZBlogParserProviderType p_prov = this.createParserProvider();
+    final ZBlogRendererProviderType w_prov = this.createWriterProvider();
+
+    try (FileSystem fs = this.createFilesystem()) {
+      final ZBlogConfiguration config =
+        ZBlogConfiguration.builder()
+          .from(baseConfig(fs))
+          .setFeedArchiveSize(2)
+          .build();
+
+      Files.createDirectories(config.sourceRoot());
+      Files.createDirectories(config.outputRoot());
+
+      writeArchivePosts(config, 1, 5);
+
+      final ZBlogParserType parser = p_prov.createParser(config);
+      final Validation<Seq<ZError>, ZBlog> p_result = parser.parse();
+      dumpResult(p_result);
+      Assertions.assertTrue(p_result.isValid());
+      final ZBlog blog = p_result.get();
+
+      final ZBlogRendererType writer = w_prov.createRenderer(config);
+      final Validation<Seq<ZError>, Void> w_result = writer.render(blog);
+      dumpResult(w_result);
+      Assertions.assertTrue(w_result.isValid());
+
+      final Path archive_0 = config.outputRoot().resolve("blog-archive-1.atom");
+      final Path archive_1 = config.outputRoot().resolve("blog-archive-2.atom");
+      final Path current = config.outputRoot().resolve("blog.atom");
+      Assertions.assertFalse(
+        Files.exists(config.outputRoot().resolve("blog-archive-3.atom")));
+
+      final String text_0 = Files.readString(archive_0);
+      LOG.debug("{}", text_0);
+      Assertions.assertTrue(text_0.contains("fh:archive"));
+      Assertions.assertTrue(text_0.contains("Title 1"));
+      Assertions.assertTrue(text_0.contains("Title 2"));
+      Assertions.assertTrue(text_0.contains("rel=\"next-archive\""));
+      Assertions.assertFalse(text_0.contains("rel=\"prev-archive\""));
+
+      final String text_1 = Files.readString(archive_1);
+      LOG.debug("{}", text_1);
+      Assertions.assertTrue(text_1.contains("fh:archive"));
+      Assertions.assertTrue(text_1.contains("Title 3"));
+      Assertions.assertTrue(text_1.contains("Title 4"));
+      Assertions.assertTrue(text_1.contains("http://example.com/blog-archive-1.atom"));
+      Assertions.assertFalse(text_1.contains("rel=\"next-archive\""));
+      Assertions.assertFalse(text_1.contains("http://example.com/blog-archive-3.atom"));
+
+      final String text_c = Files.readString(current);
+      LOG.debug("{}", text_c);
+      Assertions.assertFalse(text_c.contains("fh:archive"));
+      Assertions.assertTrue(text_c.contains("Title 5"));
+      Assertions.assertFalse(text_c.contains("Title 4"));
+      Assertions.assertTrue(text_c.contains("http://example.com/blog-archive-2.atom"));
+
+      /*
+       * Archives whose posts have not changed are not rewritten.
+       */
+
+      final String marked = text_0 + "<!-- unchanged -->";
+      Files.writeString(archive_0, marked);
+      final Validation<Seq<ZError>, Void> w_again =
+        w_prov.createRenderer(config).render(blog);
+      dumpResult(w_again);
+      Assertions.assertTrue(w_again.isValid());
+      Assertions.assertEquals(marked, Files.readString(archive_0));
+
+      /*
+       * The newest archive is rewritten to link to its successor when the
+       * successor first appears.
+       */
+
+      writeArchivePosts(config, 6, 7);
+      final ZBlog blog_next = p_prov.createParser(config).parse().get();
+      final Validation<Seq<ZError>, Void> w_next =
+        w_prov.createRenderer(config).render(blog_next);
+      dumpResult(w_next);
+      Assertions.assertTrue(w_next.isValid());
+      Assertions.assertEquals(marked, Files.readString(archive_0));
+
+      final String text_1_next = Files.readString(archive_1);
+      Assertions.assertTrue(text_1_next.contains("rel=\"next-archive\""));
+      Assertions.assertTrue(
+        text_1_next.contains("http://example.com/blog-archive-3.atom"));
+
+      final String text_2 = Files.readString(
+        config.outputRoot().resolve("blog-archive-3.atom"));
+      Assertions.assertTrue(text_2.contains("Title 5"));
+      Assertions.assertTrue(text_2.contains("Title 6"));
+      Assertions.assertFalse(text_2.contains("rel=\"next-archive\""));
+    }
+  }
+
+  @Test
+  public final void testFeedArchivesBackdated()
+    throws Exception
+  {
+    final ZBlogParserProviderType p_prov = this.createParserProvider();
+    final ZBlogRendererProviderType w_prov = this.createWriterProvider();
+
+    try (FileSystem fs = this.createFilesystem()) {
+      final ZBlogConfiguration config =
+        ZBlogConfiguration.builder()
+          .from(baseConfig(fs))
+          .setFeedArchiveSize(2)
+          .build();
+
+      Files.createDirectories(config.sourceRoot());
+      Files.createDirectories(config.outputRoot());
+      writeArchivePosts(config, 1, 5);
+
+      final Validation<Seq<ZError>, Void> w_result =
+        w_prov.createRenderer(config)
+          .render(p_prov.createParser(config).parse().get());
+      dumpResult(w_result);
+      Assertions.assertTrue(w_result.isValid());
+
+      /*
+       * A post dated before every other post moves every post into the
+       * next block.
+       */
+
+      Files.writeString(
+        config.sourceRoot().resolve("0.zbp"),
+        "title Title 0\ndate 2019-12-31T00:00:00+0000\n\nHello 0.\n");
+
+      final Validation<Seq<ZError>, Void> w_back =
+        w_prov.createRenderer(config)
+          .render(p_prov.createParser(config).parse().get());
+      dumpResult(w_back);
+      Assertions.assertTrue(w_back.isValid());
+
+      final Path archive_0 = config.outputRoot().resolve("blog-archive-1.atom");
+      final Path archive_1 = config.outputRoot().resolve("blog-archive-2.atom");
+      final Path archive_2 = config.outputRoot().resolve("blog-archive-3.atom");
+      final Path current = config.outputRoot().resolve("blog.atom");
+
+      final String text_0 = Files.readString(archive_0);
+      LOG.debug("{}", text_0);
+      Assertions.assertTrue(text_0.contains("Title 0"));
+      Assertions.assertTrue(text_0.contains("Title 1"));
+      Assertions.assertFalse(text_0.contains("Title 2"));
+
+      final String text_1 = Files.readString(archive_1);
+      LOG.debug("{}", text_1);
+      Assertions.assertFalse(text_1.contains("Title 1"));
+      Assertions.assertTrue(text_1.contains("Title 2"));
+      Assertions.assertTrue(text_1.contains("Title 3"));
+      Assertions.assertFalse(text_1.contains("Title 4"));
+      Assertions.assertTrue(text_1.contains("rel=\"next-archive\""));
+
+      final String text_2 = Files.readString(archive_2);
+      LOG.debug("{}", text_2);
+      Assertions.assertTrue(text_2.contains("Title 4"));
+      Assertions.assertTrue(text_2.contains("Title 5"));
+      Assertions.assertFalse(text_2.contains("rel=\"next-archive\""));
+
+      Assertions.assertFalse(Files.readString(current).contains("Title 5"));
+
+      /*
+       * Deleting posts removes archives that are no longer complete.
+       */
+
+      Files.delete(config.sourceRoot().resolve("0.zbp"));
+      Files.delete(config.sourceRoot().resolve("5.zbp"));
+
+      final Validation<Seq<ZError>, Void> w_deleted =
+        w_prov.createRenderer(config)
+          .render(p_prov.createParser(config).parse().get());
+      dumpResult(w_deleted);
+      Assertions.assertTrue(w_deleted.isValid());
+
+      Assertions.assertFalse(Files.exists(archive_2));
+      final String text_0_deleted = Files.readString(archive_0);
+      Assertions.assertFalse(text_0_deleted.contains("Title 0"));
+      Assertions.assertTrue(text_0_deleted.contains("Title 1"));
+      Assertions.assertTrue(text_0_deleted.contains("Title 2"));
+      final String text_1_deleted = Files.readString(archive_1);
+      Assertions.assertTrue(text_1_deleted.contains("Title 4"));
+      Assertions.assertFalse(text_1_deleted.contains("rel=\"next-archive\""));
+    }
+  }
+
+  private static void writeArchivePosts(
+    final ZBlogConfiguration config,
+    final int first,
+    final int last)
+    throws IOException
+  {
+    for (int index = first; index <= last; ++index) {
+      final Path file = config.sourceRoot().resolve(index + ".zbp");
+      try (BufferedWriter writer =
+             Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+        writer.write("title Title " + index);
+        writer.newLine();
+        writer.write("date 2020-01-0" + index + "T00:00:00+0000");
+        writer.newLine();
+        writer.newLine();
+        writer.write("Hello " + index + ".");
+        writer.newLine();
+        writer.flush();
+      }
+    }
+  }
+
+  @Test
+  public final void testLowMemory()
+    throws Exception
+  {
+    final ZBlogParserProviderType p_prov = this.createParserProvider();
+    final ZBlogRendererProviderType w_prov = this.createWriterProvider();
+
+    try (FileSystem fs = this.createFilesystem()) {
+      final ZBlogConfiguration config_normal = baseConfig(fs);
+      final ZBlogConfiguration config_low =
+        ZBlogConfiguration.builder()
+          .from(config_normal)
+          .setOutputRoot(fs.getPath("output-low").toAbsolutePath())
+          .setLowMemory(true)
+          .setLowMemoryBudget(32L)
+          .build();
+
+      Files.createDirectories(config_normal.sourceRoot());
+
+      for (int index = 0; index < 3; ++index) {
+        final String name = index == 0 ? "one" : "post" + index;
+        final Path file = config_normal.sourceRoot().resolve(name + ".zbp");
+        try (BufferedWriter writer =
+               Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+          writer.write("title Title " + index);
+          writer.newLine();
+          writer.write("date 2020-01-0" + (index + 1) + "T00:00:00+0000");
+          writer.newLine();
+          writer.newLine();
+          writer.write("Hello *number* " + index + ".");
+          writer.newLine();
+          writer.flush();
+        }
+      }
+
+      runOne(p_prov, w_prov, config_normal);
+      runOne(p_prov, w_prov, config_low);
+
+      for (final String name : new String[]{
+        "one.xhtml", "post1.xhtml", "1.xhtml", "yearly.xhtml"}) {
+        Assertions.assertEquals(
+          withoutTimestamp(config_normal.outputRoot().resolve(name)),
+          withoutTimestamp(config_low.outputRoot().resolve(name)),
+          name);
+      }
+    }
+  }
+
+  @Test
+  public final void testLowMemoryRelatedPosts()
+    throws Exception
+  {
+    final ZBlogParserProviderType p_prov = this.createParserProvider();
+    final ZBlogRendererProviderType w_prov = this.createWriterProvider();
+
+    try (FileSystem fs = this.createFilesystem()) {
+      final ZBlogConfiguration config_normal =
+        ZBlogConfiguration.builder()
+          .from(baseConfig(fs))
+          .setRelatedPosts(2)
+          .setRenderThreads(2)
+          .build();
+      final ZBlogConfiguration config_low =
+        ZBlogConfiguration.builder()
+          .from(config_normal)
+          .setOutputRoot(fs.getPath("output-low").toAbsolutePath())
+          .setLowMemory(true)
+          .build();
+
+      Files.createDirectories(config_normal.sourceRoot());
+      writeNumberedPosts(config_normal.sourceRoot(), 20);
+
+      /*
+       * Record the threads on which post bodies are rendered. Bodies
+       * rendered on the parsing pipeline's threads would be held until
+       * parsing completes.
+       */
+
+      final Set<String> threads_normal = ConcurrentHashMap.newKeySet();
+      final Set<String> threads_low = ConcurrentHashMap.newKeySet();
+
+      final Validation<Seq<ZError>, Void> r_normal =
+        w_prov.createRenderer(
+            config_normal,
+            Vector.of((post, body) -> threads_normal.add(
+              Thread.currentThread().getName())))
+          .parseAndRender(p_prov.createParser(config_normal));
+      dumpResult(r_normal);
+      Assertions.assertTrue(r_normal.isValid());
+
+      final Validation<Seq<ZError>, Void> r_low =
+        w_prov.createRenderer(
+            config_low,
+            Vector.of((post, body) -> threads_low.add(
+              Thread.currentThread().getName())))
+          .parseAndRender(p_prov.createParser(config_low));
+      dumpResult(r_low);
+      Assertions.assertTrue(r_low.isValid());
+
+      Assertions.assertTrue(
+        threads_normal.stream()
+          .anyMatch(name -> name.startsWith("com.io7m.zeptoblog.renderer-")),
+        threads_normal::toString);
+      Assertions.assertTrue(
+        threads_low.stream()
+          .noneMatch(name -> name.startsWith("com.io7m.zeptoblog.renderer-")),
+        threads_low::toString);
+
+      assertSameOutput(config_normal.outputRoot(), config_low.outputRoot());
+    }
+  }
+
+  @Test
+  public final void testParseAndRender()
+    throws Exception
+  {
+    final ZBlogParserProviderType p_prov = this.createParserProvider();
+    final ZBlogRendererProviderType w_prov = this.createWriterProvider();
+
+    try (FileSystem fs = this.createFilesystem()) {
+      final ZBlogConfiguration config_normal = baseConfig(fs);
+      final ZBlogConfiguration config_stream =
+        ZBlogConfiguration.builder()
+          .from(config_normal)
+          .setOutputRoot(fs.getPath("output-stream").toAbsolutePath())
+          .build();
+
+      Files.createDirectories(config_normal.sourceRoot());
+      Files.createDirectories(config_normal.sourceRoot().resolve("a/b"));
+      Files.writeString(
+        config_normal.sourceRoot().resolve("a/b/static.txt"), "Static");
+
+      for (int index = 0; index < 3; ++index) {
+        final String name = index == 0 ? "one" : "post" + index;
+        final Path file = config_normal.sourceRoot().resolve(name + ".zbp");
+        try (BufferedWriter writer =
+               Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+          writer.write("title Title " + index);
+          writer.newLine();
+          writer.write("date 2020-01-0" + (index + 1) + "T00:00:00+0000");
+          writer.newLine();
+          writer.newLine();
+          writer.write("Hello *number* " + index + ".");
+          writer.newLine();
+          writer.flush();
+        }
+      }
+
+      runOne(p_prov, w_prov, config_normal);
+
+      final Validation<Seq<ZError>, Void> result =
+        w_prov.createRenderer(config_stream)
+          .parseAndRender(p_prov.createParser(config_stream));
+      dumpResult(result);
+      Assertions.assertTrue(result.isValid());
+
+      for (final String name : new String[]{
+        "one.xhtml", "post1.xhtml", "1.xhtml", "yearly.xhtml", "blog.atom"}) {
+        Assertions.assertEquals(
+          withoutTimestamp(config_normal.outputRoot().resolve(name)),
+          withoutTimestamp(config_stream.outputRoot().resolve(name)),
+          name);
+      }
+
+      Assertions.assertEquals(
+        "Static",
+        Files.readString(
+          config_stream.outputRoot().resolve("a/b/static.txt")));
+    }
+  }
+
+  private static Seq<String> parseAndRenderErrors(
+    final ZBlogParserProviderType p_prov,
+    final ZBlogRendererProviderType w_prov,
+    final ZBlogConfiguration config)
+  {
+    final Validation<Seq<ZError>, Void> result =
+      w_prov.createRenderer(config)
+        .parseAndRender(p_prov.createParser(config));
+    return result.isValid()
+      ? Vector.empty()
+      : result.getError().map(ZError::show);
+  }
+
+  private static void writeNumberedPosts(
+    final Path root,
+    final int count)
+    throws IOException
+  {
+    for (int index = 0; index < count; ++index) {
+      final String name = index == 0 ? "one" : "post" + index;
+      final Path file = root.resolve(name + ".zbp");
+      try (BufferedWriter writer =
+             Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+        writer.write("title Title " + index);
+        writer.newLine();
+        writer.write(String.format(
+          "date 2020-01-%02dT00:00:00+0000", Integer.valueOf(1 + index % 28)));
+        writer.newLine();
+        writer.newLine();
+        writer.write("Hello *number* " + index + ".");
+        writer.newLine();
+        writer.flush();
+      }
+    }
+  }
+
+  private static void assertSameOutput(
+    final Path expected,
+    final Path received)
+    throws IOException
+  {
+    try (Stream<Path> files = Files.walk(expected)) {
+      for (final Path file : files.filter(Files::isRegularFile).toList()) {
+        final Path relative = expected.relativize(file);
+        Assertions.assertEquals(
+          withoutTimestamp(file),
+          withoutTimestamp(received.resolve(relative.toString())),
+          relative.toString());
+      }
+    }
+  }
+
+  @Test
+  public final void testRenderConcurrent()
+    throws Exception
+  {
+    final ZBlogParserProviderType p_prov = this.createParserProvider();
+    final ZBlogRendererProviderType w_prov = this.createWriterProvider();
+
+    try (FileSystem fs = this.createFilesystem()) {
+      final Path mod_path = fs.getPath("insert.xml");
+      Files.copy(
+        ZBlogRendererContract.class.getResourceAsStream(
+          "/com/io7m/zeptoblog/tests/insertable.xml"),
+        mod_path);
+
+      final ZBlogConfiguration config_single =
+        ZBlogConfiguration.builder()
+          .from(baseConfig(fs))
+          .setHeaderPre(mod_path)
+          .setFooterPost(mod_path)
+          .setRenderThreads(1)
+          .build();
+
+      Files.createDirectories(config_single.sourceRoot());
+      writeNumberedPosts(config_single.sourceRoot(), 60);
+      runOne(p_prov, w_prov, config_single);
+
+      final ZBlogConfiguration config_many =
+        ZBlogConfiguration.builder()
+          .from(config_single)
+          .setOutputRoot(fs.getPath("output-many").toAbsolutePath())
+          .setRenderThreads(8)
+          .build();
+
+      runOne(p_prov, w_prov, config_many);
+      assertSameOutput(config_single.outputRoot(), config_many.outputRoot());
+    }
+  }
+
+  @Test
+  public final void testOutputSync()
+    throws Exception
+  {
+    final ZBlogParserProviderType p_prov = this.createParserProvider();
+    final ZBlogRendererProviderType w_prov = this.createWriterProvider();
+
+    try (FileSystem fs = this.createFilesystem()) {
+      final ZBlogConfiguration config_normal = baseConfig(fs);
+      Files.createDirectories(config_normal.sourceRoot());
+      writeNumberedPosts(config_normal.sourceRoot(), 12);
+      Files.writeString(
+        config_normal.sourceRoot().resolve("static.txt"), "Static");
+
+      final ZBlogConfiguration config_sync =
+        ZBlogConfiguration.builder()
+          .from(config_normal)
+          .setOutputRoot(fs.getPath("output-sync").toAbsolutePath())
+          .setOutputSync(true)
+          .build();
+
+      runOne(p_prov, w_prov, config_normal);
+      runOne(p_prov, w_prov, config_sync);
+      assertSameOutput(config_normal.outputRoot(), config_sync.outputRoot());
+
+      Assertions.assertEquals(
+        Vector.empty(),
+        parseAndRenderErrors(p_prov, w_prov, config_sync));
+      assertSameOutput(config_normal.outputRoot(), config_sync.outputRoot());
+
+      for (final Path root : new Path[]{
+        config_normal.outputRoot(), config_sync.outputRoot()}) {
+        try (Stream<Path> files = Files.walk(root)) {
+          Assertions.assertEquals(
+            List.of(),
+            files.filter(file -> file.toString().endsWith(".tmp")).toList());
+        }
+      }
+    }
+  }
+
+  @Test
+  public final void testOutputReplacesExisting()
+    throws Exception
+  {
+    final ZBlogParserProviderType p_prov = this.createParserProvider();
+    final ZBlogRendererProviderType w_prov = this.createWriterProvider();
+
+    try (FileSystem fs = this.createFilesystem()) {
+      final ZBlogConfiguration config = baseConfig(fs);
+      Files.createDirectories(config.sourceRoot());
+      Files.createDirectories(config.outputRoot());
+      writeNumberedPosts(config.sourceRoot(), 3);
+
+      final Path existing = config.outputRoot().resolve("one.xhtml");
+      Files.writeString(existing, "x".repeat(100000));
+      runOne(p_prov, w_prov, config);
+
+      final String text = Files.readString(existing);
+      Assertions.assertTrue(text.startsWith("<html"), text);
+      Assertions.assertTrue(text.endsWith("</html>"), text);
+    }
+  }
+
+  @Test
+  public final void testParseAndRenderConcurrent()
+    throws Exception
+  {
+    final ZBlogParserProviderType p_prov = this.createParserProvider();
+    final ZBlogRendererProviderType w_prov = this.createWriterProvider();
+
+    try (FileSystem fs = this.createFilesystem()) {
+      final ZBlogConfiguration config_normal = baseConfig(fs);
+      Files.createDirectories(config_normal.sourceRoot());
+
+      writeNumberedPosts(config_normal.sourceRoot(), 60);
+
+      runOne(p_prov, w_prov, config_normal);
+
+      for (final int threads : new int[]{1, 3, 8}) {
+        final ZBlogConfiguration config =
+          ZBlogConfiguration.builder()
+            .from(config_normal)
+            .setOutputRoot(fs.getPath("output-" + threads).toAbsolutePath())
+            .setRenderThreads(threads)
+            .build();
+
+        Assertions.assertEquals(
+          Vector.empty(),
+          parseAndRenderErrors(p_prov, w_prov, config));
+
+        assertSameOutput(config_normal.outputRoot(), config.outputRoot());
+      }
+    }
+  }
+
+  @Test
+  public final void testParseAndRenderErrorOrder()
+    throws Exception
+  {
+    final ZBlogParserProviderType p_prov = this.createParserProvider();
+    final ZBlogRendererProviderType w_prov = this.createWriterProvider();
+
+    try (FileSystem fs = this.createFilesystem()) {
+      final ZBlogConfiguration config_base = baseConfig(fs);
+      Files.createDirectories(config_base.sourceRoot());
+
+      for (int index = 0; index < 30; ++index) {
+        final Path file =
+          config_base.sourceRoot().resolve("post" + index + ".zbp");
+        try (BufferedWriter writer =
+               Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+          writer.write("title Title " + index);
+          writer.newLine();
+          writer.write("date 2020-01-01T00:00:00+0000");
+          writer.newLine();
+          writer.write("format " + ZBlogPostFormatXHTML.NAME);
+          writer.newLine();
+          writer.newLine();
+          writer.write(index % 3 == 0 ? "<p>Broken " + index : "<p>Fine</p>");
+          writer.newLine();
+          writer.flush();
+        }
+      }
+
+      Seq<String> expected = null;
+      for (final int threads : new int[]{1, 2, 5, 8, 1, 8}) {
+        final ZBlogConfiguration config =
+          ZBlogConfiguration.builder()
+            .from(config_base)
+            .setRenderThreads(threads)
+            .build();
+
+        final Seq<String> errors =
+          parseAndRenderErrors(p_prov, w_prov, config);
+        Assertions.assertFalse(errors.isEmpty());
+        if (expected == null) {
+          expected = errors;
+        }
+        Assertions.assertEquals(expected, errors);
+
+        final Validation<Seq<ZError>, ZBlog> parsed =
+          p_prov.createParser(config).parse();
+        Assertions.assertTrue(parsed.isValid());
+        final Validation<Seq<ZError>, Void> rendered =
+          w_prov.createRenderer(config).render(parsed.get());
+        Assertions.assertEquals(
+          expected, rendered.getError().map(ZError::show));
+      }
+    }
+  }
+
+  @Test
+  public final void testParseAndRenderInvalid()
+    throws Exception
+  {
+    final ZBlogParserProviderType p_prov = this.createParserProvider();
+    final ZBlogRendererProviderType w_prov = this.createWriterProvider();
+
+    try (FileSystem fs = this.createFilesystem()) {
+      final ZBlogConfiguration config = baseConfig(fs);
+      Files.createDirectories(config.sourceRoot());
+      Files.writeString(config.sourceRoot().resolve("one.zbp"), "nonsense\n");
+
+      final Validation<Seq<ZError>, Void> result =
+        w_prov.createRenderer(config)
+          .parseAndRender(p_prov.createParser(config));
+      dumpResult(result);
+      Assertions.assertTrue(result.isInvalid());
+    }
+  }
+
+  @Test
+  public final void testPassthrough()
+    throws Exception
+  {
+    final ZBlogParserProviderType p_prov = this.createParserProvider();
+    final ZBlogRendererProviderType w_prov = this.createWriterProvider();
+
+    try (FileSystem fs = this.createFilesystem()) {
+      final ZBlogConfiguration config =
+        ZBlogConfiguration.builder()
+          .from(baseConfig(fs))
+          .setPassthrough(true)
+          .build();
+
+      Files.createDirectories(config.sourceRoot());
+
+      final String body =
+        "<p class=\"zb_marker\">Hello <b>there</b> &amp; <!-- c --> x</p>";
+
+      {
+        final Path file = config.sourceRoot().resolve("one.zbp");
+        try (BufferedWriter writer =
+               Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+          writer.write("title Title");
+          writer.newLine();
+          writer.write("date 2020-01-01T00:00:00+0000");
+          writer.newLine();
+          writer.write("format " + ZBlogPostFormatXHTML.NAME);
+          writer.newLine();
+          writer.newLine();
+          writer.write(body);
+          writer.newLine();
+          writer.flush();
+        }
+      }
+
+      runOne(p_prov, w_prov, config);
+
+      for (final String name : new String[]{"one.xhtml", "1.xhtml"}) {
+        final Path output = config.outputRoot().resolve(name);
+        final String text = Files.readString(output);
+        LOG.debug("{}", text);
+        Assertions.assertTrue(text.contains(body));
+        Assertions.assertFalse(text.contains("zeptoblog-passthrough"));
+        Assertions.assertNotNull(ZXML.xmlParseFromPath(output));
+      }
+    }
+  }
+
+  @Test
+  public final void testPassthroughInvalid()
+    throws Exception
+  {
+    final ZBlogParserProviderType p_prov = this.createParserProvider();
+    final ZBlogRendererProviderType w_prov = this.createWriterProvider();
+
+    try (FileSystem fs = this.createFilesystem()) {
+      final ZBlogConfiguration config =
+        ZBlogConfiguration.builder()
+          .from(baseConfig(fs))
+          .setPassthrough(true)
+          .build();
+
+      Files.createDirectories(config.sourceRoot());
+
+      {
+        final Path file = config.sourceRoot().resolve("one.zbp");
+        try (BufferedWriter writer =
+               Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+          writer.write("title Title");
+          writer.newLine();
+          writer.write("date 2020-01-01T00:00:00+0000");
+          writer.newLine();
+          writer.write("format " + ZBlogPostFormatXHTML.NAME);
+          writer.newLine();
+          writer.newLine();
+          writer.write("<p>Unclosed");
+          writer.newLine();
+          writer.flush();
+        }
+      }
+
+      final ZBlogParserType parser = p_prov.createParser(config);
+      final Validation<Seq<ZError>, ZBlog> p_result = parser.parse();
+      dumpResult(p_result);
+      Assertions.assertTrue(p_result.isValid());
+
+      final Validation<Seq<ZError>, Void> w_result =
+        w_prov.createRenderer(config).render(p_result.get());
+      dumpResult(w_result);
+      Assertions.assertTrue(w_result.isInvalid());
+    }
+  }
+
+  @Test
+  public final void testProcessors()
+    throws Exception
+  {
+    final ZBlogParserProviderType p_prov = this.createParserProvider();
+    final ZBlogRendererProviderType w_prov = this.createWriterProvider();
+
+    try (FileSystem fs = this.createFilesystem()) {
+      final ZBlogConfiguration config =
+        ZBlogConfiguration.builder()
+          .from(baseConfig(fs))
+          .setPassthrough(true)
+          .build();
+
+      Files.createDirectories(config.sourceRoot());
+      Files.writeString(
+        config.sourceRoot().resolve("one.zbp"),
+        "title Title\n"
+          + "date 2020-01-01T00:00:00+0000\n"
+          + "format " + ZBlogPostFormatXHTML.NAME + "\n"
+          + "\n"
+          + "<p xmlns=\"http://www.w3.org/1999/xhtml\">Hello</p>\n");
+
+      final AtomicInteger calls = new AtomicInteger(0);
+      final ZBlogPostProcessorType processor = (post, body) -> {
+        calls.incrementAndGet();
+        final Element e = body.getOwnerDocument().createElementNS(
+          ZBlogPostFormatXHTML.XHTML_URI_TEXT, "span");
+        e.setAttribute("class", "zb_processed");
+        e.setTextContent(post.title());
+        body.appendChild(e);
+      };
+
+      final Validation<Seq<ZError>, Void> result =
+        w_prov.createRenderer(config, Vector.of(processor))
+          .parseAndRender(p_prov.createParser(config));
+      dumpResult(result);
+      Assertions.assertTrue(result.isValid());
+      Assertions.assertEquals(1, calls.get());
+
+      for (final String name : new String[]{"one.xhtml", "1.xhtml"}) {
+        final String text =
+          Files.readString(config.outputRoot().resolve(name));
+        Assertions.assertTrue(
+          text.contains("<span class=\"zb_processed\">Title</span>"));
+        Assertions.assertFalse(text.contains("zeptoblog-passthrough"));
+      }
+    }
+  }
+
+  private static String relatedText(
+    final String word)
+  {
+    final StringBuilder text = new StringBuilder(512);
+    for (int index = 0; index < 40; ++index) {
+      text.append(word).append(index).append(' ');
+    }
+    return text.toString();
+  }
+
+  @Test
+  public final void testHandlerErrorsDeterministic()
+    throws Exception
+  {
+    final ZBlogParserProviderType p_prov = this.createParserProvider();
+    final ZBlogRendererProviderType w_prov = this.createWriterProvider();
+
+    try (FileSystem fs = this.createFilesystem()) {
+      final ZBlogConfiguration config =
+        ZBlogConfiguration.builder()
+          .from(baseConfig(fs))
+          .setRenderThreads(4)
+          .setWriteThreads(2)
+          .build();
+
+      Files.createDirectories(config.sourceRoot());
+      for (int index = 0; index < 20; ++index) {
+        Files.writeString(
+          config.sourceRoot().resolve(String.format("p%02d.zbp", Integer.valueOf(index))),
+          "title Title " + index + "\n"
+            + "date 2020-01-01T00:00:00+0000\n"
+            + "format com.io7m.zeptoblog.nonexistent\n"
+            + "\n"
+            + "Hello.\n");
+      }
+
+      final List<String> first = errorLocations(
+        w_prov.createRenderer(config).parseAndRender(p_prov.createParser(config)));
+      final List<String> second = errorLocations(
+        w_prov.createRenderer(config).parseAndRender(p_prov.createParser(config)));
+
+      Assertions.assertFalse(first.isEmpty());
+      Assertions.assertEquals(first, second);
+      for (int index = 0; index < 20; ++index) {
+        final String name = String.format("p%02d.zbp", Integer.valueOf(index));
+        Assertions.assertTrue(
+          first.stream().anyMatch(text -> text.contains(name)), name);
+      }
+    }
+  }
+
+  private static List<String> errorLocations(
+    final Validation<Seq<ZError>, Void> result)
+  {
+    dumpResult(result);
+    Assertions.assertTrue(result.isInvalid());
+    return result.getError()
+      .map(error -> {
+        Assertions.assertTrue(error.position().file().isPresent(), error::message);
+        return error.position().file().get() + ": " + error.message();
+      })
+      .toJavaList();
+  }
+
+  @Test
+  public final void testFragmentErrorsReportedOnce()
+    throws Exception
+  {
+    final ZBlogParserProviderType p_prov = this.createParserProvider();
+    final ZBlogRendererProviderType w_prov = this.createWriterProvider();
+
+    try (FileSystem fs = this.createFilesystem()) {
+      final ZBlogConfiguration config = baseConfig(fs);
+      Files.createDirectories(config.sourceRoot());
+      final Path file = config.sourceRoot().resolve("broken.zbp");
+      Files.writeString(
+        file,
+        "title Broken\n"
+          + "date 2020-01-01T00:00:00+0000\n"
+          + "format " + ZBlogPostFormatXHTML.NAME + "\n"
+          + "\n"
+          + "<p xmlns=\"http://www.w3.org/1999/xhtml\">Unclosed\n");
+
+      /*
+       * The post body appears on the segment, yearly, and permalink pages,
+       * but the failure is reported once. The feed excerpt is produced by a
+       * separate operation, and reports its own failure.
+       */
+
+      final Validation<Seq<ZError>, Void> rendered =
+        w_prov.createRenderer(config).parseAndRender(p_prov.createParser(config));
+      assertFormatErrorsOnce(file, rendered);
+
+      final Validation<Seq<ZError>, ZBlog> parsed =
+        p_prov.createParser(config).parse();
+      Assertions.assertTrue(parsed.isValid());
+      assertFormatErrorsOnce(
+        file, w_prov.createRenderer(config).render(parsed.get()));
+    }
+  }
+
+  private static void assertFormatErrorsOnce(
+    final Path file,
+    final Validation<Seq<ZError>, Void> result)
+  {
+    dumpResult(result);
+    Assertions.assertTrue(result.isInvalid());
+
+    final Seq<ZError> format_errors =
+      result.getError()
+        .filter(error -> error.position().file()
+          .map(error_file -> error_file.endsWith(file.getFileName()))
+          .orElse(Boolean.FALSE)
+          .booleanValue());
+    Assertions.assertEquals(2, format_errors.size());
+    Assertions.assertEquals(
+      format_errors.get(0).message(), format_errors.get(1).message());
+  }
+
+  @Test
+  public final void testProcessorErrorDoesNotHang()
+    throws Exception
+  {
+    final ZBlogParserProviderType p_prov = this.createParserProvider();
+    final ZBlogRendererProviderType w_prov = this.createWriterProvider();
+
+    try (FileSystem fs = this.createFilesystem()) {
+      final ZBlogConfiguration config =
+        ZBlogConfiguration.builder()
+          .from(baseConfig(fs))
+          .setRenderThreads(2)
+          .build();
+
+      Files.createDirectories(config.sourceRoot());
+      writeNumberedPosts(config.sourceRoot(), 200);
+
+      final ZBlogPostProcessorType processor = (post, body) -> {
+        throw new ProcessorError();
+      };
+
+      Assertions.assertTimeoutPreemptively(
+        Duration.ofSeconds(60L),
+        () -> Assertions.assertThrows(
+          ProcessorError.class,
+          () -> w_prov.createRenderer(config, Vector.of(processor))
+            .parseAndRender(p_prov.createParser(config))));
+    }
+  }
+
+  private static final class ProcessorError extends Error
+  {
+    private static final long serialVersionUID = 1L;
+
+    ProcessorError()
+    {
+      super("Processor failed");
+    }
+  }
+
+  @Test
+  public final void testRelatedPosts()
+    throws Exception
+  {
+    final ZBlogParserProviderType p_prov = this.createParserProvider();
+    final ZBlogRendererProviderType w_prov = this.createWriterProvider();
+
+    try (FileSystem fs = this.createFilesystem()) {
+      final ZBlogConfiguration config =
+        ZBlogConfiguration.builder()
+          .from(baseConfig(fs))
+          .setRelatedPosts(2)
+          .build();
+
+      final Path root = config.sourceRoot();
+      Files.createDirectories(root);
+      final String header = "date 2020-01-01T00:00:00+0000\n\n";
+      Files.writeString(
+        root.resolve("a.zbp"),
+        "title A\n" + header + relatedText("cat") + "tabby\n");
+      Files.writeString(
+        root.resolve("b.zbp"),
+        "title B\n" + header + relatedText("cat") + "ginger\n");
+      Files.writeString(
+        root.resolve("c.zbp"),
+        "title C\n" + header + relatedText("dog") + "\n");
+
+      final ZBlogParserType parser = p_prov.createParser(config);
+      final Validation<Seq<ZError>, Void> r0 =
+        w_prov.createRenderer(config).parseAndRender(parser);
+      dumpResult(r0);
+      Assertions.assertTrue(r0.isValid());
+
+      final Path out = config.outputRoot();
+      final String a0 = Files.readString(out.resolve("a.xhtml"));
+      Assertions.assertTrue(a0.contains("zb_post_related"));
+      Assertions.assertTrue(a0.contains("<a href=\"/b.xhtml\">B</a>"));
+      Assertions.assertFalse(a0.contains("<a href=\"/c.xhtml\">C</a>"));
+      Assertions.assertFalse(
+        Files.readString(out.resolve("c.xhtml")).contains("zb_post_related"));
+      Assertions.assertFalse(
+        Files.readString(out.resolve("1.xhtml")).contains("zb_post_related"));
+
+      Files.writeString(
+        root.resolve("c.zbp"),
+        "title C\n" + header + relatedText("cat") + "\n");
+
+      final Validation<Seq<ZError>, Void> r1 =
+        w_prov.createRenderer(config).parseAndRender(parser);
+      dumpResult(r1);
+      Assertions.assertTrue(r1.isValid());
+      Assertions.assertTrue(
+        Files.readString(out.resolve("a.xhtml"))
+          .contains("<a href=\"/c.xhtml\">C</a>"));
+    }
+  }
+
+  @Test
+  public final void testSitemap()
+    throws Exception
+  {
+    final ZBlogParserProviderType p_prov = this.createParserProvider();
+    final ZBlogRendererProviderType w_prov = this.createWriterProvider();
+
+    try (FileSystem fs = this.createFilesystem()) {
+      final ZBlogConfiguration config =
+        ZBlogConfiguration.builder()
+          .from(baseConfig(fs))
+          .setPostsPerPage(2)
+          .build();
+
+      Files.createDirectories(config.sourceRoot());
+      writeNumberedPosts(config.sourceRoot(), 5);
+      final Path out = config.outputRoot();
+      Files.createDirectories(out);
+      Files.writeString(out.resolve("sitemap-9.xml.gz"), "stale");
+
+      final Validation<Seq<ZError>, Void> result =
+        w_prov.createRenderer(config)
+          .parseAndRender(p_prov.createParser(config));
+      dumpResult(result);
+      Assertions.assertTrue(result.isValid());
+
+      final String index = Files.readString(out.resolve("sitemap.xml"));
+      Assertions.assertTrue(index.contains("<sitemapindex"));
+      Assertions.assertTrue(
+        index.contains("<loc>http://example.com/sitemap-1.xml.gz</loc>"));
+      Assertions.assertFalse(Files.exists(out.resolve("sitemap-2.xml.gz")));
+      Assertions.assertFalse(Files.exists(out.resolve("sitemap-9.xml.gz")));
+
+      final String sitemap = gunzip(out.resolve("sitemap-1.xml.gz"));
+      Assertions.assertTrue(sitemap.contains("<urlset"));
+      Assertions.assertEquals(
+        5 + 3 + 1,
+        sitemap.split("<url>", -1).length - 1);
+      Assertions.assertEquals(
+        5 + 3 + 1,
+        sitemap.split("<lastmod>", -1).length - 1);
+      Assertions.assertTrue(
+        sitemap.contains("<loc>http://example.com/3.xhtml</loc>"));
+      Assertions.assertTrue(
+        sitemap.contains("<loc>http://example.com/yearly.xhtml</loc>"));
+    }
+  }
 }
@@ -19,10 +19,14 @@ package com.io7m.zeptoblog.tests;
 import com.io7m.zeptoblog.core.ZBlog;
 import com.io7m.zeptoblog.core.ZBlogPost;
 import com.io7m.zeptoblog.core.ZBlogPostBody;
+import com.io7m.zeptoblog.core.ZBlogPostBodyType;
+import com.io7m.zeptoblog.core.ZBlogPostParserType;
+import com.io7m.zeptoblog.core.ZError;
 import io.vavr.Tuple2;
 import io.vavr.collection.Seq;
 import io.vavr.collection.TreeMap;
 import io.vavr.collection.Vector;
+import io.vavr.control.Validation;
 import org.apache.commons.codec.binary.Hex;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -54,6 +58,53 @@ public final class ZBlogTest
     Assertions.assertTrue(blog.postsGroupedByPage(10).isEmpty());
   }
 
+  @Test
+  @SuppressWarnings("deprecation")
+  public void testPostBodyCompatibility()
+  {
+    final ZBlogPostBody body = ZBlogPostBody.of("unknown", "Hello.");
+    final ZBlogPost post =
+      ZBlogPost.of("title", Optional.empty(), Paths.get("x.zbp"), body);
+    Assertions.assertSame(body, post.body());
+
+    final ZBlogPostBodyType content = new ZBlogPostBodyType()
+    {
+      @Override
+      public String format()
+      {
+        return "unknown";
+      }
+
+      @Override
+      public String text()
+      {
+        return "Hello.";
+      }
+    };
+
+    final ZBlogPost deferred =
+      ZBlogPost.of("title", Optional.empty(), Paths.get("x.zbp"), content);
+    Assertions.assertEquals(body, deferred.body());
+  }
+
+  @Test
+  public void testParseHeaderDefault()
+  {
+    final ZBlogPost post =
+      ZBlogPost.of(
+        "title",
+        Optional.empty(),
+        Paths.get("x.zbp"),
+        ZBlogPostBody.of("unknown", "Hello."));
+
+    final ZBlogPostParserType parser = () -> Validation.valid(post);
+    final Validation<Seq<ZError>, ZBlogPost> result =
+      parser.parseHeader((format, offset) -> {
+        throw new IllegalStateException("Unreachable code");
+      });
+    Assertions.assertEquals(post, result.get());
+  }
+
   @Test
   public void testOneHundredPosts()
   {
@@ -16,10 +16,14 @@
 
 package com.io7m.zeptoblog.tests;
 
+import com.io7m.zeptoblog.commonmark.ZBlogPostFormatCommonMark;
 import com.io7m.zeptoblog.core.ZBlogConfiguration;
 import com.io7m.zeptoblog.core.ZBlogConfigurations;
 import com.io7m.zeptoblog.core.ZBlogPost;
+import com.io7m.zeptoblog.core.ZBlogPostBody;
+import com.io7m.zeptoblog.core.ZBlogPostFormatXHTML;
 import com.io7m.zeptoblog.core.ZBlogPostGeneratorType;
+import com.io7m.zeptoblog.core.ZBlogPostProcessorType;
 import com.io7m.zeptoblog.core.ZError;
 import io.vavr.collection.Seq;
 import io.vavr.collection.SortedMap;
@@ -28,10 +32,13 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
 
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
 import java.util.Properties;
 
 public abstract class ZGlossaryGeneratorContract
@@ -127,4 +134,417 @@ public abstract class ZGlossaryGeneratorContract
       Assertions.assertEquals(1L, (long) glossary.size());
     }
   }
+
+  private Validation<Seq<String>, String> generateNumbered(
+    final int threads,
+    final boolean broken)
+    throws Exception
+  {
+    try (FileSystem fs = this.createFilesystem()) {
+      final Path directory = fs.getPath("/glossary");
+      Files.createDirectories(directory);
+
+      for (int index = 0; index < 120; ++index) {
+        final String term =
+          String.format("%cterm%03d", Character.valueOf((char) ('a' + index % 7)), Integer.valueOf(index));
+        final StringBuilder text = new StringBuilder(128);
+        if (!broken || index % 17 != 3) {
+          text.append("term ").append(term).append('\n');
+        }
+        if (index % 5 == 0) {
+          text.append("related other").append(index).append('\n');
+        }
+        if (index % 2 == 0) {
+          text.append("format com.io7m.zeptoblog.commonmark\n\n");
+          text.append("The *term* ").append(term).append(".\n");
+        } else {
+          text.append("format com.io7m.zeptoblog.xhtml\n\n");
+          text.append("<p xmlns=\"http://www.w3.org/1999/xhtml\">");
+          text.append(term).append("</p>\n");
+        }
+        Files.writeString(
+          directory.resolve(String.format("item%03d.zbp", Integer.valueOf(index))),
+          text.toString());
+      }
+
+      final ZBlogConfiguration config =
+        ZBlogConfiguration.builder()
+          .from(baseConfiguration(fs))
+          .setRenderThreads(threads)
+          .build();
+
+      final Properties props = new Properties();
+      props.setProperty("com.io7m.zeptoblog.glossary.source_dir", "/glossary");
+      props.setProperty(
+        "com.io7m.zeptoblog.glossary.output_file",
+        "glossary.zbp");
+      final Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>> r =
+        this.createGenerator().generate(config, props);
+      dumpResult(r);
+      return r.map(posts -> posts.values().head().content().text())
+        .mapError(errors -> errors.map(ZError::show));
+    }
+  }
+
+  @Test
+  public final void testConcurrent()
+    throws Exception
+  {
+    final Validation<Seq<String>, String> r1 = this.generateNumbered(1, false);
+    final Validation<Seq<String>, String> r8 = this.generateNumbered(8, false);
+    Assertions.assertTrue(r1.isValid());
+    Assertions.assertTrue(r8.isValid());
+
+    final String text1 = r1.get();
+    Assertions.assertEquals(text1, r8.get());
+    Assertions.assertTrue(
+      text1.indexOf("aterm000") < text1.indexOf("aterm007"));
+    Assertions.assertTrue(
+      text1.indexOf("aterm119") < text1.indexOf("bterm001"));
+  }
+
+  @Test
+  public final void testConcurrentErrors()
+    throws Exception
+  {
+    final Validation<Seq<String>, String> r1 = this.generateNumbered(1, true);
+    final Validation<Seq<String>, String> r8 = this.generateNumbered(8, true);
+    Assertions.assertTrue(r1.isInvalid());
+    Assertions.assertTrue(r8.isInvalid());
+    Assertions.assertEquals(r1.getError(), r8.getError());
+  }
+
+  @Test
+  public final void testIncremental()
+    throws Exception
+  {
+    try (FileSystem fs = this.createFilesystem()) {
+      final Path directory = fs.getPath("/glossary");
+      Files.createDirectories(directory);
+
+      final Path file_a = directory.resolve("a.zbp");
+      final Path file_b = directory.resolve("b.zbp");
+      final Path file_c = directory.resolve("c.zbp");
+      final String text_b =
+        "term Banana\nformat com.io7m.zeptoblog.commonmark\n\nA fruit.\n";
+      Files.writeString(
+        file_a,
+        "term Apple\nformat com.io7m.zeptoblog.commonmark\n\nA fruit.\n");
+      Files.writeString(file_b, text_b);
+      Files.writeString(
+        file_c,
+        "term Cherry\nformat com.io7m.zeptoblog.commonmark\n\nA fruit.\n");
+
+      final ZBlogPostGeneratorType gen = this.createGenerator();
+      final ZBlogConfiguration config = baseConfiguration(fs);
+      final Properties props = new Properties();
+      props.setProperty("com.io7m.zeptoblog.glossary.source_dir", "/glossary");
+      props.setProperty(
+        "com.io7m.zeptoblog.glossary.output_file",
+        "glossary.zbp");
+
+      final Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>> r0 =
+        gen.generate(config, props);
+      dumpResult(r0);
+      Assertions.assertTrue(r0.isValid());
+      final ZBlogPost post0 = r0.get().values().head();
+
+      final Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>> r1 =
+        gen.generate(config, props);
+      dumpResult(r1);
+      Assertions.assertTrue(r1.isValid());
+      Assertions.assertSame(post0, r1.get().values().head());
+
+      Files.writeString(file_b, text_b);
+      Files.setLastModifiedTime(
+        file_b, FileTime.fromMillis(System.currentTimeMillis() + 10_000L));
+
+      final Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>> r2 =
+        gen.generate(config, props);
+      dumpResult(r2);
+      Assertions.assertTrue(r2.isValid());
+      Assertions.assertSame(post0, r2.get().values().head());
+
+      Files.writeString(
+        file_b,
+        "term Banana\nformat com.io7m.zeptoblog.commonmark\n\nA yellow fruit.\n");
+
+      final Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>> r3 =
+        gen.generate(config, props);
+      dumpResult(r3);
+      Assertions.assertTrue(r3.isValid());
+      final String text3 = r3.get().values().head().content().text();
+      Assertions.assertNotEquals(post0.content().text(), text3);
+      Assertions.assertTrue(text3.contains("A yellow fruit."));
+      Assertions.assertTrue(text3.contains("Apple"));
+      Assertions.assertTrue(text3.contains("Cherry"));
+
+      Files.delete(file_c);
+
+      final Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>> r4 =
+        gen.generate(config, props);
+      dumpResult(r4);
+      Assertions.assertTrue(r4.isValid());
+      final String text4 = r4.get().values().head().content().text();
+      Assertions.assertTrue(text4.contains("A yellow fruit."));
+      Assertions.assertFalse(text4.contains("Cherry"));
+
+      final ZBlogPostGeneratorType fresh = this.createGenerator();
+      final Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>> r5 =
+        fresh.generate(config, props);
+      dumpResult(r5);
+      Assertions.assertTrue(r5.isValid());
+      Assertions.assertEquals(text4, r5.get().values().head().content().text());
+    }
+  }
+
+  @Test
+  public final void testSharded()
+    throws Exception
+  {
+    try (FileSystem fs = this.createFilesystem()) {
+      final Path directory = fs.getPath("/glossary");
+      Files.createDirectories(directory);
+      Files.createDirectories(fs.getPath("/out"));
+
+      final Path file_b = directory.resolve("b.zbp");
+      final Path file_c = directory.resolve("c.zbp");
+      Files.writeString(
+        directory.resolve("a.zbp"),
+        "term Apple\nformat com.io7m.zeptoblog.commonmark\n\nA fruit.\n");
+      Files.writeString(
+        directory.resolve("a2.zbp"),
+        "term Apricot\nformat com.io7m.zeptoblog.commonmark\n\nA fruit.\n");
+      Files.writeString(
+        file_b,
+        "term Banana\nformat com.io7m.zeptoblog.commonmark\n\nA fruit.\n");
+      Files.writeString(
+        file_c,
+        "term Cherry\nformat com.io7m.zeptoblog.commonmark\n\nA fruit.\n");
+
+      final ZBlogPostGeneratorType gen = this.createGenerator();
+      final ZBlogConfiguration config = baseConfiguration(fs);
+      final Properties props = new Properties();
+      props.setProperty("com.io7m.zeptoblog.glossary.source_dir", "/glossary");
+      props.setProperty(
+        "com.io7m.zeptoblog.glossary.output_file",
+        "/out/glossary.zbp");
+      props.setProperty(
+        "com.io7m.zeptoblog.glossary.shard_by_letter",
+        "true");
+
+      final Path page_index = fs.getPath("/out/glossary.zbp");
+      final Path page_a = fs.getPath("/out/glossary-a.zbp");
+      final Path page_b = fs.getPath("/out/glossary-b.zbp");
+      final Path page_c = fs.getPath("/out/glossary-c.zbp");
+
+      final Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>> r0 =
+        gen.generate(config, props);
+      dumpResult(r0);
+      Assertions.assertTrue(r0.isValid());
+
+      final SortedMap<Path, ZBlogPost> posts0 = r0.get();
+      Assertions.assertEquals(4L, (long) posts0.size());
+
+      final String index0 = posts0.get(page_index).get().content().text();
+      Assertions.assertTrue(index0.contains("glossary-a.xhtml"));
+      Assertions.assertTrue(index0.contains("glossary-b.xhtml"));
+      Assertions.assertTrue(index0.contains("glossary-c.xhtml"));
+      Assertions.assertFalse(index0.contains("Apple"));
+
+      final String text_a = posts0.get(page_a).get().content().text();
+      Assertions.assertTrue(text_a.contains("Apple"));
+      Assertions.assertTrue(text_a.contains("Apricot"));
+      Assertions.assertFalse(text_a.contains("Banana"));
+      Assertions.assertEquals(
+        "Glossary: B", posts0.get(page_b).get().title());
+
+      Files.writeString(
+        file_b,
+        "term Banana\nformat com.io7m.zeptoblog.commonmark\n\nA yellow fruit.\n");
+
+      final Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>> r1 =
+        gen.generate(config, props);
+      dumpResult(r1);
+      Assertions.assertTrue(r1.isValid());
+
+      final SortedMap<Path, ZBlogPost> posts1 = r1.get();
+      Assertions.assertSame(posts0.get(page_a).get(), posts1.get(page_a).get());
+      Assertions.assertSame(posts0.get(page_c).get(), posts1.get(page_c).get());
+      Assertions.assertTrue(
+        posts1.get(page_b).get().content().text().contains("A yellow fruit."));
+
+      Files.writeString(page_c, "stale");
+      Files.delete(file_c);
+
+      final Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>> r2 =
+        gen.generate(config, props);
+      dumpResult(r2);
+      Assertions.assertTrue(r2.isValid());
+
+      final SortedMap<Path, ZBlogPost> posts2 = r2.get();
+      Assertions.assertEquals(3L, (long) posts2.size());
+      Assertions.assertFalse(posts2.containsKey(page_c));
+      Assertions.assertFalse(Files.exists(page_c));
+      Assertions.assertFalse(
+        posts2.get(page_index).get().content().text().contains("glossary-c.xhtml"));
+    }
+  }
+
+  @Test
+  public final void testShardedStalePagesFreshGenerator()
+    throws Exception
+  {
+    try (FileSystem fs = this.createFilesystem()) {
+      final Path directory = fs.getPath("/glossary");
+      Files.createDirectories(directory);
+      Files.createDirectories(fs.getPath("/out"));
+
+      final Path file_c = directory.resolve("c.zbp");
+      Files.writeString(
+        directory.resolve("a.zbp"),
+        "term Apple\nformat com.io7m.zeptoblog.commonmark\n\nA fruit.\n");
+      Files.writeString(
+        file_c,
+        "term Cherry\nformat com.io7m.zeptoblog.commonmark\n\nA fruit.\n");
+
+      final ZBlogConfiguration config = baseConfiguration(fs);
+      final Properties props = new Properties();
+      props.setProperty("com.io7m.zeptoblog.glossary.source_dir", "/glossary");
+      props.setProperty(
+        "com.io7m.zeptoblog.glossary.output_file",
+        "/out/glossary.zbp");
+      props.setProperty(
+        "com.io7m.zeptoblog.glossary.shard_by_letter",
+        "true");
+
+      final Path page_a = fs.getPath("/out/glossary-a.zbp");
+      final Path page_c = fs.getPath("/out/glossary-c.zbp");
+      final Path unrelated = fs.getPath("/out/glossary-notes.zbp");
+      Files.writeString(unrelated, "unrelated");
+
+      final Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>> r0 =
+        this.createGenerator().generate(config, props);
+      dumpResult(r0);
+      Assertions.assertTrue(r0.isValid());
+      for (final ZBlogPost post : r0.get().values()) {
+        Files.writeString(post.path(), post.content().text());
+      }
+      Assertions.assertTrue(Files.exists(page_c));
+
+      Files.delete(file_c);
+
+      final Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>> r1 =
+        this.createGenerator().generate(config, props);
+      dumpResult(r1);
+      Assertions.assertTrue(r1.isValid());
+      Assertions.assertFalse(r1.get().containsKey(page_c));
+      Assertions.assertFalse(Files.exists(page_c));
+      Assertions.assertTrue(Files.exists(page_a));
+
+      props.setProperty(
+        "com.io7m.zeptoblog.glossary.shard_by_letter",
+        "false");
+
+      final Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>> r2 =
+        this.createGenerator().generate(config, props);
+      dumpResult(r2);
+      Assertions.assertTrue(r2.isValid());
+      Assertions.assertEquals(1L, (long) r2.get().size());
+      Assertions.assertFalse(Files.exists(page_a));
+      Assertions.assertTrue(Files.exists(unrelated));
+    }
+  }
+
+  private static String autoLink(
+    final ZBlogPostGeneratorType gen,
+    final ZBlogConfiguration config,
+    final Properties props,
+    final String text)
+  {
+    final Optional<ZBlogPostProcessorType> processor_opt =
+      gen.processor(config, props);
+    Assertions.assertTrue(processor_opt.isPresent());
+
+    final ZBlogPostFormatCommonMark format = new ZBlogPostFormatCommonMark();
+    final Validation<Seq<ZError>, Element> body =
+      format.produceXHTML(config.sourceRoot().resolve("post.zbp"), text);
+    dumpResult(body);
+    Assertions.assertTrue(body.isValid());
+
+    final ZBlogPost post = ZBlogPost.of(
+      "Post",
+      Optional.empty(),
+      config.sourceRoot().resolve("post.zbp"),
+      ZBlogPostBody.of(ZBlogPostFormatCommonMark.NAME, text));
+    processor_opt.get().process(post, body.get());
+    return ZBlogPostFormatXHTML.serializeXML(body.get());
+  }
+
+  @Test
+  public final void testAutoLink()
+    throws Exception
+  {
+    try (FileSystem fs = this.createFilesystem()) {
+      final Path directory = fs.getPath("/glossary");
+      Files.createDirectories(directory);
+      Files.createDirectories(fs.getPath("/source"));
+
+      final String[] terms = {"Apple", "Apple Pie", "Pie", "Cat"};
+      for (int index = 0; index < terms.length; ++index) {
+        Files.writeString(
+          directory.resolve(String.format("%d.zbp", Integer.valueOf(index))),
+          "term " + terms[index]
+            + "\nformat com.io7m.zeptoblog.commonmark\n\nA thing.\n");
+      }
+
+      final ZBlogPostGeneratorType gen = this.createGenerator();
+      final ZBlogConfiguration config = baseConfiguration(fs);
+      final Properties props = new Properties();
+      props.setProperty("com.io7m.zeptoblog.glossary.source_dir", "/glossary");
+      props.setProperty(
+        "com.io7m.zeptoblog.glossary.output_file",
+        "/source/glossary.zbp");
+
+      final Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>> r0 =
+        gen.generate(config, props);
+      dumpResult(r0);
+      Assertions.assertTrue(r0.isValid());
+      Assertions.assertFalse(gen.processor(config, props).isPresent());
+
+      props.setProperty("com.io7m.zeptoblog.glossary.auto_link", "true");
+      final Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>> r1 =
+        gen.generate(config, props);
+      dumpResult(r1);
+      Assertions.assertTrue(r1.isValid());
+
+      final String text = autoLink(
+        gen,
+        config,
+        props,
+        "An apple pie, a Pie, a category, and a pineapple.\n\n"
+          + "`Apple` and [Apple](http://example.com) and *cat*.\n");
+      LOG.debug("linked: {}", text);
+
+      Assertions.assertTrue(text.contains(
+        "<a class=\"zb_glossary_link\" href=\"/glossary.xhtml#apple_pie\">apple pie</a>"));
+      Assertions.assertTrue(text.contains(
+        "<a class=\"zb_glossary_link\" href=\"/glossary.xhtml#pie\">Pie</a>"));
+      Assertions.assertTrue(text.contains(
+        "<a class=\"zb_glossary_link\" href=\"/glossary.xhtml#cat\">cat</a>"));
+      Assertions.assertEquals(
+        3L, (long) text.split("zb_glossary_link", -1).length - 1L);
+
+      props.setProperty(
+        "com.io7m.zeptoblog.glossary.shard_by_letter", "true");
+      final Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>> r2 =
+        gen.generate(config, props);
+      dumpResult(r2);
+      Assertions.assertTrue(r2.isValid());
+
+      final String text_sharded = autoLink(gen, config, props, "Pie.\n");
+      Assertions.assertTrue(text_sharded.contains(
+        "href=\"/glossary-p.xhtml#pie\""));
+    }
+  }
 }
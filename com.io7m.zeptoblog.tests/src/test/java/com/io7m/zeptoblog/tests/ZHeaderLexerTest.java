@@ -0,0 +1,97 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.tests;
+
+import com.io7m.zeptoblog.core.ZHeaderLexer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The header lexer must split lines exactly as the original regular
+ * expression based parsers did.
+ */
+
+public final class ZHeaderLexerTest
+{
+  private static final char[] CHARS = {
+    'a', 'b', 'Z', '0', ' ', ' ', '\t', '\u000b', '\f', '\u0001', '\u001f',
+    ' ', 'é', '-', ':',
+  };
+
+  private static void checkEquivalent(
+    final ZHeaderLexer lexer,
+    final String line)
+  {
+    final String trimmed = line.trim();
+    final boolean nonblank = lexer.lex(line);
+    Assertions.assertEquals(!trimmed.isEmpty(), nonblank, line);
+    if (!nonblank) {
+      return;
+    }
+
+    final String[] tokens = trimmed.split("\\s+");
+    Assertions.assertEquals(tokens.length, lexer.tokenCount(), line);
+    Assertions.assertEquals(trimmed, lexer.trimmed());
+    for (int index = 0; index < tokens.length; ++index) {
+      Assertions.assertEquals(tokens[index], lexer.token(index), line);
+      Assertions.assertTrue(lexer.tokenIs(index, tokens[index]), line);
+      Assertions.assertEquals(
+        tokens[index],
+        line.substring(
+          lexer.column(index),
+          lexer.column(index) + tokens[index].length()));
+      Assertions.assertEquals(
+        String.join(" ", Arrays.copyOfRange(tokens, index, tokens.length)),
+        lexer.tokensFrom(index));
+    }
+  }
+
+  @Test
+  public void testSimple()
+  {
+    final ZHeaderLexer lexer = new ZHeaderLexer();
+    Assertions.assertTrue(lexer.lex("  title  A   long\ttitle "));
+    Assertions.assertEquals(4, lexer.tokenCount());
+    Assertions.assertTrue(lexer.tokenIs(0, "title"));
+    Assertions.assertFalse(lexer.tokenIs(0, "titl"));
+    Assertions.assertFalse(lexer.tokenIs(0, "titles"));
+    Assertions.assertEquals("A long title", lexer.tokensFrom(1));
+    Assertions.assertEquals(2, lexer.column(0));
+    Assertions.assertEquals(9, lexer.column(1));
+    Assertions.assertFalse(lexer.lex(" \t "));
+    Assertions.assertEquals(0, lexer.tokenCount());
+  }
+
+  @Test
+  public void testRandom()
+  {
+    final ZHeaderLexer lexer = new ZHeaderLexer();
+    final Random random = new Random(0L);
+    final StringBuilder text = new StringBuilder(64);
+    for (int count = 0; count < 10000; ++count) {
+      text.setLength(0);
+      final int length = random.nextInt(40);
+      for (int index = 0; index < length; ++index) {
+        text.append(CHARS[random.nextInt(CHARS.length)]);
+      }
+      checkEquivalent(lexer, text.toString());
+    }
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.tests;
+
+import com.io7m.zeptoblog.core.ZBlogPostFormatXHTML;
+import com.io7m.zeptoblog.core.ZError;
+import com.io7m.zeptoblog.core.ZPlainTextExtractor;
+import com.io7m.zeptoblog.core.ZXML;
+import io.vavr.collection.Seq;
+import io.vavr.control.Validation;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Element;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * The plain text extractor must produce exactly the text that was produced
+ * by the original {@code plain.xsl} stylesheet, which is retained here as a
+ * reference.
+ */
+
+public final class ZPlainTextExtractorTest
+{
+  private static final String[] ELEMENTS = {
+    "p", "div", "h1", "h3", "h5", "h6", "table", "tr", "td", "a", "b", "em",
+    "span", "strike", "strong", "img", "hr", "br", "li", "ul", "blockquote",
+    "pre", "code", "i",
+  };
+
+  private static final String[] TEXTS = {
+    "hello", " ", "  world  ", "\n", "\n\n  x", "a\tb", "&amp;",
+    "<![CDATA[ cd ]]>", "<!-- c -->", "<?pi x?>", "&#13;", " y\n ", "z",
+    "&#10;q",
+  };
+
+  private static String reference(
+    final Element element)
+    throws Exception
+  {
+    try (InputStream xsl =
+           ZPlainTextExtractorTest.class.getResourceAsStream("plain.xsl")) {
+      try (ByteArrayOutputStream output = new ByteArrayOutputStream()) {
+        ZXML.xmlTransformElementStream(output, element, xsl);
+        final String[] lines =
+          output.toString(StandardCharsets.UTF_8).split("\\r?\\n");
+        final StringBuilder text = new StringBuilder(256);
+        for (int index = 0; index < lines.length; ++index) {
+          text.append(lines[index].trim());
+          text.append(System.lineSeparator());
+        }
+        return text.toString();
+      }
+    }
+  }
+
+  private static void generate(
+    final Random random,
+    final StringBuilder text,
+    final int depth)
+  {
+    final int count = random.nextInt(5);
+    for (int index = 0; index < count; ++index) {
+      if (depth < 5 && random.nextInt(3) == 0) {
+        final String name = ELEMENTS[random.nextInt(ELEMENTS.length)];
+        text.append('<').append(name);
+        if (random.nextInt(10) == 0) {
+          text.append(" xmlns=\"urn:x\"");
+        }
+        if (random.nextBoolean()) {
+          text.append(" href=\"h").append(random.nextInt(9)).append('"');
+        }
+        if (random.nextBoolean()) {
+          text.append(" src=\"s.png\" alt=\"a b\"");
+        }
+        text.append('>');
+        generate(random, text, depth + 1);
+        text.append("</").append(name).append('>');
+      } else {
+        text.append(TEXTS[random.nextInt(TEXTS.length)]);
+      }
+    }
+  }
+
+  private static void checkEquivalent(
+    final ZPlainTextExtractor extractor,
+    final String body)
+    throws Exception
+  {
+    final ZBlogPostFormatXHTML format = new ZBlogPostFormatXHTML();
+    final Path path = Paths.get("/x.xhtml");
+
+    final Validation<Seq<ZError>, Element> xhtml =
+      format.produceXHTML(path, body);
+    Assertions.assertTrue(xhtml.isValid());
+
+    final String expected = reference(xhtml.get());
+    Assertions.assertEquals(expected, extractor.extract(xhtml.get()), body);
+
+    final Validation<Seq<ZError>, String> plain =
+      format.producePlain(path, body);
+    Assertions.assertTrue(plain.isValid());
+    Assertions.assertEquals(expected, plain.get(), body);
+  }
+
+  @Test
+  public void testSimple()
+    throws Exception
+  {
+    try (InputStream is =
+           ZPlainTextExtractorTest.class.getResourceAsStream("simple.xhtml")) {
+      final String text = IOUtils.toString(is, StandardCharsets.UTF_8);
+      checkEquivalent(new ZPlainTextExtractor(), text);
+    }
+  }
+
+  @Test
+  public void testRules()
+    throws Exception
+  {
+    final ZPlainTextExtractor extractor = new ZPlainTextExtractor();
+    checkEquivalent(extractor, "");
+    checkEquivalent(extractor, "<h1> A  heading </h1><p>Para <b>bold  x</b> y</p>");
+    checkEquivalent(extractor, "<table> x <tr> y <td>A</td><td> B </td></tr></table>");
+    checkEquivalent(extractor, "<a href='z'><b>x</b> first <!-- c --> second</a>");
+    checkEquivalent(extractor, "<img src='a.png' alt='A'/><hr/>x<br/>y");
+    checkEquivalent(extractor, "<ul><li>One</li><li>Two</li></ul>");
+    checkEquivalent(extractor, "<blockquote>a<!-- c -->b<?p q?>c</blockquote>");
+  }
+
+  @Test
+  public void testRandom()
+    throws Exception
+  {
+    final ZPlainTextExtractor extractor = new ZPlainTextExtractor();
+    for (int seed = 0; seed < 500; ++seed) {
+      final Random random = new Random(seed);
+      final StringBuilder text = new StringBuilder(256);
+      generate(random, text, 0);
+      checkEquivalent(extractor, text.toString());
+    }
+  }
+
+  @Test
+  public void testExcerptElement()
+    throws Exception
+  {
+    final ZBlogPostFormatXHTML format = new ZBlogPostFormatXHTML();
+    final ZPlainTextExtractor extractor = new ZPlainTextExtractor();
+
+    final Element e =
+      format.produceXHTML(
+        Paths.get("/x.xhtml"),
+        "<h1>Heading</h1><p>Some text in a paragraph.</p>").get();
+
+    final String plain = extractor.extract(e);
+    for (int length = 0; length <= plain.length() + 1; ++length) {
+      Assertions.assertEquals(
+        plain.substring(0, Math.min(length, plain.length())),
+        extractor.extract(e, length));
+    }
+  }
+}
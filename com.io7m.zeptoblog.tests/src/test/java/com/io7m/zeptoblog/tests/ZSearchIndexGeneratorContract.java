@@ -0,0 +1,328 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.tests;
+
+import com.io7m.zeptoblog.core.ZBlogConfiguration;
+import com.io7m.zeptoblog.core.ZBlogConfigurations;
+import com.io7m.zeptoblog.core.ZBlogPost;
+import com.io7m.zeptoblog.core.ZBlogPostGeneratorType;
+import com.io7m.zeptoblog.core.ZError;
+import io.vavr.collection.Seq;
+import io.vavr.collection.SortedMap;
+import io.vavr.control.Validation;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public abstract class ZSearchIndexGeneratorContract
+{
+  private static final Logger LOG;
+  private static final Pattern SHARD_FILE;
+
+  static {
+    LOG = LoggerFactory.getLogger(ZSearchIndexGeneratorContract.class);
+    SHARD_FILE = Pattern.compile("\"file\": \"(shard-[0-9]+\\.bin)\"");
+  }
+
+  private static <T> void dumpResult(
+    final Validation<Seq<ZError>, T> result)
+  {
+    if (result.isInvalid()) {
+      result.getError().forEach(e -> LOG.error("{}", e));
+    }
+  }
+
+  private static ZBlogConfiguration baseConfiguration(
+    final FileSystem fs)
+  {
+    final Properties properties = ZBlogConfigurationsTest.baseProperties();
+    final Validation<Seq<ZError>, ZBlogConfiguration> result =
+      ZBlogConfigurations.fromProperties(
+        fs.getPath("/config"), properties);
+    return result.get();
+  }
+
+  private static void writePost(
+    final Path file,
+    final String title,
+    final String body)
+    throws Exception
+  {
+    writePost(file, title, "2020-01-01T00:00:00+0000", body);
+  }
+
+  private static void writePost(
+    final Path file,
+    final String title,
+    final String date,
+    final String body)
+    throws Exception
+  {
+    Files.createDirectories(file.getParent());
+    Files.writeString(
+      file,
+      "title " + title + "\ndate " + date + "\n\n" + body + "\n");
+  }
+
+  private static int readVarint(
+    final ByteBuffer buffer)
+  {
+    int value = 0;
+    int shift = 0;
+    while (true) {
+      final int b = (int) buffer.get() & 0xff;
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+      shift += 7;
+    }
+  }
+
+  /*
+   * Decode every shard named in the manifest, yielding the document indices
+   * of the postings of each term.
+   */
+
+  private static Map<String, List<Integer>> decode(
+    final Path directory)
+    throws Exception
+  {
+    final String manifest = Files.readString(directory.resolve("index.json"));
+    final Map<String, List<Integer>> terms = new TreeMap<>();
+    final Matcher matcher = SHARD_FILE.matcher(manifest);
+    while (matcher.find()) {
+      final ByteBuffer buffer =
+        ByteBuffer.wrap(Files.readAllBytes(directory.resolve(matcher.group(1))));
+      final int count = readVarint(buffer);
+      for (int index = 0; index < count; ++index) {
+        final byte[] term_bytes = new byte[readVarint(buffer)];
+        buffer.get(term_bytes);
+        final String term = new String(term_bytes, StandardCharsets.UTF_8);
+        final int postings = readVarint(buffer);
+        final List<Integer> documents = new ArrayList<>(postings);
+        int document = 0;
+        for (int p = 0; p < postings; ++p) {
+          document += readVarint(buffer);
+          readVarint(buffer);
+          documents.add(Integer.valueOf(document));
+        }
+        Assertions.assertNull(terms.put(term, documents), term);
+      }
+      Assertions.assertFalse(buffer.hasRemaining());
+    }
+    return terms;
+  }
+
+  protected abstract ZBlogPostGeneratorType createGenerator();
+
+  protected abstract FileSystem createFilesystem();
+
+  @Test
+  public final void testInvalidShardSize()
+    throws Exception
+  {
+    try (FileSystem fs = this.createFilesystem()) {
+      Files.createDirectories(fs.getPath("/source"));
+
+      final Properties props = new Properties();
+      props.setProperty("com.io7m.zeptoblog.search.shard_size", "0");
+      final Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>> r =
+        this.createGenerator().generate(baseConfiguration(fs), props);
+
+      dumpResult(r);
+      Assertions.assertTrue(r.isInvalid());
+    }
+  }
+
+  @Test
+  public final void testIndex()
+    throws Exception
+  {
+    try (FileSystem fs = this.createFilesystem()) {
+      final Path source = fs.getPath("/source");
+      writePost(source.resolve("a.zbp"), "Apples", "Apples and *pears*.");
+      writePost(source.resolve("b/b.zbp"), "Pears", "Pears, pears, PEARS!");
+      writePost(source.resolve("c.zbp"), "Quotes", "A \"quoted\" x word.");
+
+      final Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>> r =
+        this.createGenerator().generate(baseConfiguration(fs), new Properties());
+
+      dumpResult(r);
+      Assertions.assertTrue(r.isValid());
+      Assertions.assertTrue(r.get().isEmpty());
+
+      final Path directory = fs.getPath("/output/search");
+      final String manifest = Files.readString(directory.resolve("index.json"));
+      Assertions.assertTrue(manifest.contains("\"link\": \"/a.xhtml\""));
+      Assertions.assertTrue(manifest.contains("\"link\": \"/b/b.xhtml\""));
+      Assertions.assertTrue(manifest.contains("\"title\": \"Quotes\""));
+
+      final Map<String, List<Integer>> terms = decode(directory);
+      Assertions.assertEquals(
+        List.of(Integer.valueOf(0), Integer.valueOf(1)), terms.get("pears"));
+      Assertions.assertEquals(List.of(Integer.valueOf(0)), terms.get("apples"));
+      Assertions.assertEquals(List.of(Integer.valueOf(2)), terms.get("quoted"));
+      Assertions.assertFalse(terms.containsKey("x"));
+      Assertions.assertFalse(terms.containsKey("em"));
+    }
+  }
+
+  @Test
+  public final void testShardSize()
+    throws Exception
+  {
+    try (FileSystem fs = this.createFilesystem()) {
+      final Path source = fs.getPath("/source");
+      for (int index = 0; index < 40; ++index) {
+        writePost(
+          source.resolve(String.format("p%02d.zbp", Integer.valueOf(index))),
+          "Post " + index,
+          String.format("common word%03d other%03d", Integer.valueOf(index), Integer.valueOf(index * 7)));
+      }
+
+      final Properties props = new Properties();
+      props.setProperty("com.io7m.zeptoblog.search.directory", "idx");
+      props.setProperty("com.io7m.zeptoblog.search.shard_size", "128");
+      final Validation<Seq<ZError>, SortedMap<Path, ZBlogPost>> r =
+        this.createGenerator().generate(baseConfiguration(fs), props);
+
+      dumpResult(r);
+      Assertions.assertTrue(r.isValid());
+
+      final Path directory = fs.getPath("/output/idx");
+      final List<Path> shards;
+      try (var stream = Files.list(directory)) {
+        shards = stream
+          .filter(p -> p.getFileName().toString().startsWith("shard-"))
+          .toList();
+      }
+      Assertions.assertTrue(shards.size() > 1);
+
+      final Map<String, List<Integer>> terms = decode(directory);
+      Assertions.assertEquals(40, terms.get("common").size());
+      Assertions.assertEquals(List.of(Integer.valueOf(39)), terms.get("word039"));
+      for (final Path shard : shards) {
+        Assertions.assertTrue(Files.size(shard) <= 128L + 5L, shard.toString());
+      }
+    }
+  }
+
+  @Test
+  public final void testIncremental()
+    throws Exception
+  {
+    try (FileSystem fs = this.createFilesystem()) {
+      final Path source = fs.getPath("/source");
+      for (int index = 0; index < 20; ++index) {
+        writePost(
+          source.resolve(String.format("p%02d.zbp", Integer.valueOf(index))),
+          "Post " + index,
+          String.format("alpha%02d omega", Integer.valueOf(index)));
+      }
+
+      final ZBlogPostGeneratorType gen = this.createGenerator();
+      final ZBlogConfiguration config = baseConfiguration(fs);
+      final Properties props = new Properties();
+      props.setProperty("com.io7m.zeptoblog.search.shard_size", "64");
+      Assertions.assertTrue(gen.generate(config, props).isValid());
+
+      final Path directory = fs.getPath("/output/search");
+      final Path first = directory.resolve("shard-0000.bin");
+      final FileTime time = FileTime.fromMillis(1000L);
+      Files.setLastModifiedTime(first, time);
+      Files.setLastModifiedTime(directory.resolve("index.json"), time);
+
+      Assertions.assertTrue(gen.generate(config, props).isValid());
+      Assertions.assertEquals(time, Files.getLastModifiedTime(first));
+      Assertions.assertEquals(
+        time, Files.getLastModifiedTime(directory.resolve("index.json")));
+
+      writePost(source.resolve("p19.zbp"), "Post 19", "zulu");
+      for (int index = 0; index < 10; ++index) {
+        Files.delete(
+          source.resolve(String.format("p%02d.zbp", Integer.valueOf(index))));
+      }
+      Assertions.assertTrue(gen.generate(config, props).isValid());
+
+      final Map<String, List<Integer>> terms = decode(directory);
+      Assertions.assertEquals(List.of(Integer.valueOf(9)), terms.get("zulu"));
+      Assertions.assertFalse(terms.containsKey("alpha19"));
+      Assertions.assertFalse(terms.containsKey("alpha00"));
+      Assertions.assertEquals(9, terms.get("omega").size());
+
+      final String manifest = Files.readString(directory.resolve("index.json"));
+      try (var stream = Files.list(directory)) {
+        stream
+          .map(p -> p.getFileName().toString())
+          .filter(name -> name.startsWith("shard-"))
+          .forEach(name -> Assertions.assertTrue(
+            manifest.contains(name), name));
+      }
+    }
+  }
+
+  @Test
+  public final void testIncrementalDateChanged()
+    throws Exception
+  {
+    try (FileSystem fs = this.createFilesystem()) {
+      final Path source = fs.getPath("/source");
+      writePost(source.resolve("p00.zbp"), "Post 0", "alpha omega");
+      writePost(
+        source.resolve("p01.zbp"),
+        "Post 1",
+        "2020-02-01T00:00:00+0000",
+        "bravo omega");
+
+      final ZBlogPostGeneratorType gen = this.createGenerator();
+      final ZBlogConfiguration config = baseConfiguration(fs);
+      final Properties props = new Properties();
+      Assertions.assertTrue(gen.generate(config, props).isValid());
+
+      final Path manifest = fs.getPath("/output/search/index.json");
+      Assertions.assertTrue(
+        Files.readString(manifest).contains("2020-01-01T00:00:00Z"));
+
+      writePost(
+        source.resolve("p00.zbp"),
+        "Post 0",
+        "2021-06-01T00:00:00+0000",
+        "alpha omega");
+      Assertions.assertTrue(gen.generate(config, props).isValid());
+
+      final String text = Files.readString(manifest);
+      Assertions.assertTrue(text.contains("2021-06-01T00:00:00Z"), text);
+      Assertions.assertFalse(text.contains("2020-01-01T00:00:00Z"), text);
+    }
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2017 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.zeptoblog.tests;
+
+import com.io7m.zeptoblog.core.ZBlogPostFormatResolverSL;
+import com.io7m.zeptoblog.core.ZBlogPostFormatXHTML;
+import com.io7m.zeptoblog.core.ZServiceRegistry;
+import com.io7m.zeptoblog.core.ZServiceResolverAbstractSL;
+import com.io7m.zeptoblog.core.ZServiceType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class ZServiceRegistryTest
+{
+  @Test
+  public void testResolversShareServices()
+  {
+    final ZBlogPostFormatResolverSL r0 = new ZBlogPostFormatResolverSL();
+    final ZBlogPostFormatResolverSL r1 = new ZBlogPostFormatResolverSL();
+
+    Assertions.assertSame(
+      r0.resolve(ZBlogPostFormatXHTML.NAME).get(),
+      r1.resolve(ZBlogPostFormatXHTML.NAME).get());
+    Assertions.assertEquals(r0.available(), r1.available());
+  }
+
+  @Test
+  public void testRegisteredWithoutScanning()
+  {
+    final Example example = new Example("example");
+    ZServiceRegistry.register(ExampleType.class, example);
+
+    final ExampleResolver resolver = new ExampleResolver();
+    Assertions.assertSame(example, resolver.resolve("example").get());
+    Assertions.assertEquals(1, resolver.available().size());
+    Assertions.assertTrue(resolver.resolve("other").isEmpty());
+
+    final Example other = new Example("other");
+    ZServiceRegistry.register(ExampleType.class, other);
+    Assertions.assertSame(other, resolver.resolve("other").get());
+    Assertions.assertEquals(2, new ExampleResolver().available().size());
+  }
+
+  /**
+   * A service type that is never provided via {@code ServiceLoader}; a scan
+   * for it would fail, as the core module does not declare that it uses it.
+   */
+
+  public interface ExampleType extends ZServiceType
+  {
+
+  }
+
+  private static final class ExampleResolver
+    extends ZServiceResolverAbstractSL<ExampleType>
+  {
+    ExampleResolver()
+    {
+      super(ExampleType.class);
+    }
+  }
+
+  private static final class Example implements ExampleType
+  {
+    private final String name;
+
+    Example(
+      final String in_name)
+    {
+      this.name = in_name;
+    }
+
+    @Override
+    public String name()
+    {
+      return this.name;
+    }
+
+    @Override
+    public String description()
+    {
+      return "An example service.";
+    }
+  }
+}